@@ -0,0 +1,81 @@
+package dev.robertpitt.anprX;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.android.OpenCVLoader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Evaluates the pipeline with the Tesseract reader over the labelled sample frames, the
+ * OCR half of the scorecard that the host EvaluatorTool cannot produce. The frames are
+ * packaged into the test APK from notebooks/frames, the scorecard is written to logcat:
+ *
+ *   ./gradlew connectedAndroidTest
+ *   adb logcat -s ANPRX::TesseractEvaluationTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class TesseractEvaluationTest {
+  private static final String TAG = "ANPRX::TesseractEvaluationTest";
+
+  @Test
+  public void evaluateSampleFramesWithTesseract() throws IOException {
+    assertTrue("Unable to load OpenCV", OpenCVLoader.initDebug());
+
+    Context target = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    Context test = InstrumentationRegistry.getInstrumentation().getContext();
+
+    // Model from the app's assets and frames from the test's, both copied to private storage.
+    File tessBase = new File(target.getCacheDir(), "tesseract");
+    copyAsset(target.getAssets(), "tessdata/eng.traineddata", new File(tessBase, "tessdata/eng.traineddata"));
+    File frames = new File(target.getCacheDir(), "frames");
+    for (String name : test.getAssets().list("frames")) {
+      copyAsset(test.getAssets(), "frames/" + name, new File(frames, name));
+    }
+
+    GroundTruth truth = GroundTruth.load(new File(frames, "labels.tsv"));
+    TesseractPlateReader reader = new TesseractPlateReader(tessBase.getAbsolutePath(),
+        TessBaseAPI.OEM_TESSERACT_LSTM_COMBINED, TessBaseAPI.PageSegMode.PSM_SINGLE_LINE);
+    try {
+      Evaluator.Scorecard card = new Evaluator(new RecognitionPipeline(new PlateDetector(), reader))
+          .evaluate(frames, truth);
+      for (String line : card.toString().split("\n")) {
+        Log.i(TAG, line);
+      }
+
+      assertTrue(card.read);
+      assertTrue("No labelled plate was found", card.recall() > 0);
+      assertTrue("No character was read", card.characterAccuracy() > 0);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static void copyAsset(AssetManager assets, String name, File file) throws IOException {
+    if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+      throw new IOException("Unable to create " + file.getParentFile());
+    }
+    try (InputStream in = assets.open(name); OutputStream out = new FileOutputStream(file)) {
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        out.write(buffer, 0, count);
+      }
+    }
+  }
+}
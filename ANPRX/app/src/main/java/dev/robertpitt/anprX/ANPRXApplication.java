@@ -14,6 +14,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import io.sentry.android.core.SentryAndroid;
 import io.sentry.core.SentryLevel;
@@ -29,6 +32,28 @@ public class ANPRXApplication extends Application implements CameraXConfig.Provi
    */
   public static final String TESS_BASE_PATH = Environment.getExternalStorageDirectory().getAbsolutePath() + "/tesseract";
 
+  /**
+   * Bootstrap initialiser names, used by consumers to wait on the parts they depend on.
+   */
+  public static final String INIT_SENTRY = "sentry";
+  public static final String INIT_OPENCV = "opencv";
+  public static final String INIT_TESSERACT_MODEL = "tesseract_model";
+
+  /**
+   * Number of threads used to run the independent initialisers.
+   */
+  private static final int BOOTSTRAP_THREADS = 3;
+
+  /**
+   * Trace of this application start, created as early as possible.
+   */
+  private final StartupTrace startupTrace = new StartupTrace();
+
+  /**
+   * Start-up initialisers, run concurrently while the activity binds the camera.
+   */
+  private final Bootstrap bootstrap = new Bootstrap(startupTrace);
+
   /**
    * Override CameraX Config
    * @return
@@ -44,10 +69,45 @@ public class ANPRXApplication extends Application implements CameraXConfig.Provi
    */
   @Override
   public void onCreate() {
-    initialiseSentry();
-    initialiseTesseract();
-    OpenCVLoader.initDebug();
     super.onCreate();
+    startupTrace.mark("application_create");
+
+    /**
+     * None of the initialisers depend on each other, so they are all started at once and
+     * left to run while the activity is created and the camera provider future resolves.
+     */
+    bootstrap
+        .add(INIT_SENTRY, this::initialiseSentry)
+        .add(INIT_OPENCV, this::initialiseOpenCV)
+        .add(INIT_TESSERACT_MODEL, this::initialiseTesseract);
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        BOOTSTRAP_THREADS, BOOTSTRAP_THREADS, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    executor.allowCoreThreadTimeOut(true);
+    bootstrap.start(executor);
+  }
+
+  /**
+   * @return the start-up bootstrap, used to wait on initialisers before they are needed.
+   */
+  public Bootstrap getBootstrap() {
+    return bootstrap;
+  }
+
+  /**
+   * @return the trace of this application start.
+   */
+  public StartupTrace getStartupTrace() {
+    return startupTrace;
+  }
+
+  /**
+   * Load the OpenCV native libraries bundled with the application.
+   */
+  private void initialiseOpenCV() {
+    if (!OpenCVLoader.initDebug()) {
+      throw new IllegalStateException("Unable to load the OpenCV native libraries");
+    }
   }
 
   /**
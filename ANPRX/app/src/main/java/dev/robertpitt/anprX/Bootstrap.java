@@ -0,0 +1,211 @@
+package dev.robertpitt.anprX;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small dependency aware start-up runner.
+ *
+ * Initialisers are registered with the names of the initialisers they depend on, once
+ * started every initialiser whose dependencies have completed is submitted to the executor,
+ * so independent work (native library loading, model installation, crash reporting) runs
+ * concurrently instead of back to back on the main thread.
+ *
+ * Each initialiser is recorded as a phase in the {@link StartupTrace}.
+ */
+public class Bootstrap {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::Bootstrap";
+
+  /**
+   * Unit of start-up work.
+   */
+  public interface Initialiser {
+    void run() throws Exception;
+  }
+
+  /**
+   * Internal state for a registered initialiser.
+   */
+  private static class Task {
+    final String name;
+    final Initialiser initialiser;
+    final String[] dependencies;
+    final List<Task> dependents = new ArrayList<>();
+    final AtomicInteger pending = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile boolean failed = false;
+
+    Task(String name, Initialiser initialiser, String[] dependencies) {
+      this.name = name;
+      this.initialiser = initialiser;
+      this.dependencies = dependencies;
+    }
+  }
+
+  /**
+   * Trace the phases are recorded to.
+   */
+  private final StartupTrace trace;
+
+  /**
+   * Registered initialisers, in registration order.
+   */
+  private final Map<String, Task> tasks = new LinkedHashMap<>();
+
+  /**
+   * Executor running the initialisers, set on start.
+   */
+  private ExecutorService executor;
+
+  /**
+   * @param trace trace to record each initialiser to.
+   */
+  public Bootstrap(StartupTrace trace) {
+    this.trace = trace;
+  }
+
+  /**
+   * Register an initialiser, dependencies must have been registered beforehand.
+   */
+  public synchronized Bootstrap add(String name, Initialiser initialiser, String... dependencies) {
+    if (executor != null) {
+      throw new IllegalStateException("Bootstrap already started");
+    }
+
+    for (String dependency : dependencies) {
+      if (!tasks.containsKey(dependency)) {
+        throw new IllegalArgumentException("Unknown dependency " + dependency + " for " + name);
+      }
+    }
+
+    tasks.put(name, new Task(name, initialiser, dependencies));
+    return this;
+  }
+
+  /**
+   * Start every initialiser without outstanding dependencies, returns immediately.
+   */
+  public synchronized void start(ExecutorService executor) {
+    if (this.executor != null) {
+      throw new IllegalStateException("Bootstrap already started");
+    }
+    this.executor = executor;
+
+    // Wire up the dependency graph before anything is submitted.
+    for (Task task : tasks.values()) {
+      task.pending.set(task.dependencies.length);
+      for (String dependency : task.dependencies) {
+        tasks.get(dependency).dependents.add(task);
+      }
+    }
+
+    for (Task task : tasks.values()) {
+      if (task.dependencies.length == 0) {
+        submit(task);
+      }
+    }
+  }
+
+  /**
+   * Block until the named initialiser has finished.
+   *
+   * @return true if it completed successfully within the timeout.
+   */
+  public boolean await(String name, long timeout, TimeUnit unit) throws InterruptedException {
+    Task task;
+    synchronized (this) {
+      task = tasks.get(name);
+    }
+
+    if (task == null) {
+      throw new IllegalArgumentException("Unknown initialiser " + name);
+    }
+
+    return task.done.await(timeout, unit) && !task.failed;
+  }
+
+  /**
+   * Block until all initialisers have finished.
+   *
+   * @return true if every initialiser completed successfully within the timeout.
+   */
+  public boolean awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    List<Task> snapshot;
+    synchronized (this) {
+      snapshot = new ArrayList<>(tasks.values());
+    }
+
+    boolean success = true;
+    for (Task task : snapshot) {
+      long remaining = deadline - System.nanoTime();
+      if (!task.done.await(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+      success &= !task.failed;
+    }
+    return success;
+  }
+
+  /**
+   * @return the trace the bootstrap records to.
+   */
+  public StartupTrace getTrace() {
+    return trace;
+  }
+
+  private void submit(final Task task) {
+    executor.execute(() -> run(task));
+  }
+
+  private void run(Task task) {
+    long start = trace.now();
+    try {
+      task.initialiser.run();
+    } catch (Exception e) {
+      task.failed = true;
+      Log.e(TAG, "Initialiser " + task.name + " failed", e);
+    }
+    trace.record(task.name, start, trace.now(), task.failed);
+    task.done.countDown();
+
+    // Release dependents, a failed dependency still releases them so that awaiting
+    // threads are never left hanging, they are marked as failed without running.
+    for (Task dependent : task.dependents) {
+      if (task.failed) {
+        dependent.failed = true;
+      }
+      if (dependent.pending.decrementAndGet() == 0) {
+        if (dependent.failed) {
+          trace.record(dependent.name, trace.now(), trace.now(), true);
+          dependent.done.countDown();
+          releaseFailed(dependent);
+        } else {
+          submit(dependent);
+        }
+      }
+    }
+  }
+
+  private void releaseFailed(Task task) {
+    for (Task dependent : task.dependents) {
+      dependent.failed = true;
+      if (dependent.pending.decrementAndGet() == 0) {
+        trace.record(dependent.name, trace.now(), trace.now(), true);
+        dependent.done.countDown();
+        releaseFailed(dependent);
+      }
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package dev.robertpitt.anprX;
+
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the raw Y planes delivered to the analyser into a chunked, indexed recording
+ * that can be replayed with {@link RecordedFrameSource}.
+ *
+ * Planes are copied into pooled buffers on the analysis thread and written to disk on a
+ * dedicated writer thread, when the writer falls behind frames are dropped rather than
+ * stalling the analyser.
+ */
+public class FrameRecorder {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::FrameRecorder";
+
+  /**
+   * Default number of frames per chunk.
+   */
+  public static final int DEFAULT_CHUNK_FRAMES = 64;
+
+  /**
+   * Number of frames that may be waiting for the writer.
+   */
+  private static final int QUEUE_SIZE = 8;
+
+  /**
+   * A copied Y plane waiting to be written.
+   */
+  private static class Plane {
+    ByteBuffer data;
+    int width;
+    int height;
+    int rowStride;
+    int rotation;
+    long timestamp;
+  }
+
+  /**
+   * Recording being written, only used by the writer thread once started.
+   */
+  private final RawFrameWriter out;
+
+  /**
+   * Planes waiting to be written, and planes available for reuse.
+   */
+  private final BlockingQueue<Plane> pending = new ArrayBlockingQueue<>(QUEUE_SIZE);
+  private final BlockingQueue<Plane> pool = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+  /**
+   * Counters
+   */
+  private final AtomicLong recorded = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Writer thread
+   */
+  private final Thread writer;
+  private volatile boolean running = true;
+
+  public FrameRecorder(File file) throws IOException {
+    this(file, DEFAULT_CHUNK_FRAMES);
+  }
+
+  public FrameRecorder(File file, int chunkFrames) throws IOException {
+    out = new RawFrameWriter(file, chunkFrames);
+
+    for (int i = 0; i < QUEUE_SIZE; i++) {
+      pool.add(new Plane());
+    }
+
+    writer = new Thread(this::drain, TAG);
+    writer.start();
+  }
+
+  /**
+   * Copy the Y plane of the image for recording, the image is left untouched.
+   *
+   * @return false if the frame was dropped because the writer is behind.
+   */
+  public boolean record(ImageProxy image) {
+    Plane plane = pool.poll();
+    if (plane == null) {
+      dropped.incrementAndGet();
+      return false;
+    }
+
+    ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+    ByteBuffer source = yPlane.getBuffer().duplicate();
+    source.rewind();
+
+    if (plane.data == null || plane.data.capacity() < source.remaining()) {
+      plane.data = ByteBuffer.allocateDirect(source.remaining());
+    }
+    plane.data.clear();
+    plane.data.put(source);
+    plane.data.flip();
+
+    plane.width = image.getWidth();
+    plane.height = image.getHeight();
+    plane.rowStride = yPlane.getRowStride();
+    plane.rotation = image.getImageInfo().getRotationDegrees();
+    plane.timestamp = image.getImageInfo().getTimestamp();
+
+    pending.add(plane);
+    return true;
+  }
+
+  public long getRecordedFrames() {
+    return recorded.get();
+  }
+
+  public long getDroppedFrames() {
+    return dropped.get();
+  }
+
+  /**
+   * Flush pending frames, write the index and close the file.
+   */
+  public void close() throws IOException {
+    running = false;
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    out.close();
+  }
+
+  private void drain() {
+    try {
+      while (running || !pending.isEmpty()) {
+        Plane plane = pending.poll(100, TimeUnit.MILLISECONDS);
+        if (plane == null) {
+          continue;
+        }
+
+        write(plane);
+        pool.add(plane);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      Log.e(TAG, "Recording failed", e);
+      running = false;
+    }
+  }
+
+  private void write(Plane plane) throws IOException {
+    out.write(plane.data, plane.width, plane.height, plane.rowStride, plane.rotation, plane.timestamp);
+    recorded.incrementAndGet();
+  }
+}
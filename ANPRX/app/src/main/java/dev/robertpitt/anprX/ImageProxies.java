@@ -0,0 +1,85 @@
+package dev.robertpitt.anprX;
+
+import android.graphics.ImageFormat;
+
+import androidx.camera.core.ImageProxy;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversions from CameraX images to OpenCV Mats, kept out of the pipeline module as they
+ * need the Android camera classes.
+ */
+public class ImageProxies {
+  /**
+   * https://gist.github.com/FWStelian/4c3dcd35960d6eabbe661c3448dd5539
+   * @param image
+   * @return
+   */
+  public static Mat imageToMat(ImageProxy image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+
+    ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+    int ySize = yPlane.getBuffer().remaining();
+
+    byte[] data = new byte[ySize];
+    yPlane.getBuffer().get(data, 0, ySize);
+
+    Mat greyMat = new Mat(height, width, CvType.CV_8UC1);
+    greyMat.put(0, 0, data);
+
+    return greyMat;
+  }
+
+  public static Mat yuvToMat(ImageProxy image) {
+    ByteBuffer buffer;
+    int rowStride;
+    int pixelStride;
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int offset = 0;
+
+    ImageProxy.PlaneProxy[] planes = image.getPlanes();
+    byte[] data = new byte[image.getWidth() * image.getHeight() * ImageFormat.getBitsPerPixel(ImageFormat.YUV_420_888) / 8];
+    byte[] rowData = new byte[planes[0].getRowStride()];
+
+    for (int i = 0; i < 2; i++) {
+      buffer = planes[i].getBuffer();
+      rowStride = planes[i].getRowStride();
+      pixelStride = planes[i].getPixelStride();
+      int w = (i == 0) ? width : width / 2;
+      int h = (i == 0) ? height : height / 2;
+      for (int row = 0; row < h; row++) {
+        int bytesPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.YUV_420_888) / 8;
+        if (pixelStride == bytesPerPixel) {
+          int length = w * bytesPerPixel;
+          buffer.get(data, offset, length);
+
+          if (h - row != 1) {
+            buffer.position(buffer.position() + rowStride - length);
+          }
+          offset += length;
+        } else {
+          if (h - row == 1) {
+            buffer.get(rowData, 0, width - pixelStride + 1);
+          } else {
+            buffer.get(rowData, 0, rowStride);
+          }
+
+          for (int col = 0; col < w; col++) {
+            data[offset++] = rowData[col * pixelStride];
+          }
+        }
+      }
+    }
+
+    Mat mat = new Mat(height + height / 2, width, CvType.CV_8UC1);
+    mat.put(0, 0, data);
+
+    return mat;
+  }
+}
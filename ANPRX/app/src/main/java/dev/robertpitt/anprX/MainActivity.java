@@ -5,6 +5,8 @@ import android.annotation.SuppressLint;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.os.Bundle;
+import android.os.Environment;
+import android.util.Log;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.googlecode.tesseract.android.TessBaseAPI;
@@ -23,6 +25,7 @@ import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.Surface;
 import android.view.View;
@@ -30,16 +33,20 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.RotatedRect;
 import org.opencv.imgproc.Imgproc;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main Camera Activity
@@ -67,15 +74,21 @@ public class MainActivity extends AppCompatActivity {
   };
 
   /**
-   * Tesseract Base API instance, used for processing cropped images
-   * for textual representation
+   * Detection and OCR chain, created on the analysis thread once the bootstrap is complete.
    */
-  private TessBaseAPI tessBaseAPI = new TessBaseAPI();
+  private RecognitionPipeline pipeline;
 
   /**
    * Plate Detector Logic
    */
-  private PlateDetector detector = new PlateDetector();
+  private Detector detector;
+
+  /**
+   * Lane regions as defined on the upright frame and the sensor rotation they were last
+   * mapped for, only touched on the analysis thread.
+   */
+  private LaneRegions uprightRegions;
+  private int regionsRotation = 0;
 
   /**
    * Camera Instance
@@ -113,6 +126,94 @@ public class MainActivity extends AppCompatActivity {
    */
   private Executor analysisExecutor = Executors.newSingleThreadExecutor();
 
+  /**
+   * Maximum time the analysis thread waits for the application bootstrap.
+   */
+  private static final long BOOTSTRAP_TIMEOUT_SECONDS = 30;
+
+  /**
+   * When enabled every analysed frame is recorded for later replay with the RecordedFrameSource.
+   */
+  private static final boolean RECORD_FRAMES = false;
+
+  /**
+   * When enabled detection only runs on the parts of the frame that are in motion, which
+   * mostly benefits fixed cameras looking at an empty road.
+   */
+  private static final boolean GATE_ON_MOTION = true;
+
+  /**
+   * Detection approach, contours need a clean plate border, morphology copes without one.
+   */
+  private static final DetectorMode DETECTOR_MODE = DetectorMode.CONTOURS;
+
+  /**
+   * Folder raw frame recordings are written to.
+   */
+  private static final String RECORDINGS_PATH = Environment.getExternalStorageDirectory().getAbsolutePath() + "/anprx/recordings";
+
+  /**
+   * Raw frame recorder, only set when recording is enabled.
+   */
+  private FrameRecorder recorder;
+
+  /**
+   * Back office endpoint sightings are exported to, null to disable exporting.
+   */
+  private static final String EXPORT_ENDPOINT = null;
+
+  /**
+   * Sighting exporter and its bus subscription, only set when exporting is enabled.
+   */
+  private SightingExporter exporter;
+  private ResultBus.Subscriber exporterSubscriber;
+
+  /**
+   * Read plates through the OCR escalation ladder rather than a single full quality pass.
+   */
+  private static final boolean OCR_LADDER = true;
+
+  /**
+   * Time budget of a single OCR call, a candidate that is not a plate gives up after this
+   * rather than holding up detection of the next frames. 0 for no budget.
+   */
+  private static final long OCR_BUDGET_MILLIS = 150;
+
+  /**
+   * Tesseract instances, kept for their timeout counters.
+   */
+  private final List<TesseractPlateReader> ocrReaders = new CopyOnWriteArrayList<>();
+
+  /**
+   * Store the crop and surroundings of every read plate as evidence.
+   */
+  private static final boolean STORE_EVIDENCE = true;
+
+  /**
+   * Evidence store, only set when storing evidence is enabled.
+   */
+  private EvidenceStore evidenceStore;
+
+  /**
+   * Lane region definition for this camera, reloaded whenever the activity resumes.
+   */
+  private static final String REGIONS_PATH = Environment.getExternalStorageDirectory().getAbsolutePath() + "/anprx/regions.json";
+
+  /**
+   * Detector profile, as written by the ParameterSearch, reloaded whenever the activity resumes.
+   */
+  private static final String DETECTOR_PROFILE_PATH = Environment.getExternalStorageDirectory().getAbsolutePath() + "/anprx/detector.properties";
+
+  /**
+   * Set on the analysis thread once OpenCV and Tesseract are ready for use.
+   */
+  private volatile boolean analysisReady = false;
+
+  /**
+   * Start-up trace of the application, frames are marked against it.
+   */
+  private StartupTrace startupTrace;
+
   /**
    * UI Component for the Toolbar
    */
@@ -124,6 +225,32 @@ public class MainActivity extends AppCompatActivity {
   private ImageView imageOverlayView;
   private TextView registrationTextView;
 
+  /**
+   * Results published by the analyser, consumers attach to it independently.
+   */
+  private final ResultBus resultBus = new ResultBus();
+
+  /**
+   * The UI reads the bus once per display frame, on the UI thread.
+   */
+  private ResultBus.Subscriber uiSubscriber;
+  private final ResultBus.Event uiEvent = new ResultBus.Event();
+  private final Choreographer.FrameCallback uiUpdate = new Choreographer.FrameCallback() {
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      String text = null;
+      while (uiSubscriber.poll(uiEvent)) {
+        if (uiEvent.type == ResultBus.Type.RECOGNITION) {
+          text = uiEvent.text;
+        }
+      }
+      if (text != null) {
+        registrationTextView.setText(text);
+      }
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+  };
+
   /**
    * Activity Creation Handler
    * @param savedInstanceState
@@ -142,6 +269,7 @@ public class MainActivity extends AppCompatActivity {
     imageOverlayView = findViewById(R.id.imageOverlayView);
     registrationTextView = findViewById(R.id.registrationTextView);
     registrationTextView.setVisibility(View.VISIBLE);
+    uiSubscriber = resultBus.subscribe("ui");
 
     // Configure Toolbar
     setSupportActionBar(toolbar);
@@ -149,15 +277,203 @@ public class MainActivity extends AppCompatActivity {
     // Request Permissions (Once granted notification is received we bind the camera)
     ActivityCompat.requestPermissions(this, permissions, CAMERA_PERMISSION_REQUEST);
 
-    // Initialise the Tesseract library
-    tessBaseAPI.init(ANPRXApplication.TESS_BASE_PATH, "eng", TessBaseAPI.OEM_TESSERACT_LSTM_COMBINED);
-    tessBaseAPI.setVariable("tessedit_char_whitelist", " 0123456789ABCDEFGHJKLMNOPQRSTUVWXYZ");
-    tessBaseAPI.setDebug(false);
+    // Initialise the analysis pipeline on the analysis thread, the application bootstrap is
+    // still loading native libraries and installing the model while the camera starts up.
+    startupTrace = ((ANPRXApplication) getApplication()).getStartupTrace();
+    analysisExecutor.execute(this::initialiseAnalysis);
+  }
+
+  /**
+   * Wait for the parts of the application bootstrap the analyser depends on and initialise
+   * the Tesseract library, this runs on the analysis thread ahead of the first frame.
+   */
+  private void initialiseAnalysis() {
+    Bootstrap bootstrap = ((ANPRXApplication) getApplication()).getBootstrap();
+    try {
+      if (!bootstrap.await(ANPRXApplication.INIT_OPENCV, BOOTSTRAP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+          || !bootstrap.await(ANPRXApplication.INIT_TESSERACT_MODEL, BOOTSTRAP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        Log.e(TAG, "Application bootstrap failed, analysis is disabled");
+        return;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    long start = startupTrace.now();
+
+    // Initialise the Tesseract library, the ladder adds a fast LSTM only instance in front.
+    TesseractPlateReader reader = new TesseractPlateReader(ANPRXApplication.TESS_BASE_PATH,
+        TessBaseAPI.OEM_TESSERACT_LSTM_COMBINED, TessBaseAPI.PageSegMode.PSM_SINGLE_LINE);
+    reader.setTimeBudget(OCR_BUDGET_MILLIS);
+    ocrReaders.add(reader);
+    detector = DETECTOR_MODE.create();
+    pipeline = new RecognitionPipeline(detector, reader);
+    if (OCR_LADDER) {
+      TesseractPlateReader fast = new TesseractPlateReader(ANPRXApplication.TESS_BASE_PATH,
+          TessBaseAPI.OEM_LSTM_ONLY, TessBaseAPI.PageSegMode.PSM_SINGLE_LINE);
+      fast.setTimeBudget(OCR_BUDGET_MILLIS);
+      ocrReaders.add(fast);
+      pipeline.setOcrLadder(OcrLadder.standard(fast, reader));
+    }
+    if (GATE_ON_MOTION) {
+      pipeline.setMotionGate(new MotionGate());
+    }
+    loadRegions();
+    loadDetectorProfile();
+
+    startupTrace.record("tesseract_engine", start, startupTrace.now(), false);
 
-    // Disable dictionary lookups as we are not looking
-    // https://tesseract-ocr.github.io/tessdoc/ImproveQuality#dictionaries-word-lists-and-patterns
-    tessBaseAPI.setVariable("load_system_dawg", "false");
-    tessBaseAPI.setVariable("load_freq_dawg", "false");
+    if (RECORD_FRAMES && Utils.mkdir(RECORDINGS_PATH)) {
+      try {
+        recorder = new FrameRecorder(new File(RECORDINGS_PATH, System.currentTimeMillis() + RawFrameFormat.FILE_EXTENSION));
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to start the frame recorder", e);
+      }
+    }
+
+    if (STORE_EVIDENCE) {
+      try {
+        evidenceStore = new EvidenceStore(new File(getFilesDir(), "evidence"));
+        pipeline.setEvidenceStore(evidenceStore);
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to open the evidence store", e);
+      }
+    }
+
+    if (EXPORT_ENDPOINT != null) {
+      try {
+        exporter = new SightingExporter(new URL(EXPORT_ENDPOINT), new File(getFilesDir(), "sightings"));
+        exporterSubscriber = resultBus.startConsumer("exporter", exporter);
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to start the sighting exporter", e);
+      }
+    }
+
+    analysisReady = true;
+  }
+
+  /**
+   * Activity Resume Handler
+   */
+  @Override
+  protected void onResume() {
+    super.onResume();
+
+    // Pick up any change to the lane regions or detector profile without restarting the camera.
+    analysisExecutor.execute(this::loadRegions);
+    analysisExecutor.execute(this::loadDetectorProfile);
+
+    Choreographer.getInstance().postFrameCallback(uiUpdate);
+  }
+
+  /**
+   * Activity Pause Handler
+   */
+  @Override
+  protected void onPause() {
+    super.onPause();
+    Choreographer.getInstance().removeFrameCallback(uiUpdate);
+    Log.i(TAG, "Result bus " + resultBus);
+    if (pipeline != null && pipeline.getOcrLadder() != null) {
+      Log.i(TAG, "OCR ladder " + pipeline.getOcrLadder());
+    }
+    for (TesseractPlateReader reader : ocrReaders) {
+      Log.i(TAG, "OCR reader " + reader);
+    }
+  }
+
+  /**
+   * Load the lane region definition, the detector searches the whole frame without one.
+   */
+  private void loadRegions() {
+    if (detector == null) {
+      return;
+    }
+
+    File file = new File(REGIONS_PATH);
+    if (!file.exists()) {
+      uprightRegions = null;
+      applyRegions();
+      return;
+    }
+
+    try {
+      uprightRegions = LaneRegions.load(file);
+      applyRegions();
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to load lane regions, keeping the current regions", e);
+    }
+  }
+
+  /**
+   * Detection runs on frames in sensor orientation, so the regions are mapped to it.
+   */
+  private void applyRegions() {
+    detector.setRegions(uprightRegions == null ? null : uprightRegions.toSensor(regionsRotation));
+  }
+
+  /**
+   * Load the detector profile, the detector uses its defaults without one.
+   */
+  private void loadDetectorProfile() {
+    if (detector == null) {
+      return;
+    }
+
+    File file = new File(DETECTOR_PROFILE_PATH);
+    if (!file.exists()) {
+      detector.setConfig(DetectorConfig.DEFAULT);
+      return;
+    }
+
+    try {
+      detector.setConfig(DetectorConfig.load(file));
+    } catch (IOException e) {
+      Log.e(TAG, "Unable to load the detector profile, keeping the current profile", e);
+    }
+  }
+
+  /**
+   * Activity Destruction Handler
+   */
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+
+    // Close the recorder on the analysis thread so no frame is recorded after the footer.
+    analysisExecutor.execute(() -> {
+      if (recorder != null) {
+        try {
+          recorder.close();
+        } catch (IOException e) {
+          Log.e(TAG, "Unable to close the frame recorder", e);
+        }
+        recorder = null;
+      }
+
+      // Undelivered sightings stay spooled for the next run.
+      if (exporter != null) {
+        exporterSubscriber.close();
+        try {
+          exporter.close();
+        } catch (IOException e) {
+          Log.e(TAG, "Unable to close the sighting exporter", e);
+        }
+        exporter = null;
+      }
+
+      // Pending evidence is encoded and written before the packs are closed.
+      if (evidenceStore != null) {
+        pipeline.setEvidenceStore(null);
+        try {
+          evidenceStore.close();
+        } catch (IOException e) {
+          Log.e(TAG, "Unable to close the evidence store", e);
+        }
+        evidenceStore = null;
+      }
+    });
   }
 
   /**
@@ -182,6 +498,7 @@ public class MainActivity extends AppCompatActivity {
   private void initialiseCamera() {
     // Initialize the provider instance
     cameraProviderFuture = ProcessCameraProvider.getInstance(this);
+    startupTrace.mark("camera_provider_requested");
 
     // Listen for provider initialisation success event
     cameraProviderFuture.addListener(() -> {
@@ -200,6 +517,7 @@ public class MainActivity extends AppCompatActivity {
          * Create the camera instance with the configured use cases.
          */
         cameraProvider = cameraProviderFuture.get();
+        startupTrace.mark("camera_provider_ready");
 
         /**
          * Attach use cases to the camera with the same lifecycle owner
@@ -210,6 +528,7 @@ public class MainActivity extends AppCompatActivity {
          * Connect the preview use case to the previewView
          */
         preview.setSurfaceProvider(previewView.createSurfaceProvider(camera.getCameraInfo()));
+        startupTrace.mark("camera_bound");
 
         /**
          * Attach event listener to the view finder to allow touch to focus
@@ -255,7 +574,7 @@ public class MainActivity extends AppCompatActivity {
     /**
      * Connect the analyzer handler to the analysis pipeline.
      */
-//    imageAnalysisUseCase.setAnalyzer(analysisExecutor, image -> this.analyzeFrame(image));
+    imageAnalysisUseCase.setAnalyzer(analysisExecutor, image -> this.analyzeFrame(image));
 
     /**
      * Return the use case
@@ -269,56 +588,45 @@ public class MainActivity extends AppCompatActivity {
    */
   private void analyzeFrame(ImageProxy image) {
     /**
-     * 1. Convert image to mat
+     * Frames delivered before the bootstrap has completed are dropped.
      */
-    Mat singleChannel8BitImage = Utils.imageToMat(image);
+    if (!analysisReady) {
+      image.close();
+      return;
+    }
 
     /**
-     * Rotate the view to match the preview window
+     * Record the raw plane exactly as received, before it is converted.
      */
-    Core.rotate(singleChannel8BitImage, singleChannel8BitImage, image.getImageInfo().getRotationDegrees() - 90);
+    if (recorder != null) {
+      recorder.record(image);
+    }
 
     /**
-     * 2 Scan image for rectangle shapes
+     * 1. Convert image to mat
      */
-    final List<RotatedRect> results = detector.detect(singleChannel8BitImage, 100, 400);
+    Mat singleChannel8BitImage = ImageProxies.imageToMat(image);
 
     /**
-     * 3. Extract the largest shape.
+     * The frame stays in sensor orientation, only the results and plate crops are rotated to
+     * match the preview window.
      */
-    RotatedRect detection = Utils.getLargestContourFromList(results);
-    if(detection == null) {
-      singleChannel8BitImage.release();
-      image.close();
-      return;
+    int rotationDegrees = image.getImageInfo().getRotationDegrees();
+    if (rotationDegrees != regionsRotation) {
+      regionsRotation = rotationDegrees;
+      applyRegions();
     }
 
     /**
-     * 4. Crop the detection from the greyspace and apply a threshold
+     * 2. Detect and read plates
      */
-//    Mat cropped = singleChannel8BitImage.submat(detection.boundingRect());
-//    Mat cropped = Utils.rotateAndDeskew(singleChannel8BitImage, detection);
-//    Imgproc.threshold(cropped, cropped, 120, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
-
-    /**
-     * 5. Convert the cropped mat into a bitmap
-     */
-//    final Bitmap bitmap = Bitmap.createBitmap(cropped.width(), cropped.height(), Bitmap.Config.ARGB_8888);
-//    org.opencv.android.Utils.matToBitmap(cropped, bitmap);
-
-    // Perform OCR
-//    tessBaseAPI.setImage(bitmap);
-//    final String possibleRegistration = tessBaseAPI.getUTF8Text();
-//    tessBaseAPI.clear();
+    final RecognitionResult result = pipeline.process(singleChannel8BitImage, rotationDegrees, image.getImageInfo().getTimestamp());
+    startupTrace.markFirstAnalysedFrame();
 
     /**
-     * Update the UI
+     * 3. Hand the results to the UI and any other consumers
      */
-//    runOnUiThread(() -> {
-//      registrationTextView.setText(possibleRegistration);
-//      imageOverlayView.setImageBitmap(bitmap);
-//      imageOverlayView.setVisibility(View.VISIBLE);
-//    });
+    resultBus.publish(result);
 
     singleChannel8BitImage.release();
     image.close();
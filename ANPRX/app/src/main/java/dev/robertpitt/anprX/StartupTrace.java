@@ -0,0 +1,131 @@
+package dev.robertpitt.anprX;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records the phases of a single application start so that start-up regressions
+ * (and time-to-first-analysed-frame in particular) can be compared between releases.
+ *
+ * All timestamps are relative to the moment the trace was created, which is the
+ * construction of the {@link ANPRXApplication}.
+ */
+public class StartupTrace {
+  /**
+   * Log Tag
+   */
+  private static final String TAG = "ANPRX::StartupTrace";
+
+  /**
+   * Mark recorded when the first frame has been through the analysis pipeline.
+   */
+  public static final String FIRST_ANALYSED_FRAME = "first_analysed_frame";
+
+  /**
+   * A single recorded phase, marks are phases where start and end are equal.
+   */
+  public static class Phase {
+    public final String name;
+    public final String thread;
+    public final long startNanos;
+    public final long endNanos;
+    public final boolean failed;
+
+    Phase(String name, String thread, long startNanos, long endNanos, boolean failed) {
+      this.name = name;
+      this.thread = thread;
+      this.startNanos = startNanos;
+      this.endNanos = endNanos;
+      this.failed = failed;
+    }
+
+    public long durationMillis() {
+      return (endNanos - startNanos) / 1000000L;
+    }
+  }
+
+  /**
+   * Origin of the trace, in the {@link SystemClock#elapsedRealtimeNanos()} time base.
+   */
+  private final long originNanos = SystemClock.elapsedRealtimeNanos();
+
+  /**
+   * Recorded phases, guarded by this.
+   */
+  private final List<Phase> phases = new ArrayList<>();
+
+  /**
+   * Set once the first analysed frame has been recorded, further frames are ignored.
+   */
+  private volatile boolean firstFrameRecorded = false;
+
+  /**
+   * @return nanoseconds since the start of the trace.
+   */
+  public long now() {
+    return SystemClock.elapsedRealtimeNanos() - originNanos;
+  }
+
+  /**
+   * Record a completed phase.
+   */
+  public synchronized void record(String name, long startNanos, long endNanos, boolean failed) {
+    phases.add(new Phase(name, Thread.currentThread().getName(), startNanos, endNanos, failed));
+  }
+
+  /**
+   * Record an instantaneous event such as the camera provider becoming available.
+   */
+  public void mark(String name) {
+    long at = now();
+    record(name, at, at, false);
+  }
+
+  /**
+   * Record the first analysed frame and dump the trace, subsequent calls are a no-op
+   * so this is cheap enough to call from the analyser on every frame.
+   */
+  public void markFirstAnalysedFrame() {
+    if (firstFrameRecorded) {
+      return;
+    }
+
+    synchronized (this) {
+      if (firstFrameRecorded) {
+        return;
+      }
+      firstFrameRecorded = true;
+    }
+
+    mark(FIRST_ANALYSED_FRAME);
+    dump();
+  }
+
+  /**
+   * @return a copy of the recorded phases in the order they were recorded.
+   */
+  public synchronized List<Phase> getPhases() {
+    return new ArrayList<>(phases);
+  }
+
+  /**
+   * Write the trace to logcat, one line per phase, in a format that is easy to grep
+   * out of a bug report: `phase start_ms end_ms duration_ms thread`.
+   */
+  public void dump() {
+    Log.i(TAG, String.format(Locale.ROOT, "startup trace for %s (%d)", BuildConfig.VERSION_NAME, BuildConfig.VERSION_CODE));
+    for (Phase phase : getPhases()) {
+      Log.i(TAG, String.format(Locale.ROOT, "%-24s %8.1f %8.1f %6d %s%s",
+          phase.name,
+          phase.startNanos / 1e6,
+          phase.endNanos / 1e6,
+          phase.durationMillis(),
+          phase.thread,
+          phase.failed ? " FAILED" : ""));
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package dev.robertpitt.anprX;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+import org.opencv.core.Mat;
+
+import java.util.Locale;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plate reader backed by the Tesseract library.
+ *
+ * Reads can be bounded by a time budget, so a noisy crop that is not a plate cannot hold the
+ * analysis thread for several frames. Recognition then runs under Tesseract's progress
+ * monitor, through getHOCRText which is the call that passes the monitor down, and is
+ * cancelled with stop() once the budget is spent: by the progress callback when it notices,
+ * or by a watchdog when recognition stalls between callbacks. A cancelled read is returned
+ * marked as timed out rather than dropped.
+ */
+public class TesseractPlateReader implements PlateReader {
+  /**
+   * Characters that can appear on a registration plate.
+   */
+  private static final String WHITELIST = " 0123456789ABCDEFGHJKLMNOPQRSTUVWXYZ";
+
+  /**
+   * Watchdog shared by every reader, it only ever calls stop().
+   */
+  private static final ScheduledThreadPoolExecutor WATCHDOG = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "TesseractWatchdog");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  static {
+    WATCHDOG.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Tesseract Base API instance
+   */
+  private final TessBaseAPI tessBaseAPI;
+
+  /**
+   * Time budget of a single read, 0 for no budget.
+   */
+  private volatile long timeBudgetNanos = 0;
+
+  /**
+   * State of the read in progress, guarded by the lock so a late watchdog cannot stop the
+   * next read.
+   */
+  private final Object lock = new Object();
+  private boolean recognising = false;
+  private boolean stopped = false;
+  private long deadline = 0;
+  private volatile int progress = 0;
+
+  private final Runnable stopTask = new Runnable() {
+    @Override
+    public void run() {
+      stop();
+    }
+  };
+
+  /**
+   * Counters
+   */
+  private long reads = 0;
+  private long timeouts = 0;
+  private long timedOutNanos = 0;
+  private long savedNanos = 0;
+
+  /**
+   * Buffer the crop pixels are copied into before being handed to Tesseract.
+   */
+  private byte[] buffer = new byte[0];
+
+  /**
+   * @param dataPath folder containing the tessdata folder.
+   * @param engineMode one of the TessBaseAPI.OEM_* constants.
+   */
+  public TesseractPlateReader(String dataPath, int engineMode) {
+    this(dataPath, engineMode, TessBaseAPI.PageSegMode.PSM_SINGLE_BLOCK);
+  }
+
+  /**
+   * @param dataPath folder containing the tessdata folder.
+   * @param engineMode one of the TessBaseAPI.OEM_* constants.
+   * @param pageSegMode one of the TessBaseAPI.PageSegMode.PSM_* constants, a single line is
+   *                    the cheapest layout analysis for a one line plate.
+   */
+  public TesseractPlateReader(String dataPath, int engineMode, int pageSegMode) {
+    tessBaseAPI = new TessBaseAPI(new TessBaseAPI.ProgressNotifier() {
+      @Override
+      public void onProgressValues(TessBaseAPI.ProgressValues progressValues) {
+        progress = progressValues.getPercent();
+        if (System.nanoTime() - deadline > 0) {
+          stop();
+        }
+      }
+    });
+    tessBaseAPI.init(dataPath, "eng", engineMode);
+    tessBaseAPI.setPageSegMode(pageSegMode);
+    tessBaseAPI.setVariable("tessedit_char_whitelist", WHITELIST);
+    tessBaseAPI.setDebug(false);
+
+    // Disable dictionary lookups as we are not looking
+    // https://tesseract-ocr.github.io/tessdoc/ImproveQuality#dictionaries-word-lists-and-patterns
+    tessBaseAPI.setVariable("load_system_dawg", "false");
+    tessBaseAPI.setVariable("load_freq_dawg", "false");
+  }
+
+  /**
+   * Bound every read by a time budget, may be called from any thread.
+   * @param millis budget of a single read, 0 for no budget.
+   */
+  public void setTimeBudget(long millis) {
+    timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  @Override
+  public PlateRead read(Mat crop) {
+    int width = crop.cols();
+    int height = crop.rows();
+    int size = width * height;
+    if (buffer.length < size) {
+      buffer = new byte[size];
+    }
+
+    // Hand the pixels over directly rather than going through a Bitmap.
+    Mat continuous = crop.isContinuous() ? crop : crop.clone();
+    continuous.get(0, 0, buffer);
+    if (continuous != crop) {
+      continuous.release();
+    }
+
+    tessBaseAPI.setImage(buffer, width, height, 1, width);
+    reads++;
+
+    long budget = timeBudgetNanos;
+    if (budget > 0 && !recognise(budget)) {
+      tessBaseAPI.clear();
+      return PlateRead.timedOut();
+    }
+
+    // Results of a completed recognition are reused rather than recognised again.
+    String text = tessBaseAPI.getUTF8Text();
+    int confidence = tessBaseAPI.meanConfidence();
+    int minWordConfidence = confidence;
+    int[] words = tessBaseAPI.wordConfidences();
+    if (words != null) {
+      for (int word : words) {
+        minWordConfidence = Math.min(minWordConfidence, word);
+      }
+    }
+    tessBaseAPI.clear();
+
+    return new PlateRead(text == null ? "" : text.replaceAll("\\s", ""), confidence, minWordConfidence);
+  }
+
+  /**
+   * Recognise the image under the monitor within the budget.
+   * @return false if recognition was stopped at the deadline.
+   */
+  private boolean recognise(long budget) {
+    long start = System.nanoTime();
+    synchronized (lock) {
+      recognising = true;
+      stopped = false;
+      deadline = start + budget;
+      progress = 0;
+    }
+
+    ScheduledFuture<?> watchdog = WATCHDOG.schedule(stopTask, budget, TimeUnit.NANOSECONDS);
+    tessBaseAPI.getHOCRText(0);
+    watchdog.cancel(false);
+
+    boolean timedOut;
+    synchronized (lock) {
+      recognising = false;
+      timedOut = stopped;
+    }
+    if (!timedOut) {
+      return true;
+    }
+
+    // Estimate what the rest of the read would have cost from how far it got.
+    long elapsed = System.nanoTime() - start;
+    int percent = progress;
+    timeouts++;
+    timedOutNanos += elapsed;
+    if (percent > 0 && percent < 100) {
+      savedNanos += elapsed * (100 - percent) / percent;
+    }
+    return false;
+  }
+
+  /**
+   * Cancel the recognition in progress, if any.
+   */
+  private void stop() {
+    synchronized (lock) {
+      if (recognising && !stopped) {
+        stopped = true;
+        tessBaseAPI.stop();
+      }
+    }
+  }
+
+  public long getTimeouts() {
+    return timeouts;
+  }
+
+  /**
+   * @return estimated recognition time avoided by stopping reads at the deadline.
+   */
+  public long getSavedNanos() {
+    return savedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "reads=%d timeouts=%d timed-out=%.0fms saved=%.0fms",
+        reads, timeouts, timedOutNanos / 1e6, savedNanos / 1e6);
+  }
+
+  @Override
+  public void close() {
+    tessBaseAPI.end();
+  }
+}
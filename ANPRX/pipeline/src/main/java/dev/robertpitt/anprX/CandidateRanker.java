@@ -0,0 +1,140 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ranks plate candidates by how plate like they are and suppresses duplicates.
+ *
+ * The border of a plate produces several nested contours (outer edge, inner edge, the
+ * character area), each of which passes the rectangle test. Non-maximum suppression over
+ * the rotated rectangles keeps the best scoring candidate of each cluster, so downstream OCR
+ * runs once per physical plate.
+ *
+ * A candidate is suppressed by a better one when their IoU exceeds the IoU threshold, or
+ * when most of the smaller rectangle lies inside the larger, which catches nested borders
+ * whose IoU is low because their areas differ.
+ */
+public class CandidateRanker {
+  /**
+   * Aspect ratio of a standard UK plate, 520mm x 111mm.
+   */
+  public static final double PLATE_ASPECT = 520.0 / 111.0;
+
+  /**
+   * Defaults for the suppression.
+   */
+  public static final double DEFAULT_IOU_THRESHOLD = 0.3;
+  public static final double DEFAULT_CONTAINMENT_THRESHOLD = 0.8;
+
+  /**
+   * A candidate and its plate likeness in the range 0 - 1.
+   */
+  public static class Candidate {
+    public final RotatedRect plate;
+    public final double score;
+
+    Candidate(RotatedRect plate, double score) {
+      this.plate = plate;
+      this.score = score;
+    }
+  }
+
+  private final double iouThreshold;
+  private final double containmentThreshold;
+
+  public CandidateRanker() {
+    this(DEFAULT_IOU_THRESHOLD, DEFAULT_CONTAINMENT_THRESHOLD);
+  }
+
+  /**
+   * @param iouThreshold IoU above which the lower scoring candidate is suppressed.
+   * @param containmentThreshold fraction of the smaller candidate inside the larger above
+   *                             which the lower scoring candidate is suppressed.
+   */
+  public CandidateRanker(double iouThreshold, double containmentThreshold) {
+    this.iouThreshold = iouThreshold;
+    this.containmentThreshold = containmentThreshold;
+  }
+
+  /**
+   * Plate likeness of a candidate, the product of
+   *
+   * - closeness of the long to short side ratio to a UK plate, on a log scale so that half
+   *   and double the expected ratio score the same,
+   * - closeness to horizontal, plates are rarely rotated by more than a few degrees,
+   * - size, larger candidates are more likely to be legible, with a weak weight.
+   */
+  public static double score(RotatedRect plate) {
+    double longSide = Math.max(plate.size.width, plate.size.height);
+    double shortSide = Math.min(plate.size.width, plate.size.height);
+    if (shortSide <= 0) {
+      return 0;
+    }
+
+    double aspect = Math.exp(-Math.abs(Math.log(longSide / shortSide / PLATE_ASPECT)) * 1.5);
+
+    // Angle of the long side from horizontal in the range 0 - 90.
+    double angle = Math.abs(plate.angle) % 180;
+    if (plate.size.height > plate.size.width) {
+      angle = Math.abs(angle - 90);
+    }
+    angle = Math.min(angle, 180 - angle);
+    double level = Math.cos(Math.toRadians(angle));
+
+    double size = Math.min(1, Math.log10(Math.max(10, plate.size.area())) / 5);
+    return aspect * level * (0.75 + 0.25 * size);
+  }
+
+  /**
+   * @param candidates candidates from the detector, may be null.
+   * @return the surviving candidates, best first.
+   */
+  public List<Candidate> rank(List<RotatedRect> candidates) {
+    List<Candidate> scored = new ArrayList<>();
+    if (candidates == null) {
+      return scored;
+    }
+
+    for (int i = 0; i < candidates.size(); i++) {
+      scored.add(new Candidate(candidates.get(i), score(candidates.get(i))));
+    }
+    Collections.sort(scored, new Comparator<Candidate>() {
+      @Override
+      public int compare(Candidate a, Candidate b) {
+        return Double.compare(b.score, a.score);
+      }
+    });
+
+    List<Candidate> kept = new ArrayList<>();
+    List<Point[]> keptCorners = new ArrayList<>();
+    for (int i = 0; i < scored.size(); i++) {
+      Candidate candidate = scored.get(i);
+      Point[] corners = Geometry.corners(candidate.plate);
+      double area = Geometry.area(corners);
+
+      boolean suppressed = false;
+      for (int j = 0; j < kept.size() && !suppressed; j++) {
+        Point[] other = keptCorners.get(j);
+        double otherArea = Geometry.area(other);
+        double intersection = Geometry.intersectionArea(corners, other);
+        double union = area + otherArea - intersection;
+        double smaller = Math.min(area, otherArea);
+
+        suppressed = (union > 0 && intersection / union > iouThreshold)
+            || (smaller > 0 && intersection / smaller > containmentThreshold);
+      }
+
+      if (!suppressed) {
+        kept.add(candidate);
+        keptCorners.add(corners);
+      }
+    }
+    return kept;
+  }
+}
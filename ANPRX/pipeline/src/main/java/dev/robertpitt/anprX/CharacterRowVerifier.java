@@ -0,0 +1,154 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Checks that a plate candidate contains a row of character like shapes.
+ *
+ * Windows, signs and grilles pass the rectangle test as easily as plates do, what they lack
+ * is a row of similarly sized, evenly spaced shapes of character proportions inside them.
+ * The shapes are the bounding boxes of the contours nested inside the candidate in the
+ * contour hierarchy, measured against the plate dimensions in the {@link PlateDetector}
+ * header: characters are 79mm tall on a 111mm plate, 50mm wide, 11mm apart with a 33mm gap
+ * between the two groups.
+ *
+ * Pure Java so it can be called per candidate without crossing into native code.
+ */
+public class CharacterRowVerifier {
+  /**
+   * Character height as a fraction of the plate height, 79mm of 111mm, with slack either side
+   * for the inner border contour and for perspective.
+   */
+  private static final double MIN_HEIGHT_FRACTION = 0.45;
+  private static final double MAX_HEIGHT_FRACTION = 0.95;
+
+  /**
+   * Character width to height, a "1" is little more than the 14mm stroke, a "W" is wider
+   * than the nominal 50mm.
+   */
+  private static final double MIN_ASPECT = 0.08;
+  private static final double MAX_ASPECT = 1.1;
+
+  /**
+   * Shapes in the same row differ in centre height and in height by less than these
+   * fractions of the character height.
+   */
+  private static final double ROW_TOLERANCE = 0.25;
+  private static final double HEIGHT_TOLERANCE = 0.25;
+
+  /**
+   * Largest gap between neighbouring character centres in character heights, the group
+   * gap is (50 + 33) / 79 = 1.05.
+   */
+  private static final double MAX_PITCH = 1.6;
+
+  /**
+   * Centres closer than this fraction of the character height are the same character, Canny
+   * traces both sides of a stroke and holes such as the inside of an O are nested too.
+   */
+  private static final double SAME_CHARACTER = 0.35;
+
+  /**
+   * A character like shape in plate coordinates, x along the plate and y across it.
+   */
+  private static class Shape {
+    final double x;
+    final double y;
+    final double height;
+
+    Shape(double x, double y, double height) {
+      this.x = x;
+      this.y = y;
+      this.height = height;
+    }
+  }
+
+  /**
+   * @param plate the candidate.
+   * @param boxes bounding boxes of the contours nested inside the candidate, in frame coordinates.
+   * @param minCharacters fewest characters that make a row.
+   * @return true when the candidate contains a plausible row of characters.
+   */
+  public static boolean hasCharacterRow(RotatedRect plate, List<Rect> boxes, int minCharacters) {
+    if (boxes.size() < minCharacters) {
+      return false;
+    }
+
+    double length = Math.max(plate.size.width, plate.size.height);
+    double plateHeight = Math.min(plate.size.width, plate.size.height);
+    double angle = Math.toRadians(plate.size.width >= plate.size.height ? plate.angle : plate.angle + 90);
+    double cos = Math.cos(angle);
+    double sin = Math.sin(angle);
+
+    List<Shape> shapes = new ArrayList<>();
+    for (int i = 0; i < boxes.size(); i++) {
+      Rect box = boxes.get(i);
+      if (box.height < MIN_HEIGHT_FRACTION * plateHeight || box.height > MAX_HEIGHT_FRACTION * plateHeight) {
+        continue;
+      }
+      double aspect = box.width / (double) box.height;
+      if (aspect < MIN_ASPECT || aspect > MAX_ASPECT) {
+        continue;
+      }
+
+      // Rotate the centre into the plate frame and reject shapes outside the plate.
+      double dx = box.x + box.width / 2.0 - plate.center.x;
+      double dy = box.y + box.height / 2.0 - plate.center.y;
+      double x = dx * cos + dy * sin;
+      double y = -dx * sin + dy * cos;
+      if (Math.abs(x) > length / 2 || Math.abs(y) > plateHeight / 2) {
+        continue;
+      }
+      shapes.add(new Shape(x, y, box.height));
+    }
+
+    if (shapes.size() < minCharacters) {
+      return false;
+    }
+
+    Collections.sort(shapes, new Comparator<Shape>() {
+      @Override
+      public int compare(Shape a, Shape b) {
+        return Double.compare(a.x, b.x);
+      }
+    });
+
+    // Every shape in turn seeds a row, count the longest evenly spaced run of shapes that
+    // line up with it.
+    for (int seed = 0; seed < shapes.size(); seed++) {
+      Shape reference = shapes.get(seed);
+      double previousX = Double.NaN;
+      int run = 0;
+
+      for (int i = 0; i < shapes.size(); i++) {
+        Shape shape = shapes.get(i);
+        if (Math.abs(shape.y - reference.y) > ROW_TOLERANCE * reference.height
+            || Math.abs(shape.height - reference.height) > HEIGHT_TOLERANCE * reference.height) {
+          continue;
+        }
+
+        if (Double.isNaN(previousX)) {
+          run = 1;
+        } else {
+          double gap = shape.x - previousX;
+          if (gap < SAME_CHARACTER * reference.height) {
+            continue;
+          }
+          run = gap > MAX_PITCH * reference.height ? 1 : run + 1;
+        }
+        previousX = shape.x;
+
+        if (run >= minCharacters) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,34 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+
+import java.util.List;
+
+/**
+ * Locates plate candidates in a greyscale frame, implemented by each {@link DetectorMode}.
+ *
+ * Implementations hold working state and are not thread safe, the config and regions may
+ * be replaced from any thread and take effect from the next frame.
+ */
+public interface Detector {
+  /**
+   * Detect over the whole frame, or the regions of interest when configured.
+   */
+  List<RotatedRect> detect(Mat grayscale);
+
+  /**
+   * Detect within the given non overlapping areas of the frame only, further restricted
+   * to the regions of interest when configured.
+   */
+  List<RotatedRect> detect(Mat grayscale, List<Rect> areas);
+
+  void setConfig(DetectorConfig config);
+
+  DetectorConfig getConfig();
+
+  void setRegions(LaneRegions regions);
+
+  LaneRegions getRegions();
+}
@@ -0,0 +1,204 @@
+package dev.robertpitt.anprX;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Immutable set of tuning constants for the {@link PlateDetector}.
+ *
+ * The defaults are the values the detector has always used in this application, the legacy
+ * application uses Canny 100/800 and a minimum area of 1000 instead. Profiles produced by the
+ * ParameterSearch tool are stored as properties files and can be loaded at runtime.
+ */
+public class DetectorConfig {
+  /**
+   * Defaults
+   */
+  public static final DetectorConfig DEFAULT = new Builder().build();
+
+  /**
+   * Property keys
+   */
+  private static final String KEY_CANNY_LOWER = "canny.lower";
+  private static final String KEY_CANNY_UPPER = "canny.upper";
+  private static final String KEY_APPROX_EPSILON = "approx.epsilon";
+  private static final String KEY_MIN_AREA = "area.min";
+  private static final String KEY_MAX_AREA = "area.max";
+  private static final String KEY_MAX_COSINE = "rectangle.max_cosine";
+  private static final String KEY_VERIFY_CHARACTERS = "characters.verify";
+  private static final String KEY_MIN_CHARACTERS = "characters.min";
+
+  /**
+   * Thresholds for the canny edge detection process.
+   */
+  public final int cannyLower;
+  public final int cannyUpper;
+
+  /**
+   * approxPolyDP epsilon as a fraction of the contour perimeter.
+   */
+  public final double approxEpsilon;
+
+  /**
+   * Accepted range of the candidate quadrilateral area in pixels.
+   */
+  public final double minArea;
+  public final double maxArea;
+
+  /**
+   * Largest cosine of any corner angle for a quadrilateral to count as a rectangle.
+   */
+  public final double maxCosine;
+
+  /**
+   * When set candidates are only accepted with a row of at least minCharacters character
+   * like contours nested inside them, see {@link CharacterRowVerifier}.
+   */
+  public final boolean verifyCharacters;
+  public final int minCharacters;
+
+  private DetectorConfig(Builder builder) {
+    this.cannyLower = builder.cannyLower;
+    this.cannyUpper = builder.cannyUpper;
+    this.approxEpsilon = builder.approxEpsilon;
+    this.minArea = builder.minArea;
+    this.maxArea = builder.maxArea;
+    this.maxCosine = builder.maxCosine;
+    this.verifyCharacters = builder.verifyCharacters;
+    this.minCharacters = builder.minCharacters;
+  }
+
+  /**
+   * @return a builder initialised with the values of this config.
+   */
+  public Builder toBuilder() {
+    return new Builder()
+        .setCannyThresholds(cannyLower, cannyUpper)
+        .setApproxEpsilon(approxEpsilon)
+        .setAreaRange(minArea, maxArea)
+        .setMaxCosine(maxCosine)
+        .setCharacterVerification(verifyCharacters, minCharacters);
+  }
+
+  public Properties toProperties() {
+    Properties properties = new Properties();
+    properties.setProperty(KEY_CANNY_LOWER, Integer.toString(cannyLower));
+    properties.setProperty(KEY_CANNY_UPPER, Integer.toString(cannyUpper));
+    properties.setProperty(KEY_APPROX_EPSILON, Double.toString(approxEpsilon));
+    properties.setProperty(KEY_MIN_AREA, Double.toString(minArea));
+    properties.setProperty(KEY_MAX_AREA, Double.toString(maxArea));
+    properties.setProperty(KEY_MAX_COSINE, Double.toString(maxCosine));
+    properties.setProperty(KEY_VERIFY_CHARACTERS, Boolean.toString(verifyCharacters));
+    properties.setProperty(KEY_MIN_CHARACTERS, Integer.toString(minCharacters));
+    return properties;
+  }
+
+  /**
+   * Build a config from properties, missing keys keep their default values.
+   */
+  public static DetectorConfig fromProperties(Properties properties) {
+    Builder builder = DEFAULT.toBuilder();
+    try {
+      builder.setCannyThresholds(
+          Integer.parseInt(properties.getProperty(KEY_CANNY_LOWER, Integer.toString(DEFAULT.cannyLower))),
+          Integer.parseInt(properties.getProperty(KEY_CANNY_UPPER, Integer.toString(DEFAULT.cannyUpper))));
+      builder.setApproxEpsilon(Double.parseDouble(properties.getProperty(KEY_APPROX_EPSILON, Double.toString(DEFAULT.approxEpsilon))));
+      builder.setAreaRange(
+          Double.parseDouble(properties.getProperty(KEY_MIN_AREA, Double.toString(DEFAULT.minArea))),
+          Double.parseDouble(properties.getProperty(KEY_MAX_AREA, Double.toString(DEFAULT.maxArea))));
+      builder.setMaxCosine(Double.parseDouble(properties.getProperty(KEY_MAX_COSINE, Double.toString(DEFAULT.maxCosine))));
+      builder.setCharacterVerification(
+          Boolean.parseBoolean(properties.getProperty(KEY_VERIFY_CHARACTERS, Boolean.toString(DEFAULT.verifyCharacters))),
+          Integer.parseInt(properties.getProperty(KEY_MIN_CHARACTERS, Integer.toString(DEFAULT.minCharacters))));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid detector profile: " + e.getMessage(), e);
+    }
+    return builder.build();
+  }
+
+  public static DetectorConfig load(File file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    }
+    try {
+      return fromProperties(properties);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(file + ": " + e.getMessage(), e);
+    }
+  }
+
+  public void store(File file, String comment) throws IOException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      toProperties().store(out, comment);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "canny=%d/%d epsilon=%.4f area=%.0f-%.0f max-cosine=%.3f characters=%s",
+        cannyLower, cannyUpper, approxEpsilon, minArea, maxArea, maxCosine,
+        verifyCharacters ? Integer.toString(minCharacters) : "off");
+  }
+
+  /**
+   * Builder for {@link DetectorConfig}
+   */
+  public static class Builder {
+    private int cannyLower = 100;
+    private int cannyUpper = 400;
+    private double approxEpsilon = 0.018;
+    private double minArea = 600.0;
+    private double maxArea = 100000.0;
+    private double maxCosine = 0.3;
+    private boolean verifyCharacters = true;
+    private int minCharacters = 3;
+
+    public Builder setCannyThresholds(int lower, int upper) {
+      this.cannyLower = lower;
+      this.cannyUpper = upper;
+      return this;
+    }
+
+    public Builder setApproxEpsilon(double approxEpsilon) {
+      this.approxEpsilon = approxEpsilon;
+      return this;
+    }
+
+    public Builder setAreaRange(double minArea, double maxArea) {
+      this.minArea = minArea;
+      this.maxArea = maxArea;
+      return this;
+    }
+
+    public Builder setMaxCosine(double maxCosine) {
+      this.maxCosine = maxCosine;
+      return this;
+    }
+
+    public Builder setCharacterVerification(boolean verifyCharacters, int minCharacters) {
+      this.verifyCharacters = verifyCharacters;
+      this.minCharacters = minCharacters;
+      return this;
+    }
+
+    public DetectorConfig build() {
+      if (cannyLower < 0 || cannyUpper < cannyLower) {
+        throw new IllegalArgumentException("Invalid canny thresholds " + cannyLower + "/" + cannyUpper);
+      }
+      if (minArea < 0 || maxArea < minArea) {
+        throw new IllegalArgumentException("Invalid area range " + minArea + "-" + maxArea);
+      }
+      if (minCharacters < 1) {
+        throw new IllegalArgumentException("Invalid minimum characters " + minCharacters);
+      }
+      return new DetectorConfig(this);
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package dev.robertpitt.anprX;
+
+import java.util.Locale;
+
+/**
+ * Selectable detection approaches.
+ */
+public enum DetectorMode {
+  /**
+   * Canny edges, contours and quadrilateral approximation, see {@link PlateDetector}.
+   */
+  CONTOURS,
+
+  /**
+   * Vertical edges closed into character bands, see {@link MorphologyPlateDetector}.
+   */
+  MORPHOLOGY;
+
+  public Detector create() {
+    switch (this) {
+      case MORPHOLOGY:
+        return new MorphologyPlateDetector();
+      case CONTOURS:
+      default:
+        return new PlateDetector();
+    }
+  }
+
+  /**
+   * @param name mode name, case insensitive.
+   */
+  public static DetectorMode parse(String name) {
+    return valueOf(name.trim().toUpperCase(Locale.ROOT));
+  }
+}
@@ -0,0 +1,262 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Proposes the areas of a frame most likely to hold a plate from the density of vertical
+ * edges, the characters of a plate produce a dense band of them that little else does.
+ *
+ * The horizontal gradient is computed and integrated once per frame, after which any window
+ * can be scored in constant time. Plate shaped windows are slid over the frame at a few
+ * heights, each scored by its edge density less the density of the band above and below it,
+ * which discounts textures such as grilles, foliage and brickwork that are dense everywhere.
+ * The best windows, after suppressing overlaps, are padded so the plate border lies inside
+ * and returned as areas for {@link PlateDetector#detect(Mat, List)}, so the detection cost
+ * follows the number of proposals rather than the frame size.
+ */
+public class EdgeDensityProposer {
+  /**
+   * Window heights in pixels, sized for the 640x480 analysis frames, from the smallest plate
+   * the default area range accepts up to a plate close to the camera.
+   */
+  public static final int[] DEFAULT_HEIGHTS = {12, 18, 27, 40, 60};
+
+  /**
+   * Default number of proposals per frame.
+   */
+  public static final int DEFAULT_PROPOSALS = 6;
+
+  /**
+   * Windows follow the UK plate shape.
+   */
+  private static final double ASPECT = CandidateRanker.PLATE_ASPECT;
+
+  /**
+   * Windows are slid by this fraction of their height.
+   */
+  private static final double STEP = 0.25;
+
+  /**
+   * Windows overlapping a better window by more than this are suppressed.
+   */
+  private static final double OVERLAP = 0.3;
+
+  /**
+   * Padding added around each proposal as a fraction of its width and height.
+   */
+  private static final double PAD_X = 0.2;
+  private static final double PAD_Y = 0.6;
+
+  /**
+   * Windows are only proposed when their score exceeds this mean gradient per pixel.
+   */
+  private static final double MIN_SCORE = 8;
+
+  private final int[] heights;
+  private final int proposals;
+
+  /**
+   * Working state, reused between frames.
+   */
+  private final Mat gradient = new Mat();
+  private final Mat magnitude = new Mat();
+  private final Mat integral = new Mat();
+  private int[] sums = new int[0];
+  private int[] bestX;
+  private int[] bestY;
+  private int[] bestWidth;
+  private int[] bestHeight;
+  private double[] bestScore;
+
+  /**
+   * Number of windows scored in the last frame.
+   */
+  private long windows;
+
+  public EdgeDensityProposer() {
+    this(DEFAULT_HEIGHTS, DEFAULT_PROPOSALS);
+  }
+
+  /**
+   * @param heights window heights in pixels.
+   * @param proposals most areas proposed per frame.
+   */
+  public EdgeDensityProposer(int[] heights, int proposals) {
+    this.heights = heights.clone();
+    this.proposals = proposals;
+
+    // Keep a pool of the best windows several times the proposals, so that overlapping
+    // windows of the same plate can not crowd out the others before suppression.
+    int pool = proposals * 8;
+    bestX = new int[pool];
+    bestY = new int[pool];
+    bestWidth = new int[pool];
+    bestHeight = new int[pool];
+    bestScore = new double[pool];
+  }
+
+  /**
+   * @return padded, non overlapping areas of the frame to search, best first before merging.
+   */
+  public List<Rect> propose(Mat grey) {
+    int width = grey.cols();
+    int height = grey.rows();
+
+    // Horizontal gradient, strong on the vertical strokes of the characters.
+    Imgproc.Sobel(grey, gradient, CvType.CV_16S, 1, 0);
+    Core.convertScaleAbs(gradient, magnitude);
+    Imgproc.integral(magnitude, integral, CvType.CV_32S);
+
+    int stride = width + 1;
+    int size = stride * (height + 1);
+    if (sums.length < size) {
+      sums = new int[size];
+    }
+    integral.get(0, 0, sums);
+
+    int pooled = 0;
+    windows = 0;
+    for (int h : heights) {
+      int w = (int) Math.round(h * ASPECT);
+      if (w > width || h > height) {
+        continue;
+      }
+      int step = Math.max(1, (int) (h * STEP));
+      double area = w * (double) h;
+
+      for (int y = 0; y + h <= height; y += step) {
+        // The band above and below is clipped at the frame edges.
+        int bandTop = Math.max(0, y - h);
+        int bandHeight = Math.min(height, y + 2 * h) - bandTop;
+        double bandArea = w * (double) (bandHeight - h);
+
+        for (int x = 0; x + w <= width; x += step) {
+          windows++;
+          double inside = sum(stride, x, y, w, h);
+          double band = sum(stride, x, bandTop, w, bandHeight) - inside;
+          double score = inside / area - (bandArea > 0 ? band / bandArea : 0);
+          if (score < MIN_SCORE) {
+            continue;
+          }
+          pooled = offer(pooled, x, y, w, h, score);
+        }
+      }
+    }
+
+    List<Rect> areas = new ArrayList<>();
+    List<Rect> kept = new ArrayList<>();
+    sortPool(pooled);
+    for (int i = 0; i < pooled && kept.size() < proposals; i++) {
+      Rect window = new Rect(bestX[i], bestY[i], bestWidth[i], bestHeight[i]);
+      boolean suppressed = false;
+      for (int j = 0; j < kept.size() && !suppressed; j++) {
+        suppressed = overlap(window, kept.get(j)) > OVERLAP;
+      }
+      if (suppressed) {
+        continue;
+      }
+      kept.add(window);
+
+      int padX = (int) (window.width * PAD_X);
+      int padY = (int) (window.height * PAD_Y);
+      int left = Math.max(0, window.x - padX);
+      int top = Math.max(0, window.y - padY);
+      int right = Math.min(width, window.x + window.width + padX);
+      int bottom = Math.min(height, window.y + window.height + padY);
+      areas.add(new Rect(left, top, right - left, bottom - top));
+    }
+    return Utils.mergeOverlappingRects(areas);
+  }
+
+  /**
+   * @return the number of windows scored for the last frame.
+   */
+  public long getWindows() {
+    return windows;
+  }
+
+  public void release() {
+    gradient.release();
+    magnitude.release();
+    integral.release();
+  }
+
+  private int sum(int stride, int x, int y, int w, int h) {
+    int top = y * stride;
+    int bottom = (y + h) * stride;
+    return sums[bottom + x + w] - sums[bottom + x] - sums[top + x + w] + sums[top + x];
+  }
+
+  /**
+   * Add a window to the pool of best windows, replacing the worst when full.
+   */
+  private int offer(int pooled, int x, int y, int w, int h, double score) {
+    int slot = pooled;
+    if (pooled == bestScore.length) {
+      slot = 0;
+      for (int i = 1; i < pooled; i++) {
+        if (bestScore[i] < bestScore[slot]) {
+          slot = i;
+        }
+      }
+      if (bestScore[slot] >= score) {
+        return pooled;
+      }
+    } else {
+      pooled++;
+    }
+    bestX[slot] = x;
+    bestY[slot] = y;
+    bestWidth[slot] = w;
+    bestHeight[slot] = h;
+    bestScore[slot] = score;
+    return pooled;
+  }
+
+  /**
+   * Insertion sort of the pool by descending score, the pool is small.
+   */
+  private void sortPool(int pooled) {
+    for (int i = 1; i < pooled; i++) {
+      for (int j = i; j > 0 && bestScore[j] > bestScore[j - 1]; j--) {
+        swap(bestX, j);
+        swap(bestY, j);
+        swap(bestWidth, j);
+        swap(bestHeight, j);
+        double score = bestScore[j];
+        bestScore[j] = bestScore[j - 1];
+        bestScore[j - 1] = score;
+      }
+    }
+  }
+
+  private static void swap(int[] values, int j) {
+    int value = values[j];
+    values[j] = values[j - 1];
+    values[j - 1] = value;
+  }
+
+  /**
+   * Intersection over the smaller of the two windows.
+   */
+  private static double overlap(Rect a, Rect b) {
+    Rect intersection = Utils.intersect(a, b);
+    if (intersection == null) {
+      return 0;
+    }
+    return intersection.area() / Math.min(a.area(), b.area());
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "windows=%d heights=%d proposals=%d", windows, heights.length, proposals);
+  }
+}
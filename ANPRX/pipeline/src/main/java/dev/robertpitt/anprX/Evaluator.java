@@ -0,0 +1,262 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Headless accuracy and throughput evaluation of the recognition pipeline over a labelled
+ * image set, producing a combined speed and accuracy scorecard.
+ *
+ * A detection counts as a true positive when its IoU with an unmatched label reaches the
+ * threshold. Character accuracy is one minus the edit distance between the read and the
+ * label over the label length, missed plates count every character as an error. Without a
+ * reader the pipeline only detects, the OCR metrics are then reported as n/a.
+ *
+ * The EvaluatorTool tool runs it over a labelled image directory.
+ */
+public class Evaluator {
+  /**
+   * Default IoU for a detection to match a label.
+   */
+  public static final double DEFAULT_IOU_THRESHOLD = 0.5;
+
+  /**
+   * Outcome for a single image.
+   */
+  public static class ImageScore {
+    public final String image;
+    public int labels;
+    public int detections;
+    public int truePositives;
+    public int characters;
+    public int characterErrors;
+    public int platesRead;
+    public double bestIou;
+    public long latencyNanos;
+    public final List<String> reads = new ArrayList<>();
+
+    ImageScore(String image) {
+      this.image = image;
+    }
+  }
+
+  /**
+   * Aggregated outcome of an evaluation run.
+   */
+  public static class Scorecard {
+    public final List<ImageScore> images = new ArrayList<>();
+    public final LatencyRecorder latency = new LatencyRecorder();
+    public int labels;
+    public int detections;
+    public int truePositives;
+    public int characters;
+    public int characterErrors;
+    public int platesRead;
+
+    /**
+     * True when the pipeline read the plates, the OCR metrics are meaningless otherwise.
+     */
+    public boolean read;
+
+    public double precision() {
+      return detections == 0 ? 0 : truePositives / (double) detections;
+    }
+
+    public double recall() {
+      return labels == 0 ? 0 : truePositives / (double) labels;
+    }
+
+    public double characterAccuracy() {
+      return characters == 0 ? 0 : 1.0 - characterErrors / (double) characters;
+    }
+
+    public double plateAccuracy() {
+      return labels == 0 ? 0 : platesRead / (double) labels;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder out = new StringBuilder();
+      out.append(String.format(Locale.ROOT, "%-16s %4s %4s %4s %6s %8s  %s%n", "image", "lbl", "det", "tp", "iou", "ms", "reads"));
+      for (ImageScore score : images) {
+        out.append(String.format(Locale.ROOT, "%-16s %4d %4d %4d %6.2f %8.1f  %s%n",
+            score.image, score.labels, score.detections, score.truePositives, score.bestIou,
+            score.latencyNanos / 1e6, score.reads));
+      }
+      out.append(String.format(Locale.ROOT, "precision=%.3f recall=%.3f char-accuracy=%s plate-accuracy=%s%nlatency %s",
+          precision(), recall(), ocrMetric(characterAccuracy()), ocrMetric(plateAccuracy()), latency));
+      return out.toString();
+    }
+
+    /**
+     * @return the OCR metric formatted, or n/a when the plates were not read.
+     */
+    public String ocrMetric(double value) {
+      return read ? String.format(Locale.ROOT, "%.3f", value) : "n/a";
+    }
+  }
+
+  /**
+   * Pipeline under evaluation.
+   */
+  private final RecognitionPipeline pipeline;
+
+  /**
+   * IoU for a detection to match a label.
+   */
+  private final double iouThreshold;
+
+  public Evaluator(RecognitionPipeline pipeline) {
+    this(pipeline, DEFAULT_IOU_THRESHOLD);
+  }
+
+  public Evaluator(RecognitionPipeline pipeline, double iouThreshold) {
+    this.pipeline = pipeline;
+    this.iouThreshold = iouThreshold;
+  }
+
+  /**
+   * Evaluate every labelled image in the directory.
+   */
+  public Scorecard evaluate(File directory, GroundTruth truth) throws IOException {
+    List<Mat> images = loadImages(directory, truth);
+    try {
+      return evaluate(images, truth);
+    } finally {
+      for (Mat image : images) {
+        image.release();
+      }
+    }
+  }
+
+  /**
+   * Evaluate images that have already been decoded, in the order of {@link GroundTruth#images()}.
+   * The images are not modified, so one set can be shared by evaluators on several threads.
+   */
+  public Scorecard evaluate(List<Mat> images, GroundTruth truth) {
+    Scorecard card = new Scorecard();
+    card.read = pipeline.reads();
+    List<String> names = truth.images();
+
+    for (int i = 0; i < names.size(); i++) {
+      long start = System.nanoTime();
+      RecognitionResult result = pipeline.process(images.get(i), 0);
+      long latency = System.nanoTime() - start;
+
+      ImageScore score = score(names.get(i), truth.labelsFor(names.get(i)), result);
+      score.latencyNanos = latency;
+      card.latency.record(latency);
+
+      card.images.add(score);
+      card.labels += score.labels;
+      card.detections += score.detections;
+      card.truePositives += score.truePositives;
+      card.characters += score.characters;
+      card.characterErrors += score.characterErrors;
+      card.platesRead += score.platesRead;
+    }
+
+    return card;
+  }
+
+  /**
+   * Decode the labelled images of the directory as greyscale, in the order of {@link GroundTruth#images()}.
+   */
+  public static List<Mat> loadImages(File directory, GroundTruth truth) throws IOException {
+    List<Mat> images = new ArrayList<>();
+    for (String image : truth.images()) {
+      File file = new File(directory, image);
+      Mat grey = Imgcodecs.imread(file.getPath(), Imgcodecs.IMREAD_GRAYSCALE);
+      if (grey.empty()) {
+        for (Mat loaded : images) {
+          loaded.release();
+        }
+        throw new IOException("Unable to decode " + file);
+      }
+      images.add(grey);
+    }
+    return images;
+  }
+
+  /**
+   * Greedily match detections to labels by IoU and score the reads of the matches.
+   */
+  private ImageScore score(String image, List<GroundTruth.Label> labels, RecognitionResult result) {
+    ImageScore score = new ImageScore(image);
+    score.labels = labels.size();
+    score.detections = result.recognitions.size();
+
+    boolean[] matched = new boolean[labels.size()];
+    for (RecognitionResult.Recognition recognition : result.recognitions) {
+      Point[] quad = Geometry.corners(recognition.plate);
+      String read = recognition.read == null ? "" : GroundTruth.normalise(recognition.read.text);
+      score.reads.add(read);
+
+      int best = -1;
+      double bestIou = 0;
+      for (int i = 0; i < labels.size(); i++) {
+        if (matched[i]) {
+          continue;
+        }
+        double iou = Geometry.iou(quad, labels.get(i).quad);
+        if (iou > bestIou) {
+          bestIou = iou;
+          best = i;
+        }
+      }
+      score.bestIou = Math.max(score.bestIou, bestIou);
+
+      if (best >= 0 && bestIou >= iouThreshold) {
+        matched[best] = true;
+        score.truePositives++;
+
+        String expected = labels.get(best).text;
+        score.characters += expected.length();
+        score.characterErrors += Math.min(expected.length(), editDistance(read, expected));
+        if (read.equals(expected)) {
+          score.platesRead++;
+        }
+      }
+    }
+
+    // Plates that were never found count every character as an error.
+    for (int i = 0; i < labels.size(); i++) {
+      if (!matched[i]) {
+        score.characters += labels.get(i).text.length();
+        score.characterErrors += labels.get(i).text.length();
+      }
+    }
+
+    return score;
+  }
+
+  /**
+   * Levenshtein distance between two strings.
+   */
+  static int editDistance(String a, String b) {
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      for (int j = 1; j <= b.length(); j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[b.length()];
+  }
+}
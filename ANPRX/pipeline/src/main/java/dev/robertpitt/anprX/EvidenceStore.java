@@ -0,0 +1,456 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a JPEG plate crop and context thumbnail per sighting in a few large pack files.
+ *
+ * The analysis thread only copies the plate and context regions out of the frame, the copies
+ * are rotated upright, scaled and encoded on a background pool. When the pool falls behind
+ * sightings are dropped rather than stalling the analyser.
+ *
+ * Encoded images are appended to the open pack, each record described by a fixed size entry
+ * appended to the pack's index file, so a pack is never rewritten. Once a pack reaches its
+ * size limit a new one is started and the oldest packs beyond the limit are deleted. The
+ * indexes of the retained packs are held in memory, an image is read back by sighting id with
+ * a single positional read.
+ *
+ * Pack record: magic, sighting id, timestamp, kind, length, JPEG bytes.
+ * Index entry: sighting id, kind, length, offset, timestamp.
+ */
+public class EvidenceStore implements Closeable {
+  /**
+   * Defaults
+   */
+  public static final long DEFAULT_MAX_PACK_BYTES = 64L * 1024 * 1024;
+  public static final int DEFAULT_MAX_PACKS = 16;
+  public static final int DEFAULT_THREADS = 2;
+
+  /**
+   * Image kinds stored per sighting.
+   */
+  public static final int KIND_CROP = 0;
+  public static final int KIND_CONTEXT = 1;
+
+  private static final int RECORD_MAGIC = 0x414e5045; // "ANPE"
+  private static final int RECORD_HEADER_SIZE = 4 + 8 + 8 + 4 + 4;
+  private static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + 8 + 8;
+
+  private static final String PACK_EXTENSION = ".pack";
+  private static final String INDEX_EXTENSION = ".idx";
+
+  /**
+   * Encoding jobs that may wait for the pool.
+   */
+  private static final int QUEUE_SIZE = 32;
+
+  /**
+   * Context region around the plate, in plate widths and heights, and its stored width.
+   */
+  private static final double CONTEXT_WIDTHS = 3;
+  private static final double CONTEXT_HEIGHTS = 8;
+  private static final int CONTEXT_WIDTH = 320;
+
+  private static final int JPEG_QUALITY = 85;
+
+  /**
+   * Location of a stored image.
+   */
+  private static class Entry {
+    final int pack;
+    final long offset;
+    final int length;
+
+    Entry(int pack, long offset, int length) {
+      this.pack = pack;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Sighting ids stored in a pack, to forget them when the pack is deleted.
+   */
+  private static class Pack {
+    final int number;
+    final List<Long> ids = new ArrayList<>();
+
+    Pack(int number) {
+      this.number = number;
+    }
+  }
+
+  private final File directory;
+  private final long maxPackBytes;
+  private final int maxPacks;
+  private final ThreadPoolExecutor encoders;
+
+  /**
+   * Index of the retained packs and the open pack, guarded by this.
+   */
+  private final Map<Long, Entry[]> index = new HashMap<>();
+  private final Deque<Pack> packs = new ArrayDeque<>();
+  private FileChannel packChannel;
+  private FileChannel indexChannel;
+  private long packSize;
+  private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+  private final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+
+  private final AtomicLong nextId = new AtomicLong(1);
+
+  /**
+   * Counters
+   */
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong stored = new AtomicLong();
+  private final AtomicLong storedBytes = new AtomicLong();
+  private final AtomicLong encodeNanos = new AtomicLong();
+
+  public EvidenceStore(File directory) throws IOException {
+    this(directory, DEFAULT_MAX_PACK_BYTES, DEFAULT_MAX_PACKS, DEFAULT_THREADS);
+  }
+
+  /**
+   * @param directory directory holding the packs, packs of a previous run are kept.
+   * @param maxPackBytes size at which a pack is closed and a new one started.
+   * @param maxPacks packs retained, the oldest are deleted beyond this.
+   * @param threads encoding threads.
+   */
+  public EvidenceStore(File directory, long maxPackBytes, int maxPacks, int threads) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create evidence directory " + directory);
+    }
+    this.directory = directory;
+    this.maxPackBytes = maxPackBytes;
+    this.maxPacks = maxPacks;
+
+    loadIndexes();
+    int number = packs.isEmpty() ? 0 : packs.getLast().number + 1;
+    openPack(number);
+
+    this.encoders = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(QUEUE_SIZE));
+  }
+
+  /**
+   * Hand a sighting over for storage, called on the analysis thread. Only the plate and
+   * context regions are copied, everything else happens on the pool.
+   *
+   * @param grey frame the plate was found in, in sensor orientation.
+   * @param sensorPlate plate in the coordinates of grey.
+   * @param rotationDegrees clockwise rotation from grey to upright.
+   * @return the sighting id, or -1 if the sighting was dropped.
+   */
+  public long submit(Mat grey, RotatedRect sensorPlate, int rotationDegrees, long timestampNanos) {
+    submitted.incrementAndGet();
+
+    Rect frame = new Rect(0, 0, grey.cols(), grey.rows());
+    Rect plateArea = Utils.intersect(sensorPlate.boundingRect(), frame);
+    if (plateArea == null) {
+      dropped.incrementAndGet();
+      return -1;
+    }
+
+    double longSide = Math.max(sensorPlate.size.width, sensorPlate.size.height);
+    double shortSide = Math.min(sensorPlate.size.width, sensorPlate.size.height);
+    boolean sideways = rotationDegrees % 180 != 0;
+    double contextWidth = (sideways ? shortSide * CONTEXT_HEIGHTS : longSide * CONTEXT_WIDTHS);
+    double contextHeight = (sideways ? longSide * CONTEXT_WIDTHS : shortSide * CONTEXT_HEIGHTS);
+    Rect contextArea = Utils.intersect(new Rect(
+        (int) Math.round(sensorPlate.center.x - contextWidth / 2), (int) Math.round(sensorPlate.center.y - contextHeight / 2),
+        (int) Math.round(contextWidth), (int) Math.round(contextHeight)), frame);
+
+    final long id = nextId.getAndIncrement();
+    final Mat crop = TrackedMats.track(grey.submat(plateArea).clone());
+    final Mat context = contextArea == null ? null : TrackedMats.track(grey.submat(contextArea).clone());
+    final int rotateCode = rotateCode(rotationDegrees);
+    final long timestamp = timestampNanos;
+
+    try {
+      encoders.execute(() -> {
+        try {
+          encodeAndStore(id, timestamp, crop, context, rotateCode);
+        } finally {
+          TrackedMats.release(crop);
+          TrackedMats.release(context);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      TrackedMats.release(crop);
+      TrackedMats.release(context);
+      dropped.incrementAndGet();
+      return -1;
+    }
+    return id;
+  }
+
+  /**
+   * Read a stored image back.
+   * @param kind {@link #KIND_CROP} or {@link #KIND_CONTEXT}.
+   * @return the JPEG bytes, or null if the sighting is unknown or has been rotated out.
+   */
+  public byte[] read(long id, int kind) throws IOException {
+    Entry location;
+    synchronized (this) {
+      Entry[] entries = index.get(id);
+      location = entries == null || kind < 0 || kind >= entries.length ? null : entries[kind];
+    }
+    if (location == null) {
+      return null;
+    }
+
+    ByteBuffer data = ByteBuffer.allocate(location.length);
+    try (RandomAccessFile file = new RandomAccessFile(packFile(location.pack), "r")) {
+      FileChannel channel = file.getChannel();
+      long position = location.offset;
+      while (data.hasRemaining()) {
+        int count = channel.read(data, position);
+        if (count < 0) {
+          throw new IOException("Truncated record " + id + " in pack " + location.pack);
+        }
+        position += count;
+      }
+    }
+    return data.array();
+  }
+
+  /**
+   * Wait for queued sightings to be stored and close the open pack.
+   */
+  @Override
+  public void close() throws IOException {
+    encoders.shutdown();
+    try {
+      encoders.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      packChannel.close();
+      indexChannel.close();
+    }
+  }
+
+  private void encodeAndStore(long id, long timestamp, Mat crop, Mat context, int rotateCode) {
+    long start = System.nanoTime();
+    byte[] cropJpeg = encode(crop, rotateCode, 0);
+    byte[] contextJpeg = context == null ? null : encode(context, rotateCode, CONTEXT_WIDTH);
+    encodeNanos.addAndGet(System.nanoTime() - start);
+
+    try {
+      synchronized (this) {
+        append(id, timestamp, KIND_CROP, cropJpeg);
+        if (contextJpeg != null) {
+          append(id, timestamp, KIND_CONTEXT, contextJpeg);
+        }
+      }
+      stored.incrementAndGet();
+    } catch (IOException e) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  private static byte[] encode(Mat image, int rotateCode, int width) {
+    Mat upright = image;
+    if (rotateCode >= 0) {
+      upright = TrackedMats.mat();
+      Core.rotate(image, upright, rotateCode);
+    }
+
+    Mat scaled = upright;
+    if (width > 0 && upright.cols() > width) {
+      scaled = TrackedMats.mat();
+      Imgproc.resize(upright, scaled, new Size(width, Math.max(1, upright.rows() * width / upright.cols())), 0, 0, Imgproc.INTER_AREA);
+    }
+
+    MatOfByte buffer = TrackedMats.track(new MatOfByte());
+    MatOfInt parameters = TrackedMats.track(new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY));
+    Imgcodecs.imencode(".jpg", scaled, buffer, parameters);
+    byte[] jpeg = buffer.toArray();
+
+    TrackedMats.release(parameters);
+    TrackedMats.release(buffer);
+    if (scaled != upright) {
+      TrackedMats.release(scaled);
+    }
+    if (upright != image) {
+      TrackedMats.release(upright);
+    }
+    return jpeg;
+  }
+
+  /**
+   * Append a record and its index entry, rotating the pack first if it would overflow.
+   * Must be called holding the lock.
+   */
+  private void append(long id, long timestamp, int kind, byte[] jpeg) throws IOException {
+    if (packSize > 0 && packSize + RECORD_HEADER_SIZE + jpeg.length > maxPackBytes) {
+      rotate();
+    }
+
+    long offset = packSize + RECORD_HEADER_SIZE;
+    header.clear();
+    header.putInt(RECORD_MAGIC).putLong(id).putLong(timestamp).putInt(kind).putInt(jpeg.length).flip();
+    writeFully(packChannel, header);
+    writeFully(packChannel, ByteBuffer.wrap(jpeg));
+    packSize = offset + jpeg.length;
+
+    entry.clear();
+    entry.putLong(id).putInt(kind).putInt(jpeg.length).putLong(offset).putLong(timestamp).flip();
+    writeFully(indexChannel, entry);
+
+    Pack pack = packs.getLast();
+    remember(id, kind, new Entry(pack.number, offset, jpeg.length), pack);
+    storedBytes.addAndGet(jpeg.length);
+  }
+
+  private void remember(long id, int kind, Entry location, Pack pack) {
+    Entry[] entries = index.get(id);
+    if (entries == null) {
+      entries = new Entry[2];
+      index.put(id, entries);
+      pack.ids.add(id);
+    }
+    if (kind >= 0 && kind < entries.length) {
+      entries[kind] = location;
+    }
+  }
+
+  private void rotate() throws IOException {
+    packChannel.close();
+    indexChannel.close();
+    openPack(packs.getLast().number + 1);
+  }
+
+  /**
+   * Open a new pack, deleting the oldest packs beyond the limit.
+   */
+  private void openPack(int number) throws IOException {
+    packs.addLast(new Pack(number));
+    while (packs.size() > maxPacks) {
+      Pack oldest = packs.removeFirst();
+      for (Long id : oldest.ids) {
+        index.remove(id);
+      }
+      packFile(oldest.number).delete();
+      indexFile(oldest.number).delete();
+    }
+
+    packChannel = new RandomAccessFile(packFile(number), "rw").getChannel();
+    indexChannel = new RandomAccessFile(indexFile(number), "rw").getChannel();
+    packSize = packChannel.size();
+    packChannel.position(packSize);
+    indexChannel.position(indexChannel.size());
+  }
+
+  /**
+   * Rebuild the in memory index from the index files of a previous run.
+   */
+  private void loadIndexes() throws IOException {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(INDEX_EXTENSION));
+    if (files == null) {
+      return;
+    }
+
+    int[] numbers = new int[files.length];
+    int count = 0;
+    for (File file : files) {
+      String name = file.getName();
+      try {
+        int number = Integer.parseInt(name.substring(0, name.length() - INDEX_EXTENSION.length()));
+        numbers[count++] = number;
+      } catch (NumberFormatException e) {
+        // Not one of ours.
+      }
+    }
+    numbers = Arrays.copyOf(numbers, count);
+    Arrays.sort(numbers);
+
+    long maxId = 0;
+    for (int number : numbers) {
+      Pack pack = new Pack(number);
+      long packLength = packFile(number).length();
+      try (RandomAccessFile file = new RandomAccessFile(indexFile(number), "r")) {
+        ByteBuffer entries = ByteBuffer.allocate((int) (file.length() / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE));
+        file.getChannel().read(entries, 0);
+        entries.flip();
+        while (entries.remaining() >= INDEX_ENTRY_SIZE) {
+          long id = entries.getLong();
+          int kind = entries.getInt();
+          int length = entries.getInt();
+          long offset = entries.getLong();
+          entries.getLong();
+          // Entries are written after their record, but a crash can still leave one dangling.
+          if (offset + length <= packLength) {
+            remember(id, kind, new Entry(number, offset, length), pack);
+            maxId = Math.max(maxId, id);
+          }
+        }
+      }
+      packs.addLast(pack);
+    }
+    nextId.set(maxId + 1);
+  }
+
+  private File packFile(int number) {
+    return new File(directory, String.format(Locale.ROOT, "%08d%s", number, PACK_EXTENSION));
+  }
+
+  private File indexFile(int number) {
+    return new File(directory, String.format(Locale.ROOT, "%08d%s", number, INDEX_EXTENSION));
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static int rotateCode(int rotationDegrees) {
+    switch (((rotationDegrees % 360) + 360) % 360) {
+      case 90: return Core.ROTATE_90_CLOCKWISE;
+      case 180: return Core.ROTATE_180;
+      case 270: return Core.ROTATE_90_COUNTERCLOCKWISE;
+      default: return -1;
+    }
+  }
+
+  @Override
+  public String toString() {
+    long count = stored.get();
+    synchronized (this) {
+      return String.format(Locale.ROOT, "submitted=%d stored=%d dropped=%d bytes=%d packs=%d encode=%.2fms/sighting",
+          submitted.get(), count, dropped.get(), storedBytes.get(), packs.size(),
+          count == 0 ? 0 : encodeNanos.get() / 1e6 / count);
+    }
+  }
+}
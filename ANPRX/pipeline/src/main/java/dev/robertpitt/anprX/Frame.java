@@ -0,0 +1,38 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+
+/**
+ * Single greyscale frame as delivered by a {@link FrameSource}.
+ *
+ * Frames are reusable holders, sources write into the same instance on every read so
+ * the grey Mat is only allocated once for the lifetime of a run.
+ */
+public class Frame {
+  /**
+   * Single channel 8 bit image data.
+   */
+  public final Mat grey = new Mat();
+
+  /**
+   * Zero based position of the frame within its source.
+   */
+  public long index;
+
+  /**
+   * Capture timestamp in nanoseconds, relative to the start of the source.
+   */
+  public long timestampNanos;
+
+  /**
+   * Clockwise rotation required to display the frame upright.
+   */
+  public int rotationDegrees;
+
+  /**
+   * Release the native memory held by the frame.
+   */
+  public void release() {
+    grey.release();
+  }
+}
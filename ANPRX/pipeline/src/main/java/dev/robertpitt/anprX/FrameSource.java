@@ -0,0 +1,17 @@
+package dev.robertpitt.anprX;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Source of greyscale frames for the recognition pipeline, allowing the pipeline to be
+ * driven by something other than the camera (replayed footage, recordings, network streams).
+ */
+public interface FrameSource extends Closeable {
+  /**
+   * Read the next frame into the given holder.
+   *
+   * @return false once the source is exhausted.
+   */
+  boolean read(Frame frame) throws IOException;
+}
@@ -0,0 +1,117 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+
+/**
+ * Polygon helpers used to compare detections, all pure Java so they can be called per
+ * candidate without crossing into native code.
+ */
+public class Geometry {
+  /**
+   * Signed area of a polygon, positive when the vertices are counter clockwise in a
+   * y-up coordinate system.
+   */
+  public static double signedArea(Point[] polygon) {
+    double area = 0;
+    for (int i = 0, j = polygon.length - 1; i < polygon.length; j = i++) {
+      area += polygon[j].x * polygon[i].y - polygon[i].x * polygon[j].y;
+    }
+    return area / 2;
+  }
+
+  public static double area(Point[] polygon) {
+    return Math.abs(signedArea(polygon));
+  }
+
+  /**
+   * Intersection area of two convex polygons using Sutherland-Hodgman clipping.
+   */
+  public static double intersectionArea(Point[] subject, Point[] clip) {
+    // Clipping assumes a consistent winding, normalise both polygons first.
+    subject = ensureWinding(subject);
+    clip = ensureWinding(clip);
+
+    Point[] output = subject;
+    for (int i = 0, j = clip.length - 1; i < clip.length && output.length > 0; j = i++) {
+      Point edgeStart = clip[j];
+      Point edgeEnd = clip[i];
+      Point[] input = output;
+      Point[] clipped = new Point[input.length * 2];
+      int count = 0;
+
+      for (int k = 0, l = input.length - 1; k < input.length; l = k++) {
+        Point current = input[k];
+        Point previous = input[l];
+        boolean currentInside = isLeft(edgeStart, edgeEnd, current);
+        boolean previousInside = isLeft(edgeStart, edgeEnd, previous);
+
+        if (currentInside) {
+          if (!previousInside) {
+            clipped[count++] = lineIntersection(previous, current, edgeStart, edgeEnd);
+          }
+          clipped[count++] = current;
+        } else if (previousInside) {
+          clipped[count++] = lineIntersection(previous, current, edgeStart, edgeEnd);
+        }
+      }
+
+      output = new Point[count];
+      System.arraycopy(clipped, 0, output, 0, count);
+    }
+
+    return output.length < 3 ? 0 : area(output);
+  }
+
+  /**
+   * Intersection over union of two convex polygons.
+   */
+  public static double iou(Point[] a, Point[] b) {
+    double intersection = intersectionArea(a, b);
+    double union = area(a) + area(b) - intersection;
+    return union <= 0 ? 0 : intersection / union;
+  }
+
+  public static double iou(RotatedRect a, RotatedRect b) {
+    return iou(corners(a), corners(b));
+  }
+
+  /**
+   * @return the four corners of the rotated rectangle.
+   */
+  public static Point[] corners(RotatedRect rect) {
+    Point[] points = new Point[4];
+    rect.points(points);
+    return points;
+  }
+
+  private static Point[] ensureWinding(Point[] polygon) {
+    if (signedArea(polygon) >= 0) {
+      return polygon;
+    }
+
+    Point[] reversed = new Point[polygon.length];
+    for (int i = 0; i < polygon.length; i++) {
+      reversed[i] = polygon[polygon.length - 1 - i];
+    }
+    return reversed;
+  }
+
+  private static boolean isLeft(Point a, Point b, Point p) {
+    return (b.x - a.x) * (p.y - a.y) - (b.y - a.y) * (p.x - a.x) >= 0;
+  }
+
+  private static Point lineIntersection(Point p1, Point p2, Point p3, Point p4) {
+    double a1 = p2.y - p1.y;
+    double b1 = p1.x - p2.x;
+    double c1 = a1 * p1.x + b1 * p1.y;
+    double a2 = p4.y - p3.y;
+    double b2 = p3.x - p4.x;
+    double c2 = a2 * p3.x + b2 * p3.y;
+    double determinant = a1 * b2 - a2 * b1;
+    if (determinant == 0) {
+      return p2;
+    }
+    return new Point((b2 * c1 - b1 * c2) / determinant, (a1 * c2 - a2 * c1) / determinant);
+  }
+}
@@ -0,0 +1,112 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Point;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Labelled plates for a set of images, loaded from a tab separated file:
+ *
+ *   image <TAB> plate text <TAB> x1,y1 x2,y2 x3,y3 x4,y4
+ *
+ * Lines starting with `#` are comments, an image may appear on several lines when it
+ * contains several plates.
+ */
+public class GroundTruth {
+  /**
+   * A single labelled plate.
+   */
+  public static class Label {
+    public final String text;
+    public final Point[] quad;
+
+    public Label(String text, Point[] quad) {
+      this.text = text;
+      this.quad = quad;
+    }
+  }
+
+  /**
+   * Labels keyed by image file name, in name order.
+   */
+  private final Map<String, List<Label>> labels = new TreeMap<>();
+
+  /**
+   * @return the labelled image names in name order.
+   */
+  public List<String> images() {
+    return new ArrayList<>(labels.keySet());
+  }
+
+  /**
+   * @return the labels of the image, empty if it is not labelled.
+   */
+  public List<Label> labelsFor(String image) {
+    List<Label> result = labels.get(image);
+    return result == null ? Collections.<Label>emptyList() : result;
+  }
+
+  public int size() {
+    int count = 0;
+    for (List<Label> list : labels.values()) {
+      count += list.size();
+    }
+    return count;
+  }
+
+  public static GroundTruth load(File file) throws IOException {
+    GroundTruth truth = new GroundTruth();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+      String line;
+      int number = 0;
+      while ((line = reader.readLine()) != null) {
+        number++;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+
+        String[] columns = line.split("\t");
+        if (columns.length != 3) {
+          throw new IOException(file + ":" + number + " expected 3 columns");
+        }
+
+        String[] corners = columns[2].trim().split("\\s+");
+        if (corners.length != 4) {
+          throw new IOException(file + ":" + number + " expected 4 corners");
+        }
+
+        Point[] quad = new Point[4];
+        for (int i = 0; i < 4; i++) {
+          String[] xy = corners[i].split(",");
+          quad[i] = new Point(Double.parseDouble(xy[0]), Double.parseDouble(xy[1]));
+        }
+
+        List<Label> list = truth.labels.get(columns[0]);
+        if (list == null) {
+          list = new ArrayList<>();
+          truth.labels.put(columns[0], list);
+        }
+        list.add(new Label(normalise(columns[1]), quad));
+      }
+    }
+    return truth;
+  }
+
+  /**
+   * Normalise plate text for comparison, whitespace is not significant.
+   */
+  public static String normalise(String text) {
+    return text == null ? "" : text.replaceAll("\\s", "").toUpperCase(Locale.ROOT);
+  }
+}
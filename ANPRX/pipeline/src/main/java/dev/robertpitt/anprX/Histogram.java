@@ -0,0 +1,83 @@
+package dev.robertpitt.anprX;
+
+import java.util.Locale;
+
+/**
+ * Fixed bucket histogram that renders in the Prometheus text exposition format.
+ *
+ * Unlike {@link LatencyRecorder} it keeps a constant amount of state however long it runs,
+ * which is what a long lived service needs. Thread safe.
+ */
+public class Histogram {
+  /**
+   * Default latency buckets in seconds.
+   */
+  public static final double[] LATENCY_BUCKETS = {
+      0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+  };
+
+  private final String name;
+  private final String help;
+  private final double[] bounds;
+  private final long[] counts;
+  private long count = 0;
+  private double sum = 0;
+
+  /**
+   * @param name metric name.
+   * @param help help text.
+   * @param bounds upper bounds of the buckets in increasing order, +Inf is implied.
+   */
+  public Histogram(String name, String help, double[] bounds) {
+    this.name = name;
+    this.help = help;
+    this.bounds = bounds.clone();
+    this.counts = new long[bounds.length];
+  }
+
+  public synchronized void observe(double value) {
+    for (int i = 0; i < bounds.length; i++) {
+      if (value <= bounds[i]) {
+        counts[i]++;
+        break;
+      }
+    }
+    count++;
+    sum += value;
+  }
+
+  /**
+   * Observe a duration given in nanoseconds, in seconds.
+   */
+  public void observeNanos(long nanos) {
+    observe(nanos / 1e9);
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized double getSum() {
+    return sum;
+  }
+
+  /**
+   * Append the histogram in the Prometheus text format.
+   */
+  public synchronized void render(StringBuilder out) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(" histogram\n");
+    long cumulative = 0;
+    for (int i = 0; i < bounds.length; i++) {
+      cumulative += counts[i];
+      out.append(String.format(Locale.ROOT, "%s_bucket{le=\"%s\"} %d%n", name, formatBound(bounds[i]), cumulative));
+    }
+    out.append(String.format(Locale.ROOT, "%s_bucket{le=\"+Inf\"} %d%n", name, count));
+    out.append(String.format(Locale.ROOT, "%s_sum %f%n", name, sum));
+    out.append(String.format(Locale.ROOT, "%s_count %d%n", name, count));
+  }
+
+  private static String formatBound(double bound) {
+    return bound == Math.rint(bound) ? Long.toString((long) bound) : Double.toString(bound);
+  }
+}
@@ -0,0 +1,276 @@
+package dev.robertpitt.anprX;
+
+import java.util.Arrays;
+
+/**
+ * Border following on a binary edge map, after Suzuki and Abe (1985), the algorithm behind
+ * OpenCV findContours. Every outer and hole border is traced, as with RETR_LIST, along with
+ * the parent of each border, as with RETR_TREE. Points are compressed as with
+ * CHAIN_APPROX_SIMPLE, only the pixels where the direction of the border changes are kept.
+ *
+ * Points are stored in shared primitive pools rather than per contour objects, contour i
+ * occupies {@link #getStart(int)} to start + {@link #getLength(int)} of {@link #getXs()} and
+ * {@link #getYs()}. The pools are reused between calls. Not thread safe.
+ */
+public class JavaContourFinder {
+  /**
+   * Neighbour offsets clockwise from east, rows grow downwards.
+   */
+  private static final int[] DIRECTION_ROW = {0, 1, 1, 1, 0, -1, -1, -1};
+  private static final int[] DIRECTION_COLUMN = {1, 1, 0, -1, -1, -1, 0, 1};
+
+  /**
+   * Label image with a one pixel border of background.
+   */
+  private int[] labels = new int[0];
+
+  /**
+   * Index offsets of the neighbours in the label image, per direction.
+   */
+  private final int[] offsets = new int[8];
+
+  /**
+   * Point pools.
+   */
+  private int[] xs = new int[1024];
+  private int[] ys = new int[1024];
+  private int points = 0;
+
+  /**
+   * Per contour state, indexed by contour, contour i has the border number i + 2.
+   */
+  private int[] starts = new int[256];
+  private int[] lengths = new int[256];
+  private int[] parents = new int[256];
+  private boolean[] holes = new boolean[256];
+  private int contours = 0;
+
+  /**
+   * Trace the borders of an edge map.
+   *
+   * @param edges edge map, non zero for edge pixels, width * height entries, row major.
+   * @param offsetX added to every x coordinate.
+   * @param offsetY added to every y coordinate.
+   * @return the number of contours found.
+   */
+  public int find(byte[] edges, int width, int height, int offsetX, int offsetY) {
+    int stride = width + 2;
+    int size = stride * (height + 2);
+    if (labels.length < size) {
+      labels = new int[size];
+    } else {
+      Arrays.fill(labels, 0, size, 0);
+    }
+    for (int row = 0; row < height; row++) {
+      int in = row * width;
+      int out = (row + 1) * stride + 1;
+      for (int column = 0; column < width; column++) {
+        labels[out + column] = edges[in + column] != 0 ? 1 : 0;
+      }
+    }
+
+    points = 0;
+    contours = 0;
+
+    // Border number of the frame is 1, the first traced border is 2.
+    int nbd = 1;
+    for (int d = 0; d < 8; d++) {
+      offsets[d] = DIRECTION_ROW[d] * stride + DIRECTION_COLUMN[d];
+    }
+
+    for (int row = 1; row <= height; row++) {
+      int lnbd = 1;
+      for (int column = 1; column <= width; column++) {
+        int index = row * stride + column;
+        int value = labels[index];
+        if (value == 0) {
+          continue;
+        }
+
+        int from;
+        boolean hole;
+        if (value == 1 && labels[index - 1] == 0) {
+          hole = false;
+          from = 4;
+        } else if (value >= 1 && labels[index + 1] == 0) {
+          hole = true;
+          from = 0;
+          if (value > 1) {
+            lnbd = value;
+          }
+        } else {
+          if (value != 1) {
+            lnbd = Math.abs(value);
+          }
+          continue;
+        }
+
+        nbd++;
+        int contour = addContour(hole, parentOf(hole, lnbd));
+        follow(index, from, nbd, stride, offsetX - 1, offsetY - 1, contour);
+
+        if (labels[index] != 1) {
+          lnbd = Math.abs(labels[index]);
+        }
+      }
+    }
+    return contours;
+  }
+
+  public int getContourCount() {
+    return contours;
+  }
+
+  public int getStart(int contour) {
+    return starts[contour];
+  }
+
+  public int getLength(int contour) {
+    return lengths[contour];
+  }
+
+  /**
+   * @return the index of the contour enclosing the contour, or -1 for the frame.
+   */
+  public int getParent(int contour) {
+    return parents[contour];
+  }
+
+  public boolean isHole(int contour) {
+    return holes[contour];
+  }
+
+  public int[] getXs() {
+    return xs;
+  }
+
+  public int[] getYs() {
+    return ys;
+  }
+
+  /**
+   * Parent of a new border from the type of the last border met on the row.
+   */
+  private int parentOf(boolean hole, int lnbd) {
+    if (lnbd < 2) {
+      return -1;
+    }
+    int last = lnbd - 2;
+    boolean lastHole = holes[last];
+    return hole == lastHole ? parents[last] : last;
+  }
+
+  /**
+   * Follow a single border starting at index, steps 3.1 to 3.5 of the paper.
+   */
+  private void follow(int start, int from, int nbd, int stride, int offsetX, int offsetY, int contour) {
+    int[] labels = this.labels;
+    int[] offsets = this.offsets;
+
+    // 3.1 Clockwise from the starting neighbour for any border pixel.
+    int first = -1;
+    int firstDirection = -1;
+    for (int k = 0; k < 8; k++) {
+      int d = (from + k) & 7;
+      if (labels[start + offsets[d]] != 0) {
+        first = start + offsets[d];
+        firstDirection = d;
+        break;
+      }
+    }
+
+    if (first < 0) {
+      // Isolated pixel.
+      labels[start] = -nbd;
+      addPoint(start, stride, offsetX, offsetY);
+      finishContour(contour);
+      return;
+    }
+
+    // 3.2
+    int previous = first;
+    int current = start;
+    int previousDirection = firstDirection;
+    int incoming = -1;
+    int firstOutgoing = -1;
+
+    while (true) {
+      // 3.3 Counter clockwise from the pixel after the previous one.
+      int d = previousDirection;
+      boolean eastExamined = false;
+      int next = -1;
+      int direction = -1;
+      for (int k = 1; k <= 8; k++) {
+        int candidate = (d - k) & 7;
+        int neighbour = current + offsets[candidate];
+        if (labels[neighbour] != 0) {
+          next = neighbour;
+          direction = candidate;
+          break;
+        }
+        if (candidate == 0) {
+          eastExamined = true;
+        }
+      }
+
+      // 3.4
+      if (eastExamined) {
+        labels[current] = -nbd;
+      } else if (labels[current] == 1) {
+        labels[current] = nbd;
+      }
+
+      // Keep the pixels where the direction changes.
+      if (incoming != direction) {
+        addPoint(current, stride, offsetX, offsetY);
+      }
+      if (firstOutgoing < 0) {
+        firstOutgoing = direction;
+      }
+      incoming = direction;
+
+      // 3.5
+      if (next == start && current == first) {
+        break;
+      }
+      previousDirection = (direction + 4) & 7;
+      current = next;
+    }
+
+    // The start pixel is redundant when the border runs straight through it.
+    if (incoming == firstOutgoing && points - starts[contour] > 1) {
+      starts[contour]++;
+    }
+    finishContour(contour);
+  }
+
+  private int addContour(boolean hole, int parent) {
+    if (contours == starts.length) {
+      int capacity = contours * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      parents = Arrays.copyOf(parents, capacity);
+      holes = Arrays.copyOf(holes, capacity);
+    }
+    starts[contours] = points;
+    lengths[contours] = 0;
+    parents[contours] = parent;
+    holes[contours] = hole;
+    return contours++;
+  }
+
+  private void finishContour(int contour) {
+    lengths[contour] = points - starts[contour];
+  }
+
+  private void addPoint(int index, int stride, int offsetX, int offsetY) {
+    if (points == xs.length) {
+      xs = Arrays.copyOf(xs, points * 2);
+      ys = Arrays.copyOf(ys, points * 2);
+    }
+    int row = index / stride;
+    xs[points] = index - row * stride + offsetX;
+    ys[points] = row + offsetY;
+    points++;
+  }
+}
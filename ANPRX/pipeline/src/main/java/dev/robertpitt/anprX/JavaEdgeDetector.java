@@ -0,0 +1,178 @@
+package dev.robertpitt.anprX;
+
+/**
+ * Canny edge detector on a greyscale byte array, following the OpenCV implementation used by
+ * the {@link PlateDetector}: 3x3 Sobel with replicated borders, L1 gradient magnitude,
+ * non-maximum suppression in four directions and hysteresis from the strong edges.
+ *
+ * Working arrays are grown to the largest window seen and then reused, so detection does
+ * not allocate in steady state. Not thread safe, use one instance per thread.
+ */
+public class JavaEdgeDetector {
+  /**
+   * tan(22.5) in 15 bit fixed point, as in OpenCV.
+   */
+  private static final int TG22 = (int) (0.4142135623730950488016887242097 * (1 << 15) + 0.5);
+
+  /**
+   * Edge map states.
+   */
+  private static final byte NONE = 0;
+  private static final byte WEAK = 1;
+  private static final byte EDGE = 2;
+
+  private int[] dx = new int[0];
+  private int[] dy = new int[0];
+  private int[] magnitude = new int[0];
+  private int[] stack = new int[0];
+
+  /**
+   * Detect the edges of a window of the image.
+   *
+   * @param image greyscale pixels.
+   * @param offset index of the top left pixel of the window.
+   * @param rowStride distance between rows of the image.
+   * @param width width of the window.
+   * @param height height of the window.
+   * @param edges receives 1 for edge pixels and 0 otherwise, width * height entries, row major.
+   */
+  public void detect(byte[] image, int offset, int rowStride, int width, int height,
+                     int lowerThreshold, int upperThreshold, byte[] edges) {
+    int size = width * height;
+    ensureCapacity(size);
+
+    sobel(image, offset, rowStride, width, height);
+
+    int[] dx = this.dx;
+    int[] dy = this.dy;
+    int[] magnitude = this.magnitude;
+
+    // L1 magnitude, a separate pass so the loop stays simple enough to be vectorised.
+    for (int i = 0; i < size; i++) {
+      int x = dx[i];
+      int y = dy[i];
+      magnitude[i] = (x < 0 ? -x : x) + (y < 0 ? -y : y);
+    }
+
+    // Non-maximum suppression, strong edges are pushed for the hysteresis.
+    int top = 0;
+    for (int row = 0; row < height; row++) {
+      int base = row * width;
+      for (int column = 0; column < width; column++) {
+        int index = base + column;
+        int m = magnitude[index];
+        edges[index] = NONE;
+        if (m <= lowerThreshold) {
+          continue;
+        }
+
+        int x = dx[index];
+        int y = dy[index];
+        int ax = x < 0 ? -x : x;
+        int ay = (y < 0 ? -y : y) << 15;
+        long tg22x = (long) ax * TG22;
+
+        boolean maximum;
+        if (ay < tg22x) {
+          maximum = m > at(magnitude, width, height, row, column - 1)
+              && m >= at(magnitude, width, height, row, column + 1);
+        } else {
+          long tg67x = tg22x + ((long) ax << 16);
+          if (ay > tg67x) {
+            maximum = m > at(magnitude, width, height, row - 1, column)
+                && m >= at(magnitude, width, height, row + 1, column);
+          } else {
+            int s = (x ^ y) < 0 ? -1 : 1;
+            maximum = m > at(magnitude, width, height, row - 1, column - s)
+                && m > at(magnitude, width, height, row + 1, column + s);
+          }
+        }
+
+        if (!maximum) {
+          continue;
+        }
+        if (m > upperThreshold) {
+          edges[index] = EDGE;
+          stack[top++] = index;
+        } else {
+          edges[index] = WEAK;
+        }
+      }
+    }
+
+    // Hysteresis, weak pixels connected to a strong edge become edges.
+    while (top > 0) {
+      int index = stack[--top];
+      int row = index / width;
+      int column = index - row * width;
+      for (int y = Math.max(0, row - 1); y <= Math.min(height - 1, row + 1); y++) {
+        for (int x = Math.max(0, column - 1); x <= Math.min(width - 1, column + 1); x++) {
+          int neighbour = y * width + x;
+          if (edges[neighbour] == WEAK) {
+            edges[neighbour] = EDGE;
+            stack[top++] = neighbour;
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < size; i++) {
+      edges[i] = edges[i] == EDGE ? (byte) 1 : (byte) 0;
+    }
+  }
+
+  /**
+   * 3x3 Sobel with replicated borders. Interior rows run without bounds checks, the first and
+   * last row and column fall back to clamped reads.
+   */
+  private void sobel(byte[] image, int offset, int rowStride, int width, int height) {
+    int[] dx = this.dx;
+    int[] dy = this.dy;
+
+    for (int row = 0; row < height; row++) {
+      int up = offset + Math.max(0, row - 1) * rowStride;
+      int middle = offset + row * rowStride;
+      int down = offset + Math.min(height - 1, row + 1) * rowStride;
+      int out = row * width;
+
+      for (int column = 1; column < width - 1; column++) {
+        int a = image[up + column - 1] & 0xff, b = image[up + column] & 0xff, c = image[up + column + 1] & 0xff;
+        int d = image[middle + column - 1] & 0xff, f = image[middle + column + 1] & 0xff;
+        int g = image[down + column - 1] & 0xff, h = image[down + column] & 0xff, i = image[down + column + 1] & 0xff;
+        dx[out + column] = (c - a) + 2 * (f - d) + (i - g);
+        dy[out + column] = (g - a) + 2 * (h - b) + (i - c);
+      }
+
+      sobelClamped(image, up, middle, down, width, 0, out);
+      if (width > 1) {
+        sobelClamped(image, up, middle, down, width, width - 1, out);
+      }
+    }
+  }
+
+  private void sobelClamped(byte[] image, int up, int middle, int down, int width, int column, int out) {
+    int left = Math.max(0, column - 1);
+    int right = Math.min(width - 1, column + 1);
+    int a = image[up + left] & 0xff, b = image[up + column] & 0xff, c = image[up + right] & 0xff;
+    int d = image[middle + left] & 0xff, f = image[middle + right] & 0xff;
+    int g = image[down + left] & 0xff, h = image[down + column] & 0xff, i = image[down + right] & 0xff;
+    dx[out + column] = (c - a) + 2 * (f - d) + (i - g);
+    dy[out + column] = (g - a) + 2 * (h - b) + (i - c);
+  }
+
+  private static int at(int[] magnitude, int width, int height, int row, int column) {
+    if (row < 0 || row >= height || column < 0 || column >= width) {
+      return 0;
+    }
+    return magnitude[row * width + column];
+  }
+
+  private void ensureCapacity(int size) {
+    if (dx.length < size) {
+      dx = new int[size];
+      dy = new int[size];
+      magnitude = new int[size];
+      stack = new int[size];
+    }
+  }
+}
@@ -0,0 +1,254 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pure Java implementation of the {@link PlateDetector}, working directly on the Y plane.
+ *
+ * Follows the same steps with the same {@link DetectorConfig}: Canny, border following,
+ * polygon approximation, the area, convexity and corner tests, the optional character row
+ * verification and the minimum area rectangle. Results are {@link RotatedRect}s in frame
+ * coordinates so the two detectors can be compared directly, the values differ slightly
+ * where OpenCV uses floating point internally.
+ *
+ * No native code is called, so it runs where the OpenCV libraries can not be loaded and
+ * avoids the JNI crossings that dominate on small frames. Working arrays are reused between
+ * frames. Not thread safe, use one instance per thread.
+ */
+public class JavaPlateDetector {
+  /**
+   * Upper bound on the nested contours collected per candidate.
+   */
+  private static final int MAX_NESTED_CONTOURS = 256;
+
+  private volatile DetectorConfig config = DetectorConfig.DEFAULT;
+  private volatile LaneRegions regions;
+
+  private final JavaEdgeDetector edgeDetector = new JavaEdgeDetector();
+  private final JavaContourFinder contourFinder = new JavaContourFinder();
+
+  /**
+   * Working arrays, grown on demand.
+   */
+  private byte[] copy = new byte[0];
+  private byte[] edges = new byte[0];
+  private int[] approx = new int[256];
+  private int[] stack = new int[516];
+  private int[] firstChild = new int[256];
+  private int[] nextSibling = new int[256];
+  private final double[] quadX = new double[4];
+  private final double[] quadY = new double[4];
+
+  public void setConfig(DetectorConfig config) {
+    this.config = config;
+  }
+
+  public DetectorConfig getConfig() {
+    return config;
+  }
+
+  public void setRegions(LaneRegions regions) {
+    this.regions = regions;
+  }
+
+  public LaneRegions getRegions() {
+    return regions;
+  }
+
+  /**
+   * Detect in a Y plane held in a buffer, such as the first plane of an ImageProxy. The
+   * plane is copied once into a reused array.
+   */
+  public List<RotatedRect> detect(ByteBuffer plane, int width, int height, int rowStride) {
+    int size = rowStride * (height - 1) + width;
+    if (copy.length < size) {
+      copy = new byte[size];
+    }
+    ByteBuffer source = plane.duplicate();
+    source.rewind();
+    source.get(copy, 0, Math.min(size, source.remaining()));
+    return detect(copy, width, height, rowStride);
+  }
+
+  public List<RotatedRect> detect(byte[] plane, int width, int height, int rowStride) {
+    return detect(plane, width, height, rowStride, null);
+  }
+
+  /**
+   * Detect within the given areas of the frame only, restricted further to the regions of
+   * interest when they are configured.
+   * @param areas areas to search, or null for the whole frame.
+   */
+  public List<RotatedRect> detect(byte[] plane, int width, int height, int rowStride, List<Rect> areas) {
+    DetectorConfig config = this.config;
+    LaneRegions regions = this.regions;
+
+    LaneRegions.Mask mask = null;
+    if (regions != null && !regions.isEmpty()) {
+      mask = regions.maskFor(width, height);
+      if (areas == null) {
+        areas = mask.areas;
+      } else {
+        List<Rect> restricted = new ArrayList<>();
+        for (int i = 0; i < areas.size(); i++) {
+          for (int j = 0; j < mask.areas.size(); j++) {
+            Rect intersection = Utils.intersect(areas.get(i), mask.areas.get(j));
+            if (intersection != null) {
+              restricted.add(intersection);
+            }
+          }
+        }
+        areas = restricted;
+      }
+    }
+
+    List<RotatedRect> plates = new ArrayList<>();
+    if (areas == null) {
+      detectArea(plane, rowStride, 0, 0, width, height, mask, config, plates);
+    } else {
+      for (int i = 0; i < areas.size(); i++) {
+        Rect area = areas.get(i);
+        detectArea(plane, rowStride, area.x, area.y, area.width, area.height, mask, config, plates);
+      }
+    }
+    return plates;
+  }
+
+  private void detectArea(byte[] plane, int rowStride, int x, int y, int width, int height,
+                          LaneRegions.Mask mask, DetectorConfig config, List<RotatedRect> plates) {
+    int size = width * height;
+    if (edges.length < size) {
+      edges = new byte[size];
+    }
+
+    edgeDetector.detect(plane, y * rowStride + x, rowStride, width, height, config.cannyLower, config.cannyUpper, edges);
+    int count = contourFinder.find(edges, width, height, x, y);
+    if (config.verifyCharacters) {
+      linkChildren(count);
+    }
+
+    int[] xs = contourFinder.getXs();
+    int[] ys = contourFinder.getYs();
+
+    for (int contour = 0; contour < count; contour++) {
+      int start = contourFinder.getStart(contour);
+      int length = contourFinder.getLength(contour);
+      if (length < 4) {
+        continue;
+      }
+
+      if (mask != null && !isCentreInMask(xs, ys, start, length, mask)) {
+        continue;
+      }
+
+      if (approx.length < length) {
+        approx = new int[length];
+        stack = new int[length * 2 + 4];
+      }
+
+      double epsilon = JavaPolygons.arcLength(xs, ys, start, length) * config.approxEpsilon;
+      if (JavaPolygons.approxPolyDP(xs, ys, start, length, epsilon, approx, stack) != 4) {
+        continue;
+      }
+      for (int i = 0; i < 4; i++) {
+        quadX[i] = xs[start + approx[i]];
+        quadY[i] = ys[start + approx[i]];
+      }
+
+      double area = JavaPolygons.area(quadX, quadY, 4);
+      if (area < config.minArea || area > config.maxArea) {
+        continue;
+      }
+      if (!JavaPolygons.isConvex(quadX, quadY, 4)) {
+        continue;
+      }
+      if (JavaPolygons.maxCosine(quadX, quadY) >= config.maxCosine) {
+        continue;
+      }
+
+      RotatedRect rectangle = JavaPolygons.minAreaRect(quadX, quadY, 4);
+      if (config.verifyCharacters
+          && !CharacterRowVerifier.hasCharacterRow(rectangle, nestedBoxes(contour), config.minCharacters)) {
+        continue;
+      }
+      plates.add(rectangle);
+    }
+  }
+
+  /**
+   * Build first child and next sibling links from the parents of the contours.
+   */
+  private void linkChildren(int count) {
+    if (firstChild.length < count) {
+      firstChild = new int[count * 2];
+      nextSibling = new int[count * 2];
+    }
+    Arrays.fill(firstChild, 0, count, -1);
+    for (int contour = count - 1; contour >= 0; contour--) {
+      int parent = contourFinder.getParent(contour);
+      nextSibling[contour] = -1;
+      if (parent >= 0) {
+        nextSibling[contour] = firstChild[parent];
+        firstChild[parent] = contour;
+      }
+    }
+  }
+
+  /**
+   * Bounding boxes of every contour nested inside the given contour, depth first.
+   */
+  private List<Rect> nestedBoxes(int contour) {
+    List<Rect> boxes = new ArrayList<>();
+    int[] xs = contourFinder.getXs();
+    int[] ys = contourFinder.getYs();
+
+    int top = 0;
+    int child = firstChild[contour];
+    while (child >= 0 && boxes.size() < MAX_NESTED_CONTOURS) {
+      int start = contourFinder.getStart(child);
+      int length = contourFinder.getLength(child);
+      int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+      int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+      for (int i = start; i < start + length; i++) {
+        minX = Math.min(minX, xs[i]);
+        minY = Math.min(minY, ys[i]);
+        maxX = Math.max(maxX, xs[i]);
+        maxY = Math.max(maxY, ys[i]);
+      }
+      boxes.add(new Rect(minX, minY, maxX - minX + 1, maxY - minY + 1));
+
+      // Descend first, then the next sibling, climbing back up when a level runs out.
+      if (firstChild[child] >= 0) {
+        if (top == stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = child;
+        child = firstChild[child];
+        continue;
+      }
+      child = nextSibling[child];
+      while (child < 0 && top > 0) {
+        child = nextSibling[stack[--top]];
+      }
+    }
+    return boxes;
+  }
+
+  private static boolean isCentreInMask(int[] xs, int[] ys, int start, int length, LaneRegions.Mask mask) {
+    int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+    for (int i = start; i < start + length; i++) {
+      minX = Math.min(minX, xs[i]);
+      minY = Math.min(minY, ys[i]);
+      maxX = Math.max(maxX, xs[i]);
+      maxY = Math.max(maxY, ys[i]);
+    }
+    return mask.contains((minX + maxX) / 2.0, (minY + maxY) / 2.0);
+  }
+}
@@ -0,0 +1,247 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+/**
+ * Polygon operations on primitive coordinate arrays, the pure Java counterparts of the
+ * OpenCV calls made by the {@link PlateDetector}: arcLength, approxPolyDP, contourArea,
+ * isContourConvex and minAreaRect.
+ *
+ * Callers pass in the scratch arrays so that nothing is allocated per contour, apart from
+ * the {@link RotatedRect} returned for an accepted candidate.
+ */
+public class JavaPolygons {
+  /**
+   * Iterations used to pick the starting point of a closed curve, as in OpenCV.
+   */
+  private static final int INITIAL_ITERATIONS = 3;
+
+  /**
+   * Perimeter of a closed contour.
+   */
+  public static double arcLength(int[] xs, int[] ys, int start, int length) {
+    double perimeter = 0;
+    for (int i = 0, j = length - 1; i < length; j = i++) {
+      double dx = xs[start + i] - xs[start + j];
+      double dy = ys[start + i] - ys[start + j];
+      perimeter += Math.sqrt(dx * dx + dy * dy);
+    }
+    return perimeter;
+  }
+
+  /**
+   * Douglas-Peucker approximation of a closed contour.
+   *
+   * The curve is split at two far apart points, picked as OpenCV does by walking to the
+   * farthest point a few times, and each half is simplified with an explicit stack. A final
+   * pass drops vertices that lie within epsilon of the line through their neighbours.
+   *
+   * @param out receives the indices of the kept points relative to start, needs length entries.
+   * @param stack scratch for the recursion, needs 2 * length + 4 entries.
+   * @return the number of points kept.
+   */
+  public static int approxPolyDP(int[] xs, int[] ys, int start, int length, double epsilon, int[] out, int[] stack) {
+    if (length <= 2) {
+      for (int i = 0; i < length; i++) {
+        out[i] = i;
+      }
+      return length;
+    }
+
+    double epsilonSquared = epsilon * epsilon;
+
+    // Pick two far apart points to split the closed curve at.
+    int first = 0;
+    int second = 0;
+    for (int iteration = 0; iteration < INITIAL_ITERATIONS; iteration++) {
+      first = second;
+      double farthest = 0;
+      for (int i = 0; i < length; i++) {
+        double dx = xs[start + i] - xs[start + first];
+        double dy = ys[start + i] - ys[start + first];
+        double distance = dx * dx + dy * dy;
+        if (distance > farthest) {
+          farthest = distance;
+          second = i;
+        }
+      }
+      if (farthest <= epsilonSquared) {
+        out[0] = first;
+        return 1;
+      }
+    }
+
+    // Segments from one point to another along the curve with wrap around, pushed as to then
+    // from. The later half of a segment is pushed first so the output comes out in order.
+    int top = 0;
+    stack[top++] = first;
+    stack[top++] = second;
+    stack[top++] = second;
+    stack[top++] = first;
+
+    int count = 0;
+    while (top > 0) {
+      int from = stack[--top];
+      int to = stack[--top];
+
+      int ax = xs[start + from], ay = ys[start + from];
+      double dx = xs[start + to] - ax;
+      double dy = ys[start + to] - ay;
+      double lengthSquared = dx * dx + dy * dy;
+
+      int farthestIndex = -1;
+      double farthest = -1;
+      for (int i = (from + 1) % length; i != to; i = (i + 1) % length) {
+        double px = xs[start + i] - ax;
+        double py = ys[start + i] - ay;
+        double cross = py * dx - px * dy;
+        double distance = cross * cross;
+        if (distance > farthest) {
+          farthest = distance;
+          farthestIndex = i;
+        }
+      }
+
+      if (farthestIndex >= 0 && farthest > epsilonSquared * lengthSquared) {
+        stack[top++] = to;
+        stack[top++] = farthestIndex;
+        stack[top++] = farthestIndex;
+        stack[top++] = from;
+      } else {
+        out[count++] = from;
+      }
+    }
+
+    // Drop vertices within epsilon of the line through their neighbours.
+    int kept = count;
+    for (int i = 0; i < kept && kept > 3; ) {
+      int previous = out[(i + kept - 1) % kept];
+      int current = out[i];
+      int next = out[(i + 1) % kept];
+      double dx = xs[start + next] - xs[start + previous];
+      double dy = ys[start + next] - ys[start + previous];
+      double px = xs[start + current] - xs[start + previous];
+      double py = ys[start + current] - ys[start + previous];
+      double cross = py * dx - px * dy;
+      if (cross * cross <= epsilonSquared * (dx * dx + dy * dy)) {
+        System.arraycopy(out, i + 1, out, i, kept - i - 1);
+        kept--;
+      } else {
+        i++;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Unsigned area of a polygon.
+   */
+  public static double area(double[] x, double[] y, int n) {
+    double area = 0;
+    for (int i = 0, j = n - 1; i < n; j = i++) {
+      area += x[j] * y[i] - x[i] * y[j];
+    }
+    return Math.abs(area / 2);
+  }
+
+  /**
+   * @return true when every turn of the polygon is in the same direction.
+   */
+  public static boolean isConvex(double[] x, double[] y, int n) {
+    int sign = 0;
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      int k = (i + 2) % n;
+      double cross = (x[j] - x[i]) * (y[k] - y[j]) - (y[j] - y[i]) * (x[k] - x[j]);
+      int turn = cross > 0 ? 1 : cross < 0 ? -1 : 0;
+      if (turn != 0) {
+        if (sign != 0 && turn != sign) {
+          return false;
+        }
+        sign = turn;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Largest cosine of the corner angles of a quadrilateral, as {@link Utils#isRectangleInShape}.
+   */
+  public static double maxCosine(double[] x, double[] y) {
+    double largest = 0;
+    for (int j = 2; j < 5; j++) {
+      int a = j % 4, b = j - 2, o = j - 1;
+      double dx1 = x[a] - x[o];
+      double dy1 = y[a] - y[o];
+      double dx2 = x[b] - x[o];
+      double dy2 = y[b] - y[o];
+      double cosine = (dx1 * dx2 + dy1 * dy2) / Math.sqrt((dx1 * dx1 + dy1 * dy1) * (dx2 * dx2 + dy2 * dy2) + 1e-10);
+      largest = Math.max(largest, Math.abs(cosine));
+    }
+    return largest;
+  }
+
+  /**
+   * Minimum area rectangle of a convex polygon.
+   *
+   * One side of the minimum rectangle lies along an edge of the convex hull, so each edge
+   * is tried in turn with the points projected onto it. The candidates here are quadrilaterals
+   * so the quadratic cost is immaterial. The angle follows OpenCV 4.2, in the range [-90, 0).
+   */
+  public static RotatedRect minAreaRect(double[] x, double[] y, int n) {
+    double bestArea = Double.MAX_VALUE;
+    double centreX = 0, centreY = 0, width = 0, height = 0, angle = 0;
+
+    for (int i = 0; i < n; i++) {
+      int j = (i + 1) % n;
+      double ex = x[j] - x[i];
+      double ey = y[j] - y[i];
+      double length = Math.sqrt(ex * ex + ey * ey);
+      if (length == 0) {
+        continue;
+      }
+      double ux = ex / length, uy = ey / length;
+
+      double minU = Double.MAX_VALUE, maxU = -Double.MAX_VALUE;
+      double minV = Double.MAX_VALUE, maxV = -Double.MAX_VALUE;
+      for (int k = 0; k < n; k++) {
+        double u = x[k] * ux + y[k] * uy;
+        double v = -x[k] * uy + y[k] * ux;
+        minU = Math.min(minU, u);
+        maxU = Math.max(maxU, u);
+        minV = Math.min(minV, v);
+        maxV = Math.max(maxV, v);
+      }
+
+      double area = (maxU - minU) * (maxV - minV);
+      if (area < bestArea) {
+        bestArea = area;
+        double u = (minU + maxU) / 2;
+        double v = (minV + maxV) / 2;
+        centreX = u * ux - v * uy;
+        centreY = u * uy + v * ux;
+        width = maxU - minU;
+        height = maxV - minV;
+        angle = Math.toDegrees(Math.atan2(uy, ux));
+      }
+    }
+
+    // Each quarter turn of the reference side swaps the width and the height.
+    while (angle >= 0) {
+      angle -= 90;
+      double swap = width;
+      width = height;
+      height = swap;
+    }
+    while (angle < -90) {
+      angle += 90;
+      double swap = width;
+      width = height;
+      height = swap;
+    }
+
+    return new RotatedRect(new Point(centreX, centreY), new Size(width, height), angle);
+  }
+}
@@ -0,0 +1,29 @@
+package dev.robertpitt.anprX;
+
+import java.util.Locale;
+
+/**
+ * Helpers for the hand written JSON of the HTTP service and the sighting exporter.
+ */
+public final class Json {
+  private Json() {
+  }
+
+  /**
+   * @return the text escaped for use inside a JSON string literal.
+   */
+  public static String escape(String text) {
+    StringBuilder out = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.append('\\').append(c);
+      } else if (c < 0x20) {
+        out.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        out.append(c);
+      }
+    }
+    return out.toString();
+  }
+}
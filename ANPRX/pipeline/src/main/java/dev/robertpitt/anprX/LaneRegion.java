@@ -0,0 +1,57 @@
+package dev.robertpitt.anprX;
+
+/**
+ * Polygonal region of interest within the camera view, typically one traffic lane.
+ *
+ * Vertices are stored normalised to the range 0 - 1 so that a region definition
+ * survives changes in the analysis resolution.
+ */
+public class LaneRegion {
+  /**
+   * Name of the region, used for logging and reporting.
+   */
+  public final String name;
+
+  /**
+   * Normalised polygon vertices.
+   */
+  private final double[] xs;
+  private final double[] ys;
+
+  public LaneRegion(String name, double[] xs, double[] ys) {
+    if (xs.length != ys.length || xs.length < 3) {
+      throw new IllegalArgumentException("Region " + name + " needs at least 3 vertices");
+    }
+    this.name = name;
+    this.xs = xs.clone();
+    this.ys = ys.clone();
+  }
+
+  public int size() {
+    return xs.length;
+  }
+
+  public double x(int i) {
+    return xs[i];
+  }
+
+  public double y(int i) {
+    return ys[i];
+  }
+
+  /**
+   * Even-odd point in polygon test on pixel coordinates scaled from the normalised
+   * vertices, done in Java to avoid a JNI crossing per contour.
+   */
+  public boolean contains(double x, double y, double width, double height) {
+    boolean inside = false;
+    for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+      double xi = xs[i] * width, yi = ys[i] * height;
+      double xj = xs[j] * width, yj = ys[j] * height;
+      if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+}
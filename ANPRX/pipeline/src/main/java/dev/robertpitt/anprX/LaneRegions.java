@@ -0,0 +1,212 @@
+package dev.robertpitt.anprX;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opencv.core.Rect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable set of {@link LaneRegion}s for a single camera.
+ *
+ * The detector only searches the bounding rectangles of the regions and rejects candidates
+ * whose centre falls outside every polygon. Sets are swapped on the detector as a whole, so a
+ * new definition can be loaded while the analysis pipeline is running.
+ *
+ * Definitions are stored as JSON, with vertices normalised to the frame size:
+ *
+ *   {
+ *     "camera": "entrance",
+ *     "regions": [
+ *       { "name": "lane-1", "points": [[0.05, 0.40], [0.55, 0.40], [0.60, 0.95], [0.00, 0.95]] }
+ *     ]
+ *   }
+ */
+public class LaneRegions {
+  /**
+   * Pixel search areas of a region set for a given frame size.
+   */
+  public static class Mask {
+    public final int width;
+    public final int height;
+
+    /**
+     * Non overlapping bounding rectangles of the regions, clamped to the frame.
+     */
+    public final List<Rect> areas;
+
+    private final List<LaneRegion> regions;
+
+    Mask(int width, int height, List<Rect> areas, List<LaneRegion> regions) {
+      this.width = width;
+      this.height = height;
+      this.areas = areas;
+      this.regions = regions;
+    }
+
+    /**
+     * @return true if the pixel coordinate falls within any of the regions.
+     */
+    public boolean contains(double x, double y) {
+      for (int i = 0; i < regions.size(); i++) {
+        if (regions.get(i).contains(x, y, width, height)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Camera the regions belong to.
+   */
+  public final String camera;
+
+  /**
+   * Regions in the set.
+   */
+  public final List<LaneRegion> regions;
+
+  /**
+   * Mask for the most recent frame size, frame sizes rarely change so one entry is enough.
+   */
+  private volatile Mask cachedMask;
+
+  public LaneRegions(String camera, List<LaneRegion> regions) {
+    this.camera = camera;
+    this.regions = Collections.unmodifiableList(new ArrayList<>(regions));
+  }
+
+  public boolean isEmpty() {
+    return regions.isEmpty();
+  }
+
+  /**
+   * @return the pixel mask of the regions for the given frame size.
+   */
+  public Mask maskFor(int width, int height) {
+    Mask mask = cachedMask;
+    if (mask != null && mask.width == width && mask.height == height) {
+      return mask;
+    }
+
+    List<Rect> areas = new ArrayList<>();
+    for (LaneRegion region : regions) {
+      double minX = 1, minY = 1, maxX = 0, maxY = 0;
+      for (int i = 0; i < region.size(); i++) {
+        minX = Math.min(minX, region.x(i));
+        minY = Math.min(minY, region.y(i));
+        maxX = Math.max(maxX, region.x(i));
+        maxY = Math.max(maxY, region.y(i));
+      }
+
+      int x = clamp((int) Math.floor(minX * width), width);
+      int y = clamp((int) Math.floor(minY * height), height);
+      int right = clamp((int) Math.ceil(maxX * width), width);
+      int bottom = clamp((int) Math.ceil(maxY * height), height);
+      if (right > x && bottom > y) {
+        areas.add(new Rect(x, y, right - x, bottom - y));
+      }
+    }
+
+    mask = new Mask(width, height, Utils.mergeOverlappingRects(areas), regions);
+    cachedMask = mask;
+    return mask;
+  }
+
+  /**
+   * Regions are defined on the upright frame, detection runs on frames in sensor orientation.
+   * @param rotationDegrees clockwise rotation from sensor to upright, one of 0, 90, 180, 270.
+   * @return the regions with their vertices mapped to sensor orientation.
+   */
+  public LaneRegions toSensor(int rotationDegrees) {
+    int rotation = ((rotationDegrees % 360) + 360) % 360;
+    if (rotation == 0) {
+      return this;
+    }
+
+    List<LaneRegion> mapped = new ArrayList<>();
+    for (LaneRegion region : regions) {
+      double[] xs = new double[region.size()];
+      double[] ys = new double[region.size()];
+      for (int i = 0; i < region.size(); i++) {
+        double u = region.x(i);
+        double v = region.y(i);
+        switch (rotation) {
+          case 90:
+            xs[i] = v;
+            ys[i] = 1 - u;
+            break;
+          case 180:
+            xs[i] = 1 - u;
+            ys[i] = 1 - v;
+            break;
+          case 270:
+            xs[i] = 1 - v;
+            ys[i] = u;
+            break;
+          default:
+            throw new IllegalArgumentException("Unsupported rotation " + rotationDegrees);
+        }
+      }
+      mapped.add(new LaneRegion(region.name, xs, ys));
+    }
+    return new LaneRegions(camera, mapped);
+  }
+
+  /**
+   * Load a region definition from a JSON file.
+   */
+  public static LaneRegions load(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      byte[] data = new byte[(int) file.length()];
+      int read = 0;
+      while (read < data.length) {
+        int count = in.read(data, read, data.length - read);
+        if (count < 0) {
+          break;
+        }
+        read += count;
+      }
+      return parse(new String(data, 0, read, "UTF-8"));
+    }
+  }
+
+  /**
+   * Parse a region definition.
+   */
+  public static LaneRegions parse(String json) throws IOException {
+    try {
+      JSONObject root = new JSONObject(json);
+      JSONArray regionsJson = root.getJSONArray("regions");
+      List<LaneRegion> regions = new ArrayList<>();
+
+      for (int r = 0; r < regionsJson.length(); r++) {
+        JSONObject regionJson = regionsJson.getJSONObject(r);
+        JSONArray points = regionJson.getJSONArray("points");
+        double[] xs = new double[points.length()];
+        double[] ys = new double[points.length()];
+        for (int p = 0; p < points.length(); p++) {
+          xs[p] = points.getJSONArray(p).getDouble(0);
+          ys[p] = points.getJSONArray(p).getDouble(1);
+        }
+        regions.add(new LaneRegion(regionJson.optString("name", "region-" + r), xs, ys));
+      }
+
+      return new LaneRegions(root.optString("camera", ""), regions);
+    } catch (JSONException | IllegalArgumentException e) {
+      throw new IOException("Invalid region definition: " + e.getMessage(), e);
+    }
+  }
+
+  private static int clamp(int value, int max) {
+    return Math.max(0, Math.min(max, value));
+  }
+}
@@ -0,0 +1,82 @@
+package dev.robertpitt.anprX;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Collects latency samples and summarises them as percentiles.
+ *
+ * Samples are kept in a growable primitive array, recording does not allocate once the
+ * array has grown to the size of the run. Not thread safe.
+ */
+public class LatencyRecorder {
+  /**
+   * Recorded samples in nanoseconds.
+   */
+  private long[] samples = new long[1024];
+
+  /**
+   * Number of recorded samples.
+   */
+  private int count = 0;
+
+  /**
+   * Sum of all samples, used for the mean.
+   */
+  private long total = 0;
+
+  public void record(long nanos) {
+    if (count == samples.length) {
+      samples = Arrays.copyOf(samples, samples.length * 2);
+    }
+    samples[count++] = nanos;
+    total += nanos;
+  }
+
+  /**
+   * Add every sample of another recorder, used to merge per thread recorders.
+   */
+  public void addAll(LatencyRecorder other) {
+    for (int i = 0; i < other.count; i++) {
+      record(other.samples[i]);
+    }
+  }
+
+  public int count() {
+    return count;
+  }
+
+  public long total() {
+    return total;
+  }
+
+  public double meanMillis() {
+    return count == 0 ? 0 : total / (double) count / 1e6;
+  }
+
+  /**
+   * @param percentile value between 0 and 100.
+   * @return the latency at the given percentile in milliseconds.
+   */
+  public double percentileMillis(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, rank))] / 1e6;
+  }
+
+  public void reset() {
+    count = 0;
+    total = 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "n=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+        count, meanMillis(), percentileMillis(50), percentileMillis(95), percentileMillis(99), percentileMillis(100));
+  }
+}
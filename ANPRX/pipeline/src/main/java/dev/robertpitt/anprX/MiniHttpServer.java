@@ -0,0 +1,242 @@
+package dev.robertpitt.anprX;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Minimal embedded HTTP/1.1 server, one request per connection.
+ *
+ * There is no HTTP server in the Android platform, this is just enough to serve the local
+ * tooling (stream stand-ins, the recognition service and test stubs) without a dependency.
+ * It uses no Android APIs so the same tooling runs on a build host.
+ */
+public class MiniHttpServer implements Closeable {
+  /**
+   * Name of the accepting thread.
+   */
+  private static final String TAG = "ANPRX::MiniHttpServer";
+
+  /**
+   * Largest request body accepted.
+   */
+  private static final int MAX_BODY_SIZE = 32 * 1024 * 1024;
+
+  /**
+   * Parsed request.
+   */
+  public static class Request {
+    public final String method;
+    public final String path;
+    public final Map<String, String> headers;
+    public final byte[] body;
+
+    Request(String method, String path, Map<String, String> headers, byte[] body) {
+      this.method = method;
+      this.path = path;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    /**
+     * @param name header name, case insensitive.
+     */
+    public String header(String name) {
+      return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+  }
+
+  /**
+   * Handles a request by writing a complete response to the output stream, handlers that
+   * stream (such as MJPEG) may keep writing until the client disconnects.
+   */
+  public interface Handler {
+    void handle(Request request, OutputStream out) throws IOException;
+  }
+
+  private final ServerSocket serverSocket;
+  private final ExecutorService connections;
+  private final Handler handler;
+  private final Thread acceptor;
+
+  /**
+   * Listen on the loopback interface only.
+   *
+   * @param port port to listen on, 0 for any free port.
+   * @param threads number of connections handled concurrently.
+   */
+  public MiniHttpServer(int port, int threads, Handler handler) throws IOException {
+    this(InetAddress.getLoopbackAddress(), port, threads, handler);
+  }
+
+  /**
+   * @param bindAddress interface to listen on, the wildcard address for all of them.
+   * @param port port to listen on, 0 for any free port.
+   * @param threads number of connections handled concurrently.
+   */
+  public MiniHttpServer(InetAddress bindAddress, int port, int threads, Handler handler) throws IOException {
+    this.serverSocket = new ServerSocket(port, 128, bindAddress);
+    this.connections = Executors.newFixedThreadPool(threads);
+    this.handler = handler;
+    this.acceptor = new Thread(this::accept, TAG);
+    this.acceptor.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    connections.shutdownNow();
+  }
+
+  /**
+   * Write a complete response with a body.
+   */
+  public static void respond(OutputStream out, int status, String contentType, byte[] body) throws IOException {
+    String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+        + "Content-Type: " + contentType + "\r\n"
+        + "Content-Length: " + body.length + "\r\n"
+        + "Connection: close\r\n\r\n";
+    out.write(head.getBytes("US-ASCII"));
+    out.write(body);
+    out.flush();
+  }
+
+  public static void respond(OutputStream out, int status, String contentType, String body) throws IOException {
+    respond(out, status, contentType, body.getBytes("UTF-8"));
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final Socket socket = serverSocket.accept();
+        connections.execute(() -> serve(socket));
+      } catch (SocketException e) {
+        // Server socket closed.
+      } catch (RejectedExecutionException e) {
+        // Server shutting down.
+      } catch (IOException e) {
+        // Transient accept failure, keep accepting.
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (Socket s = socket) {
+      InputStream in = new BufferedInputStream(s.getInputStream());
+      OutputStream out = s.getOutputStream();
+
+      Request request = parse(in);
+      if (request == null) {
+        respond(out, 400, "text/plain", "Bad Request");
+        return;
+      }
+
+      try {
+        handler.handle(request, out);
+      } catch (RuntimeException e) {
+        respond(out, 500, "text/plain", "Internal Server Error: " + e);
+      }
+    } catch (IOException e) {
+      // Client went away.
+    }
+  }
+
+  private static Request parse(InputStream in) throws IOException {
+    String requestLine = readLine(in);
+    if (requestLine == null) {
+      return null;
+    }
+
+    String[] parts = requestLine.split(" ");
+    if (parts.length < 2) {
+      return null;
+    }
+
+    Map<String, String> headers = new HashMap<>();
+    String line;
+    while ((line = readLine(in)) != null && !line.isEmpty()) {
+      int colon = line.indexOf(':');
+      if (colon > 0) {
+        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+      }
+    }
+
+    byte[] body = new byte[0];
+    String length = headers.get("content-length");
+    if (length != null) {
+      int size;
+      try {
+        size = Integer.parseInt(length);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (size < 0 || size > MAX_BODY_SIZE) {
+        return null;
+      }
+
+      body = new byte[size];
+      int read = 0;
+      while (read < size) {
+        int count = in.read(body, read, size - read);
+        if (count < 0) {
+          return null;
+        }
+        read += count;
+      }
+    }
+
+    return new Request(parts[0], parts[1], headers, body);
+  }
+
+  /**
+   * Read a CRLF terminated line as ASCII.
+   */
+  static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+    int c;
+    while ((c = in.read()) >= 0) {
+      if (c == '\n') {
+        break;
+      }
+      if (c != '\r') {
+        line.write(c);
+      }
+    }
+    if (c < 0 && line.size() == 0) {
+      return null;
+    }
+    return line.toString("US-ASCII");
+  }
+
+  private static String reason(int status) {
+    switch (status) {
+      case 200: return "OK";
+      case 400: return "Bad Request";
+      case 404: return "Not Found";
+      case 405: return "Method Not Allowed";
+      case 413: return "Payload Too Large";
+      case 429: return "Too Many Requests";
+      case 500: return "Internal Server Error";
+      case 503: return "Service Unavailable";
+      case 504: return "Gateway Timeout";
+      default: return "Status";
+    }
+  }
+}
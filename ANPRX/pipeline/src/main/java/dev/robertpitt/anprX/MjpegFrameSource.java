@@ -0,0 +1,157 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Frame source reading a multipart/x-mixed-replace MJPEG stream over HTTP, as served by
+ * most IP cameras and by the MjpegStandIn tool.
+ */
+public class MjpegFrameSource implements FrameSource {
+  /**
+   * Timeouts for the connection.
+   */
+  private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+  private static final int READ_TIMEOUT_MILLIS = 10000;
+
+  private final HttpURLConnection connection;
+  private final InputStream in;
+
+  /**
+   * Reusable buffers for the encoded part.
+   */
+  private byte[] buffer = new byte[256 * 1024];
+  private final MatOfByte encoded = new MatOfByte();
+
+  /**
+   * Timestamp origin, frames are stamped with their arrival time.
+   */
+  private final long startNanos = System.nanoTime();
+  private long index = 0;
+
+  public MjpegFrameSource(String url) throws IOException {
+    connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+    String contentType = connection.getContentType();
+    if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/x-mixed-replace")) {
+      connection.disconnect();
+      throw new IOException(url + " is not an MJPEG stream: " + contentType);
+    }
+    in = new BufferedInputStream(connection.getInputStream());
+  }
+
+  @Override
+  public boolean read(Frame frame) throws IOException {
+    int length = -1;
+
+    // Skip the boundary and read the part headers.
+    String line;
+    boolean inHeaders = false;
+    while ((line = MiniHttpServer.readLine(in)) != null) {
+      if (line.startsWith("--")) {
+        inHeaders = true;
+        continue;
+      }
+      if (!inHeaders) {
+        continue;
+      }
+      if (line.isEmpty()) {
+        break;
+      }
+      int colon = line.indexOf(':');
+      if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+        length = Integer.parseInt(line.substring(colon + 1).trim());
+      }
+    }
+    if (line == null) {
+      return false;
+    }
+
+    int size = length >= 0 ? readExactly(length) : readUntilEndOfImage();
+    if (size < 0) {
+      return false;
+    }
+
+    encoded.fromArray(size == buffer.length ? buffer : Arrays.copyOf(buffer, size));
+    Mat decoded = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_GRAYSCALE);
+    if (decoded.empty()) {
+      throw new IOException("Unable to decode MJPEG part " + index);
+    }
+    decoded.copyTo(frame.grey);
+    decoded.release();
+
+    frame.index = index++;
+    frame.timestampNanos = System.nanoTime() - startNanos;
+    frame.rotationDegrees = 0;
+    return true;
+  }
+
+  /**
+   * Drop the connection, a read blocked on the socket in another thread returns or fails
+   * straight away instead of waiting out the read timeout. The decode buffers are kept until
+   * {@link #close()}, so this is safe to call while the source is being read.
+   */
+  public void disconnect() {
+    connection.disconnect();
+  }
+
+  @Override
+  public void close() {
+    disconnect();
+    try {
+      in.close();
+    } catch (IOException e) {
+      // Already closed.
+    }
+    encoded.release();
+  }
+
+  private int readExactly(int length) throws IOException {
+    if (buffer.length < length) {
+      buffer = new byte[length];
+    }
+    int read = 0;
+    while (read < length) {
+      int count = in.read(buffer, read, length - read);
+      if (count < 0) {
+        return -1;
+      }
+      read += count;
+    }
+    return length;
+  }
+
+  /**
+   * Parts without a Content-Length header are read up to the JPEG end of image marker.
+   */
+  private int readUntilEndOfImage() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(buffer.length);
+    int previous = -1;
+    int c;
+    while ((c = in.read()) >= 0) {
+      out.write(c);
+      if (previous == 0xFF && c == 0xD9) {
+        byte[] data = out.toByteArray();
+        if (buffer.length < data.length) {
+          buffer = new byte[data.length];
+        }
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        return data.length;
+      }
+      previous = c;
+    }
+    return -1;
+  }
+}
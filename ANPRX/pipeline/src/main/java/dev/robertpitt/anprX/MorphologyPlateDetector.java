@@ -0,0 +1,231 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Morphology based plate detection, the classic alternative to the contour approach of the
+ * {@link PlateDetector}.
+ *
+ * 1. Sobel in x, the characters of a plate give a dense band of vertical edges.
+ * 2. Otsu binarisation of the gradient magnitude.
+ * 3. Morphological close with a wide, short kernel, joining the strokes of neighbouring
+ *    characters into one blob per row of characters.
+ * 4. connectedComponentsWithStats, keeping the blobs of plausible aspect, size and fill.
+ *
+ * It does not need the plate border to form a closed edge, and its cost does not grow with
+ * the clutter of the scene. The blob covers the characters only, so it is grown to the plate
+ * outline using the dimensions in the {@link PlateDetector} header: characters are 79mm of
+ * the 111mm plate height and the text spans the plate width less the 11mm margins.
+ *
+ * From the {@link DetectorConfig} only the area range applies, to the grown rectangle.
+ */
+public class MorphologyPlateDetector implements Detector {
+  /**
+   * Closing kernel, wide enough to bridge the 33mm gap between the character groups at the
+   * plate sizes seen in the 640x480 analysis frames.
+   */
+  private static final Size CLOSE_KERNEL = new Size(17, 3);
+
+  /**
+   * Accepted width to height ratio of a character band, the full band of a UK plate is
+   * about 4.5 and a single group of characters about 2.
+   */
+  private static final double MIN_ASPECT = 2.0;
+  private static final double MAX_ASPECT = 8.0;
+
+  /**
+   * Smallest fraction of the bounding box covered by the blob.
+   */
+  private static final double MIN_FILL = 0.45;
+
+  /**
+   * Growth from the character band to the plate outline.
+   */
+  private static final double GROW_HEIGHT = 111.0 / 79.0;
+  private static final double GROW_WIDTH = 520.0 / (520.0 - 2 * 11.0);
+
+  private volatile DetectorConfig config = DetectorConfig.DEFAULT;
+  private volatile LaneRegions regions;
+
+  /**
+   * Working state, reused between frames.
+   */
+  private final Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, CLOSE_KERNEL);
+  private final Mat gradient = new Mat();
+  private final Mat magnitude = new Mat();
+  private final Mat binary = new Mat();
+  private final Mat labels = new Mat();
+  private final Mat stats = new Mat();
+  private final Mat centroids = new Mat();
+  private final Mat mask = new Mat();
+  private final MatOfPoint points = new MatOfPoint();
+  private final MatOfPoint2f points2f = new MatOfPoint2f();
+  private int[] statValues = new int[0];
+
+  @Override
+  public void setConfig(DetectorConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public DetectorConfig getConfig() {
+    return config;
+  }
+
+  @Override
+  public void setRegions(LaneRegions regions) {
+    this.regions = regions;
+  }
+
+  @Override
+  public LaneRegions getRegions() {
+    return regions;
+  }
+
+  @Override
+  public List<RotatedRect> detect(Mat grayscale) {
+    LaneRegions regions = this.regions;
+    if (regions != null && !regions.isEmpty()) {
+      LaneRegions.Mask mask = regions.maskFor(grayscale.cols(), grayscale.rows());
+      return detect(grayscale, mask.areas, mask);
+    }
+
+    List<Rect> whole = new ArrayList<>();
+    whole.add(new Rect(0, 0, grayscale.cols(), grayscale.rows()));
+    return detect(grayscale, whole, null);
+  }
+
+  @Override
+  public List<RotatedRect> detect(Mat grayscale, List<Rect> areas) {
+    LaneRegions regions = this.regions;
+    if (regions == null || regions.isEmpty()) {
+      return detect(grayscale, areas, null);
+    }
+
+    LaneRegions.Mask mask = regions.maskFor(grayscale.cols(), grayscale.rows());
+    List<Rect> restricted = new ArrayList<>();
+    for (int i = 0; i < areas.size(); i++) {
+      for (int j = 0; j < mask.areas.size(); j++) {
+        Rect intersection = Utils.intersect(areas.get(i), mask.areas.get(j));
+        if (intersection != null) {
+          restricted.add(intersection);
+        }
+      }
+    }
+    return detect(grayscale, restricted, mask);
+  }
+
+  private List<RotatedRect> detect(Mat grayscale, List<Rect> areas, LaneRegions.Mask regionMask) {
+    DetectorConfig config = this.config;
+    List<RotatedRect> plates = new ArrayList<>();
+
+    for (int a = 0; a < areas.size(); a++) {
+      Rect area = areas.get(a);
+      Mat region = grayscale.submat(area);
+
+      /**
+       * 1. Vertical edges
+       */
+      Imgproc.Sobel(region, gradient, CvType.CV_16S, 1, 0);
+      Core.convertScaleAbs(gradient, magnitude);
+      region.release();
+
+      /**
+       * 2. Binarise
+       */
+      Imgproc.threshold(magnitude, binary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+
+      /**
+       * 3. Join the characters of a row
+       */
+      Imgproc.morphologyEx(binary, binary, Imgproc.MORPH_CLOSE, kernel);
+
+      /**
+       * 4. Filter the connected components
+       */
+      int count = Imgproc.connectedComponentsWithStats(binary, labels, stats, centroids, 8, CvType.CV_32S);
+      if (statValues.length < count * 5) {
+        statValues = new int[count * 5];
+      }
+      if (count > 0) {
+        stats.get(0, 0, statValues);
+      }
+
+      // Label 0 is the background.
+      for (int label = 1; label < count; label++) {
+        int x = statValues[label * 5 + Imgproc.CC_STAT_LEFT];
+        int y = statValues[label * 5 + Imgproc.CC_STAT_TOP];
+        int width = statValues[label * 5 + Imgproc.CC_STAT_WIDTH];
+        int height = statValues[label * 5 + Imgproc.CC_STAT_HEIGHT];
+        int pixels = statValues[label * 5 + Imgproc.CC_STAT_AREA];
+
+        double aspect = width / (double) height;
+        if (aspect < MIN_ASPECT || aspect > MAX_ASPECT) {
+          continue;
+        }
+        if (pixels < MIN_FILL * width * height) {
+          continue;
+        }
+        double plateArea = width * GROW_WIDTH * height * GROW_HEIGHT;
+        if (plateArea < config.minArea || plateArea > config.maxArea) {
+          continue;
+        }
+        if (regionMask != null && !regionMask.contains(area.x + x + width / 2.0, area.y + y + height / 2.0)) {
+          continue;
+        }
+
+        plates.add(outline(label, new Rect(x, y, width, height), area));
+      }
+    }
+    return plates;
+  }
+
+  /**
+   * Minimum area rectangle of a component grown to the plate outline, in frame coordinates.
+   */
+  private RotatedRect outline(int label, Rect box, Rect area) {
+    Mat component = labels.submat(box);
+    Core.compare(component, new Scalar(label), mask, Core.CMP_EQ);
+    component.release();
+    Core.findNonZero(mask, points);
+    points.convertTo(points2f, CvType.CV_32FC2);
+    RotatedRect band = Imgproc.minAreaRect(points2f);
+
+    boolean wide = band.size.width >= band.size.height;
+    double growWidth = wide ? GROW_WIDTH : GROW_HEIGHT;
+    double growHeight = wide ? GROW_HEIGHT : GROW_WIDTH;
+    return new RotatedRect(
+        new Point(band.center.x + box.x + area.x, band.center.y + box.y + area.y),
+        new Size(band.size.width * growWidth, band.size.height * growHeight),
+        band.angle);
+  }
+
+  /**
+   * Release the native working state.
+   */
+  public void release() {
+    kernel.release();
+    gradient.release();
+    magnitude.release();
+    binary.release();
+    labels.release();
+    stats.release();
+    centroids.release();
+    mask.release();
+    points.release();
+    points2f.release();
+  }
+}
@@ -0,0 +1,282 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cheap motion gate run ahead of the detector.
+ *
+ * The Y plane is downsampled heavily (one resize call), then compared block by block against
+ * a running background. Blocks where enough pixels differ from the background are active, and
+ * detection only runs on the frame areas covered by active blocks, or not at all when the
+ * scene is static.
+ *
+ * All per-frame work after the resize is done on preallocated primitive arrays.
+ */
+public class MotionGate {
+  /**
+   * Factor the frame is downsampled by before differencing.
+   */
+  private final int downsample;
+
+  /**
+   * Size of a block in downsampled pixels.
+   */
+  private final int blockSize;
+
+  /**
+   * Absolute grey level difference for a pixel to count as changed.
+   */
+  private final int pixelThreshold;
+
+  /**
+   * Fraction of changed pixels for a block to count as active.
+   */
+  private final float blockFraction;
+
+  /**
+   * Background learning rate as a shift, the background moves 1 / 2^shift of the way
+   * towards the current frame on each update.
+   */
+  private final int learningShift;
+
+  /**
+   * Downsampled frame
+   */
+  private final Mat small = new Mat();
+  private byte[] pixels = new byte[0];
+
+  /**
+   * Running background in 8.8 fixed point.
+   */
+  private int[] background = new int[0];
+
+  /**
+   * Block grid state, activity is a decaying heat value per block for debugging.
+   */
+  private int smallWidth = -1;
+  private int smallHeight = -1;
+  private int blocksX;
+  private int blocksY;
+  private boolean[] active = new boolean[0];
+  private byte[] activity = new byte[0];
+  private int[] changed = new int[0];
+  private int[] stack = new int[0];
+  private boolean[] visited = new boolean[0];
+
+  /**
+   * Metrics
+   */
+  private long frames = 0;
+  private long skipped = 0;
+  private long activeBlocks = 0;
+  private long totalBlocks = 0;
+
+  public MotionGate() {
+    this(8, 8, 18, 0.08f, 4);
+  }
+
+  /**
+   * @param downsample factor the frame is reduced by before differencing.
+   * @param blockSize block size in downsampled pixels.
+   * @param pixelThreshold grey level difference for a pixel to count as changed.
+   * @param blockFraction fraction of changed pixels for a block to be active.
+   * @param learningShift background learning rate as a power of two.
+   */
+  public MotionGate(int downsample, int blockSize, int pixelThreshold, float blockFraction, int learningShift) {
+    this.downsample = downsample;
+    this.blockSize = blockSize;
+    this.pixelThreshold = pixelThreshold;
+    this.blockFraction = blockFraction;
+    this.learningShift = learningShift;
+  }
+
+  /**
+   * Update the background with the frame and compute the areas in motion.
+   *
+   * @param grey full resolution greyscale frame.
+   * @return the areas of the frame, in full resolution coordinates, that contain motion.
+   *         Empty when the frame can be skipped. The first frame is always fully active.
+   */
+  public List<Rect> update(Mat grey) {
+    int width = Math.max(1, grey.cols() / downsample);
+    int height = Math.max(1, grey.rows() / downsample);
+    Imgproc.resize(grey, small, new Size(width, height), 0, 0, Imgproc.INTER_AREA);
+
+    boolean reset = width != smallWidth || height != smallHeight;
+    if (reset) {
+      allocate(width, height);
+    }
+
+    int size = width * height;
+    small.get(0, 0, pixels);
+    frames++;
+
+    List<Rect> areas = new ArrayList<>();
+    if (reset) {
+      for (int i = 0; i < size; i++) {
+        background[i] = (pixels[i] & 0xFF) << 8;
+      }
+      areas.add(new Rect(0, 0, grey.cols(), grey.rows()));
+      return areas;
+    }
+
+    /**
+     * 1. Difference against the background and update it.
+     */
+    for (int i = 0; i < changed.length; i++) {
+      changed[i] = 0;
+    }
+    for (int y = 0; y < height; y++) {
+      int row = y * width;
+      int blockRow = Math.min(y / blockSize, blocksY - 1) * blocksX;
+      for (int x = 0; x < width; x++) {
+        int i = row + x;
+        int value = (pixels[i] & 0xFF) << 8;
+        int diff = value - background[i];
+        if (Math.abs(diff) > pixelThreshold << 8) {
+          changed[blockRow + Math.min(x / blockSize, blocksX - 1)]++;
+        }
+        background[i] += diff >> learningShift;
+      }
+    }
+
+    /**
+     * 2. Mark active blocks.
+     */
+    int blockPixels = blockSize * blockSize;
+    int activeCount = 0;
+    for (int b = 0; b < active.length; b++) {
+      active[b] = changed[b] > blockPixels * blockFraction;
+      if (active[b]) {
+        activeCount++;
+        activity[b] = (byte) 255;
+      } else {
+        activity[b] = (byte) ((activity[b] & 0xFF) * 7 / 8);
+      }
+    }
+    activeBlocks += activeCount;
+    totalBlocks += active.length;
+
+    if (activeCount == 0) {
+      skipped++;
+      return areas;
+    }
+
+    /**
+     * 3. Group active blocks, including their direct neighbours so a plate straddling a
+     * block boundary is searched in full, into rectangles in frame coordinates.
+     */
+    for (int b = 0; b < visited.length; b++) {
+      visited[b] = false;
+    }
+    int scale = blockSize * downsample;
+    for (int b = 0; b < active.length; b++) {
+      if (!active[b] || visited[b]) {
+        continue;
+      }
+
+      int minX = blocksX, minY = blocksY, maxX = -1, maxY = -1;
+      int top = 0;
+      stack[top++] = b;
+      visited[b] = true;
+      while (top > 0) {
+        int current = stack[--top];
+        int cx = current % blocksX;
+        int cy = current / blocksX;
+        minX = Math.min(minX, cx);
+        minY = Math.min(minY, cy);
+        maxX = Math.max(maxX, cx);
+        maxY = Math.max(maxY, cy);
+
+        for (int ny = Math.max(0, cy - 1); ny <= Math.min(blocksY - 1, cy + 1); ny++) {
+          for (int nx = Math.max(0, cx - 1); nx <= Math.min(blocksX - 1, cx + 1); nx++) {
+            int neighbour = ny * blocksX + nx;
+            if (active[neighbour] && !visited[neighbour]) {
+              visited[neighbour] = true;
+              stack[top++] = neighbour;
+            }
+          }
+        }
+      }
+
+      int x = Math.max(0, (minX - 1) * scale);
+      int y = Math.max(0, (minY - 1) * scale);
+      int right = Math.min(grey.cols(), (maxX + 2) * scale);
+      int bottom = Math.min(grey.rows(), (maxY + 2) * scale);
+      areas.add(new Rect(x, y, right - x, bottom - y));
+    }
+
+    return Utils.mergeOverlappingRects(areas);
+  }
+
+  /**
+   * @return per block activity heat, 255 for blocks active in the last frame, decaying after.
+   */
+  public byte[] getActivityMap() {
+    return activity;
+  }
+
+  public int getBlocksX() {
+    return blocksX;
+  }
+
+  public int getBlocksY() {
+    return blocksY;
+  }
+
+  public long getFrames() {
+    return frames;
+  }
+
+  public long getSkippedFrames() {
+    return skipped;
+  }
+
+  /**
+   * @return fraction of frames on which detection was skipped entirely.
+   */
+  public double getSkipRate() {
+    return frames == 0 ? 0 : skipped / (double) frames;
+  }
+
+  /**
+   * @return mean fraction of blocks active per frame, approximately the fraction of the
+   *         frame area still searched by the detector.
+   */
+  public double getActiveBlockRate() {
+    return totalBlocks == 0 ? 0 : activeBlocks / (double) totalBlocks;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "frames=%d skipped=%d skip-rate=%.1f%% active-blocks=%.1f%%",
+        frames, skipped, getSkipRate() * 100, getActiveBlockRate() * 100);
+  }
+
+  public void release() {
+    small.release();
+  }
+
+  private void allocate(int width, int height) {
+    smallWidth = width;
+    smallHeight = height;
+    blocksX = Math.max(1, width / blockSize);
+    blocksY = Math.max(1, height / blockSize);
+
+    int blocks = blocksX * blocksY;
+    pixels = new byte[width * height];
+    background = new int[width * height];
+    active = new boolean[blocks];
+    activity = new byte[blocks];
+    changed = new int[blocks];
+    stack = new int[blocks];
+    visited = new boolean[blocks];
+  }
+}
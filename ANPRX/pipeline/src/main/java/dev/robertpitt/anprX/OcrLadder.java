@@ -0,0 +1,225 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads a plate with the cheapest OCR configuration first and only escalates when the read
+ * is not trusted.
+ *
+ * Each rung normalises the greyscale crop to its own height, binarises it its own way and
+ * reads it with its own reader. A read is accepted when its mean and weakest word confidence
+ * reach the rung's minimum and the text is a valid {@link PlateFormat}, otherwise the next,
+ * more expensive rung is tried. When no rung is satisfied the best read seen is returned,
+ * preferring reads in a valid format.
+ *
+ * A rung that runs out of time ends the climb, the costlier rungs would only take longer.
+ *
+ * Which rung each plate finished on is kept in a histogram, along with the attempts and
+ * time of every rung, so the ladder can be tuned until most plates finish on the first.
+ * Not thread safe, like the readers it drives.
+ */
+public class OcrLadder {
+  /**
+   * A single OCR configuration.
+   */
+  public static class Rung {
+    public final String name;
+    public final PlateReader reader;
+
+    /**
+     * Height the crop is scaled to, 0 to read the crop as cropped.
+     */
+    public final int height;
+
+    /**
+     * Local threshold, null for the global Otsu threshold.
+     */
+    public final AdaptiveBinariser binariser;
+
+    /**
+     * Mean and weakest word confidence for a read to be accepted.
+     */
+    public final int minConfidence;
+
+    private long attempts = 0;
+    private long accepted = 0;
+    private long nanos = 0;
+
+    public Rung(String name, PlateReader reader, int height, AdaptiveBinariser binariser, int minConfidence) {
+      this.name = name;
+      this.reader = reader;
+      this.height = height;
+      this.binariser = binariser;
+      this.minConfidence = minConfidence;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "%s attempts=%d accepted=%d hit=%.1f%% mean=%.1fms",
+          name, attempts, accepted, attempts == 0 ? 0 : 100.0 * accepted / attempts,
+          attempts == 0 ? 0 : nanos / 1e6 / attempts);
+    }
+  }
+
+  private final List<Rung> rungs;
+
+  /**
+   * Index of the rung each plate finished on, plates no rung accepted or that timed out
+   * land in +Inf.
+   */
+  private final Histogram finishedOn;
+  private long reads = 0;
+  private long unaccepted = 0;
+  private long timeouts = 0;
+
+  /**
+   * Working crops reused between reads.
+   */
+  private final Mat scaled = new Mat();
+  private final Mat binary = new Mat();
+
+  /**
+   * @param rungs configurations from the cheapest to the most expensive.
+   */
+  public OcrLadder(List<Rung> rungs) {
+    if (rungs.isEmpty()) {
+      throw new IllegalArgumentException("A ladder needs at least one rung");
+    }
+    this.rungs = Collections.unmodifiableList(new ArrayList<>(rungs));
+
+    double[] bounds = new double[rungs.size()];
+    for (int i = 0; i < bounds.length; i++) {
+      bounds[i] = i;
+    }
+    finishedOn = new Histogram("anprx_ocr_rung", "Ladder rung each plate read was accepted on.", bounds);
+  }
+
+  /**
+   * The standard ladder: a small single line LSTM pass, then a larger crop with the Wolf
+   * threshold on the same reader, then the combined engines on a larger crop still.
+   *
+   * @param fast LSTM only reader in single line mode.
+   * @param combined combined engine reader in single line mode.
+   */
+  public static OcrLadder standard(PlateReader fast, PlateReader combined) {
+    List<Rung> rungs = new ArrayList<>();
+    rungs.add(new Rung("fast", fast, 32, new AdaptiveBinariser(), 75));
+    rungs.add(new Rung("wolf", fast, 48,
+        new AdaptiveBinariser(AdaptiveBinariser.Method.WOLF, AdaptiveBinariser.DEFAULT_WOLF_K, 0), 70));
+    rungs.add(new Rung("combined", combined, 64, new AdaptiveBinariser(), 60));
+    return new OcrLadder(rungs);
+  }
+
+  /**
+   * @param crop single channel 8 bit upright plate crop, not binarised, left untouched.
+   * @return the accepted read, or the best read seen when no rung accepted one.
+   */
+  public PlateRead read(Mat crop) {
+    reads++;
+    PlateRead best = null;
+    boolean bestValid = false;
+
+    for (int i = 0; i < rungs.size(); i++) {
+      Rung rung = rungs.get(i);
+      long start = System.nanoTime();
+      PlateRead read = rung.reader.read(prepare(crop, rung));
+      rung.nanos += System.nanoTime() - start;
+      rung.attempts++;
+
+      // Escalating a read that ran out of time would only spend more of it.
+      if (read.timedOut) {
+        timeouts++;
+        finishedOn.observe(rungs.size());
+        return best != null ? best : read;
+      }
+
+      boolean valid = PlateFormat.matches(read.text);
+      if (valid && read.confidence >= rung.minConfidence && read.minWordConfidence >= rung.minConfidence) {
+        rung.accepted++;
+        finishedOn.observe(i);
+        return read;
+      }
+
+      if (best == null || (valid && !bestValid) || (valid == bestValid && read.confidence > best.confidence)) {
+        best = read;
+        bestValid = valid;
+      }
+    }
+
+    unaccepted++;
+    finishedOn.observe(rungs.size());
+    return best;
+  }
+
+  /**
+   * Scale the crop to the rung height and binarise it into the working crop.
+   */
+  private Mat prepare(Mat crop, Rung rung) {
+    Mat source = crop;
+    if (rung.height > 0 && crop.rows() != rung.height && crop.rows() > 0) {
+      int width = Math.max(1, (int) Math.round(crop.cols() * rung.height / (double) crop.rows()));
+      int interpolation = rung.height < crop.rows() ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR;
+      Imgproc.resize(crop, scaled, new Size(width, rung.height), 0, 0, interpolation);
+      source = scaled;
+    }
+
+    if (rung.binariser != null) {
+      rung.binariser.binarise(source, binary);
+    } else {
+      AdaptiveBinariser.binariseGlobal(source, binary);
+    }
+    return binary;
+  }
+
+  public List<Rung> getRungs() {
+    return rungs;
+  }
+
+  /**
+   * @return fraction of reads accepted on the first rung.
+   */
+  public double firstRungRate() {
+    return reads == 0 ? 0 : rungs.get(0).accepted / (double) reads;
+  }
+
+  /**
+   * Append the rung histogram in the Prometheus text format.
+   */
+  public void render(StringBuilder out) {
+    finishedOn.render(out);
+  }
+
+  /**
+   * Close every distinct reader of the ladder.
+   */
+  public void close() {
+    Map<PlateReader, Boolean> closed = new IdentityHashMap<>();
+    for (Rung rung : rungs) {
+      if (closed.put(rung.reader, Boolean.TRUE) == null) {
+        rung.reader.close();
+      }
+    }
+    scaled.release();
+    binary.release();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append(String.format(Locale.ROOT, "reads=%d unaccepted=%d timeouts=%d first-rung=%.1f%%",
+        reads, unaccepted, timeouts, 100 * firstRungRate()));
+    for (Rung rung : rungs) {
+      builder.append("\n  ").append(rung);
+    }
+    return builder.toString();
+  }
+}
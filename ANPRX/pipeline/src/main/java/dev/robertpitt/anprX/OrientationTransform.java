@@ -0,0 +1,181 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Maps between the sensor orientation a frame is delivered in and the upright orientation it
+ * is displayed in, a clockwise rotation by a multiple of 90 degrees.
+ *
+ * Rotating a full frame before detection costs more than most detection stages, and the
+ * contour detector does not care which way up the frame is. Detection therefore runs on the
+ * sensor buffer as delivered and only its results are transformed: candidates are mapped
+ * to upright coordinates and each plate is cut out of the sensor frame already upright and
+ * deskewed, by a single warp of the plate sized patch.
+ *
+ * Instances are immutable, {@link #forFrame(int, int, int)} returns a transform for the
+ * sensor frame size and rotation, which is cached as they rarely change.
+ */
+public class OrientationTransform {
+  /**
+   * Most recently created transform, frame sizes and rotations rarely change.
+   */
+  private static volatile OrientationTransform cached;
+
+  /**
+   * Sensor frame size.
+   */
+  public final int sensorWidth;
+  public final int sensorHeight;
+
+  /**
+   * Clockwise rotation from sensor to upright, one of 0, 90, 180 or 270.
+   */
+  public final int rotationDegrees;
+
+  /**
+   * Affine map from sensor to upright pixel coordinates, [a b c; d e f].
+   */
+  private final double a, b, c, d, e, f;
+
+  public OrientationTransform(int sensorWidth, int sensorHeight, int rotationDegrees) {
+    this.sensorWidth = sensorWidth;
+    this.sensorHeight = sensorHeight;
+    this.rotationDegrees = ((rotationDegrees % 360) + 360) % 360;
+
+    // Pixel centres map onto pixel centres, matching Core.rotate.
+    switch (this.rotationDegrees) {
+      case 0:
+        a = 1; b = 0; c = 0;
+        d = 0; e = 1; f = 0;
+        break;
+      case 90:
+        a = 0; b = -1; c = sensorHeight - 1;
+        d = 1; e = 0; f = 0;
+        break;
+      case 180:
+        a = -1; b = 0; c = sensorWidth - 1;
+        d = 0; e = -1; f = sensorHeight - 1;
+        break;
+      case 270:
+        a = 0; b = 1; c = 0;
+        d = -1; e = 0; f = sensorWidth - 1;
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported rotation " + rotationDegrees);
+    }
+  }
+
+  /**
+   * @return the transform for a sensor frame, reusing the previous one when unchanged.
+   */
+  public static OrientationTransform forFrame(int sensorWidth, int sensorHeight, int rotationDegrees) {
+    OrientationTransform transform = cached;
+    if (transform == null || transform.sensorWidth != sensorWidth || transform.sensorHeight != sensorHeight
+        || transform.rotationDegrees != ((rotationDegrees % 360) + 360) % 360) {
+      transform = new OrientationTransform(sensorWidth, sensorHeight, rotationDegrees);
+      cached = transform;
+    }
+    return transform;
+  }
+
+  public boolean isIdentity() {
+    return rotationDegrees == 0;
+  }
+
+  /**
+   * @return true when the upright frame has the width and height of the sensor swapped.
+   */
+  public boolean swapsAxes() {
+    return rotationDegrees == 90 || rotationDegrees == 270;
+  }
+
+  public int uprightWidth() {
+    return swapsAxes() ? sensorHeight : sensorWidth;
+  }
+
+  public int uprightHeight() {
+    return swapsAxes() ? sensorWidth : sensorHeight;
+  }
+
+  /**
+   * Map a sensor pixel coordinate to upright coordinates.
+   */
+  public Point toUpright(Point sensor) {
+    return new Point(a * sensor.x + b * sensor.y + c, d * sensor.x + e * sensor.y + f);
+  }
+
+  /**
+   * Map an upright pixel coordinate back to sensor coordinates.
+   */
+  public Point toSensor(Point upright) {
+    // The linear part is a rotation, its inverse is its transpose.
+    double x = upright.x - c;
+    double y = upright.y - f;
+    return new Point(a * x + d * y, b * x + e * y);
+  }
+
+  /**
+   * Map a detection from sensor to upright coordinates.
+   *
+   * A quarter turn moves the width edge onto the direction of the height edge, so the sizes
+   * swap while the angle, which only matters modulo 90 degrees, stays the same. A half turn
+   * changes neither.
+   */
+  public RotatedRect toUpright(RotatedRect sensor) {
+    Size size = swapsAxes() ? new Size(sensor.size.height, sensor.size.width) : sensor.size.clone();
+    return new RotatedRect(toUpright(sensor.center), size, sensor.angle);
+  }
+
+  /**
+   * Cut an upright detection out of the sensor frame, deskewed so its long side is horizontal.
+   *
+   * Only the plate sized patch is warped, the frame itself is neither rotated nor copied.
+   *
+   * @param sensor frame in sensor orientation.
+   * @param upright detection in upright coordinates, see {@link #toUpright(RotatedRect)}.
+   * @return a new patch, released by the caller.
+   */
+  public Mat crop(Mat sensor, RotatedRect upright) {
+    double angle = upright.angle;
+    double width = upright.size.width;
+    double height = upright.size.height;
+    if (height > width) {
+      angle += 90;
+      width = upright.size.height;
+      height = upright.size.width;
+    }
+
+    int patchWidth = Math.max(1, (int) Math.round(width));
+    int patchHeight = Math.max(1, (int) Math.round(height));
+    double cos = Math.cos(Math.toRadians(angle));
+    double sin = Math.sin(Math.toRadians(angle));
+
+    // Patch pixel (u, v) lies at centre + (u - w/2) * (cos, sin) + (v - h/2) * (-sin, cos) in
+    // upright coordinates, composed with the upright to sensor map this gives the inverse map
+    // of the warp.
+    Point centre = toSensor(upright.center);
+    double ux = a * cos + d * sin;
+    double uy = b * cos + e * sin;
+    double vx = -a * sin + d * cos;
+    double vy = -b * sin + e * cos;
+    double halfWidth = (patchWidth - 1) / 2.0;
+    double halfHeight = (patchHeight - 1) / 2.0;
+
+    Mat map = TrackedMats.mat(2, 3, CvType.CV_64FC1);
+    map.put(0, 0,
+        ux, vx, centre.x - ux * halfWidth - vx * halfHeight,
+        uy, vy, centre.y - uy * halfWidth - vy * halfHeight);
+
+    Mat patch = TrackedMats.mat();
+    Imgproc.warpAffine(sensor, patch, map, new Size(patchWidth, patchHeight),
+        Imgproc.INTER_LINEAR | Imgproc.WARP_INVERSE_MAP, Core.BORDER_REPLICATE);
+    TrackedMats.release(map);
+    return patch;
+  }
+}
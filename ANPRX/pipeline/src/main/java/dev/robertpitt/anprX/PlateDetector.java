@@ -0,0 +1,447 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Number plate dimensions
+ *
+ * Plate dimensions
+ * Text-Margin = 11mm (top & bottom & left & right)
+ * Text-Group-Spacing = 33mm (space between groups of letters, usually left group and right group)
+ * Character-Height = 79mm
+ * Character-Width = 50mm
+ * Character-Stroke = 14mm
+ * Character-Between-Spacing = 11mm
+ * Character-Margin = 11mm
+ */
+
+/**
+ * Algorithm Version 1.
+ *
+ * 1. Start Video Capture
+ * 2. Read Video_Frame
+ * 3. Resize Video_Frame
+ * 4. Gray_Frame = Transform to grayscale (Video_Frame)
+ * 5. Apply filter to remove the noise (Gray_Frame)
+ * 6. Frame_Edges = Detect edges (Gray_Frame)
+ * 7. Frame_Contours = Find contours (Frame_Edges)
+ * 8. Sort (Frame_Contours)
+ * 9. Declare Number_Plate_Contour
+ * 10. Declare Largest_Rectangle
+ * 11. for Contour in Frame_Contours do
+ * 12.   Perimeter_Rectangle = Calculate perimeter (Contour)
+ * 13.   Approx_Rectangle = Find the approximate rectangle (Perimeter_Rectangle)
+ * 14.     if (length (Approx_Rectangle) == 4) then
+ * 15.       Number_Plate_Contour = Approx_Rectangle
+ * 16.       Largest_Rectangle = Find area (Approx_Rectangle)
+ * 17.       break
+ * 18.    x,y,w,h = Calculate up-right bounding rectangle (Largest_Rectangle)
+ * 19.   Cropped_Frame = Crop using x,y,w,h (Video_Frame)
+ * 20.   Draw Largest_Rectangle contours on Video_Frame
+ * 21.   Transform to grayscale (Cropped_Frame)
+ * 22.   Frame_Threshold = Binarize (Cropped_Frame)
+ * 23.   Kernel = New square object of size 1x1
+ * 24.   Image_Dilation = Dilates using Kernel (Frame_Threshold)
+ * 25.   Dilated_Image_Contours = Find contours (Image_Dilation)
+ * 26.   Sorted_Dilated_Contours = Sort (Dilated_Image_Contours)
+ * 27.   for Dilated_Contour in Sorted_Dilated_Contours
+ * 28.     x,y,w,h = Calculate up-right bounding rectangle (Dilated_Contour)
+ * 29.     Draw a rectangle of dimensions x,y,w,h on Video_Frame
+ * 30.   end for
+ * 31.   Transform to binary (Gray_Frame)
+ * 32.   License_Plate_Characters = Transform to string (Gray_Frame)
+ * 33.   if length(License_Plate_Characters) > 0 then
+ * 34.     Get License_Plate_Characters
+ * 35.   end if
+ * 36. return Video_Frame
+ */
+public class PlateDetector implements Detector {
+  /**
+   * Log Tag
+   */
+  private static String TAG = "ANPRX:Detector";
+
+  /**
+   * mat container to hold the 640x480 edge detection result
+   */
+  private Mat edges;
+
+  /**
+   * Hierarchy Mat from the contour extraction process.
+   */
+  private Mat hierarchy;
+
+  /**
+   * Array list to hold on to the contours
+   */
+  private List<MatOfPoint> contours = new ArrayList<>();
+
+  /**
+   *
+   */
+  private MatOfPoint2f approxCurve;
+
+  /**
+   * Contour hierarchy as read back from findContours, four entries per contour
+   * (next, previous, first child, parent), only kept when characters are verified.
+   */
+  private int[] links = new int[0];
+
+  /**
+   * Upper bound on the nested contours collected per candidate.
+   */
+  private static final int MAX_NESTED_CONTOURS = 256;
+
+  /**
+   * Tuning constants, swapped as a whole so a new profile can be loaded while running.
+   */
+  private volatile DetectorConfig config = DetectorConfig.DEFAULT;
+
+  /**
+   * Regions of interest the search is restricted to, null to search the whole frame.
+   * Swapped as a whole so it can be replaced while frames are being analysed.
+   */
+  private volatile LaneRegions regions;
+
+  /**
+   * Replace the regions of interest, takes effect from the next frame.
+   * @param regions regions to search, or null to search the whole frame.
+   */
+  @Override
+  public void setRegions(LaneRegions regions) {
+    this.regions = regions;
+  }
+
+  /**
+   * @return the regions of interest currently in use, or null.
+   */
+  @Override
+  public LaneRegions getRegions() {
+    return regions;
+  }
+
+  /**
+   * Replace the tuning constants, takes effect from the next frame.
+   */
+  @Override
+  public void setConfig(DetectorConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public DetectorConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * Perform detection using the canny thresholds of the current config.
+   * @param grayscale
+   * @return
+   */
+  @Override
+  public List<RotatedRect> detect(Mat grayscale) {
+    DetectorConfig config = this.config;
+    return detect(grayscale, config.cannyLower, config.cannyUpper);
+  }
+
+  /**
+   * Perform detection within the given areas using the canny thresholds of the current config.
+   * @param grayscale
+   * @param areas
+   * @return
+   */
+  @Override
+  public List<RotatedRect> detect(Mat grayscale, List<Rect> areas) {
+    DetectorConfig config = this.config;
+    return detect(grayscale, areas, config.cannyLower, config.cannyUpper);
+  }
+
+  /**
+   * Perform detection on the greyscale version of the frame.
+   * @param grayscale
+   * @return
+   *
+   * @// TODO: 2020-04-12 assert the structure if the input mat is 16 bit.
+   */
+  public List<RotatedRect> detect(Mat grayscale, int lowerThreshold, int upperThreshold) {
+    DetectorConfig config = this.config;
+
+    /**
+     * Restrict the search to the regions of interest when they are configured.
+     */
+    LaneRegions regions = this.regions;
+    if (regions != null && !regions.isEmpty()) {
+      LaneRegions.Mask mask = regions.maskFor(grayscale.cols(), grayscale.rows());
+      return detect(grayscale, mask.areas, mask, lowerThreshold, upperThreshold);
+    }
+
+    // Reset variable instances to clear state between frames.
+    hierarchy = TrackedMats.mat();
+    approxCurve = TrackedMats.matOfPoint2f();
+    edges = TrackedMats.mat();
+
+    /**
+     * 3. Perform edge detections
+     */
+    Imgproc.Canny(grayscale, edges, lowerThreshold, upperThreshold);
+
+    /**
+     * 4. Extract the contours from the view
+     */
+    contours = new ArrayList<>();
+    Imgproc.findContours(edges, contours, hierarchy, retrievalMode(config), Imgproc.CHAIN_APPROX_SIMPLE);
+    if (config.verifyCharacters) {
+      links = new int[contours.size() * 4];
+      appendHierarchy(hierarchy, 0, contours.size());
+    }
+    TrackedMats.release(edges);
+    TrackedMats.release(hierarchy);
+
+    /**
+     * 5. Extract contours
+     */
+    List<RotatedRect> plates = scanForLicensePlate(contours, null, config);
+    TrackedMats.releaseAll(contours);
+    return plates;
+  }
+
+  /**
+   * Perform detection within the given areas of the frame only, for example the areas in
+   * motion. When regions of interest are configured the areas are further restricted to them.
+   * @param grayscale
+   * @param areas non overlapping areas of the frame to search.
+   * @return
+   */
+  public List<RotatedRect> detect(Mat grayscale, List<Rect> areas, int lowerThreshold, int upperThreshold) {
+    LaneRegions regions = this.regions;
+    if (regions == null || regions.isEmpty()) {
+      return detect(grayscale, areas, null, lowerThreshold, upperThreshold);
+    }
+
+    LaneRegions.Mask mask = regions.maskFor(grayscale.cols(), grayscale.rows());
+    List<Rect> restricted = new ArrayList<>();
+    for (int i = 0; i < areas.size(); i++) {
+      for (int j = 0; j < mask.areas.size(); j++) {
+        Rect intersection = Utils.intersect(areas.get(i), mask.areas.get(j));
+        if (intersection != null) {
+          restricted.add(intersection);
+        }
+      }
+    }
+    return detect(grayscale, restricted, mask, lowerThreshold, upperThreshold);
+  }
+
+  /**
+   * Perform detection within the given areas of the frame only, edge detection and contour
+   * extraction run on each area separately and the contours are offset back into frame
+   * coordinates.
+   * @param grayscale
+   * @param areas non overlapping areas of the frame to search.
+   * @param mask when set candidates whose centre falls outside the mask are rejected.
+   * @return
+   */
+  private List<RotatedRect> detect(Mat grayscale, List<Rect> areas, LaneRegions.Mask mask, int lowerThreshold, int upperThreshold) {
+    DetectorConfig config = this.config;
+    hierarchy = TrackedMats.mat();
+    approxCurve = TrackedMats.matOfPoint2f();
+    edges = TrackedMats.mat();
+    contours = new ArrayList<>();
+    links = new int[0];
+
+    // findContours clears the list it is given, so each area is collected separately.
+    List<MatOfPoint> areaContours = new ArrayList<>();
+    for (int i = 0; i < areas.size(); i++) {
+      Rect area = areas.get(i);
+      Mat region = grayscale.submat(area);
+
+      Imgproc.Canny(region, edges, lowerThreshold, upperThreshold);
+      Imgproc.findContours(edges, areaContours, hierarchy, retrievalMode(config), Imgproc.CHAIN_APPROX_SIMPLE, new Point(area.x, area.y));
+      if (config.verifyCharacters) {
+        appendHierarchy(hierarchy, contours.size(), areaContours.size());
+      }
+      contours.addAll(areaContours);
+
+      region.release();
+    }
+    TrackedMats.release(edges);
+    TrackedMats.release(hierarchy);
+
+    List<RotatedRect> plates = scanForLicensePlate(contours, mask, config);
+    TrackedMats.releaseAll(contours);
+    return plates;
+  }
+
+  /**
+   * Attempt to locate the license plate within the array of detected contours
+   */
+  private List<RotatedRect> scanForLicensePlate(List<MatOfPoint> contours, LaneRegions.Mask mask, DetectorConfig config) {
+    /**
+     * Create a new container for the results
+     */
+    List<RotatedRect> rectangles = new ArrayList<>();
+
+    /**
+     * Itterate over the contours, skipping contours that we are not interested in.
+     */
+    for(int i = 0; i < contours.size(); i++) {
+      /**
+       * Extract the points of the contour.
+       */
+      Point[] points = contours.get(i).toArray();
+
+      /**
+       * Reject contours centred outside the regions of interest before any further work.
+       */
+      if(mask != null && !isCentreInMask(points, mask)) {
+        continue;
+      }
+
+      MatOfPoint2f contour2f = TrackedMats.track(new MatOfPoint2f(points));
+
+      /**
+       * Approximate the polygon from the contour
+       */
+      Imgproc.approxPolyDP(contour2f, approxCurve, Imgproc.arcLength(contour2f, true) * config.approxEpsilon, true);
+      TrackedMats.release(contour2f);
+
+      /**
+       * Remove those where the total sides of the approximated curve is not rectangle
+       */
+      if(approxCurve.total() != 4){
+        approxCurve.release();
+        continue;
+      }
+
+      /**
+       * Calculate the total area size for the shape so we can filter
+       * the selections that are too small or to0 big.
+       */
+      double areaSize = Math.abs(Imgproc.contourArea(approxCurve));
+      if(areaSize < config.minArea || areaSize > config.maxArea) {
+        approxCurve.release();
+        continue;
+      }
+
+      /**
+       * Exclude the contour of the approximation is not convex
+       *
+       * @see https://en.wikipedia.org/wiki/Convex_polygon#Properties
+       */
+      MatOfPoint convex = TrackedMats.track(new MatOfPoint(approxCurve.toArray()));
+      boolean isConvex = Imgproc.isContourConvex(convex);
+      TrackedMats.release(convex);
+      if(!isConvex) {
+        approxCurve.release();
+        continue;
+      }
+
+      /**
+       * Determine if the shape is rectangular
+       */
+      if(!Utils.isRectangleInShape(approxCurve, config.maxCosine)) {
+        approxCurve.release();
+        continue;
+      }
+
+      RotatedRect rectangle = Imgproc.minAreaRect(approxCurve);
+
+      // Release the approxCurve memory allocation
+      approxCurve.release();
+
+      /**
+       * Reject candidates without a row of characters nested inside them.
+       */
+      if(config.verifyCharacters && !CharacterRowVerifier.hasCharacterRow(rectangle, nestedBoxes(contours, i), config.minCharacters)) {
+        continue;
+      }
+
+      rectangles.add(rectangle);
+    }
+
+    return rectangles;
+  }
+
+  /**
+   * The hierarchy is only needed to verify characters, RETR_LIST is cheaper otherwise.
+   */
+  private static int retrievalMode(DetectorConfig config) {
+    return config.verifyCharacters ? Imgproc.RETR_TREE : Imgproc.RETR_LIST;
+  }
+
+  /**
+   * Append the hierarchy of count contours to the links, offsetting the indices by base so
+   * that they index the combined contour list.
+   */
+  private void appendHierarchy(Mat hierarchy, int base, int count) {
+    int required = (base + count) * 4;
+    if (links.length < required) {
+      links = Arrays.copyOf(links, required);
+    }
+    if (count == 0) {
+      return;
+    }
+
+    int[] values = new int[count * 4];
+    hierarchy.get(0, 0, values);
+    for (int i = 0; i < values.length; i++) {
+      links[base * 4 + i] = values[i] < 0 ? -1 : values[i] + base;
+    }
+  }
+
+  /**
+   * Bounding boxes of every contour nested inside the given contour, depth first.
+   */
+  private List<Rect> nestedBoxes(List<MatOfPoint> contours, int index) {
+    List<Rect> boxes = new ArrayList<>();
+    if (links.length < contours.size() * 4) {
+      return boxes;
+    }
+
+    int child = links[index * 4 + 2];
+    while (child >= 0 && boxes.size() < MAX_NESTED_CONTOURS) {
+      boxes.add(Imgproc.boundingRect(contours.get(child)));
+
+      // Descend first, then move to the next sibling, climbing back up when a level runs out.
+      int next = links[child * 4 + 2];
+      while (next < 0 && child >= 0 && child != index) {
+        next = links[child * 4];
+        if (next < 0) {
+          child = links[child * 4 + 3];
+        }
+      }
+      if (child == index) {
+        break;
+      }
+      child = next;
+    }
+    return boxes;
+  }
+
+  /**
+   * Determine if the centre of the bounding box of the points lies within the mask.
+   */
+  private static boolean isCentreInMask(Point[] points, LaneRegions.Mask mask) {
+    double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+    double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+    for (Point point : points) {
+      minX = Math.min(minX, point.x);
+      minY = Math.min(minY, point.y);
+      maxX = Math.max(maxX, point.x);
+      maxY = Math.max(maxY, point.y);
+    }
+    return mask.contains((minX + maxX) / 2, (minY + maxY) / 2);
+  }
+}
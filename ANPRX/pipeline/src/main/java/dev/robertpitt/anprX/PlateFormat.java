@@ -0,0 +1,34 @@
+package dev.robertpitt.anprX;
+
+import java.util.regex.Pattern;
+
+/**
+ * Registration formats issued in Great Britain, used to tell a plausible read from OCR noise.
+ *
+ * current   AB12CDE  two letter area, two digit age, three random letters (2001 onwards)
+ * prefix    A123BCD  age letter, one to three digits, three letters (1983 - 2001)
+ * suffix    ABC123D  three letters, one to three digits, age letter (1963 - 1983)
+ * dateless  1 - 3 letters and 1 - 4 digits either way round, as found on cherished plates
+ *
+ * I, Q and Z never appear as the age letter, the whitelist keeps I out of reads entirely.
+ */
+public class PlateFormat {
+  private static final Pattern CURRENT = Pattern.compile("[A-Z]{2}[0-9]{2}[A-Z]{3}");
+  private static final Pattern PREFIX = Pattern.compile("[A-HJ-NPR-Y][0-9]{1,3}[A-Z]{3}");
+  private static final Pattern SUFFIX = Pattern.compile("[A-Z]{3}[0-9]{1,3}[A-HJ-NPR-Y]");
+  private static final Pattern DATELESS = Pattern.compile("[A-Z]{1,3}[0-9]{1,4}|[0-9]{1,4}[A-Z]{1,3}");
+
+  /**
+   * @param text read with whitespace removed.
+   * @return true when the text is a registration in one of the issued formats.
+   */
+  public static boolean matches(String text) {
+    if (text == null || text.length() < 2 || text.length() > 7) {
+      return false;
+    }
+    return CURRENT.matcher(text).matches()
+        || PREFIX.matcher(text).matches()
+        || SUFFIX.matcher(text).matches()
+        || DATELESS.matcher(text).matches();
+  }
+}
@@ -0,0 +1,54 @@
+package dev.robertpitt.anprX;
+
+/**
+ * Result of reading the text from a single plate crop.
+ */
+public class PlateRead {
+  /**
+   * Text as returned by the reader, with whitespace removed.
+   */
+  public final String text;
+
+  /**
+   * Mean confidence of the read in the range 0 - 100.
+   */
+  public final int confidence;
+
+  /**
+   * Confidence of the least certain word in the range 0 - 100, a single misread character
+   * can hide behind a good mean.
+   */
+  public final int minWordConfidence;
+
+  /**
+   * True when the reader ran out of time budget, the text is then empty.
+   */
+  public final boolean timedOut;
+
+  public PlateRead(String text, int confidence) {
+    this(text, confidence, confidence);
+  }
+
+  public PlateRead(String text, int confidence, int minWordConfidence) {
+    this(text, confidence, minWordConfidence, false);
+  }
+
+  private PlateRead(String text, int confidence, int minWordConfidence, boolean timedOut) {
+    this.text = text;
+    this.confidence = confidence;
+    this.minWordConfidence = minWordConfidence;
+    this.timedOut = timedOut;
+  }
+
+  /**
+   * @return a read marking a plate whose OCR was stopped at its deadline.
+   */
+  public static PlateRead timedOut() {
+    return new PlateRead("", 0, 0, true);
+  }
+
+  @Override
+  public String toString() {
+    return timedOut ? "(timed out)" : text + " (" + confidence + ")";
+  }
+}
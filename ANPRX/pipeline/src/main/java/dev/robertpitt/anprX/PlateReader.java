@@ -0,0 +1,19 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+
+/**
+ * Reads the registration from a binarised, deskewed plate crop.
+ */
+public interface PlateReader {
+  /**
+   * @param crop single channel 8 bit crop, dark text on a light background.
+   * @return the read, never null.
+   */
+  PlateRead read(Mat crop);
+
+  /**
+   * Release any resources held by the reader.
+   */
+  void close();
+}
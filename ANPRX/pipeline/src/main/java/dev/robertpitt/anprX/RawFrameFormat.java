@@ -0,0 +1,34 @@
+package dev.robertpitt.anprX;
+
+/**
+ * Layout of the raw frame recording files written by {@link RawFrameWriter} and read by
+ * {@link RecordedFrameSource}, all values are big endian.
+ *
+ *   file        = header, chunk*, footer
+ *   header      = magic "ANPRRAW1", int version, int frames per chunk
+ *   chunk       = frame+, chunk index
+ *   frame       = int width, int height, int row stride, int rotation, long timestamp, int length, byte[length]
+ *   chunk index = int CHUNK_MAGIC, int count, long[count] absolute frame offsets
+ *   footer      = long[chunks] absolute chunk index offsets, int chunks, magic "ANPRIDX1"
+ *
+ * The frame bytes are the Y plane exactly as delivered by the camera, including row padding.
+ * Frame records are self describing, if the recorder dies before the footer is written the
+ * reader rebuilds the index by walking the records and loses at most a partially written frame.
+ */
+public final class RawFrameFormat {
+  /**
+   * File extension of raw frame recordings.
+   */
+  public static final String FILE_EXTENSION = ".anprraw";
+
+  public static final byte[] FILE_MAGIC = { 'A', 'N', 'P', 'R', 'R', 'A', 'W', '1' };
+  public static final byte[] FOOTER_MAGIC = { 'A', 'N', 'P', 'R', 'I', 'D', 'X', '1' };
+  public static final int CHUNK_MAGIC = 0x43494458;
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 16;
+  public static final int FRAME_HEADER_SIZE = 28;
+  public static final int FOOTER_TRAILER_SIZE = 12;
+
+  private RawFrameFormat() {
+  }
+}
@@ -0,0 +1,122 @@
+package dev.robertpitt.anprX;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes Y planes to a chunked, indexed recording in the {@link RawFrameFormat} layout,
+ * readable with {@link RecordedFrameSource}.
+ *
+ * Writes go straight to the file on the calling thread, the app's FrameRecorder runs it on a
+ * writer thread of its own. Not thread safe.
+ */
+public class RawFrameWriter implements Closeable {
+  /**
+   * Output channel
+   */
+  private final FileChannel channel;
+
+  /**
+   * Frames per chunk
+   */
+  private final int chunkFrames;
+
+  /**
+   * Offsets of the frames in the open chunk and of every written chunk index.
+   */
+  private final long[] chunkOffsets;
+  private int chunkCount = 0;
+  private long[] chunkIndexOffsets = new long[64];
+  private int chunkIndexCount = 0;
+
+  /**
+   * Header buffer reused for every frame.
+   */
+  private final ByteBuffer frameHeader = ByteBuffer.allocate(RawFrameFormat.FRAME_HEADER_SIZE);
+
+  public RawFrameWriter(File file, int chunkFrames) throws IOException {
+    this.chunkFrames = chunkFrames;
+    this.chunkOffsets = new long[chunkFrames];
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(0);
+    channel = raf.getChannel();
+
+    ByteBuffer header = ByteBuffer.allocate(RawFrameFormat.HEADER_SIZE);
+    header.put(RawFrameFormat.FILE_MAGIC).putInt(RawFrameFormat.VERSION).putInt(chunkFrames).flip();
+    writeFully(header);
+  }
+
+  /**
+   * Append a frame, the remaining bytes of the plane are written and the buffer consumed.
+   */
+  public void write(ByteBuffer plane, int width, int height, int rowStride, int rotation, long timestamp)
+      throws IOException {
+    chunkOffsets[chunkCount++] = channel.position();
+
+    frameHeader.clear();
+    frameHeader
+        .putInt(width)
+        .putInt(height)
+        .putInt(rowStride)
+        .putInt(rotation)
+        .putLong(timestamp)
+        .putInt(plane.remaining())
+        .flip();
+    writeFully(frameHeader);
+    writeFully(plane);
+
+    if (chunkCount == chunkFrames) {
+      writeChunkIndex();
+    }
+  }
+
+  /**
+   * Write the index of the open chunk and the footer, and close the file. A recording that
+   * is never closed is still readable, the reader rebuilds the index.
+   */
+  @Override
+  public void close() throws IOException {
+    writeChunkIndex();
+
+    ByteBuffer footer = ByteBuffer.allocate(chunkIndexCount * 8 + RawFrameFormat.FOOTER_TRAILER_SIZE);
+    for (int i = 0; i < chunkIndexCount; i++) {
+      footer.putLong(chunkIndexOffsets[i]);
+    }
+    footer.putInt(chunkIndexCount).put(RawFrameFormat.FOOTER_MAGIC).flip();
+    writeFully(footer);
+    channel.close();
+  }
+
+  private void writeChunkIndex() throws IOException {
+    if (chunkCount == 0) {
+      return;
+    }
+
+    if (chunkIndexCount == chunkIndexOffsets.length) {
+      long[] grown = new long[chunkIndexOffsets.length * 2];
+      System.arraycopy(chunkIndexOffsets, 0, grown, 0, chunkIndexCount);
+      chunkIndexOffsets = grown;
+    }
+    chunkIndexOffsets[chunkIndexCount++] = channel.position();
+
+    ByteBuffer index = ByteBuffer.allocate(8 + chunkCount * 8);
+    index.putInt(RawFrameFormat.CHUNK_MAGIC).putInt(chunkCount);
+    for (int i = 0; i < chunkCount; i++) {
+      index.putLong(chunkOffsets[i]);
+    }
+    index.flip();
+    writeFully(index);
+    chunkCount = 0;
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detection to OCR chain shared by the camera analyser and the replay tooling, so that
+ * replayed footage exercises exactly the same code as frames coming off the sensor.
+ */
+public class RecognitionPipeline {
+  /**
+   * Default for the most plates read per frame.
+   */
+  public static final int DEFAULT_MAX_PLATES = 4;
+
+  /**
+   * Plate Detector Logic
+   */
+  private final Detector detector;
+
+  /**
+   * Reader used for OCR, when null the pipeline only performs detection.
+   */
+  private final PlateReader reader;
+
+  /**
+   * Ranks the candidates and suppresses the duplicates of each plate.
+   */
+  private final CandidateRanker ranker = new CandidateRanker();
+
+  /**
+   * Most plates read per frame, bounds the OCR time of a busy frame.
+   */
+  private int maxPlates = DEFAULT_MAX_PLATES;
+
+  /**
+   * Optional motion gate, when set detection only runs on the areas of the frame in motion.
+   */
+  private MotionGate motionGate;
+
+  /**
+   * Optional region proposer, when set detection only runs on the proposed areas.
+   */
+  private EdgeDensityProposer proposer;
+
+  /**
+   * Optional OCR ladder, when set plates are read through it in place of the reader.
+   */
+  private OcrLadder ocrLadder;
+
+  /**
+   * Local threshold applied to crops before OCR, null for the global Otsu threshold.
+   */
+  private AdaptiveBinariser binariser = new AdaptiveBinariser();
+
+  /**
+   * Optional evidence store, when set the crop and context of every read plate are stored.
+   */
+  private EvidenceStore evidenceStore;
+
+  /**
+   * Optional tiled detector, used in place of the detector for frames large enough to split.
+   */
+  private TiledPlateDetector tiledDetector;
+
+  /**
+   * @param detector detector used to locate plate candidates.
+   * @param reader reader used to read the plates, or null to run detection only.
+   */
+  public RecognitionPipeline(Detector detector, PlateReader reader) {
+    this.detector = detector;
+    this.reader = reader;
+  }
+
+  /**
+   * @param maxPlates most plates read per frame, best ranked first.
+   */
+  public void setMaxPlates(int maxPlates) {
+    this.maxPlates = maxPlates;
+  }
+
+  /**
+   * Gate detection on motion, must be called from the thread running the pipeline.
+   * @param motionGate gate to use, or null to always search the whole frame.
+   */
+  public void setMotionGate(MotionGate motionGate) {
+    this.motionGate = motionGate;
+  }
+
+  public MotionGate getMotionGate() {
+    return motionGate;
+  }
+
+  /**
+   * Restrict detection to the areas proposed from the edge density, must be called from the
+   * thread running the pipeline. Proposals are intersected with the moving areas when the
+   * motion gate is set.
+   * @param proposer proposer to use, or null to search the whole frame.
+   */
+  public void setProposer(EdgeDensityProposer proposer) {
+    this.proposer = proposer;
+  }
+
+  public EdgeDensityProposer getProposer() {
+    return proposer;
+  }
+
+  /**
+   * Detect large frames tile by tile in parallel, must be called from the thread running the
+   * pipeline. The tiled detector takes the config and regions of the pipeline detector.
+   * @param tiledDetector detector to use for large frames, or null to always use the detector.
+   */
+  public void setTiledDetector(TiledPlateDetector tiledDetector) {
+    this.tiledDetector = tiledDetector;
+  }
+
+  public TiledPlateDetector getTiledDetector() {
+    return tiledDetector;
+  }
+
+  /**
+   * Read plates through an escalation ladder, which scales and binarises each crop itself,
+   * only call from the analysis thread.
+   * @param ocrLadder ladder to use, or null to binarise and read with the reader.
+   */
+  public void setOcrLadder(OcrLadder ocrLadder) {
+    this.ocrLadder = ocrLadder;
+  }
+
+  public OcrLadder getOcrLadder() {
+    return ocrLadder;
+  }
+
+  /**
+   * @return true when plates are read, false when the pipeline only performs detection.
+   */
+  public boolean reads() {
+    return reader != null || ocrLadder != null;
+  }
+
+  /**
+   * Change how crops are binarised before OCR, only call from the analysis thread.
+   * @param binariser local threshold to apply, or null for the global Otsu threshold.
+   */
+  public void setBinariser(AdaptiveBinariser binariser) {
+    this.binariser = binariser;
+  }
+
+  public AdaptiveBinariser getBinariser() {
+    return binariser;
+  }
+
+  /**
+   * Store evidence of every read plate, the store copies the regions it needs so the frame
+   * can be released as soon as the pipeline returns.
+   * @param evidenceStore store to hand sightings to, or null to store nothing.
+   */
+  public void setEvidenceStore(EvidenceStore evidenceStore) {
+    this.evidenceStore = evidenceStore;
+  }
+
+  public EvidenceStore getEvidenceStore() {
+    return evidenceStore;
+  }
+
+  /**
+   * Process a single upright greyscale frame, the frame is left untouched.
+   */
+  public RecognitionResult process(Mat grey, long timestampNanos) {
+    return process(grey, 0, timestampNanos);
+  }
+
+  /**
+   * Process a single greyscale frame in sensor orientation, the frame is left untouched.
+   *
+   * Detection runs on the frame as delivered, the recognised plates are mapped to upright
+   * coordinates and only the plate crops are rotated, see {@link OrientationTransform}. The
+   * motion gate, proposer and lane regions work in sensor coordinates, the proposer and the
+   * morphology detector expect horizontal text so are best used with upright frames.
+   *
+   * @param rotationDegrees clockwise rotation from the frame to upright.
+   */
+  public RecognitionResult process(Mat grey, int rotationDegrees, long timestampNanos) {
+    RecognitionResult result = new RecognitionResult(timestampNanos);
+    OrientationTransform orientation = OrientationTransform.forFrame(grey.cols(), grey.rows(), rotationDegrees);
+
+    /**
+     * 1. Scan image for rectangle shapes
+     */
+    long start = System.nanoTime();
+    List<RotatedRect> candidates;
+    List<Rect> areas = null;
+    if (motionGate != null) {
+      areas = motionGate.update(grey);
+      result.skipped = areas.isEmpty();
+    }
+
+    if (!result.skipped && proposer != null) {
+      List<Rect> proposals = proposer.propose(grey);
+      if (areas != null) {
+        List<Rect> restricted = new ArrayList<>();
+        for (int i = 0; i < proposals.size(); i++) {
+          for (int j = 0; j < areas.size(); j++) {
+            Rect intersection = Utils.intersect(proposals.get(i), areas.get(j));
+            if (intersection != null) {
+              restricted.add(intersection);
+            }
+          }
+        }
+        proposals = Utils.mergeOverlappingRects(restricted);
+      }
+      areas = proposals;
+      result.skipped = areas.isEmpty();
+    }
+
+    if (result.skipped) {
+      candidates = null;
+    } else if (tiledDetector != null && tiledDetector.shouldTile(grey)) {
+      tiledDetector.setConfig(detector.getConfig());
+      tiledDetector.setRegions(detector.getRegions());
+      candidates = tiledDetector.detect(grey, areas);
+    } else {
+      candidates = areas != null ? detector.detect(grey, areas) : detector.detect(grey);
+    }
+    result.detectNanos = System.nanoTime() - start;
+    result.candidates = candidates == null ? 0 : candidates.size();
+
+    /**
+     * 2. Rank the candidates, keeping one per physical plate.
+     */
+    List<CandidateRanker.Candidate> ranked = ranker.rank(candidates);
+    int count = Math.min(ranked.size(), maxPlates);
+
+    if (reader == null && ocrLadder == null) {
+      for (int i = 0; i < count; i++) {
+        CandidateRanker.Candidate candidate = ranked.get(i);
+        result.recognitions.add(new RecognitionResult.Recognition(orientation.toUpright(candidate.plate), null, candidate.score));
+      }
+      return result;
+    }
+
+    start = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      CandidateRanker.Candidate candidate = ranked.get(i);
+      RotatedRect plate = orientation.toUpright(candidate.plate);
+
+      /**
+       * 3. Crop the upright detection from the greyscale frame
+       */
+      Mat cropped = orientation.crop(grey, plate);
+
+      /**
+       * 4. Perform OCR, through the ladder or by binarising and reading once
+       */
+      PlateRead read;
+      if (ocrLadder != null) {
+        read = ocrLadder.read(cropped);
+      } else {
+        if (binariser != null) {
+          binariser.binarise(cropped, cropped);
+        } else {
+          AdaptiveBinariser.binariseGlobal(cropped, cropped);
+        }
+        read = reader.read(cropped);
+      }
+      TrackedMats.release(cropped);
+
+      /**
+       * 5. Hand the evidence over for storage off the analysis thread
+       */
+      long evidenceId = -1;
+      if (evidenceStore != null && read != null && !read.text.isEmpty()) {
+        evidenceId = evidenceStore.submit(grey, candidate.plate, rotationDegrees, timestampNanos);
+      }
+
+      result.recognitions.add(new RecognitionResult.Recognition(plate, read, candidate.score, evidenceId));
+    }
+    result.ocrNanos = System.nanoTime() - start;
+
+    return result;
+  }
+}
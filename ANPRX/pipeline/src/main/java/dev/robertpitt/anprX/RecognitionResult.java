@@ -0,0 +1,78 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.RotatedRect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of running a single frame through the {@link RecognitionPipeline}.
+ */
+public class RecognitionResult {
+  /**
+   * A detected plate and, when OCR was performed, what was read from it.
+   */
+  public static class Recognition {
+    /**
+     * Plate in upright frame coordinates.
+     */
+    public final RotatedRect plate;
+    public final PlateRead read;
+
+    /**
+     * Plate likeness from the {@link CandidateRanker}, 0 when not ranked.
+     */
+    public final double score;
+
+    /**
+     * Sighting id in the {@link EvidenceStore}, -1 when no evidence was stored.
+     */
+    public final long evidenceId;
+
+    public Recognition(RotatedRect plate, PlateRead read) {
+      this(plate, read, 0);
+    }
+
+    public Recognition(RotatedRect plate, PlateRead read, double score) {
+      this(plate, read, score, -1);
+    }
+
+    public Recognition(RotatedRect plate, PlateRead read, double score, long evidenceId) {
+      this.plate = plate;
+      this.read = read;
+      this.score = score;
+      this.evidenceId = evidenceId;
+    }
+  }
+
+  /**
+   * Timestamp of the frame the result belongs to.
+   */
+  public final long timestampNanos;
+
+  /**
+   * Plates found in the frame, best ranked first.
+   */
+  public final List<Recognition> recognitions = new ArrayList<>();
+
+  /**
+   * True when detection was skipped because nothing in the frame moved, or because no
+   * area of the frame was proposed.
+   */
+  public boolean skipped;
+
+  /**
+   * Number of candidates returned by the detector.
+   */
+  public int candidates;
+
+  /**
+   * Time spent in the detector and in OCR respectively.
+   */
+  public long detectNanos;
+  public long ocrNanos;
+
+  public RecognitionResult(long timestampNanos) {
+    this.timestampNanos = timestampNanos;
+  }
+}
@@ -0,0 +1,249 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.CvType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Frame source reading recordings written by the app's FrameRecorder.
+ *
+ * The recording is memory mapped one chunk at a time and frames are copied straight out of
+ * the mapping into the frame Mat, so there is no decode cost and benchmark runs measure only
+ * detection and OCR. Any frame can be reached in constant time with {@link #seek(long)}.
+ */
+public class RecordedFrameSource implements FrameSource {
+  /**
+   * File channel of the recording.
+   */
+  private final FileChannel channel;
+
+  /**
+   * Absolute offset of every frame record.
+   */
+  private long[] frameOffsets = new long[256];
+  private int frameCount = 0;
+
+  /**
+   * Chunk ranges, chunk i covers frames [chunkFirstFrame[i], chunkFirstFrame[i + 1]).
+   */
+  private int[] chunkFirstFrame = new int[16];
+  private long[] chunkStart = new long[16];
+  private long[] chunkEnd = new long[16];
+  private int chunkCount = 0;
+
+  /**
+   * Currently mapped chunk.
+   */
+  private int mappedChunk = -1;
+  private MappedByteBuffer mapped;
+
+  /**
+   * Copy buffer for the plane bytes.
+   */
+  private byte[] buffer = new byte[0];
+
+  /**
+   * Index of the next frame returned by {@link #read(Frame)}.
+   */
+  private long position = 0;
+
+  public RecordedFrameSource(File file) throws IOException {
+    channel = new RandomAccessFile(file, "r").getChannel();
+
+    ByteBuffer header = readAt(0, RawFrameFormat.HEADER_SIZE);
+    byte[] magic = new byte[RawFrameFormat.FILE_MAGIC.length];
+    header.get(magic);
+    if (!Arrays.equals(magic, RawFrameFormat.FILE_MAGIC)) {
+      throw new IOException(file + " is not a frame recording");
+    }
+    if (header.getInt() != RawFrameFormat.VERSION) {
+      throw new IOException(file + " has an unsupported version");
+    }
+
+    if (!readFooter()) {
+      rebuildIndex();
+    }
+  }
+
+  /**
+   * @return number of frames in the recording.
+   */
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * Position the source so the next read returns the given frame.
+   */
+  public void seek(long frameIndex) {
+    if (frameIndex < 0 || frameIndex > frameCount) {
+      throw new IndexOutOfBoundsException("Frame " + frameIndex + " of " + frameCount);
+    }
+    position = frameIndex;
+  }
+
+  @Override
+  public boolean read(Frame frame) throws IOException {
+    if (position >= frameCount) {
+      return false;
+    }
+
+    int index = (int) position++;
+    MappedByteBuffer chunk = map(chunkOf(index));
+    int base = (int) (frameOffsets[index] - chunkStart[mappedChunk]);
+
+    int width = chunk.getInt(base);
+    int height = chunk.getInt(base + 4);
+    int rowStride = chunk.getInt(base + 8);
+    int rotation = chunk.getInt(base + 12);
+    long timestamp = chunk.getLong(base + 16);
+    int length = chunk.getInt(base + 24);
+
+    if (buffer.length < length) {
+      buffer = new byte[length];
+    }
+    ByteBuffer plane = chunk.duplicate();
+    plane.position(base + RawFrameFormat.FRAME_HEADER_SIZE);
+    plane.get(buffer, 0, length);
+
+    frame.grey.create(height, width, CvType.CV_8UC1);
+    if (rowStride == width) {
+      frame.grey.put(0, 0, buffer, 0, width * height);
+    } else {
+      for (int row = 0; row < height; row++) {
+        frame.grey.put(row, 0, buffer, row * rowStride, width);
+      }
+    }
+
+    frame.index = index;
+    frame.timestampNanos = timestamp;
+    frame.rotationDegrees = rotation;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    mapped = null;
+    channel.close();
+  }
+
+  /**
+   * Load the index from the footer.
+   *
+   * @return false if the recording has no footer.
+   */
+  private boolean readFooter() throws IOException {
+    long size = channel.size();
+    if (size < RawFrameFormat.HEADER_SIZE + RawFrameFormat.FOOTER_TRAILER_SIZE) {
+      return false;
+    }
+
+    ByteBuffer trailer = readAt(size - RawFrameFormat.FOOTER_TRAILER_SIZE, RawFrameFormat.FOOTER_TRAILER_SIZE);
+    int chunks = trailer.getInt();
+    byte[] magic = new byte[RawFrameFormat.FOOTER_MAGIC.length];
+    trailer.get(magic);
+    if (!Arrays.equals(magic, RawFrameFormat.FOOTER_MAGIC)) {
+      return false;
+    }
+
+    ByteBuffer footer = readAt(size - RawFrameFormat.FOOTER_TRAILER_SIZE - chunks * 8L, chunks * 8);
+    for (int i = 0; i < chunks; i++) {
+      long indexOffset = footer.getLong();
+      ByteBuffer count = readAt(indexOffset, 8);
+      if (count.getInt() != RawFrameFormat.CHUNK_MAGIC) {
+        return false;
+      }
+      int frames = count.getInt();
+      ByteBuffer offsets = readAt(indexOffset + 8, frames * 8);
+
+      int first = frameCount;
+      for (int f = 0; f < frames; f++) {
+        addFrame(offsets.getLong());
+      }
+      addChunk(first, frameOffsets[first], indexOffset);
+    }
+    return true;
+  }
+
+  /**
+   * Rebuild the index of a recording that was not closed cleanly by walking the records,
+   * a trailing partially written frame is ignored.
+   */
+  private void rebuildIndex() throws IOException {
+    long size = channel.size();
+    long offset = RawFrameFormat.HEADER_SIZE;
+    int first = 0;
+
+    while (offset + RawFrameFormat.FRAME_HEADER_SIZE <= size) {
+      ByteBuffer header = readAt(offset, RawFrameFormat.FRAME_HEADER_SIZE);
+      if (header.getInt(0) == RawFrameFormat.CHUNK_MAGIC) {
+        if (frameCount > first) {
+          addChunk(first, frameOffsets[first], offset);
+          first = frameCount;
+        }
+        offset += 8 + header.getInt(4) * 8L;
+        continue;
+      }
+
+      long end = offset + RawFrameFormat.FRAME_HEADER_SIZE + header.getInt(24);
+      if (end > size) {
+        break;
+      }
+      addFrame(offset);
+      offset = end;
+    }
+
+    if (frameCount > first) {
+      addChunk(first, frameOffsets[first], offset);
+    }
+  }
+
+  private void addFrame(long offset) {
+    if (frameCount == frameOffsets.length) {
+      frameOffsets = Arrays.copyOf(frameOffsets, frameOffsets.length * 2);
+    }
+    frameOffsets[frameCount++] = offset;
+  }
+
+  private void addChunk(int firstFrame, long start, long end) {
+    if (chunkCount == chunkStart.length) {
+      chunkFirstFrame = Arrays.copyOf(chunkFirstFrame, chunkCount * 2);
+      chunkStart = Arrays.copyOf(chunkStart, chunkCount * 2);
+      chunkEnd = Arrays.copyOf(chunkEnd, chunkCount * 2);
+    }
+    chunkFirstFrame[chunkCount] = firstFrame;
+    chunkStart[chunkCount] = start;
+    chunkEnd[chunkCount] = end;
+    chunkCount++;
+  }
+
+  private int chunkOf(int frameIndex) {
+    int found = Arrays.binarySearch(chunkFirstFrame, 0, chunkCount, frameIndex);
+    return found >= 0 ? found : -found - 2;
+  }
+
+  private MappedByteBuffer map(int chunk) throws IOException {
+    if (chunk != mappedChunk) {
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart[chunk], chunkEnd[chunk] - chunkStart[chunk]);
+      mappedChunk = chunk;
+    }
+    return mapped;
+  }
+
+  private ByteBuffer readAt(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of recording");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,259 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Frame source replaying a local video file or a sequence of still images.
+ *
+ * The path may be a video file, a directory of images (replayed in name order), or a
+ * printf style pattern such as `notebooks/frames/%03d.jpg` which is replayed from index 0
+ * until the first missing file.
+ *
+ * In {@link Pacing#MAX_SPEED} frames are handed out as fast as they can be decoded, which
+ * measures the sustainable throughput of the consumer. In {@link Pacing#REAL_TIME} frames are
+ * released at their capture rate and, like the camera with a keep-only-latest back pressure
+ * strategy, frames the consumer is too slow to take are dropped.
+ */
+public class ReplayFrameSource implements FrameSource {
+  /**
+   * How frames are released to the consumer.
+   */
+  public enum Pacing {
+    MAX_SPEED,
+    REAL_TIME
+  }
+
+  /**
+   * Frame rate assumed for image sequences and videos without rate information.
+   */
+  public static final double DEFAULT_FPS = 30.0;
+
+  /**
+   * Image extensions picked up when replaying a directory.
+   */
+  private static final String[] IMAGE_EXTENSIONS = { ".jpg", ".jpeg", ".png", ".bmp" };
+
+  /**
+   * Pacing mode
+   */
+  private final Pacing pacing;
+
+  /**
+   * Capture frame rate of the source.
+   */
+  private final double fps;
+
+  /**
+   * Images to replay, null when replaying a video or pattern.
+   */
+  private final List<File> images;
+
+  /**
+   * Printf style pattern, null when not replaying a pattern.
+   */
+  private final String pattern;
+
+  /**
+   * Video decoder, null when replaying images.
+   */
+  private final VideoCapture capture;
+
+  /**
+   * Colour frame buffer for video decoding.
+   */
+  private final Mat colour = new Mat();
+
+  /**
+   * Index of the next frame.
+   */
+  private long index = 0;
+
+  /**
+   * Wall clock origin for real-time pacing.
+   */
+  private long startNanos = -1;
+
+  /**
+   * Frames skipped because the consumer was behind the real-time schedule.
+   */
+  private long dropped = 0;
+
+  public ReplayFrameSource(String path, Pacing pacing) throws IOException {
+    this(path, pacing, DEFAULT_FPS);
+  }
+
+  /**
+   * @param path video file, image directory or image pattern.
+   * @param pacing how frames are released.
+   * @param sequenceFps frame rate used for image sequences.
+   */
+  public ReplayFrameSource(String path, Pacing pacing, double sequenceFps) throws IOException {
+    this.pacing = pacing;
+
+    File file = new File(path);
+    if (file.isDirectory()) {
+      images = listImages(file);
+      pattern = null;
+      capture = null;
+      fps = sequenceFps;
+    } else if (path.contains("%")) {
+      images = null;
+      pattern = path;
+      capture = null;
+      fps = sequenceFps;
+    } else {
+      images = null;
+      pattern = null;
+      capture = new VideoCapture(path);
+      if (!capture.isOpened()) {
+        throw new IOException("Unable to open video " + path);
+      }
+      double rate = capture.get(Videoio.CAP_PROP_FPS);
+      fps = rate > 0 ? rate : DEFAULT_FPS;
+    }
+  }
+
+  @Override
+  public boolean read(Frame frame) throws IOException {
+    if (pacing == Pacing.REAL_TIME && !waitForSchedule()) {
+      return false;
+    }
+
+    if (capture != null) {
+      if (!capture.read(colour)) {
+        return false;
+      }
+      Imgproc.cvtColor(colour, frame.grey, Imgproc.COLOR_BGR2GRAY);
+    } else {
+      File file = fileAt(index);
+      if (file == null) {
+        return false;
+      }
+      Mat decoded = Imgcodecs.imread(file.getPath(), Imgcodecs.IMREAD_GRAYSCALE);
+      if (decoded.empty()) {
+        throw new IOException("Unable to decode " + file);
+      }
+      decoded.copyTo(frame.grey);
+      decoded.release();
+    }
+
+    frame.index = index;
+    frame.timestampNanos = timestampOf(index);
+    frame.rotationDegrees = 0;
+    index++;
+    return true;
+  }
+
+  /**
+   * @return frames skipped because the consumer fell behind the real-time schedule.
+   */
+  public long getDroppedFrames() {
+    return dropped;
+  }
+
+  /**
+   * @return capture frame rate of the source.
+   */
+  public double getFps() {
+    return fps;
+  }
+
+  @Override
+  public void close() {
+    if (capture != null) {
+      capture.release();
+    }
+    colour.release();
+  }
+
+  /**
+   * Sleep until the next frame is due, skipping over frames that are already overdue.
+   *
+   * @return false if the source ran out while skipping.
+   */
+  private boolean waitForSchedule() {
+    long now = System.nanoTime();
+    if (startNanos < 0) {
+      startNanos = now;
+    }
+
+    // Skip every frame whose successor is already due, the consumer would never see them live.
+    long frameNanos = (long) (1e9 / fps);
+    while (now - startNanos >= timestampOf(index) + frameNanos) {
+      if (!skip()) {
+        return false;
+      }
+      dropped++;
+    }
+
+    long wait = startNanos + timestampOf(index) - now;
+    if (wait > 0) {
+      try {
+        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Advance past the next frame without decoding it.
+   */
+  private boolean skip() {
+    if (capture != null) {
+      if (!capture.grab()) {
+        return false;
+      }
+    } else if (fileAt(index) == null) {
+      return false;
+    }
+    index++;
+    return true;
+  }
+
+  private long timestampOf(long index) {
+    return (long) (index * 1e9 / fps);
+  }
+
+  private File fileAt(long index) {
+    if (images != null) {
+      return index < images.size() ? images.get((int) index) : null;
+    }
+
+    File file = new File(String.format(Locale.ROOT, pattern, index));
+    return file.exists() ? file : null;
+  }
+
+  private static List<File> listImages(File directory) {
+    List<File> result = new ArrayList<>();
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return result;
+    }
+
+    Arrays.sort(files);
+    for (File file : files) {
+      String name = file.getName().toLowerCase(Locale.ROOT);
+      for (String extension : IMAGE_EXTENSIONS) {
+        if (name.endsWith(extension)) {
+          result.add(file);
+          break;
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,407 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.RotatedRect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single producer, multi consumer ring buffer of recognition events, so the analysis thread
+ * can hand its results to any number of consumers (UI, storage, hotlist checks, export)
+ * without knowing about them.
+ *
+ * The ring is preallocated and publishing copies the event fields into the next slot, it
+ * never blocks and never allocates. Consumers each keep their own sequence and read at their
+ * own pace. The ring is lossy: a consumer that falls more than the capacity behind has the
+ * oldest events overwritten under it, it skips ahead and counts the events it lost rather
+ * than slowing the producer down.
+ *
+ * Each slot carries the sequence it holds, written odd while the slot is being filled and
+ * even once complete. A consumer copies the slot and checks the sequence is unchanged, a
+ * slot overwritten during the copy is detected and counted as lost. Slot fields are volatile
+ * so the copy is ordered between the two sequence reads.
+ */
+public class ResultBus {
+  /**
+   * Default number of slots, several seconds of results at a few plates per frame.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * Kind of event.
+   */
+  public enum Type {
+    /**
+     * A plate was located but not read.
+     */
+    DETECTION,
+
+    /**
+     * A plate was located and read.
+     */
+    RECOGNITION,
+
+    /**
+     * A plate was located but OCR ran out of its time budget.
+     */
+    TIMED_OUT
+  }
+
+  /**
+   * Copy of a single event, owned by the consumer that polled it and reused between polls.
+   */
+  public static class Event {
+    public long sequence;
+    public Type type;
+    public long timestampNanos;
+    /**
+     * Wall clock time the event was published, in milliseconds since the epoch.
+     */
+    public long epochMillis;
+    public double centreX;
+    public double centreY;
+    public double width;
+    public double height;
+    public double angle;
+    public double score;
+    public String text;
+    public int confidence;
+    public long evidenceId;
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "#%d %s %s (%d) at %.0f,%.0f score=%.2f",
+          sequence, type, text, confidence, centreX, centreY, score);
+    }
+  }
+
+  /**
+   * Receives events on a consumer thread, see {@link #startConsumer(String, Listener)}.
+   */
+  public interface Listener {
+    void onEvent(Event event);
+  }
+
+  /**
+   * Preallocated slot of the ring.
+   */
+  private static class Slot {
+    /**
+     * 2 * sequence + 1 while being written, 2 * sequence + 2 once published, 0 when empty.
+     */
+    volatile long version;
+    volatile Type type;
+    volatile long timestampNanos;
+    volatile long epochMillis;
+    volatile double centreX;
+    volatile double centreY;
+    volatile double width;
+    volatile double height;
+    volatile double angle;
+    volatile double score;
+    volatile String text;
+    volatile int confidence;
+    volatile long evidenceId;
+  }
+
+  /**
+   * Read position and metrics of a single consumer.
+   */
+  public class Subscriber {
+    public final String name;
+
+    /**
+     * Next sequence to read, only written by the consumer thread.
+     */
+    private volatile long next;
+
+    /**
+     * Events overwritten before this consumer read them.
+     */
+    private final AtomicLong lost = new AtomicLong();
+
+    /**
+     * Events delivered to this consumer.
+     */
+    private final AtomicLong delivered = new AtomicLong();
+
+    /**
+     * Events whose listener threw, the consumer thread carries on with the next event.
+     */
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    Subscriber(String name, long next) {
+      this.name = name;
+      this.next = next;
+    }
+
+    /**
+     * Copy the next event into the given event, never blocks.
+     * @return true if an event was copied, false if the consumer has caught up.
+     */
+    public boolean poll(Event into) {
+      while (true) {
+        long sequence = next;
+        long published = cursor.get();
+        if (sequence > published) {
+          return false;
+        }
+
+        // Fallen further behind than the ring holds, skip to the oldest slot still intact.
+        long oldest = published - mask;
+        if (sequence < oldest) {
+          lost.addAndGet(oldest - sequence);
+          next = oldest;
+          continue;
+        }
+
+        Slot slot = slots[(int) (sequence & mask)];
+        long expected = 2 * sequence + 2;
+        long before = slot.version;
+        if (before == expected) {
+          into.sequence = sequence;
+          into.type = slot.type;
+          into.timestampNanos = slot.timestampNanos;
+          into.epochMillis = slot.epochMillis;
+          into.centreX = slot.centreX;
+          into.centreY = slot.centreY;
+          into.width = slot.width;
+          into.height = slot.height;
+          into.angle = slot.angle;
+          into.score = slot.score;
+          into.text = slot.text;
+          into.confidence = slot.confidence;
+          into.evidenceId = slot.evidenceId;
+          if (slot.version == expected) {
+            next = sequence + 1;
+            delivered.incrementAndGet();
+            return true;
+          }
+        }
+
+        // Overwritten while reading, or lapped between reading the cursor and the slot.
+        lost.incrementAndGet();
+        next = sequence + 1;
+      }
+    }
+
+    /**
+     * @return the next sequence this consumer will read.
+     */
+    public long sequence() {
+      return next;
+    }
+
+    /**
+     * @return events published but not yet read by this consumer.
+     */
+    public long lag() {
+      return Math.max(0, cursor.get() + 1 - next);
+    }
+
+    public long lost() {
+      return lost.get();
+    }
+
+    public long delivered() {
+      return delivered.get();
+    }
+
+    public long failures() {
+      return failures.get();
+    }
+
+    /**
+     * Stop the consumer thread, if started, waiting for its current event, and detach from
+     * the bus.
+     */
+    public void close() {
+      running = false;
+      Thread thread = this.thread;
+      if (thread != null) {
+        LockSupport.unpark(thread);
+        if (thread != Thread.currentThread()) {
+          try {
+            thread.join();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+      subscribers.remove(this);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "%s sequence=%d lag=%d delivered=%d lost=%d failures=%d",
+          name, sequence(), lag(), delivered(), lost(), failures());
+    }
+  }
+
+  /**
+   * Slots of the ring, the capacity is a power of two so a sequence maps to its slot by mask.
+   */
+  private final Slot[] slots;
+  private final long mask;
+
+  /**
+   * Sequence of the most recently published event, -1 before the first.
+   */
+  private final AtomicLong cursor = new AtomicLong(-1);
+
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+  public ResultBus() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity number of slots, rounded up to a power of two.
+   */
+  public ResultBus(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    slots = new Slot[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot();
+    }
+    mask = size - 1;
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * Publish a single event, must only be called from the producing thread. The event is
+   * stamped with the wall clock time, timestampNanos is the camera's monotonic clock.
+   * @return the sequence of the event.
+   */
+  public long publish(Type type, long timestampNanos, RotatedRect plate, double score, String text, int confidence,
+                      long evidenceId) {
+    long sequence = cursor.get() + 1;
+    Slot slot = slots[(int) (sequence & mask)];
+
+    slot.version = 2 * sequence + 1;
+    slot.type = type;
+    slot.timestampNanos = timestampNanos;
+    slot.epochMillis = System.currentTimeMillis();
+    slot.centreX = plate.center.x;
+    slot.centreY = plate.center.y;
+    slot.width = plate.size.width;
+    slot.height = plate.size.height;
+    slot.angle = plate.angle;
+    slot.score = score;
+    slot.text = text;
+    slot.confidence = confidence;
+    slot.evidenceId = evidenceId;
+    slot.version = 2 * sequence + 2;
+
+    cursor.set(sequence);
+    return sequence;
+  }
+
+  /**
+   * Publish every plate of a result, must only be called from the producing thread.
+   */
+  public void publish(RecognitionResult result) {
+    for (int i = 0; i < result.recognitions.size(); i++) {
+      RecognitionResult.Recognition recognition = result.recognitions.get(i);
+      if (recognition.read == null) {
+        publish(Type.DETECTION, result.timestampNanos, recognition.plate, recognition.score, null, 0, -1);
+      } else if (recognition.read.timedOut) {
+        publish(Type.TIMED_OUT, result.timestampNanos, recognition.plate, recognition.score, null, 0, -1);
+      } else {
+        publish(Type.RECOGNITION, result.timestampNanos, recognition.plate, recognition.score,
+            recognition.read.text, recognition.read.confidence, recognition.evidenceId);
+      }
+    }
+  }
+
+  /**
+   * @return sequence of the most recently published event, -1 before the first.
+   */
+  public long cursor() {
+    return cursor.get();
+  }
+
+  /**
+   * Attach a consumer that polls itself, it sees events published from now on.
+   */
+  public Subscriber subscribe(String name) {
+    Subscriber subscriber = new Subscriber(name, cursor.get() + 1);
+    subscribers.add(subscriber);
+    return subscriber;
+  }
+
+  /**
+   * Attach a consumer running on its own daemon thread, the listener is called for every
+   * event in order. An exception from the listener is counted in
+   * {@link Subscriber#failures()} and the consumer moves on to the next event. An idle
+   * consumer parks between polls, so it costs the producer nothing.
+   *
+   * @param idleNanos time to park when caught up.
+   */
+  public Subscriber startConsumer(String name, final Listener listener, final long idleNanos) {
+    final Subscriber subscriber = subscribe(name);
+    subscriber.running = true;
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Event event = new Event();
+        while (subscriber.running) {
+          if (subscriber.poll(event)) {
+            try {
+              listener.onEvent(event);
+            } catch (RuntimeException e) {
+              subscriber.failures.incrementAndGet();
+            }
+          } else {
+            LockSupport.parkNanos(idleNanos);
+          }
+        }
+      }
+    }, "ResultBus-" + name);
+    thread.setDaemon(true);
+    subscriber.thread = thread;
+    thread.start();
+    return subscriber;
+  }
+
+  /**
+   * Attach a consumer thread parking for a millisecond when caught up.
+   */
+  public Subscriber startConsumer(String name, Listener listener) {
+    return startConsumer(name, listener, 1000000L);
+  }
+
+  /**
+   * @return the consumers currently attached.
+   */
+  public List<Subscriber> subscribers() {
+    return new ArrayList<>(subscribers);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("cursor=").append(cursor.get()).append(" capacity=").append(slots.length);
+    for (Subscriber subscriber : subscribers) {
+      builder.append("\n  ").append(subscriber);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,592 @@
+package dev.robertpitt.anprX;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Delivers sightings to the back office in compressed batches, surviving loss of connectivity.
+ *
+ * Sightings arrive from the {@link ResultBus} as a consumer and are appended to the pending
+ * batch as newline delimited JSON. A batch is closed when it reaches the maximum size or has
+ * been open for the maximum delay, gzipped and posted. Batches that cannot be posted, because
+ * the endpoint failed, the exporter is backing off, or the maximum number of uploads is
+ * already in flight, are written to the spool directory instead. The spool is bounded, when
+ * full the oldest batches are dropped.
+ *
+ * Each sighting is given an id of its own when it arrives, the exporter's run id and a
+ * sequence, and keeps it through spooling and retries so the back office can discard the
+ * duplicates a retried batch may deliver. Its time is the wall clock time it was published.
+ *
+ * Failures back off exponentially with jitter, up to a maximum. Once a post succeeds the
+ * spool is drained oldest first, within the same in flight limit, so a long outage does not
+ * turn into a burst of requests.
+ *
+ * Uses no Android APIs, the ExporterBenchmark tool runs it against a local stub endpoint
+ * with an outage.
+ */
+public class SightingExporter implements ResultBus.Listener, Closeable {
+  /**
+   * Defaults
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 200;
+  public static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 5000;
+  public static final long DEFAULT_MAX_SPOOL_BYTES = 16 * 1024 * 1024;
+  public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+  /**
+   * Backoff after the first failure and the most it grows to.
+   */
+  private static final long INITIAL_BACKOFF_MILLIS = 1000;
+  public static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+  private static final int TIMEOUT_MILLIS = 10000;
+  private static final String SPOOL_EXTENSION = ".ndjson.gz";
+
+  /**
+   * A closed batch, in memory or spooled.
+   */
+  private static class Batch {
+    final byte[] body;
+    final int count;
+    final File file;
+
+    Batch(byte[] body, int count, File file) {
+      this.body = body;
+      this.count = count;
+      this.file = file;
+    }
+  }
+
+  private final URL endpoint;
+  private final File spoolDirectory;
+  private final int maxBatchSize;
+  private final long maxBatchDelayNanos;
+  private final long maxSpoolBytes;
+
+  /**
+   * Pending batch, guarded by itself.
+   */
+  private final StringBuilder pending = new StringBuilder();
+  private int pendingCount = 0;
+  private long pendingSince = 0;
+
+  /**
+   * Set under the pending lock by {@link #close()}, later sightings are ignored.
+   */
+  private volatile boolean closed = false;
+
+  /**
+   * Backoff state, guarded by this.
+   */
+  private long backoffMillis = 0;
+  private long retryAtNanos = 0;
+  private final Random jitter = new Random();
+
+  /**
+   * Permits for uploads in flight.
+   */
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+
+  private final ExecutorService senders = Executors.newCachedThreadPool();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  /**
+   * Spooled files being posted, so a drain does not post the same file twice.
+   */
+  private final Set<String> sending = new HashSet<>();
+  private final AtomicBoolean draining = new AtomicBoolean(false);
+  private final AtomicLong spoolBytes = new AtomicLong();
+  private final AtomicLong spoolSequence = new AtomicLong();
+
+  /**
+   * Random id of this exporter instance and the sequence of its sightings, together the
+   * sighting id.
+   */
+  private final String runId = UUID.randomUUID().toString();
+  private final AtomicLong sightingSequence = new AtomicLong();
+
+  /**
+   * Counters
+   */
+  private final AtomicLong sightings = new AtomicLong();
+  private final AtomicLong sightingsSent = new AtomicLong();
+  private final AtomicLong batchesSent = new AtomicLong();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private final AtomicLong rawBytes = new AtomicLong();
+  private final AtomicLong batchesSpooled = new AtomicLong();
+  private final AtomicLong sightingsDropped = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  public SightingExporter(URL endpoint, File spoolDirectory) throws IOException {
+    this(endpoint, spoolDirectory, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MILLIS, DEFAULT_MAX_SPOOL_BYTES, DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * @param endpoint URL batches are posted to.
+   * @param spoolDirectory directory for undelivered batches, batches left by a previous run
+   *                       are delivered too.
+   * @param maxBatchSize sightings per batch.
+   * @param maxBatchDelayMillis longest a sighting waits for its batch to close.
+   * @param maxSpoolBytes bound on the spool directory size.
+   * @param maxInFlight uploads in progress at once.
+   */
+  public SightingExporter(URL endpoint, File spoolDirectory, int maxBatchSize, long maxBatchDelayMillis,
+                          long maxSpoolBytes, int maxInFlight) throws IOException {
+    if (!spoolDirectory.isDirectory() && !spoolDirectory.mkdirs()) {
+      throw new IOException("Unable to create spool directory " + spoolDirectory);
+    }
+
+    this.endpoint = endpoint;
+    this.spoolDirectory = spoolDirectory;
+    this.maxBatchSize = maxBatchSize;
+    this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+    this.maxSpoolBytes = maxSpoolBytes;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+
+    // Pick up where a previous run left off.
+    for (File file : spooled()) {
+      spoolBytes.addAndGet(file.length());
+      spoolSequence.set(Math.max(spoolSequence.get(), sequenceOf(file) + 1));
+    }
+
+    long tick = Math.max(10, maxBatchDelayMillis / 4);
+    scheduler.scheduleWithFixedDelay(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Add a sighting from the result bus, called on the bus consumer thread.
+   */
+  @Override
+  public void onEvent(ResultBus.Event event) {
+    if (event.type != ResultBus.Type.RECOGNITION || closed) {
+      return;
+    }
+
+    String line = String.format(Locale.ROOT,
+        "{\"id\":\"%s-%d\",\"ts\":%d,\"text\":\"%s\",\"confidence\":%d,\"score\":%.3f,\"box\":[%.1f,%.1f,%.1f,%.1f,%.1f]%s}\n",
+        runId, sightingSequence.getAndIncrement(), event.epochMillis, Json.escape(event.text == null ? "" : event.text),
+        event.confidence, event.score, event.centreX, event.centreY, event.width, event.height, event.angle,
+        event.evidenceId < 0 ? "" : ",\"evidence\":" + event.evidenceId);
+    Batch batch = null;
+    synchronized (pending) {
+      if (closed) {
+        return;
+      }
+      sightings.incrementAndGet();
+      if (pendingCount == 0) {
+        pendingSince = System.nanoTime();
+      }
+      pending.append(line);
+      pendingCount++;
+      if (pendingCount >= maxBatchSize) {
+        batch = closeBatch();
+      }
+    }
+    if (batch != null) {
+      dispatch(batch);
+    }
+  }
+
+  /**
+   * Close and dispatch the pending batch now, if any.
+   */
+  public void flush() {
+    Batch batch;
+    synchronized (pending) {
+      batch = pendingCount == 0 ? null : closeBatch();
+    }
+    if (batch != null) {
+      dispatch(batch);
+    }
+  }
+
+  /**
+   * @return true when nothing is pending, spooled or in flight.
+   */
+  public boolean isIdle() {
+    synchronized (pending) {
+      if (pendingCount > 0) {
+        return false;
+      }
+    }
+    return spoolBytes.get() == 0 && inFlight.availablePermits() == maxInFlight;
+  }
+
+  /**
+   * Close the pending batch and stop, batches not yet delivered stay in the spool. Sightings
+   * arriving afterwards are ignored.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (pending) {
+      closed = true;
+    }
+    scheduler.shutdownNow();
+    flush();
+    senders.shutdown();
+    try {
+      senders.awaitTermination(TIMEOUT_MILLIS * 2, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Must be called holding the pending lock.
+   */
+  private Batch closeBatch() {
+    byte[] raw;
+    try {
+      raw = pending.toString().getBytes("UTF-8");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    int count = pendingCount;
+    pending.setLength(0);
+    pendingCount = 0;
+
+    rawBytes.addAndGet(raw.length);
+    return new Batch(gzip(raw), count, null);
+  }
+
+  private void tick() {
+    boolean due;
+    synchronized (pending) {
+      due = pendingCount > 0 && System.nanoTime() - pendingSince >= maxBatchDelayNanos;
+    }
+    if (due) {
+      flush();
+    }
+    drain();
+  }
+
+  /**
+   * Post a batch if allowed, otherwise spool it.
+   */
+  private void dispatch(final Batch batch) {
+    if (isBackingOff() || !inFlight.tryAcquire()) {
+      spool(batch);
+      return;
+    }
+    try {
+      senders.execute(() -> {
+        try {
+          deliver(batch);
+        } finally {
+          inFlight.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Closed while dispatching, keep the batch for the next run.
+      inFlight.release();
+      spool(batch);
+    }
+  }
+
+  /**
+   * Post spooled batches oldest first while permits are available.
+   */
+  private void drain() {
+    if (closed || spoolBytes.get() == 0 || isBackingOff() || !draining.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      for (final File file : spooled()) {
+        synchronized (sending) {
+          if (sending.contains(file.getName())) {
+            continue;
+          }
+        }
+        if (isBackingOff() || !inFlight.tryAcquire()) {
+          return;
+        }
+
+        final byte[] body;
+        try {
+          body = readFile(file);
+        } catch (IOException e) {
+          // Dropped by the spool bound while listing.
+          inFlight.release();
+          continue;
+        }
+
+        synchronized (sending) {
+          sending.add(file.getName());
+        }
+        try {
+          senders.execute(() -> {
+            try {
+              deliver(new Batch(body, countOf(file), file));
+            } finally {
+              synchronized (sending) {
+                sending.remove(file.getName());
+              }
+              inFlight.release();
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          // Closed while draining, the file stays spooled.
+          synchronized (sending) {
+            sending.remove(file.getName());
+          }
+          inFlight.release();
+          return;
+        }
+      }
+    } finally {
+      draining.set(false);
+    }
+  }
+
+  /**
+   * Post a batch, on failure an in memory batch is spooled and a spooled one left in place.
+   */
+  private void deliver(Batch batch) {
+    int status = post(batch.body);
+    if (status >= 200 && status < 300) {
+      succeeded();
+      batchesSent.incrementAndGet();
+      sightingsSent.addAndGet(batch.count);
+      bytesSent.addAndGet(batch.body.length);
+      if (batch.file != null) {
+        removeSpooled(batch.file);
+      }
+      drain();
+      return;
+    }
+
+    failures.incrementAndGet();
+    if (status >= 400 && status < 500 && status != 408 && status != 429) {
+      // Rejected outright, retrying would only fail again.
+      sightingsDropped.addAndGet(batch.count);
+      if (batch.file != null) {
+        removeSpooled(batch.file);
+      }
+      return;
+    }
+
+    failed();
+    if (batch.file == null) {
+      spool(batch);
+    }
+  }
+
+  /**
+   * @return the HTTP status, or -1 when the endpoint could not be reached.
+   */
+  private int post(byte[] body) {
+    HttpURLConnection connection = null;
+    try {
+      connection = (HttpURLConnection) endpoint.openConnection();
+      connection.setConnectTimeout(TIMEOUT_MILLIS);
+      connection.setReadTimeout(TIMEOUT_MILLIS);
+      connection.setDoOutput(true);
+      connection.setRequestMethod("POST");
+      connection.setRequestProperty("Content-Type", "application/x-ndjson");
+      connection.setRequestProperty("Content-Encoding", "gzip");
+      connection.setFixedLengthStreamingMode(body.length);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+
+      int status = connection.getResponseCode();
+      InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (in != null) {
+        // Read the response fully so the connection can be reused.
+        byte[] buffer = new byte[1024];
+        while (in.read(buffer) >= 0) {
+          // Discard.
+        }
+        in.close();
+      }
+      return status;
+    } catch (IOException e) {
+      return -1;
+    } finally {
+      if (connection != null) {
+        connection.disconnect();
+      }
+    }
+  }
+
+  private synchronized boolean isBackingOff() {
+    return backoffMillis > 0 && System.nanoTime() - retryAtNanos < 0;
+  }
+
+  private synchronized void succeeded() {
+    backoffMillis = 0;
+  }
+
+  private synchronized void failed() {
+    backoffMillis = backoffMillis == 0 ? INITIAL_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+    // Jitter over the upper half so devices that lost the same network do not retry in step.
+    long delay = backoffMillis / 2 + (long) (jitter.nextDouble() * backoffMillis / 2);
+    retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+  }
+
+  /**
+   * Write a batch to the spool, dropping the oldest batches to stay within the bound.
+   */
+  private void spool(Batch batch) {
+    if (batch.body.length > maxSpoolBytes) {
+      sightingsDropped.addAndGet(batch.count);
+      return;
+    }
+
+    String name = String.format(Locale.ROOT, "%020d-%d%s", spoolSequence.getAndIncrement(), batch.count, SPOOL_EXTENSION);
+    File file = new File(spoolDirectory, name);
+    File temporary = new File(spoolDirectory, name + ".tmp");
+    try {
+      try (OutputStream out = new FileOutputStream(temporary)) {
+        out.write(batch.body);
+      }
+      if (!temporary.renameTo(file)) {
+        throw new IOException("Unable to rename " + temporary);
+      }
+    } catch (IOException e) {
+      temporary.delete();
+      sightingsDropped.addAndGet(batch.count);
+      return;
+    }
+    spoolBytes.addAndGet(batch.body.length);
+    batchesSpooled.incrementAndGet();
+
+    if (spoolBytes.get() > maxSpoolBytes) {
+      for (File oldest : spooled()) {
+        if (spoolBytes.get() <= maxSpoolBytes) {
+          break;
+        }
+        synchronized (sending) {
+          if (sending.contains(oldest.getName())) {
+            continue;
+          }
+        }
+        int count = countOf(oldest);
+        if (removeSpooled(oldest)) {
+          sightingsDropped.addAndGet(count);
+        }
+      }
+    }
+  }
+
+  private boolean removeSpooled(File file) {
+    long length = file.length();
+    if (file.delete()) {
+      spoolBytes.addAndGet(-length);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the spooled batches, oldest first.
+   */
+  private File[] spooled() {
+    File[] files = spoolDirectory.listFiles((directory, name) -> name.endsWith(SPOOL_EXTENSION));
+    if (files == null) {
+      return new File[0];
+    }
+    Arrays.sort(files);
+    return files;
+  }
+
+  private static long sequenceOf(File file) {
+    String name = file.getName();
+    try {
+      return Long.parseLong(name.substring(0, name.indexOf('-')));
+    } catch (RuntimeException e) {
+      return 0;
+    }
+  }
+
+  private static int countOf(File file) {
+    String name = file.getName();
+    try {
+      return Integer.parseInt(name.substring(name.indexOf('-') + 1, name.length() - SPOOL_EXTENSION.length()));
+    } catch (RuntimeException e) {
+      return 0;
+    }
+  }
+
+  private static byte[] gzip(byte[] raw) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(raw);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  public long getSightingsSent() {
+    return sightingsSent.get();
+  }
+
+  public long getBytesSent() {
+    return bytesSent.get();
+  }
+
+  public long getSightingsDropped() {
+    return sightingsDropped.get();
+  }
+
+  public long getBatchesSpooled() {
+    return batchesSpooled.get();
+  }
+
+  public long getSpoolBytes() {
+    return spoolBytes.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  @Override
+  public String toString() {
+    long sent = sightingsSent.get();
+    return String.format(Locale.ROOT,
+        "sightings=%d sent=%d batches=%d spooled=%d dropped=%d failures=%d spool=%dB bytes/sighting=%.1f (raw %.1f)",
+        sightings.get(), sent, batchesSent.get(), batchesSpooled.get(), sightingsDropped.get(), failures.get(),
+        spoolBytes.get(), sent == 0 ? 0 : bytesSent.get() / (double) sent,
+        sightings.get() == 0 ? 0 : rawBytes.get() / (double) sightings.get());
+  }
+}
@@ -0,0 +1,286 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs the {@link PlateDetector} over overlapping tiles of a large frame in parallel.
+ *
+ * Canny and findContours over a whole 4K frame run on one core, splitting the frame lets every
+ * core work on a tile. Tiles overlap by at least the largest plate so every plate lies wholly
+ * inside at least one tile, candidates touching an inner tile edge are cut plates and are
+ * dropped, and the copies found in two tiles are merged by rotated IoU.
+ *
+ * The largest plate is taken from the config, the diagonal of a UK plate of the maximum
+ * accepted area, so it holds at any angle. A cut plate is not found as a quad at all, so an
+ * overlap narrower than the plates loses them rather than finding pieces.
+ *
+ * Each pool thread has its own detector, the detectors hold native workspaces and are not
+ * thread safe. Results are in frame coordinates, exactly as from {@link PlateDetector}.
+ */
+public class TiledPlateDetector {
+  /**
+   * Defaults sized for 4K frames, 4x3 tiles of 960x720 before the overlap. The overlap is
+   * a minimum, it grows to the largest plate the config accepts.
+   */
+  public static final int DEFAULT_TILE_SIZE = 1024;
+  public static final int DEFAULT_OVERLAP = 160;
+
+  /**
+   * Candidates overlapping more than this are the same plate found in two tiles.
+   */
+  private static final double DUPLICATE_IOU = 0.5;
+
+  /**
+   * Distance in pixels from an inner tile edge within which a candidate counts as cut.
+   */
+  private static final int EDGE_MARGIN = 2;
+
+  private final ForkJoinPool pool;
+  private final int tileSize;
+  private final int overlap;
+
+  /**
+   * Config and regions applied to the per thread detectors on every frame.
+   */
+  private volatile DetectorConfig config = DetectorConfig.DEFAULT;
+  private volatile LaneRegions regions;
+
+  /**
+   * Detector per pool thread.
+   */
+  private final ThreadLocal<Detector> detectors = new ThreadLocal<Detector>() {
+    @Override
+    protected Detector initialValue() {
+      return mode.create();
+    }
+  };
+
+  /**
+   * Detection approach run on each tile.
+   */
+  private final DetectorMode mode;
+
+  public TiledPlateDetector(ForkJoinPool pool) {
+    this(pool, DEFAULT_TILE_SIZE, DEFAULT_OVERLAP, DetectorMode.CONTOURS);
+  }
+
+  /**
+   * @param pool pool the tiles are processed on.
+   * @param tileSize width and height of a tile before the overlap is added.
+   * @param overlap minimum pixels each tile shares with its neighbours, raised to the
+   *                largest plate the config accepts.
+   * @param mode detection approach run on each tile.
+   */
+  public TiledPlateDetector(ForkJoinPool pool, int tileSize, int overlap, DetectorMode mode) {
+    this.pool = pool;
+    this.mode = mode;
+    this.tileSize = tileSize;
+    this.overlap = overlap;
+  }
+
+  public void setConfig(DetectorConfig config) {
+    this.config = config;
+  }
+
+  public DetectorConfig getConfig() {
+    return config;
+  }
+
+  public void setRegions(LaneRegions regions) {
+    this.regions = regions;
+  }
+
+  public LaneRegions getRegions() {
+    return regions;
+  }
+
+  /**
+   * @return true when the frame is large enough to be split.
+   */
+  public boolean shouldTile(Mat grayscale) {
+    int overlap = overlapFor(config);
+    return grayscale.cols() > tileSize + overlap || grayscale.rows() > tileSize + overlap;
+  }
+
+  /**
+   * @return pixels neighbouring tiles share, wide enough for the largest plate accepted by
+   * the config to lie wholly inside one of them.
+   */
+  public int overlapFor(DetectorConfig config) {
+    return Math.max(overlap, largestPlate(config) + 2 * EDGE_MARGIN + 2);
+  }
+
+  /**
+   * @return diagonal of a UK plate of the largest area the config accepts, the widest and
+   * tallest it can be at any angle.
+   */
+  static int largestPlate(DetectorConfig config) {
+    double aspect = CandidateRanker.PLATE_ASPECT;
+    return (int) Math.ceil(Math.sqrt(config.maxArea * (aspect + 1 / aspect)));
+  }
+
+  public List<RotatedRect> detect(Mat grayscale) {
+    return detect(grayscale, null);
+  }
+
+  /**
+   * Detect within the given areas of the frame only.
+   * @param areas areas to search, or null for the whole frame.
+   */
+  public List<RotatedRect> detect(Mat grayscale, List<Rect> areas) {
+    DetectorConfig config = this.config;
+    List<Tile> tiles = tiles(grayscale.cols(), grayscale.rows(), overlapFor(config), areas);
+    if (tiles.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    List<RotatedRect> candidates = pool.invoke(new TileTask(grayscale, tiles, 0, tiles.size(), config, regions));
+    return mergeDuplicates(candidates);
+  }
+
+  /**
+   * A tile and the part of it to search.
+   */
+  private static class Tile {
+    final Rect bounds;
+    final List<Rect> areas;
+    final boolean leftInner, topInner, rightInner, bottomInner;
+
+    Tile(Rect bounds, List<Rect> areas, int width, int height) {
+      this.bounds = bounds;
+      this.areas = areas;
+      this.leftInner = bounds.x > 0;
+      this.topInner = bounds.y > 0;
+      this.rightInner = bounds.x + bounds.width < width;
+      this.bottomInner = bounds.y + bounds.height < height;
+    }
+
+    /**
+     * @return true if the candidate touches an edge of the tile shared with a neighbour.
+     */
+    boolean isCut(RotatedRect candidate) {
+      Rect box = candidate.boundingRect();
+      return (leftInner && box.x <= bounds.x + EDGE_MARGIN)
+          || (topInner && box.y <= bounds.y + EDGE_MARGIN)
+          || (rightInner && box.x + box.width >= bounds.x + bounds.width - EDGE_MARGIN)
+          || (bottomInner && box.y + box.height >= bounds.y + bounds.height - EDGE_MARGIN);
+    }
+  }
+
+  private List<Tile> tiles(int width, int height, int overlap, List<Rect> areas) {
+    int columns = Math.max(1, (int) Math.ceil(width / (double) tileSize));
+    int rows = Math.max(1, (int) Math.ceil(height / (double) tileSize));
+    int stepX = (int) Math.ceil(width / (double) columns);
+    int stepY = (int) Math.ceil(height / (double) rows);
+
+    List<Tile> tiles = new ArrayList<>();
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        int x = Math.max(0, column * stepX - overlap / 2);
+        int y = Math.max(0, row * stepY - overlap / 2);
+        int right = Math.min(width, (column + 1) * stepX + overlap / 2);
+        int bottom = Math.min(height, (row + 1) * stepY + overlap / 2);
+        Rect bounds = new Rect(x, y, right - x, bottom - y);
+
+        List<Rect> tileAreas = new ArrayList<>();
+        if (areas == null) {
+          tileAreas.add(bounds);
+        } else {
+          for (int i = 0; i < areas.size(); i++) {
+            Rect intersection = Utils.intersect(bounds, areas.get(i));
+            if (intersection != null) {
+              tileAreas.add(intersection);
+            }
+          }
+        }
+
+        if (!tileAreas.isEmpty()) {
+          tiles.add(new Tile(bounds, tileAreas, width, height));
+        }
+      }
+    }
+    return tiles;
+  }
+
+  /**
+   * Splits the tiles in half until a single tile remains, which is detected on the
+   * detector of the pool thread running it. Never serialised, it holds native Mats.
+   */
+  @SuppressWarnings("serial")
+  private class TileTask extends RecursiveTask<List<RotatedRect>> {
+    private final Mat grayscale;
+    private final List<Tile> tiles;
+    private final int from;
+    private final int to;
+    private final DetectorConfig config;
+    private final LaneRegions regions;
+
+    TileTask(Mat grayscale, List<Tile> tiles, int from, int to, DetectorConfig config, LaneRegions regions) {
+      this.grayscale = grayscale;
+      this.tiles = tiles;
+      this.from = from;
+      this.to = to;
+      this.config = config;
+      this.regions = regions;
+    }
+
+    @Override
+    protected List<RotatedRect> compute() {
+      if (to - from > 1) {
+        int middle = (from + to) >>> 1;
+        TileTask left = new TileTask(grayscale, tiles, from, middle, config, regions);
+        TileTask right = new TileTask(grayscale, tiles, middle, to, config, regions);
+        left.fork();
+        List<RotatedRect> results = right.compute();
+        results.addAll(left.join());
+        return results;
+      }
+
+      Tile tile = tiles.get(from);
+      Detector detector = detectors.get();
+      detector.setConfig(config);
+      detector.setRegions(regions);
+
+      List<RotatedRect> results = new ArrayList<>();
+      List<RotatedRect> candidates = detector.detect(grayscale, tile.areas);
+      for (int i = 0; i < candidates.size(); i++) {
+        if (!tile.isCut(candidates.get(i))) {
+          results.add(candidates.get(i));
+        }
+      }
+      return results;
+    }
+  }
+
+  /**
+   * Merge the copies of a plate found in overlapping tiles, keeping the larger.
+   */
+  private static List<RotatedRect> mergeDuplicates(List<RotatedRect> candidates) {
+    List<RotatedRect> merged = new ArrayList<>();
+    for (int i = 0; i < candidates.size(); i++) {
+      RotatedRect candidate = candidates.get(i);
+      boolean duplicate = false;
+      for (int j = 0; j < merged.size(); j++) {
+        RotatedRect kept = merged.get(j);
+        if (Geometry.iou(candidate, kept) > DUPLICATE_IOU) {
+          if (candidate.size.area() > kept.size.area()) {
+            merged.set(j, candidate);
+          }
+          duplicate = true;
+          break;
+        }
+      }
+      if (!duplicate) {
+        merged.add(candidate);
+      }
+    }
+    return merged;
+  }
+}
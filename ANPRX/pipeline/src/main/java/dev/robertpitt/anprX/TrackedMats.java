@@ -0,0 +1,191 @@
+package dev.robertpitt.anprX;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Factory for the Mats allocated per frame that, when enabled, accounts for every live native
+ * Mat and its size by the call site that created it.
+ *
+ * The Java side of a Mat is a few bytes, so the garbage collector sees no pressure from the
+ * native memory behind it and a Mat that is never released can hold its buffer for a long
+ * time. Tracking keeps a strong reference to every Mat created here until it is released, so
+ * a missing release shows up as a site whose live count only grows, see the SoakTest tool.
+ *
+ * Disabled by default, when disabled the factory methods are plain constructors and cost
+ * nothing. A Mat released directly with {@link Mat#release()} is dropped from the accounts
+ * at the next snapshot.
+ */
+public class TrackedMats {
+  /**
+   * Live Mats and bytes for a single call site.
+   */
+  public static class Site {
+    public final String site;
+    public int live;
+    public long bytes;
+
+    Site(String site) {
+      this.site = site;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "%6d mats %10d bytes  %s", live, bytes, site);
+    }
+  }
+
+  private static volatile boolean enabled = false;
+
+  /**
+   * Tracked Mats and the site that created them, guarded by itself.
+   */
+  private static final Map<Mat, String> live = new IdentityHashMap<>();
+
+  private TrackedMats() {
+  }
+
+  /**
+   * Start or stop tracking, stopping forgets every tracked Mat.
+   */
+  public static void setEnabled(boolean enabled) {
+    TrackedMats.enabled = enabled;
+    if (!enabled) {
+      synchronized (live) {
+        live.clear();
+      }
+    }
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static Mat mat() {
+    return track(new Mat());
+  }
+
+  public static Mat mat(int rows, int cols, int type) {
+    return track(new Mat(rows, cols, type));
+  }
+
+  public static MatOfPoint matOfPoint() {
+    return track(new MatOfPoint());
+  }
+
+  public static MatOfPoint2f matOfPoint2f() {
+    return track(new MatOfPoint2f());
+  }
+
+  /**
+   * Track a Mat created elsewhere, such as one returned by an OpenCV function.
+   * @return the Mat.
+   */
+  public static <T extends Mat> T track(T mat) {
+    if (enabled) {
+      String site = callSite();
+      synchronized (live) {
+        live.put(mat, site);
+      }
+    }
+    return mat;
+  }
+
+  /**
+   * Release a Mat and stop tracking it, null is ignored.
+   */
+  public static void release(Mat mat) {
+    if (mat == null) {
+      return;
+    }
+    if (enabled) {
+      synchronized (live) {
+        live.remove(mat);
+      }
+    }
+    mat.release();
+  }
+
+  /**
+   * Release every Mat of the list and clear it, for the contour lists of findContours.
+   */
+  public static void releaseAll(List<? extends Mat> mats) {
+    for (int i = 0; i < mats.size(); i++) {
+      release(mats.get(i));
+    }
+    mats.clear();
+  }
+
+  /**
+   * @return the live Mats and bytes per call site, largest first. Mats whose native data
+   *         has been released are dropped from the accounts.
+   */
+  public static List<Site> snapshot() {
+    Map<String, Site> sites = new TreeMap<>();
+    synchronized (live) {
+      List<Mat> released = new ArrayList<>();
+      for (Map.Entry<Mat, String> entry : live.entrySet()) {
+        Mat mat = entry.getKey();
+        if (mat.dataAddr() == 0) {
+          released.add(mat);
+          continue;
+        }
+
+        Site site = sites.get(entry.getValue());
+        if (site == null) {
+          site = new Site(entry.getValue());
+          sites.put(entry.getValue(), site);
+        }
+        site.live++;
+        site.bytes += mat.total() * mat.elemSize();
+      }
+      for (Mat mat : released) {
+        live.remove(mat);
+      }
+    }
+
+    List<Site> result = new ArrayList<>(sites.values());
+    Collections.sort(result, new Comparator<Site>() {
+      @Override
+      public int compare(Site a, Site b) {
+        return Long.compare(b.bytes, a.bytes);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return the total of the live bytes of a snapshot.
+   */
+  public static long totalBytes(List<Site> snapshot) {
+    long total = 0;
+    for (Site site : snapshot) {
+      total += site.bytes;
+    }
+    return total;
+  }
+
+  /**
+   * First frame of the stack outside this class, as Class.method:line.
+   */
+  private static String callSite() {
+    StackTraceElement[] stack = new Throwable().getStackTrace();
+    for (StackTraceElement element : stack) {
+      if (!element.getClassName().equals(TrackedMats.class.getName())) {
+        String className = element.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName() + ":" + element.getLineNumber();
+      }
+    }
+    return "unknown";
+  }
+}
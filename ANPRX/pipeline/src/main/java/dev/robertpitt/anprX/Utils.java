@@ -1,21 +1,17 @@
 package dev.robertpitt.anprX;
 
-import android.graphics.ImageFormat;
-import android.util.Log;
-
-import androidx.camera.core.ImageProxy;
-
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import java.io.File;
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.opencv.imgproc.Imgproc.INTER_AREA;
@@ -39,8 +35,9 @@ public class Utils {
   }
 
   public static Mat rotateBasedOnRect(Mat source, Mat dst, RotatedRect rect) {
-    Mat rot_mat = Imgproc.getRotationMatrix2D(rect.center, rect.angle, 1.0);
+    Mat rot_mat = TrackedMats.track(Imgproc.getRotationMatrix2D(rect.center, rect.angle, 1.0));
     warpAffine(source, dst, rot_mat, source.size(), Imgproc.INTER_CUBIC);
+    TrackedMats.release(rot_mat);
     return dst;
   }
 
@@ -59,75 +56,6 @@ public class Utils {
     return ( dx1*dx2 + dy1*dy2 ) / Math.sqrt((dx1*dx1 + dy1*dy1)*(dx2*dx2 + dy2*dy2) + 1e-10);
   }
 
-  /**
-   * https://gist.github.com/FWStelian/4c3dcd35960d6eabbe661c3448dd5539
-   * @param image
-   * @return
-   */
-  public static Mat imageToMat(ImageProxy image) {
-    int width = image.getWidth();
-    int height = image.getHeight();
-
-    ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
-    int ySize = yPlane.getBuffer().remaining();
-
-    byte[] data = new byte[ySize];
-    yPlane.getBuffer().get(data, 0, ySize);
-
-    Mat greyMat = new Mat(height, width, CvType.CV_8UC1);
-    greyMat.put(0, 0, data);
-
-    return greyMat;
-  }
-
-  public static Mat yuvToMat(ImageProxy image) {
-    ByteBuffer buffer;
-    int rowStride;
-    int pixelStride;
-    int width = image.getWidth();
-    int height = image.getHeight();
-    int offset = 0;
-
-    ImageProxy.PlaneProxy[] planes = image.getPlanes();
-    byte[] data = new byte[image.getWidth() * image.getHeight() * ImageFormat.getBitsPerPixel(ImageFormat.YUV_420_888) / 8];
-    byte[] rowData = new byte[planes[0].getRowStride()];
-
-    for (int i = 0; i < 2; i++) {
-      buffer = planes[i].getBuffer();
-      rowStride = planes[i].getRowStride();
-      pixelStride = planes[i].getPixelStride();
-      int w = (i == 0) ? width : width / 2;
-      int h = (i == 0) ? height : height / 2;
-      for (int row = 0; row < h; row++) {
-        int bytesPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.YUV_420_888) / 8;
-        if (pixelStride == bytesPerPixel) {
-          int length = w * bytesPerPixel;
-          buffer.get(data, offset, length);
-
-          if (h - row != 1) {
-            buffer.position(buffer.position() + rowStride - length);
-          }
-          offset += length;
-        } else {
-          if (h - row == 1) {
-            buffer.get(rowData, 0, width - pixelStride + 1);
-          } else {
-            buffer.get(rowData, 0, rowStride);
-          }
-
-          for (int col = 0; col < w; col++) {
-            data[offset++] = rowData[col * pixelStride];
-          }
-        }
-      }
-    }
-
-    Mat mat = new Mat(height + height / 2, width, CvType.CV_8UC1);
-    mat.put(0, 0, data);
-
-    return mat;
-  }
-
   public static MatOfPoint2f convertMatOfPointToMatOfPoint2f(MatOfPoint in) {
     MatOfPoint2f out = new MatOfPoint2f();
     in.convertTo(out, CvType.CV_32F);
@@ -142,18 +70,28 @@ public class Utils {
    * @return
    */
   public static boolean isRectangleInShape(MatOfPoint2f approxCurve) {
+    return isRectangleInShape(approxCurve, 0.3);
+  }
+
+  /**
+   * Determine if the MatOfPoint is a rectangle, with a configurable tolerance.
+   * @param approxCurve
+   * @param maxCosine largest cosine of any corner angle that is still considered square.
+   * @return
+   */
+  public static boolean isRectangleInShape(MatOfPoint2f approxCurve, double maxCosine) {
     Point[] points = approxCurve.toArray();
 
-    double maxCosine = 0;
+    double largestCosine = 0;
     for( int j = 2; j < 5; j++ ) {
       double cosine = Math.abs(Utils.determineAngle(points[j % 4], points[j - 2], points[j - 1]));
-      maxCosine = Math.max(maxCosine, cosine);
+      largestCosine = Math.max(largestCosine, cosine);
     }
 
     // if cosines of all angles are small
     // (all angles are ~90 degree) then write quadrangle
     // vertices to resultant sequence
-    return maxCosine < 0.3;
+    return largestCosine < maxCosine;
   }
 
   public static RotatedRect getLargestContourFromList(List<RotatedRect> plates) {
@@ -173,6 +111,54 @@ public class Utils {
     return largest;
   }
 
+  /**
+   * Merge rectangles that overlap into their union until no two rectangles overlap,
+   * so that no pixel is searched twice.
+   * @param rects
+   * @return
+   */
+  public static List<Rect> mergeOverlappingRects(List<Rect> rects) {
+    List<Rect> merged = new ArrayList<>(rects);
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = 0; i < merged.size() && !changed; i++) {
+        for (int j = i + 1; j < merged.size(); j++) {
+          Rect a = merged.get(i);
+          Rect b = merged.get(j);
+          if (a.x < b.x + b.width && b.x < a.x + a.width && a.y < b.y + b.height && b.y < a.y + a.height) {
+            int x = Math.min(a.x, b.x);
+            int y = Math.min(a.y, b.y);
+            int right = Math.max(a.x + a.width, b.x + b.width);
+            int bottom = Math.max(a.y + a.height, b.y + b.height);
+            merged.set(i, new Rect(x, y, right - x, bottom - y));
+            merged.remove(j);
+            changed = true;
+            break;
+          }
+        }
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Intersection of two rectangles.
+   * @param a
+   * @param b
+   * @return the intersection, or null if the rectangles do not overlap.
+   */
+  public static Rect intersect(Rect a, Rect b) {
+    int x = Math.max(a.x, b.x);
+    int y = Math.max(a.y, b.y);
+    int right = Math.min(a.x + a.width, b.x + b.width);
+    int bottom = Math.min(a.y + a.height, b.y + b.height);
+    if (right <= x || bottom <= y) {
+      return null;
+    }
+    return new Rect(x, y, right - x, bottom - y);
+  }
+
   public static Mat rotateAndDeskew(Mat scene, RotatedRect rect) {
     // We compute the rotation matrix using the corresponding OpenCV function, we specify the center
     // of the rotation (the center of our bounding box), the rotation angle (the skew angle) and the
@@ -198,14 +184,15 @@ public class Utils {
 //    }
 //    Log.d("ANPRX::Utils", rect.angle + " > " + angle);
 
-    Mat rotationMat = Imgproc.getRotationMatrix2D(rect.center, angle, 1);
+    Mat rotationMat = TrackedMats.track(Imgproc.getRotationMatrix2D(rect.center, angle, 1));
 
     // Now that we have the rotation matrix, we can apply the geometric transformation using the function warpAffine
-    Mat sceneRotated = new Mat();
+    Mat sceneRotated = TrackedMats.mat();
     Imgproc.warpAffine(scene, sceneRotated, rotationMat, scene.size(), INTER_AREA);
-    Mat patch = new Mat();
+    TrackedMats.release(rotationMat);
+    Mat patch = TrackedMats.mat();
     Imgproc.getRectSubPix(sceneRotated, rect.size, rect.center, patch);
-    sceneRotated.release();
+    TrackedMats.release(sceneRotated);
     return patch;
   }
 }
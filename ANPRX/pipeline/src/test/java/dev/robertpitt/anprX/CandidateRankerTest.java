@@ -0,0 +1,89 @@
+package dev.robertpitt.anprX;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CandidateRankerTest {
+  private final CandidateRanker ranker = new CandidateRanker();
+
+  @Test
+  public void ranksNothing() {
+    assertTrue(ranker.rank(null).isEmpty());
+    assertTrue(ranker.rank(Collections.<RotatedRect>emptyList()).isEmpty());
+  }
+
+  @Test
+  public void scoresPlateShapeHighest() {
+    double plate = CandidateRanker.score(plate(0, 0, 0));
+    assertTrue(plate > CandidateRanker.score(new RotatedRect(new Point(0, 0), new Size(100, 100), 0)));
+    assertTrue(plate > CandidateRanker.score(plate(0, 0, 30)));
+    assertEquals(0, CandidateRanker.score(new RotatedRect(new Point(0, 0), new Size(100, 0), 0)), 0);
+  }
+
+  @Test
+  public void scoresQuarterTurnLikeLevel() {
+    // OpenCV may describe a level plate as a tall rectangle at 90 degrees.
+    RotatedRect level = plate(0, 0, 0);
+    RotatedRect tall = new RotatedRect(level.center, new Size(level.size.height, level.size.width), 90);
+    assertEquals(CandidateRanker.score(level), CandidateRanker.score(tall), 1e-9);
+  }
+
+  @Test
+  public void ordersByScore() {
+    RotatedRect square = new RotatedRect(new Point(500, 500), new Size(80, 80), 0);
+    RotatedRect skewed = plate(100, 300, 25);
+    RotatedRect level = plate(100, 100, 0);
+
+    List<CandidateRanker.Candidate> ranked = ranker.rank(Arrays.asList(square, skewed, level));
+    assertEquals(3, ranked.size());
+    assertSame(level, ranked.get(0).plate);
+    assertSame(skewed, ranked.get(1).plate);
+    assertSame(square, ranked.get(2).plate);
+    assertTrue(ranked.get(0).score >= ranked.get(1).score);
+    assertTrue(ranked.get(1).score >= ranked.get(2).score);
+  }
+
+  @Test
+  public void suppressesOverlappingDuplicate() {
+    RotatedRect best = plate(100, 100, 0);
+    RotatedRect shifted = plate(104, 102, 3);
+
+    List<CandidateRanker.Candidate> ranked = ranker.rank(Arrays.asList(shifted, best));
+    assertEquals(1, ranked.size());
+    assertSame(best, ranked.get(0).plate);
+  }
+
+  @Test
+  public void suppressesNestedBorder() {
+    // Inner edge of the border, low IoU with the outer edge but entirely inside it.
+    RotatedRect outer = plate(100, 100, 0);
+    RotatedRect inner = new RotatedRect(new Point(100, 100), new Size(80, 14), 0);
+    assertTrue(Geometry.iou(outer, inner) < CandidateRanker.DEFAULT_IOU_THRESHOLD);
+
+    List<CandidateRanker.Candidate> ranked = ranker.rank(Arrays.asList(inner, outer));
+    assertEquals(1, ranked.size());
+  }
+
+  @Test
+  public void keepsSeparatePlates() {
+    List<CandidateRanker.Candidate> ranked = ranker.rank(Arrays.asList(plate(100, 100, 0), plate(400, 100, 0)));
+    assertEquals(2, ranked.size());
+  }
+
+  /**
+   * A plate with the UK aspect ratio.
+   */
+  private static RotatedRect plate(double x, double y, double angle) {
+    return new RotatedRect(new Point(x, y), new Size(160, 160 / CandidateRanker.PLATE_ASPECT), angle);
+  }
+}
@@ -0,0 +1,165 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stores sightings of a noise frame, closing the store to wait for the encoders before
+ * reading back.
+ */
+public class EvidenceStoreTest {
+  private static final RotatedRect PLATE = new RotatedRect(new Point(320, 240), new Size(160, 36), 0);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void loadOpenCV() {
+    OpenCV.loadLocally();
+  }
+
+  @Test
+  public void readsBackUprightCropAndContext() throws IOException {
+    File directory = folder.newFolder("evidence");
+    EvidenceStore store = new EvidenceStore(directory, EvidenceStore.DEFAULT_MAX_PACK_BYTES, 4, 1);
+    Mat grey = frame();
+    long upright = store.submit(grey, PLATE, 0, 1);
+    long sideways = store.submit(grey, PLATE, 90, 2);
+    store.close();
+    grey.release();
+
+    Size crop = PLATE.boundingRect().size();
+    assertEquals(crop, decodedSize(store.read(upright, EvidenceStore.KIND_CROP)));
+    assertEquals(new Size(crop.height, crop.width), decodedSize(store.read(sideways, EvidenceStore.KIND_CROP)));
+    assertNotNull(store.read(upright, EvidenceStore.KIND_CONTEXT));
+    assertNull(store.read(upright + sideways, EvidenceStore.KIND_CROP));
+  }
+
+  @Test
+  public void rotatesPacksAndDeletesOldest() throws IOException {
+    File directory = folder.newFolder("evidence");
+
+    // Every record overflows a one byte pack, so each starts a pack of its own.
+    EvidenceStore store = new EvidenceStore(directory, 1, 2, 1);
+    Mat grey = frame();
+    long[] ids = new long[3];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = store.submit(grey, PLATE, 0, i);
+    }
+    store.close();
+    grey.release();
+
+    assertNull(store.read(ids[0], EvidenceStore.KIND_CROP));
+    assertNull(store.read(ids[1], EvidenceStore.KIND_CROP));
+    assertNotNull(store.read(ids[2], EvidenceStore.KIND_CROP));
+    assertNotNull(store.read(ids[2], EvidenceStore.KIND_CONTEXT));
+
+    String[] names = directory.list();
+    Arrays.sort(names);
+    assertArrayEquals(new String[] {"00000004.idx", "00000004.pack", "00000005.idx", "00000005.pack"}, names);
+  }
+
+  @Test
+  public void rebuildsIndexOnRestart() throws IOException {
+    File directory = folder.newFolder("evidence");
+    EvidenceStore store = new EvidenceStore(directory, EvidenceStore.DEFAULT_MAX_PACK_BYTES, 4, 1);
+    Mat grey = frame();
+    long first = store.submit(grey, PLATE, 0, 1);
+    long second = store.submit(grey, PLATE, 0, 2);
+    store.close();
+    byte[] crop = store.read(second, EvidenceStore.KIND_CROP);
+    byte[] context = store.read(second, EvidenceStore.KIND_CONTEXT);
+
+    EvidenceStore reopened = new EvidenceStore(directory, EvidenceStore.DEFAULT_MAX_PACK_BYTES, 4, 1);
+    try {
+      assertNotNull(reopened.read(first, EvidenceStore.KIND_CROP));
+      assertArrayEquals(crop, reopened.read(second, EvidenceStore.KIND_CROP));
+      assertArrayEquals(context, reopened.read(second, EvidenceStore.KIND_CONTEXT));
+
+      // Ids carry on from the previous run.
+      assertEquals(second + 1, reopened.submit(grey, PLATE, 0, 3));
+    } finally {
+      reopened.close();
+      grey.release();
+    }
+  }
+
+  @Test
+  public void dropsEntriesPastEndOfTruncatedPack() throws IOException {
+    File directory = folder.newFolder("evidence");
+    EvidenceStore store = new EvidenceStore(directory, EvidenceStore.DEFAULT_MAX_PACK_BYTES, 4, 1);
+    Mat grey = frame();
+    long id = store.submit(grey, PLATE, 0, 1);
+    store.close();
+    grey.release();
+
+    // A crash after the index entry was written but before the context reached the disk.
+    try (RandomAccessFile pack = new RandomAccessFile(new File(directory, "00000000.pack"), "rw")) {
+      pack.setLength(pack.length() - 1);
+    }
+
+    EvidenceStore reopened = new EvidenceStore(directory, EvidenceStore.DEFAULT_MAX_PACK_BYTES, 4, 1);
+    try {
+      assertNotNull(reopened.read(id, EvidenceStore.KIND_CROP));
+      assertNull(reopened.read(id, EvidenceStore.KIND_CONTEXT));
+    } finally {
+      reopened.close();
+    }
+  }
+
+  @Test
+  public void ignoresForeignIndexFiles() throws IOException {
+    File directory = folder.newFolder("evidence");
+    assertTrue(new File(directory, "notes.idx").createNewFile());
+
+    EvidenceStore store = new EvidenceStore(directory, EvidenceStore.DEFAULT_MAX_PACK_BYTES, 4, 1);
+    Mat grey = frame();
+    long id = store.submit(grey, PLATE, 0, 1);
+    store.close();
+    grey.release();
+
+    assertEquals(1, id);
+    assertTrue(new File(directory, "00000000.pack").isFile());
+  }
+
+  /**
+   * Noise compresses poorly, so every record is well over the one byte packs.
+   */
+  private static Mat frame() {
+    Mat grey = new Mat(480, 640, CvType.CV_8UC1);
+    Core.randu(grey, 0, 256);
+    return grey;
+  }
+
+  private static Size decodedSize(byte[] jpeg) {
+    assertNotNull(jpeg);
+    MatOfByte buffer = new MatOfByte(jpeg);
+    Mat image = Imgcodecs.imdecode(buffer, Imgcodecs.IMREAD_GRAYSCALE);
+    Size size = image.size();
+    image.release();
+    buffer.release();
+    return size;
+  }
+}
@@ -0,0 +1,82 @@
+package dev.robertpitt.anprX;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+
+import static org.junit.Assert.assertEquals;
+
+public class GeometryTest {
+  private static final double EPSILON = 1e-9;
+
+  @Test
+  public void areaIgnoresWinding() {
+    Point[] square = square(0, 0, 2);
+    assertEquals(4, Geometry.area(square), EPSILON);
+    assertEquals(4, Geometry.area(reverse(square)), EPSILON);
+    assertEquals(-Geometry.signedArea(square), Geometry.signedArea(reverse(square)), EPSILON);
+  }
+
+  @Test
+  public void intersectionOfOverlappingSquares() {
+    assertEquals(1, Geometry.intersectionArea(square(0, 0, 2), square(1, 1, 2)), EPSILON);
+  }
+
+  @Test
+  public void intersectionWithItself() {
+    assertEquals(4, Geometry.intersectionArea(square(0, 0, 2), square(0, 0, 2)), EPSILON);
+  }
+
+  @Test
+  public void intersectionOfContainedSquare() {
+    assertEquals(1, Geometry.intersectionArea(square(0, 0, 4), square(1, 1, 1)), EPSILON);
+    assertEquals(1, Geometry.intersectionArea(square(1, 1, 1), square(0, 0, 4)), EPSILON);
+  }
+
+  @Test
+  public void intersectionOfDisjointSquares() {
+    assertEquals(0, Geometry.intersectionArea(square(0, 0, 1), square(5, 5, 1)), EPSILON);
+  }
+
+  @Test
+  public void intersectionOfTouchingSquares() {
+    assertEquals(0, Geometry.intersectionArea(square(0, 0, 1), square(1, 0, 1)), EPSILON);
+  }
+
+  @Test
+  public void intersectionIsIndependentOfWinding() {
+    Point[] a = square(0, 0, 2);
+    Point[] b = square(1, 0, 2);
+    assertEquals(2, Geometry.intersectionArea(reverse(a), b), EPSILON);
+    assertEquals(2, Geometry.intersectionArea(a, reverse(b)), EPSILON);
+    assertEquals(2, Geometry.intersectionArea(reverse(a), reverse(b)), EPSILON);
+  }
+
+  @Test
+  public void intersectionOfRotatedSquare() {
+    // A diamond inscribed in the square, half its area.
+    Point[] diamond = {new Point(1, 0), new Point(2, 1), new Point(1, 2), new Point(0, 1)};
+    assertEquals(2, Geometry.intersectionArea(square(0, 0, 2), diamond), EPSILON);
+
+    // The same diamond against the right half of the square.
+    Point[] half = {new Point(1, 0), new Point(2, 0), new Point(2, 2), new Point(1, 2)};
+    assertEquals(1, Geometry.intersectionArea(half, diamond), EPSILON);
+  }
+
+  @Test
+  public void iouOfShiftedSquares() {
+    assertEquals(1 / 7.0, Geometry.iou(square(0, 0, 2), square(1, 1, 2)), EPSILON);
+    assertEquals(1, Geometry.iou(square(0, 0, 2), square(0, 0, 2)), EPSILON);
+  }
+
+  private static Point[] square(double x, double y, double side) {
+    return new Point[]{new Point(x, y), new Point(x + side, y), new Point(x + side, y + side), new Point(x, y + side)};
+  }
+
+  private static Point[] reverse(Point[] polygon) {
+    Point[] reversed = new Point[polygon.length];
+    for (int i = 0; i < polygon.length; i++) {
+      reversed[i] = polygon[polygon.length - 1 - i];
+    }
+    return reversed;
+  }
+}
@@ -0,0 +1,158 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a ladder of three rungs with a scripted reader, which records the height of every
+ * crop it is handed to tell the rungs apart.
+ */
+public class OcrLadderTest {
+  private static final int[] HEIGHTS = {32, 48, 64};
+
+  /**
+   * Replays queued reads in order, whatever the crop.
+   */
+  private static class ScriptedReader implements PlateReader {
+    final Deque<PlateRead> script = new ArrayDeque<>();
+    final List<Integer> heights = new ArrayList<>();
+    int closed = 0;
+
+    ScriptedReader then(PlateRead read) {
+      script.add(read);
+      return this;
+    }
+
+    @Override
+    public PlateRead read(Mat crop) {
+      heights.add(crop.rows());
+      return script.remove();
+    }
+
+    @Override
+    public void close() {
+      closed++;
+    }
+  }
+
+  @BeforeClass
+  public static void loadOpenCV() {
+    OpenCV.loadLocally();
+  }
+
+  private ScriptedReader reader;
+  private OcrLadder ladder;
+  private Mat crop;
+
+  @Before
+  public void setUp() {
+    reader = new ScriptedReader();
+    List<OcrLadder.Rung> rungs = new ArrayList<>();
+    for (int i = 0; i < HEIGHTS.length; i++) {
+      rungs.add(new OcrLadder.Rung("rung" + i, reader, HEIGHTS[i], null, 70));
+    }
+    ladder = new OcrLadder(rungs);
+    crop = new Mat(40, 180, CvType.CV_8UC1, new Scalar(200));
+  }
+
+  @After
+  public void tearDown() {
+    ladder.close();
+    crop.release();
+  }
+
+  @Test
+  public void acceptsConfidentValidReadOnFirstRung() {
+    PlateRead read = new PlateRead("AB12CDE", 90);
+    reader.then(read);
+
+    assertSame(read, ladder.read(crop));
+    assertEquals(Arrays.asList(32), reader.heights);
+    assertEquals(1.0, ladder.firstRungRate(), 0);
+    assertTrue(rendered().contains("anprx_ocr_rung_bucket{le=\"0\"} 1"));
+  }
+
+  @Test
+  public void escalatesUntilReadIsAccepted() {
+    PlateRead accepted = new PlateRead("AB12CDE", 80);
+    reader.then(new PlateRead("AB12CDE", 50))
+        .then(new PlateRead("AB12CDE", 90, 40))
+        .then(accepted);
+
+    assertSame(accepted, ladder.read(crop));
+    assertEquals(Arrays.asList(32, 48, 64), reader.heights);
+    assertEquals(0.0, ladder.firstRungRate(), 0);
+    String metrics = rendered();
+    assertTrue(metrics.contains("anprx_ocr_rung_bucket{le=\"1\"} 0"));
+    assertTrue(metrics.contains("anprx_ocr_rung_bucket{le=\"2\"} 1"));
+  }
+
+  @Test
+  public void escalatesPastInvalidFormat() {
+    PlateRead accepted = new PlateRead("AB12CDE", 75);
+    reader.then(new PlateRead("AB1CDE2", 99)).then(accepted);
+
+    assertSame(accepted, ladder.read(crop));
+    assertEquals(Arrays.asList(32, 48), reader.heights);
+  }
+
+  @Test
+  public void stopsClimbingOnTimeout() {
+    PlateRead weak = new PlateRead("AB12CDE", 50);
+    reader.then(weak).then(PlateRead.timedOut());
+
+    assertSame(weak, ladder.read(crop));
+    assertEquals(Arrays.asList(32, 48), reader.heights);
+    assertTrue(ladder.toString().contains("timeouts=1"));
+    assertTrue(rendered().contains("anprx_ocr_rung_bucket{le=\"+Inf\"} 1"));
+  }
+
+  @Test
+  public void returnsTimedOutReadWhenFirstRungTimesOut() {
+    reader.then(PlateRead.timedOut());
+
+    assertTrue(ladder.read(crop).timedOut);
+    assertEquals(Arrays.asList(32), reader.heights);
+  }
+
+  @Test
+  public void returnsBestReadWhenNoRungAccepts() {
+    PlateRead best = new PlateRead("AB12CDE", 60);
+    reader.then(new PlateRead("AB1CDE2", 95))
+        .then(new PlateRead("AB12CDF", 40))
+        .then(best);
+
+    // A valid format beats a higher confidence, then the more confident valid read wins.
+    assertSame(best, ladder.read(crop));
+    assertTrue(ladder.toString().contains("unaccepted=1"));
+    assertTrue(rendered().contains("anprx_ocr_rung_bucket{le=\"+Inf\"} 1"));
+  }
+
+  @Test
+  public void closesSharedReaderOnce() {
+    ladder.close();
+    assertEquals(1, reader.closed);
+  }
+
+  private String rendered() {
+    StringBuilder out = new StringBuilder();
+    ladder.render(out);
+    return out.toString();
+  }
+}
@@ -0,0 +1,154 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrientationTransformTest {
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 5;
+  private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+  @BeforeClass
+  public static void loadOpenCV() {
+    OpenCV.loadLocally();
+  }
+
+  @Test
+  public void normalisesRotation() {
+    assertEquals(270, new OrientationTransform(WIDTH, HEIGHT, -90).rotationDegrees);
+    assertEquals(90, new OrientationTransform(WIDTH, HEIGHT, 450).rotationDegrees);
+    assertTrue(new OrientationTransform(WIDTH, HEIGHT, 360).isIdentity());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnsupportedRotation() {
+    new OrientationTransform(WIDTH, HEIGHT, 45);
+  }
+
+  @Test
+  public void swapsAxesOnQuarterTurns() {
+    OrientationTransform quarter = new OrientationTransform(WIDTH, HEIGHT, 90);
+    assertTrue(quarter.swapsAxes());
+    assertEquals(HEIGHT, quarter.uprightWidth());
+    assertEquals(WIDTH, quarter.uprightHeight());
+
+    OrientationTransform half = new OrientationTransform(WIDTH, HEIGHT, 180);
+    assertFalse(half.swapsAxes());
+    assertEquals(WIDTH, half.uprightWidth());
+    assertEquals(HEIGHT, half.uprightHeight());
+  }
+
+  @Test
+  public void mapsPixelsLikeCoreRotate() {
+    Mat sensor = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        sensor.put(y, x, y * WIDTH + x);
+      }
+    }
+
+    for (int rotation : ROTATIONS) {
+      OrientationTransform transform = new OrientationTransform(WIDTH, HEIGHT, rotation);
+      Mat upright = rotate(sensor, rotation);
+      assertEquals(transform.uprightWidth(), upright.cols());
+      assertEquals(transform.uprightHeight(), upright.rows());
+
+      for (int y = 0; y < HEIGHT; y++) {
+        for (int x = 0; x < WIDTH; x++) {
+          Point mapped = transform.toUpright(new Point(x, y));
+          assertEquals("rotation " + rotation, y * WIDTH + x, upright.get((int) mapped.y, (int) mapped.x)[0], 0);
+
+          Point back = transform.toSensor(mapped);
+          assertEquals(x, back.x, 1e-9);
+          assertEquals(y, back.y, 1e-9);
+        }
+      }
+      upright.release();
+    }
+    sensor.release();
+  }
+
+  @Test
+  public void swapsDetectionSizeOnQuarterTurns() {
+    RotatedRect sensor = new RotatedRect(new Point(3, 2), new Size(4, 1), 10);
+
+    RotatedRect quarter = new OrientationTransform(WIDTH, HEIGHT, 90).toUpright(sensor);
+    assertEquals(new Point(HEIGHT - 1 - 2, 3), quarter.center);
+    assertEquals(new Size(1, 4), quarter.size);
+    assertEquals(10, quarter.angle, 0);
+
+    RotatedRect half = new OrientationTransform(WIDTH, HEIGHT, 180).toUpright(sensor);
+    assertEquals(new Point(WIDTH - 1 - 3, HEIGHT - 1 - 2), half.center);
+    assertEquals(new Size(4, 1), half.size);
+  }
+
+  @Test
+  public void cropsUprightPatchFromSensorFrame() {
+    // A bright bar on a dark frame, cut out of every orientation it reads the same.
+    Mat upright = Mat.zeros(60, 100, CvType.CV_8UC1);
+    upright.submat(20, 30, 20, 60).setTo(new org.opencv.core.Scalar(255));
+    RotatedRect plate = new RotatedRect(new Point(39.5, 24.5), new Size(40, 10), 0);
+
+    Mat expected = new OrientationTransform(100, 60, 0).crop(upright, plate);
+    assertEquals(40, expected.cols());
+    assertEquals(10, expected.rows());
+    assertEquals(255, Core.mean(expected).val[0], 1e-6);
+
+    for (int rotation : ROTATIONS) {
+      // The sensor frame is the upright frame turned back by the rotation.
+      Mat sensor = rotate(upright, (360 - rotation) % 360);
+      OrientationTransform transform = new OrientationTransform(sensor.cols(), sensor.rows(), rotation);
+      Mat patch = transform.crop(sensor, plate);
+
+      assertEquals(expected.size(), patch.size());
+      Mat difference = new Mat();
+      Core.absdiff(expected, patch, difference);
+      assertEquals("rotation " + rotation, 0, Core.countNonZero(difference));
+
+      difference.release();
+      patch.release();
+      sensor.release();
+    }
+    expected.release();
+    upright.release();
+  }
+
+  @Test
+  public void cachesTransformForUnchangedFrames() {
+    OrientationTransform first = OrientationTransform.forFrame(WIDTH, HEIGHT, 90);
+    assertSame(first, OrientationTransform.forFrame(WIDTH, HEIGHT, 90));
+    assertSame(first, OrientationTransform.forFrame(WIDTH, HEIGHT, -270));
+    assertNotSame(first, OrientationTransform.forFrame(WIDTH, HEIGHT, 180));
+  }
+
+  private static Mat rotate(Mat source, int rotation) {
+    Mat rotated = new Mat();
+    switch (rotation) {
+      case 90:
+        Core.rotate(source, rotated, Core.ROTATE_90_CLOCKWISE);
+        break;
+      case 180:
+        Core.rotate(source, rotated, Core.ROTATE_180);
+        break;
+      case 270:
+        Core.rotate(source, rotated, Core.ROTATE_90_COUNTERCLOCKWISE);
+        break;
+      default:
+        source.copyTo(rotated);
+    }
+    return rotated;
+  }
+}
@@ -0,0 +1,52 @@
+package dev.robertpitt.anprX;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlateFormatTest {
+  @Test
+  public void matchesCurrentFormat() {
+    assertTrue(PlateFormat.matches("AB12CDE"));
+    assertFalse(PlateFormat.matches("AB1CDE2"));
+    assertFalse(PlateFormat.matches("A12BCDE"));
+  }
+
+  @Test
+  public void matchesPrefixFormat() {
+    assertTrue(PlateFormat.matches("A123BCD"));
+    assertTrue(PlateFormat.matches("P1ABC"));
+    assertFalse(PlateFormat.matches("I123BCD"));
+    assertFalse(PlateFormat.matches("Q123BCD"));
+    assertFalse(PlateFormat.matches("Z123BCD"));
+  }
+
+  @Test
+  public void matchesSuffixFormat() {
+    assertTrue(PlateFormat.matches("ABC123D"));
+    assertTrue(PlateFormat.matches("ABC1D"));
+    assertFalse(PlateFormat.matches("ABC123I"));
+    assertFalse(PlateFormat.matches("ABC123Z"));
+  }
+
+  @Test
+  public void matchesDatelessFormat() {
+    assertTrue(PlateFormat.matches("A1"));
+    assertTrue(PlateFormat.matches("ABC1234"));
+    assertTrue(PlateFormat.matches("1234ABC"));
+    assertFalse(PlateFormat.matches("AB"));
+    assertFalse(PlateFormat.matches("1234"));
+  }
+
+  @Test
+  public void rejectsOcrNoise() {
+    assertFalse(PlateFormat.matches(null));
+    assertFalse(PlateFormat.matches(""));
+    assertFalse(PlateFormat.matches("A"));
+    assertFalse(PlateFormat.matches("AB12CDEF"));
+    assertFalse(PlateFormat.matches("ab12cde"));
+    assertFalse(PlateFormat.matches("AB12 CDE"));
+    assertFalse(PlateFormat.matches("A1B2C3"));
+  }
+}
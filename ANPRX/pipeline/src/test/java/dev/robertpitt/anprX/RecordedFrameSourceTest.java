@@ -0,0 +1,191 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips frames through {@link RawFrameWriter} and {@link RecordedFrameSource}.
+ */
+public class RecordedFrameSourceTest {
+  private static final int WIDTH = 6;
+  private static final int HEIGHT = 4;
+
+  /**
+   * Rows are padded, as planes from the camera usually are.
+   */
+  private static final int ROW_STRIDE = 8;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void loadOpenCV() {
+    OpenCV.loadLocally();
+  }
+
+  @Test
+  public void roundTripsFrames() throws IOException {
+    File file = record(5, 2);
+
+    RecordedFrameSource source = new RecordedFrameSource(file);
+    try {
+      assertEquals(5, source.getFrameCount());
+      Frame frame = new Frame();
+      for (int i = 0; i < 5; i++) {
+        assertTrue(source.read(frame));
+        assertFrame(frame, i);
+      }
+      assertFalse(source.read(frame));
+      frame.release();
+    } finally {
+      source.close();
+    }
+  }
+
+  @Test
+  public void roundTripsUnpaddedRows() throws IOException {
+    File file = folder.newFile("unpadded" + RawFrameFormat.FILE_EXTENSION);
+    RawFrameWriter writer = new RawFrameWriter(file, 4);
+    byte[] data = new byte[WIDTH * HEIGHT];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    writer.write(ByteBuffer.wrap(data), WIDTH, HEIGHT, WIDTH, 0, 42);
+    writer.close();
+
+    RecordedFrameSource source = new RecordedFrameSource(file);
+    try {
+      Frame frame = new Frame();
+      assertTrue(source.read(frame));
+      byte[] pixels = new byte[WIDTH * HEIGHT];
+      frame.grey.get(0, 0, pixels);
+      for (int i = 0; i < pixels.length; i++) {
+        assertEquals(data[i], pixels[i]);
+      }
+      frame.release();
+    } finally {
+      source.close();
+    }
+  }
+
+  @Test
+  public void seeksAcrossChunks() throws IOException {
+    File file = record(7, 3);
+
+    RecordedFrameSource source = new RecordedFrameSource(file);
+    try {
+      Frame frame = new Frame();
+      for (int i : new int[]{6, 0, 3, 4, 2}) {
+        source.seek(i);
+        assertTrue(source.read(frame));
+        assertFrame(frame, i);
+      }
+
+      source.seek(7);
+      assertFalse(source.read(frame));
+      frame.release();
+    } finally {
+      source.close();
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rejectsSeekPastEnd() throws IOException {
+    RecordedFrameSource source = new RecordedFrameSource(record(2, 2));
+    try {
+      source.seek(3);
+    } finally {
+      source.close();
+    }
+  }
+
+  @Test
+  public void rebuildsIndexWithoutFooter() throws IOException {
+    // A recording cut short after the last frame, as when the app is killed mid recording.
+    File file = record(5, 2);
+    long end = file.length();
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(end - RawFrameFormat.FOOTER_TRAILER_SIZE);
+    } finally {
+      raf.close();
+    }
+
+    RecordedFrameSource source = new RecordedFrameSource(file);
+    try {
+      assertEquals(5, source.getFrameCount());
+      Frame frame = new Frame();
+      source.seek(4);
+      assertTrue(source.read(frame));
+      assertFrame(frame, 4);
+      frame.release();
+    } finally {
+      source.close();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherFiles() throws IOException {
+    File file = folder.newFile("other" + RawFrameFormat.FILE_EXTENSION);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.write(new byte[64]);
+    } finally {
+      raf.close();
+    }
+    new RecordedFrameSource(file).close();
+  }
+
+  /**
+   * Record frames whose pixels encode the frame index, row and column, with the padding
+   * filled with a value no pixel has.
+   */
+  private File record(int frames, int chunkFrames) throws IOException {
+    File file = folder.newFile("recording" + RawFrameFormat.FILE_EXTENSION);
+    RawFrameWriter writer = new RawFrameWriter(file, chunkFrames);
+    for (int i = 0; i < frames; i++) {
+      ByteBuffer plane = ByteBuffer.allocate(ROW_STRIDE * (HEIGHT - 1) + WIDTH);
+      for (int y = 0; y < HEIGHT; y++) {
+        for (int x = 0; x < ROW_STRIDE && y * ROW_STRIDE + x < plane.capacity(); x++) {
+          plane.put((byte) (x < WIDTH ? pixel(i, x, y) : 0xff));
+        }
+      }
+      plane.flip();
+      writer.write(plane, WIDTH, HEIGHT, ROW_STRIDE, 90 * (i % 4), 1000L * i);
+    }
+    writer.close();
+    return file;
+  }
+
+  private static void assertFrame(Frame frame, int i) {
+    assertEquals(i, frame.index);
+    assertEquals(1000L * i, frame.timestampNanos);
+    assertEquals(90 * (i % 4), frame.rotationDegrees);
+    assertEquals(WIDTH, frame.grey.cols());
+    assertEquals(HEIGHT, frame.grey.rows());
+
+    byte[] pixels = new byte[WIDTH * HEIGHT];
+    frame.grey.get(0, 0, pixels);
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        assertEquals((byte) pixel(i, x, y), pixels[y * WIDTH + x]);
+      }
+    }
+  }
+
+  private static int pixel(int frame, int x, int y) {
+    return frame * 32 + y * WIDTH + x;
+  }
+}
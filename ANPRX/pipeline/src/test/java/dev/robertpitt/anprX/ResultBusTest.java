@@ -0,0 +1,208 @@
+package dev.robertpitt.anprX;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultBusTest {
+  private static final RotatedRect PLATE = new RotatedRect(new Point(100, 50), new Size(160, 36), 0);
+
+  @Test
+  public void roundsCapacityUpToPowerOfTwo() {
+    assertEquals(8, new ResultBus(5).capacity());
+    assertEquals(8, new ResultBus(8).capacity());
+    assertEquals(1, new ResultBus(1).capacity());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyCapacity() {
+    new ResultBus(0);
+  }
+
+  @Test
+  public void deliversEventsInOrder() {
+    ResultBus bus = new ResultBus(8);
+    ResultBus.Subscriber subscriber = bus.subscribe("test");
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, publish(bus, i));
+    }
+
+    ResultBus.Event event = new ResultBus.Event();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(subscriber.poll(event));
+      assertEquals(i, event.sequence);
+      assertEquals(i, event.timestampNanos);
+      assertEquals("P" + i, event.text);
+      assertEquals(ResultBus.Type.RECOGNITION, event.type);
+      assertEquals(PLATE.size.width, event.width, 0);
+    }
+    assertFalse(subscriber.poll(event));
+    assertEquals(5, subscriber.delivered());
+    assertEquals(0, subscriber.lost());
+  }
+
+  @Test
+  public void subscriberOnlySeesLaterEvents() {
+    ResultBus bus = new ResultBus(8);
+    publish(bus, 0);
+    publish(bus, 1);
+
+    ResultBus.Subscriber subscriber = bus.subscribe("late");
+    assertEquals(2, subscriber.sequence());
+    assertEquals(0, subscriber.lag());
+
+    publish(bus, 2);
+    ResultBus.Event event = new ResultBus.Event();
+    assertTrue(subscriber.poll(event));
+    assertEquals(2, event.sequence);
+    assertFalse(subscriber.poll(event));
+  }
+
+  @Test
+  public void lagCountsUnreadEvents() {
+    ResultBus bus = new ResultBus(8);
+    ResultBus.Subscriber subscriber = bus.subscribe("test");
+    assertEquals(0, subscriber.lag());
+
+    for (int i = 0; i < 3; i++) {
+      publish(bus, i);
+    }
+    assertEquals(3, subscriber.lag());
+
+    ResultBus.Event event = new ResultBus.Event();
+    subscriber.poll(event);
+    assertEquals(2, subscriber.lag());
+    while (subscriber.poll(event)) {
+      // Drain.
+    }
+    assertEquals(0, subscriber.lag());
+  }
+
+  @Test
+  public void lappedSubscriberSkipsToOldestAndCountsLost() {
+    ResultBus bus = new ResultBus(4);
+    ResultBus.Subscriber subscriber = bus.subscribe("slow");
+
+    // Ten events through a ring of four, the first six are overwritten.
+    for (int i = 0; i < 10; i++) {
+      publish(bus, i);
+    }
+    assertEquals(10, subscriber.lag());
+
+    ResultBus.Event event = new ResultBus.Event();
+    for (int i = 6; i < 10; i++) {
+      assertTrue(subscriber.poll(event));
+      assertEquals(i, event.sequence);
+      assertEquals("P" + i, event.text);
+    }
+    assertFalse(subscriber.poll(event));
+    assertEquals(6, subscriber.lost());
+    assertEquals(4, subscriber.delivered());
+    assertEquals(0, subscriber.lag());
+  }
+
+  @Test
+  public void subscribersReadIndependently() {
+    ResultBus bus = new ResultBus(4);
+    ResultBus.Subscriber fast = bus.subscribe("fast");
+    ResultBus.Subscriber slow = bus.subscribe("slow");
+    ResultBus.Event event = new ResultBus.Event();
+
+    for (int i = 0; i < 8; i++) {
+      publish(bus, i);
+      assertTrue(fast.poll(event));
+      assertEquals(i, event.sequence);
+    }
+
+    assertEquals(0, fast.lost());
+    assertEquals(8, fast.delivered());
+    assertTrue(slow.poll(event));
+    assertEquals(4, event.sequence);
+    assertEquals(4, slow.lost());
+  }
+
+  @Test
+  public void closeDetachesSubscriber() {
+    ResultBus bus = new ResultBus(4);
+    ResultBus.Subscriber subscriber = bus.subscribe("test");
+    assertEquals(1, bus.subscribers().size());
+
+    subscriber.close();
+    assertTrue(bus.subscribers().isEmpty());
+  }
+
+  @Test
+  public void consumerSurvivesListenerFailures() throws InterruptedException {
+    ResultBus bus = new ResultBus(16);
+    final List<Long> received = new ArrayList<>();
+    ResultBus.Subscriber consumer = bus.startConsumer("flaky", event -> {
+      if (event.sequence % 2 == 0) {
+        throw new IllegalStateException("Listener failure");
+      }
+      synchronized (received) {
+        received.add(event.sequence);
+      }
+    }, 100000L);
+
+    for (int i = 0; i < 6; i++) {
+      publish(bus, i);
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (true) {
+      synchronized (received) {
+        if (received.size() + consumer.failures() == 6) {
+          break;
+        }
+      }
+      assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+    consumer.close();
+
+    synchronized (received) {
+      assertEquals(Arrays.asList(1L, 3L, 5L), received);
+    }
+    assertEquals(3, consumer.failures());
+    assertEquals(6, consumer.delivered());
+  }
+
+  @Test
+  public void closeWaitsForConsumerToFinishEvent() throws InterruptedException {
+    ResultBus bus = new ResultBus(4);
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicBoolean finished = new AtomicBoolean(false);
+    ResultBus.Subscriber consumer = bus.startConsumer("slow", event -> {
+      started.countDown();
+      try {
+        Thread.sleep(200);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      finished.set(true);
+    }, 100000L);
+
+    publish(bus, 0);
+    assertTrue("Timed out waiting", started.await(5, TimeUnit.SECONDS));
+    consumer.close();
+
+    assertTrue(finished.get());
+    assertTrue(bus.subscribers().isEmpty());
+  }
+
+  private static long publish(ResultBus bus, int i) {
+    return bus.publish(ResultBus.Type.RECOGNITION, i, PLATE, 0.5, "P" + i, 90, -1);
+  }
+}
@@ -0,0 +1,211 @@
+package dev.robertpitt.anprX;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the exporter against a {@link MiniHttpServer} stub whose response status is switched
+ * by the test, an outage being a 503.
+ */
+public class SightingExporterTest {
+  private static final int BATCH_SIZE = 10;
+  private static final long BATCH_DELAY_MILLIS = 100;
+
+  /**
+   * Long enough for the first retry after a failure, which backs off for up to a second.
+   */
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AtomicInteger status = new AtomicInteger(200);
+  private final AtomicInteger requests = new AtomicInteger();
+  private final Set<String> received = new HashSet<>();
+
+  private MiniHttpServer stub;
+  private File spool;
+  private SightingExporter exporter;
+
+  @Before
+  public void setUp() throws IOException {
+    stub = new MiniHttpServer(0, 4, (request, out) -> {
+      requests.incrementAndGet();
+      int code = status.get();
+      if (code == 200) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(new ByteArrayInputStream(request.body)), "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          synchronized (received) {
+            received.add(line);
+          }
+        }
+      }
+      MiniHttpServer.respond(out, code, "text/plain", code == 200 ? "ok" : "error");
+    });
+    spool = folder.newFolder("spool");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (exporter != null) {
+      exporter.close();
+    }
+    stub.close();
+  }
+
+  @Test
+  public void spoolsBatchesDuringOutage() throws Exception {
+    status.set(503);
+    exporter = exporter(SightingExporter.DEFAULT_MAX_SPOOL_BYTES);
+
+    publish(3 * BATCH_SIZE);
+    await(() -> exporter.getBatchesSpooled() == 3);
+
+    assertEquals(3, spooledFiles().length);
+    assertEquals(0, exporter.getSightingsSent());
+    assertEquals(0, exporter.getSightingsDropped());
+    assertTrue(exporter.getFailures() >= 1);
+    assertTrue(exporter.getSpoolBytes() > 0);
+  }
+
+  @Test
+  public void drainsSpoolAfterRecovery() throws Exception {
+    status.set(503);
+    exporter = exporter(SightingExporter.DEFAULT_MAX_SPOOL_BYTES);
+
+    publish(3 * BATCH_SIZE);
+    await(() -> exporter.getBatchesSpooled() == 3);
+
+    status.set(200);
+    await(() -> exporter.isIdle());
+
+    assertEquals(3 * BATCH_SIZE, exporter.getSightingsSent());
+    assertEquals(0, spooledFiles().length);
+    assertEquals(0, exporter.getSpoolBytes());
+    synchronized (received) {
+      // Every sighting arrived once, each with its own id.
+      assertEquals(3 * BATCH_SIZE, received.size());
+      Set<String> ids = new HashSet<>();
+      for (String line : received) {
+        ids.add(line.substring(0, line.indexOf(',')));
+      }
+      assertEquals(3 * BATCH_SIZE, ids.size());
+    }
+  }
+
+  @Test
+  public void dropsBatchRejectedWithClientError() throws Exception {
+    status.set(400);
+    exporter = exporter(SightingExporter.DEFAULT_MAX_SPOOL_BYTES);
+
+    publish(BATCH_SIZE);
+    await(() -> exporter.getSightingsDropped() == BATCH_SIZE);
+    Thread.sleep(3 * BATCH_DELAY_MILLIS);
+
+    assertEquals(1, requests.get());
+    assertEquals(0, exporter.getBatchesSpooled());
+    assertEquals(0, spooledFiles().length);
+    assertEquals(0, exporter.getSightingsSent());
+  }
+
+  @Test
+  public void evictsOldestBatchesAtSpoolLimit() throws Exception {
+    status.set(503);
+
+    // Measure a spooled batch, then bound the spool to two and a half of them.
+    exporter = exporter(SightingExporter.DEFAULT_MAX_SPOOL_BYTES);
+    publish(BATCH_SIZE);
+    await(() -> exporter.getBatchesSpooled() == 1);
+    long batchBytes = exporter.getSpoolBytes();
+    exporter.close();
+    for (File file : spooledFiles()) {
+      assertTrue(file.delete());
+    }
+
+    long maxSpoolBytes = batchBytes * 5 / 2;
+    exporter = exporter(maxSpoolBytes);
+    publish(5 * BATCH_SIZE);
+    await(() -> exporter.getBatchesSpooled() == 5);
+
+    File[] files = spooledFiles();
+    assertEquals(2, files.length);
+    assertTrue(exporter.getSpoolBytes() <= maxSpoolBytes);
+    assertEquals(3 * BATCH_SIZE, exporter.getSightingsDropped());
+
+    // The newest batches are the ones kept.
+    assertTrue(files[0].getName().startsWith(String.format(Locale.ROOT, "%020d-", 3)));
+    assertTrue(files[1].getName().startsWith(String.format(Locale.ROOT, "%020d-", 4)));
+  }
+
+  @Test
+  public void ignoresSightingsAfterClose() throws Exception {
+    exporter = exporter(SightingExporter.DEFAULT_MAX_SPOOL_BYTES);
+    exporter.close();
+
+    publish(2 * BATCH_SIZE);
+    Thread.sleep(3 * BATCH_DELAY_MILLIS);
+
+    assertEquals(0, requests.get());
+    assertEquals(0, exporter.getBatchesSpooled());
+    assertEquals(0, spooledFiles().length);
+    assertTrue(exporter.isIdle());
+  }
+
+  private SightingExporter exporter(long maxSpoolBytes) throws IOException {
+    return new SightingExporter(new URL("http://127.0.0.1:" + stub.getPort() + "/sightings"), spool,
+        BATCH_SIZE, BATCH_DELAY_MILLIS, maxSpoolBytes, 1);
+  }
+
+  private void publish(int count) {
+    ResultBus.Event event = new ResultBus.Event();
+    event.type = ResultBus.Type.RECOGNITION;
+    event.text = "AB12CDE";
+    event.confidence = 90;
+    event.score = 0.8;
+    event.width = 160;
+    event.height = 36;
+    event.evidenceId = -1;
+    for (int i = 0; i < count; i++) {
+      event.timestampNanos = System.nanoTime();
+      event.epochMillis = System.currentTimeMillis();
+      event.centreX = i;
+      exporter.onEvent(event);
+    }
+  }
+
+  private File[] spooledFiles() {
+    File[] files = spool.listFiles((directory, name) -> name.endsWith(".ndjson.gz"));
+    Arrays.sort(files);
+    return files;
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+}
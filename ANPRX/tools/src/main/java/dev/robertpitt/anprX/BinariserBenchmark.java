@@ -0,0 +1,156 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the cost of {@link AdaptiveBinariser} against the global Otsu threshold, and how
+ * often the labelled plates of an image set still segment into a full row of characters,
+ * with and without a shadow.
+ *
+ *   ./gradlew :tools:run -Ptool=BinariserBenchmark --args="notebooks/frames [iterations]"
+ */
+public class BinariserBenchmark {
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: BinariserBenchmark <images> [iterations]");
+      System.exit(1);
+    }
+
+    OpenCV.loadLocally();
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    // Crop every labelled plate the way the pipeline does.
+    File directory = new File(args[0]);
+    GroundTruth truth = GroundTruth.load(new File(directory, "labels.tsv"));
+    List<Mat> images = Evaluator.loadImages(directory, truth);
+    List<Mat> crops = new ArrayList<>();
+    List<Mat> shaded = new ArrayList<>();
+    List<Integer> lengths = new ArrayList<>();
+    List<String> names = truth.images();
+    for (int i = 0; i < names.size(); i++) {
+      Mat image = images.get(i);
+      OrientationTransform orientation = OrientationTransform.forFrame(image.cols(), image.rows(), 0);
+      for (GroundTruth.Label label : truth.labelsFor(names.get(i))) {
+        MatOfPoint2f quad = new MatOfPoint2f(label.quad);
+        Mat crop = orientation.crop(image, Imgproc.minAreaRect(quad));
+        quad.release();
+
+        Mat shadow = crop.clone();
+        shade(shadow);
+        crops.add(crop);
+        shaded.add(shadow);
+        lengths.add(label.text.length());
+      }
+      image.release();
+    }
+
+    if (crops.isEmpty()) {
+      System.err.println("No labelled plates in " + directory);
+      System.exit(1);
+    }
+
+    String[] methods = {"otsu", "sauvola", "wolf"};
+    AdaptiveBinariser sauvola = new AdaptiveBinariser(AdaptiveBinariser.Method.SAUVOLA, AdaptiveBinariser.DEFAULT_SAUVOLA_K, 0);
+    AdaptiveBinariser wolf = new AdaptiveBinariser(AdaptiveBinariser.Method.WOLF, AdaptiveBinariser.DEFAULT_WOLF_K, 0);
+    Mat binary = new Mat();
+
+    System.out.println(String.format(Locale.ROOT, "%d plates, %d iterations", crops.size(), iterations));
+    System.out.println(String.format(Locale.ROOT, "%-8s %10s %10s %10s", "method", "us/crop", "segmented", "shadowed"));
+    for (int method = 0; method < methods.length; method++) {
+      long start = System.nanoTime();
+      for (int iteration = 0; iteration < iterations; iteration++) {
+        for (Mat crop : crops) {
+          if (method == 0) {
+            AdaptiveBinariser.binariseGlobal(crop, binary);
+          } else {
+            (method == 1 ? sauvola : wolf).binarise(crop, binary);
+          }
+        }
+      }
+      double micros = (System.nanoTime() - start) / 1e3 / (iterations * crops.size());
+
+      int segmented = 0;
+      int segmentedShaded = 0;
+      for (int i = 0; i < crops.size(); i++) {
+        for (int shadow = 0; shadow < 2; shadow++) {
+          Mat crop = shadow == 0 ? crops.get(i) : shaded.get(i);
+          if (method == 0) {
+            AdaptiveBinariser.binariseGlobal(crop, binary);
+          } else {
+            (method == 1 ? sauvola : wolf).binarise(crop, binary);
+          }
+          if (segments(binary, lengths.get(i))) {
+            if (shadow == 0) {
+              segmented++;
+            } else {
+              segmentedShaded++;
+            }
+          }
+        }
+      }
+
+      System.out.println(String.format(Locale.ROOT, "%-8s %10.1f %9.1f%% %9.1f%%", methods[method], micros,
+          100.0 * segmented / crops.size(), 100.0 * segmentedShaded / crops.size()));
+    }
+
+    binary.release();
+    for (int i = 0; i < crops.size(); i++) {
+      TrackedMats.release(crops.get(i));
+      shaded.get(i).release();
+    }
+  }
+
+  /**
+   * Darken a crop from the left edge to the middle, a shadow falling across the plate.
+   */
+  private static void shade(Mat crop) {
+    byte[] row = new byte[crop.cols()];
+    for (int y = 0; y < crop.rows(); y++) {
+      crop.get(y, 0, row);
+      for (int x = 0; x < row.length; x++) {
+        double light = Math.min(1.0, 0.25 + 1.5 * x / Math.max(1, row.length - 1));
+        row[x] = (byte) Math.round((row[x] & 0xff) * light);
+      }
+      crop.put(y, 0, row);
+    }
+  }
+
+  /**
+   * @return true when the binarised crop contains a row of as many characters as the label,
+   * the condition for a first pass read to have any chance.
+   */
+  private static boolean segments(Mat binary, int characters) {
+    Mat inverted = new Mat();
+    Core.bitwise_not(binary, inverted);
+    List<MatOfPoint> contours = new ArrayList<>();
+    Mat hierarchy = new Mat();
+    Imgproc.findContours(inverted, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+
+    List<Rect> boxes = new ArrayList<>();
+    for (MatOfPoint contour : contours) {
+      boxes.add(Imgproc.boundingRect(contour));
+      contour.release();
+    }
+    hierarchy.release();
+    inverted.release();
+
+    RotatedRect plate = new RotatedRect(new Point(binary.cols() / 2.0, binary.rows() / 2.0),
+        new Size(binary.cols(), binary.rows()), 0);
+    return CharacterRowVerifier.hasCharacterRow(plate, boxes, characters);
+  }
+}
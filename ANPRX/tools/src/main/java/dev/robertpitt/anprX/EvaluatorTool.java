@@ -0,0 +1,52 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs an {@link Evaluator} over a labelled image set and prints the scorecard, or with
+ * `all` a summary line per detector mode.
+ *
+ *   ./gradlew :tools:run -Ptool=EvaluatorTool --args="notebooks/frames [labels file] [contours|morphology|all]"
+ */
+public class EvaluatorTool {
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: EvaluatorTool <image directory> [labels file] [contours|morphology|all]");
+      System.exit(1);
+    }
+
+    OpenCV.loadLocally();
+
+    File directory = new File(args[0]);
+    File labels = args.length > 1 ? new File(args[1]) : new File(directory, "labels.tsv");
+    String mode = args.length > 2 ? args[2] : DetectorMode.CONTOURS.name();
+    GroundTruth truth = GroundTruth.load(labels);
+
+    if (!mode.equalsIgnoreCase("all")) {
+      Evaluator evaluator = new Evaluator(new RecognitionPipeline(DetectorMode.parse(mode).create(), null));
+      System.out.println(evaluator.evaluate(directory, truth));
+      return;
+    }
+
+    // Every mode on the same decoded frames, summarised side by side.
+    List<Mat> images = Evaluator.loadImages(directory, truth);
+    try {
+      for (DetectorMode detectorMode : DetectorMode.values()) {
+        Evaluator evaluator = new Evaluator(new RecognitionPipeline(detectorMode.create(), null));
+        Evaluator.Scorecard card = evaluator.evaluate(images, truth);
+        System.out.println(String.format(Locale.ROOT, "%-12s precision=%.3f recall=%.3f detections=%d latency %s",
+            detectorMode.name().toLowerCase(Locale.ROOT), card.precision(), card.recall(), card.detections, card.latency));
+      }
+    } finally {
+      for (Mat image : images) {
+        image.release();
+      }
+    }
+  }
+}
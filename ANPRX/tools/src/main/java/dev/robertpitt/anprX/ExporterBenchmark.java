@@ -0,0 +1,99 @@
+package dev.robertpitt.anprX;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Benchmarks a {@link SightingExporter} against a local stub endpoint, which is unreachable
+ * for the first part of the run so the spool and backoff are exercised:
+ *
+ *   ./gradlew :tools:run -Ptool=ExporterBenchmark --args="[seconds] [outage-seconds] [sightings-per-second]"
+ */
+public class ExporterBenchmark {
+  public static void main(String[] args) throws Exception {
+    long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+    long outageSeconds = args.length > 1 ? Long.parseLong(args[1]) : 3;
+    long rate = args.length > 2 ? Long.parseLong(args[2]) : 20000;
+
+    final long outageEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(outageSeconds);
+    final AtomicLong received = new AtomicLong();
+    MiniHttpServer stub = new MiniHttpServer(0, 8, (request, out) -> {
+      if (System.nanoTime() - outageEnd < 0) {
+        MiniHttpServer.respond(out, 503, "text/plain", "offline");
+        return;
+      }
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          new GZIPInputStream(new ByteArrayInputStream(request.body)), "UTF-8"));
+      long lines = 0;
+      while (reader.readLine() != null) {
+        lines++;
+      }
+      received.addAndGet(lines);
+      MiniHttpServer.respond(out, 200, "text/plain", "ok");
+    });
+
+    File spool = new File(System.getProperty("java.io.tmpdir"), "anprx-spool-" + System.nanoTime());
+    SightingExporter exporter = new SightingExporter(new URL("http://127.0.0.1:" + stub.getPort() + "/sightings"), spool,
+        SightingExporter.DEFAULT_MAX_BATCH_SIZE, 250, SightingExporter.DEFAULT_MAX_SPOOL_BYTES, SightingExporter.DEFAULT_MAX_IN_FLIGHT);
+
+    String[] plates = {"AB12CDE", "XY67ZZA", "LM09QRS", "GF21HJK", "PO70TUV"};
+    ResultBus.Event event = new ResultBus.Event();
+    event.type = ResultBus.Type.RECOGNITION;
+
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(seconds);
+    long produced = 0;
+    while (System.nanoTime() < end) {
+      // Pace the producer to the requested rate.
+      long due = start + produced * 1000000000L / rate;
+      if (System.nanoTime() < due) {
+        Thread.sleep(1);
+        continue;
+      }
+      event.timestampNanos = System.nanoTime();
+      event.epochMillis = System.currentTimeMillis();
+      event.text = plates[(int) (produced % plates.length)];
+      event.confidence = 70 + (int) (produced % 30);
+      event.score = 0.5 + (produced % 50) / 100.0;
+      event.centreX = 640 + produced % 200;
+      event.centreY = 360 + produced % 100;
+      event.width = 160;
+      event.height = 36;
+      event.angle = -1;
+      event.evidenceId = produced;
+      exporter.onEvent(event);
+      produced++;
+    }
+    exporter.flush();
+
+    // Wait for the spool left by the outage to drain, backoff may delay the first retry.
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SightingExporter.MAX_BACKOFF_MILLIS);
+    while (!exporter.isIdle() && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    double elapsed = (System.nanoTime() - start) / 1e9;
+    exporter.close();
+    stub.close();
+
+    System.out.println(exporter);
+    System.out.println(String.format(Locale.ROOT,
+        "produced=%d received=%d in %.1fs, %.0f sightings/s delivered, %.1f bytes/sighting on the wire",
+        produced, received.get(), elapsed, received.get() / elapsed,
+        exporter.getSightingsSent() == 0 ? 0 : exporter.getBytesSent() / (double) exporter.getSightingsSent()));
+
+    File[] left = spool.listFiles();
+    if (left != null) {
+      for (File file : left) {
+        file.delete();
+      }
+    }
+    spool.delete();
+  }
+}
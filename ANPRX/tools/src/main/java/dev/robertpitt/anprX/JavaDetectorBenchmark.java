@@ -0,0 +1,94 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs {@link PlateDetector} and {@link JavaPlateDetector} over the labelled sample frames,
+ * reporting the time per frame of each and how many candidates they agree on by rotated IoU.
+ *
+ *   ./gradlew :tools:run -Ptool=JavaDetectorBenchmark --args="notebooks/frames [iterations]"
+ */
+public class JavaDetectorBenchmark {
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: JavaDetectorBenchmark <images> [iterations]");
+      System.exit(1);
+    }
+
+    // OpenCV is only needed to decode the images and to run the detector being compared.
+    OpenCV.loadLocally();
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+    File directory = new File(args[0]);
+    GroundTruth truth = GroundTruth.load(new File(directory, "labels.tsv"));
+    List<Mat> images = Evaluator.loadImages(directory, truth);
+    List<byte[]> planes = new ArrayList<>();
+    for (Mat image : images) {
+      byte[] plane = new byte[image.cols() * image.rows()];
+      image.get(0, 0, plane);
+      planes.add(plane);
+    }
+
+    PlateDetector opencv = new PlateDetector();
+    JavaPlateDetector java = new JavaPlateDetector();
+
+    int matched = 0, opencvOnly = 0, javaOnly = 0;
+    for (int i = 0; i < images.size(); i++) {
+      Mat image = images.get(i);
+      List<RotatedRect> expected = opencv.detect(image);
+      List<RotatedRect> actual = java.detect(planes.get(i), image.cols(), image.rows(), image.cols());
+
+      boolean[] used = new boolean[actual.size()];
+      for (RotatedRect plate : expected) {
+        boolean found = false;
+        for (int j = 0; j < actual.size() && !found; j++) {
+          if (!used[j] && Geometry.iou(plate, actual.get(j)) > 0.9) {
+            used[j] = found = true;
+          }
+        }
+        if (found) {
+          matched++;
+        } else {
+          opencvOnly++;
+        }
+      }
+      for (boolean u : used) {
+        if (!u) {
+          javaOnly++;
+        }
+      }
+    }
+    System.out.println(String.format(Locale.ROOT, "candidates matched %d, opencv only %d, java only %d", matched, opencvOnly, javaOnly));
+
+    long start = System.nanoTime();
+    for (int n = 0; n < iterations; n++) {
+      for (Mat image : images) {
+        opencv.detect(image);
+      }
+    }
+    double opencvMillis = (System.nanoTime() - start) / 1e6 / (iterations * images.size());
+
+    start = System.nanoTime();
+    for (int n = 0; n < iterations; n++) {
+      for (int i = 0; i < images.size(); i++) {
+        Mat image = images.get(i);
+        java.detect(planes.get(i), image.cols(), image.rows(), image.cols());
+      }
+    }
+    double javaMillis = (System.nanoTime() - start) / 1e6 / (iterations * images.size());
+
+    System.out.println(String.format(Locale.ROOT, "opencv %.2fms/frame, java %.2fms/frame", opencvMillis, javaMillis));
+
+    for (Mat image : images) {
+      image.release();
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package dev.robertpitt.anprX;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import nu.pattern.OpenCV;
+
+/**
+ * Closed loop load generator for the {@link RecognitionHttpServer}.
+ *
+ * Starts the service in process with 1, 2, 4 ... workers up to the number of cores and drives
+ * each with a fixed number of clients per worker posting the sample images, printing the
+ * throughput and latency at each step so that scaling with cores is visible at a glance.
+ * Given a URL it drives that service instead, once.
+ *
+ *   ./gradlew :tools:run -Ptool=LoadGenerator --args="notebooks/frames 10 2"
+ */
+public class LoadGenerator {
+  /**
+   * Outcome of driving a service for a fixed duration.
+   */
+  public static class Result {
+    public final long ok;
+    public final long errors;
+    public final double seconds;
+    public final LatencyRecorder latency;
+
+    Result(long ok, long errors, double seconds, LatencyRecorder latency) {
+      this.ok = ok;
+      this.errors = errors;
+      this.seconds = seconds;
+      this.latency = latency;
+    }
+
+    public double throughput() {
+      return ok / seconds;
+    }
+  }
+
+  /**
+   * Post images to the url from the given number of clients for the duration.
+   */
+  public static Result drive(final String url, final List<byte[]> images, int clients, long durationMillis) throws InterruptedException {
+    final long end = System.nanoTime() + durationMillis * 1000000L;
+    final AtomicLong ok = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+    final LatencyRecorder[] latencies = new LatencyRecorder[clients];
+    List<Thread> threads = new ArrayList<>();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < clients; i++) {
+      final LatencyRecorder latency = latencies[i] = new LatencyRecorder();
+      final Random random = new Random(i);
+      Thread client = new Thread(() -> {
+        while (System.nanoTime() < end) {
+          byte[] image = images.get(random.nextInt(images.size()));
+          long sent = System.nanoTime();
+          try {
+            if (post(url, image) == 200) {
+              ok.incrementAndGet();
+              latency.record(System.nanoTime() - sent);
+            } else {
+              errors.incrementAndGet();
+            }
+          } catch (IOException e) {
+            errors.incrementAndGet();
+          }
+        }
+      }, "ANPRX::LoadClient-" + i);
+      threads.add(client);
+      client.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    LatencyRecorder merged = new LatencyRecorder();
+    for (LatencyRecorder latency : latencies) {
+      merged.addAll(latency);
+    }
+    return new Result(ok.get(), errors.get(), seconds, merged);
+  }
+
+  private static int post(String url, byte[] image) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(image.length);
+      connection.setRequestProperty("Content-Type", "image/jpeg");
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(image);
+      }
+
+      int status = connection.getResponseCode();
+      InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (in != null) {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) >= 0) {
+          // Drain the response.
+        }
+        in.close();
+      }
+      return status;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static List<byte[]> loadImages(File directory) throws IOException {
+    List<byte[]> images = new ArrayList<>();
+    File[] files = directory.listFiles();
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file : files) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png")) {
+          images.add(MjpegStandIn.readFile(file));
+        }
+      }
+    }
+    if (images.isEmpty()) {
+      throw new IOException("No images in " + directory);
+    }
+    return images;
+  }
+
+  private static void print(String label, Result result, double baseline) {
+    System.out.println(String.format(Locale.ROOT, "%-10s %8.1f req/s  x%4.2f  p50 %7.1fms  p95 %7.1fms  p99 %7.1fms  errors %d",
+        label, result.throughput(), baseline > 0 ? result.throughput() / baseline : 1.0,
+        result.latency.percentileMillis(50), result.latency.percentileMillis(95),
+        result.latency.percentileMillis(99), result.errors));
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("usage: LoadGenerator <images> [seconds] [clients-per-worker] [url]");
+      System.exit(1);
+    }
+
+    List<byte[]> images = loadImages(new File(args[0]));
+    long durationMillis = (args.length > 1 ? Long.parseLong(args[1]) : 10) * 1000L;
+    int clientsPerWorker = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+    if (args.length > 3) {
+      Result result = drive(args[3], images, clientsPerWorker, durationMillis);
+      print("remote", result, 0);
+      return;
+    }
+
+    OpenCV.loadLocally();
+
+    int cores = Runtime.getRuntime().availableProcessors();
+    double baseline = 0;
+    for (int workers = 1; ; workers = Math.min(workers * 2, cores)) {
+      try (RecognitionHttpServer server = new RecognitionHttpServer(0, workers,
+          () -> new RecognitionPipeline(new PlateDetector(), null))) {
+        String url = "http://127.0.0.1:" + server.getPort() + "/recognise";
+
+        // Warm up the JIT and the native code before measuring.
+        drive(url, images, workers, 1000);
+        Result result = drive(url, images, workers * clientsPerWorker, durationMillis);
+        if (baseline == 0) {
+          baseline = result.throughput();
+        }
+        print(workers + " workers", result, baseline);
+      }
+
+      if (workers == cores) {
+        break;
+      }
+    }
+  }
+}
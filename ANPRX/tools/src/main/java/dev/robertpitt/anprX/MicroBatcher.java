@@ -0,0 +1,101 @@
+package dev.robertpitt.anprX;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded queue that hands work out in small batches.
+ *
+ * A worker blocks for the first item, then keeps collecting until the batch is full or the
+ * wait window that started with the first item has closed, so under load each dispatch
+ * carries several items and when idle a lone item waits at most the window.
+ *
+ * Holding items back only pays while every other worker is busy. When another worker is
+ * waiting for work the window is not held, and the worker takes only its share of what is
+ * queued, leaving the rest to the idle workers instead of queueing it behind its own batch.
+ */
+public class MicroBatcher<T> {
+  /**
+   * Longest a worker waits for more items before checking for idle workers again.
+   */
+  private static final long IDLE_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final BlockingQueue<T> queue;
+  private final int maxBatchSize;
+  private final long maxWaitNanos;
+
+  /**
+   * Workers blocked in {@link #take(List)} waiting for their first item.
+   */
+  private final AtomicInteger idle = new AtomicInteger();
+
+  /**
+   * @param capacity items queued before {@link #offer(Object)} starts refusing work.
+   * @param maxBatchSize largest batch handed to a worker.
+   * @param maxWait longest a batch is held open waiting for more items.
+   */
+  public MicroBatcher(int capacity, int maxBatchSize, long maxWait, TimeUnit unit) {
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.maxBatchSize = maxBatchSize;
+    this.maxWaitNanos = unit.toNanos(maxWait);
+  }
+
+  /**
+   * @return false when the queue is full.
+   */
+  public boolean offer(T item) {
+    return queue.offer(item);
+  }
+
+  /**
+   * Block until at least one item is available and fill the batch.
+   *
+   * @param batch list the batch is added to, normally empty.
+   */
+  public void take(List<T> batch) throws InterruptedException {
+    idle.incrementAndGet();
+    try {
+      batch.add(queue.take());
+    } finally {
+      idle.decrementAndGet();
+    }
+
+    long deadline = System.nanoTime() + maxWaitNanos;
+    while (batch.size() < maxBatchSize) {
+      // Other workers are waiting, take an even share of the queue and dispatch now.
+      int waiting = idle.get();
+      if (waiting > 0) {
+        queue.drainTo(batch, Math.min(maxBatchSize - batch.size(), queue.size() / (waiting + 1)));
+        break;
+      }
+
+      // Take whatever is already queued without waiting.
+      if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+        continue;
+      }
+
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      T item = queue.poll(Math.min(remaining, IDLE_CHECK_NANOS), TimeUnit.NANOSECONDS);
+      if (item != null) {
+        batch.add(item);
+      }
+    }
+  }
+
+  /**
+   * @return number of workers waiting for work.
+   */
+  public int idle() {
+    return idle.get();
+  }
+
+  public int size() {
+    return queue.size();
+  }
+}
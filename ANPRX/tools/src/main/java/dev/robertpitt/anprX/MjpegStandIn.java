@@ -0,0 +1,108 @@
+package dev.robertpitt.anprX;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Local stand-in for an IP camera, serving a directory of JPEG images in a loop as an
+ * MJPEG stream at a fixed frame rate on `http://host:port/stream`.
+ */
+public class MjpegStandIn implements AutoCloseable {
+  private static final String BOUNDARY = "anprxframe";
+
+  private final List<byte[]> frames = new ArrayList<>();
+  private final long frameNanos;
+  private final MiniHttpServer server;
+
+  /**
+   * @param directory directory of .jpg images, served in name order.
+   * @param fps frame rate of the stream.
+   * @param port port to listen on, 0 for any free port.
+   * @param clients number of clients that can be streamed to concurrently.
+   */
+  public MjpegStandIn(File directory, double fps, int port, int clients) throws IOException {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file : files) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+          frames.add(readFile(file));
+        }
+      }
+    }
+    if (frames.isEmpty()) {
+      throw new IOException("No JPEG images in " + directory);
+    }
+
+    this.frameNanos = (long) (1e9 / fps);
+    this.server = new MiniHttpServer(port, clients, this::handle);
+  }
+
+  /**
+   * @return the URL of the stream on the loopback interface.
+   */
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getPort() + "/stream";
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.close();
+  }
+
+  private void handle(MiniHttpServer.Request request, OutputStream out) throws IOException {
+    if (!request.path.startsWith("/stream")) {
+      MiniHttpServer.respond(out, 404, "text/plain", "Not Found");
+      return;
+    }
+
+    out.write(("HTTP/1.1 200 OK\r\n"
+        + "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n"
+        + "Cache-Control: no-cache\r\n"
+        + "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+
+    long next = System.nanoTime();
+    for (int i = 0; !Thread.currentThread().isInterrupted(); i = (i + 1) % frames.size()) {
+      byte[] jpeg = frames.get(i);
+      out.write(("--" + BOUNDARY + "\r\n"
+          + "Content-Type: image/jpeg\r\n"
+          + "Content-Length: " + jpeg.length + "\r\n\r\n").getBytes("US-ASCII"));
+      out.write(jpeg);
+      out.write("\r\n".getBytes("US-ASCII"));
+      out.flush();
+
+      next += frameNanos;
+      long wait = next - System.nanoTime();
+      if (wait > 0) {
+        try {
+          Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  static byte[] readFile(File file) throws IOException {
+    byte[] data = new byte[(int) file.length()];
+    try (InputStream in = new FileInputStream(file)) {
+      int read = 0;
+      while (read < data.length) {
+        int count = in.read(data, read, data.length - read);
+        if (count < 0) {
+          throw new IOException("Unexpected end of " + file);
+        }
+        read += count;
+      }
+    }
+    return data;
+  }
+}
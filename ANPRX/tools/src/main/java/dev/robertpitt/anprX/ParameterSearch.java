@@ -0,0 +1,206 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Random search over the {@link DetectorConfig} space against a labelled image set.
+ *
+ * Trials run in parallel, each with its own detector, over images decoded once up front.
+ * The result is the Pareto front of detection recall against milliseconds per frame, and the
+ * config with the best recall within the latency budget is written out as a profile that
+ * the application loads at runtime.
+ *
+ *   ./gradlew :tools:run -Ptool=ParameterSearch --args="notebooks/frames 200 15 detector.properties"
+ *
+ * Latencies are measured with trials competing for cores, they are comparable between
+ * trials of one run rather than absolute, re-run the chosen profile through the
+ * {@link Evaluator} on the target device for absolute numbers.
+ */
+public class ParameterSearch {
+  /**
+   * Outcome of evaluating a single config.
+   */
+  public static class Trial {
+    public final DetectorConfig config;
+    public final double recall;
+    public final double precision;
+    public final double millisPerFrame;
+
+    Trial(DetectorConfig config, double recall, double precision, double millisPerFrame) {
+      this.config = config;
+      this.recall = recall;
+      this.precision = precision;
+      this.millisPerFrame = millisPerFrame;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "recall=%.3f precision=%.3f ms=%.2f  %s", recall, precision, millisPerFrame, config);
+    }
+  }
+
+  /**
+   * Labelled images and their decoded greyscale frames.
+   */
+  private final GroundTruth truth;
+  private final List<Mat> images;
+
+  /**
+   * Source of randomness, seeded for reproducible searches.
+   */
+  private final Random random;
+
+  public ParameterSearch(GroundTruth truth, List<Mat> images, long seed) {
+    this.truth = truth;
+    this.images = images;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Evaluate the default config plus `trials` random configs on `threads` threads.
+   *
+   * @return every trial, fastest first.
+   */
+  public List<Trial> run(int trials, int threads) throws InterruptedException {
+    List<DetectorConfig> configs = new ArrayList<>();
+    configs.add(DetectorConfig.DEFAULT);
+    for (int i = 0; i < trials; i++) {
+      configs.add(sample());
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Trial>> futures = new ArrayList<>();
+      for (final DetectorConfig config : configs) {
+        futures.add(executor.submit(() -> evaluate(config)));
+      }
+
+      List<Trial> results = new ArrayList<>();
+      for (Future<Trial> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Trial failed", e.getCause());
+        }
+      }
+
+      Collections.sort(results, new Comparator<Trial>() {
+        @Override
+        public int compare(Trial a, Trial b) {
+          return Double.compare(a.millisPerFrame, b.millisPerFrame);
+        }
+      });
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @param trials trials sorted fastest first.
+   * @return the trials no other trial beats on both recall and speed, fastest first.
+   */
+  public static List<Trial> paretoFront(List<Trial> trials) {
+    List<Trial> front = new ArrayList<>();
+    double bestRecall = -1;
+    for (Trial trial : trials) {
+      if (trial.recall > bestRecall) {
+        front.add(trial);
+        bestRecall = trial.recall;
+      }
+    }
+    return front;
+  }
+
+  /**
+   * @return the front trial with the highest recall within the budget, or null if none fits.
+   */
+  public static Trial bestWithinBudget(List<Trial> front, double budgetMillis) {
+    Trial best = null;
+    for (Trial trial : front) {
+      if (trial.millisPerFrame <= budgetMillis) {
+        best = trial;
+      }
+    }
+    return best;
+  }
+
+  private Trial evaluate(DetectorConfig config) {
+    PlateDetector detector = new PlateDetector();
+    detector.setConfig(config);
+    Evaluator.Scorecard card = new Evaluator(new RecognitionPipeline(detector, null)).evaluate(images, truth);
+    return new Trial(config, card.recall(), card.precision(), card.latency.meanMillis());
+  }
+
+  /**
+   * Sample a config uniformly from the search space, the upper canny threshold is kept
+   * above the lower one and the area range ordered.
+   */
+  private synchronized DetectorConfig sample() {
+    int cannyLower = 20 + random.nextInt(181);
+    int cannyUpper = cannyLower + 50 + random.nextInt(Math.max(1, 900 - cannyLower - 50));
+    double minArea = 200 + random.nextDouble() * 1800;
+    double maxArea = Math.max(minArea * 2, 20000 + random.nextDouble() * 180000);
+
+    return new DetectorConfig.Builder()
+        .setCannyThresholds(cannyLower, cannyUpper)
+        .setApproxEpsilon(0.01 + random.nextDouble() * 0.03)
+        .setAreaRange(minArea, maxArea)
+        .setMaxCosine(0.1 + random.nextDouble() * 0.4)
+        .build();
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 4) {
+      System.err.println("usage: ParameterSearch <image directory> <trials> <budget ms> <profile out> [threads] [seed]");
+      System.exit(1);
+    }
+
+    OpenCV.loadLocally();
+
+    File directory = new File(args[0]);
+    int trials = Integer.parseInt(args[1]);
+    double budget = Double.parseDouble(args[2]);
+    File out = new File(args[3]);
+    int threads = args.length > 4 ? Integer.parseInt(args[4]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+    GroundTruth truth = GroundTruth.load(new File(directory, "labels.tsv"));
+    List<Mat> images = Evaluator.loadImages(directory, truth);
+
+    List<Trial> results = new ParameterSearch(truth, images, seed).run(trials, threads);
+    List<Trial> front = paretoFront(results);
+
+    System.out.println("pareto front (recall vs ms/frame):");
+    for (Trial trial : front) {
+      System.out.println("  " + trial);
+    }
+
+    Trial best = bestWithinBudget(front, budget);
+    if (best == null) {
+      System.err.println("no config within " + budget + "ms per frame");
+      System.exit(2);
+    }
+
+    best.config.store(out, String.format(Locale.ROOT, "ParameterSearch recall=%.3f ms=%.2f", best.recall, best.millisPerFrame));
+    System.out.println("wrote " + out + ": " + best);
+
+    for (Mat image : images) {
+      image.release();
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded HTTP endpoint running still images through the recognition pipeline.
+ *
+ *   POST /recognise   JPEG or PNG body, plates returned as JSON.
+ *   GET  /metrics     counters and histograms in the Prometheus text format.
+ *
+ * Requests are queued on a {@link MicroBatcher} and handed to a fixed set of workers, each
+ * worker owning its own pipeline. The pipeline processes one image at a time, so a batch
+ * saves nothing and only queues requests behind each other: by default every worker takes a
+ * single request. Larger batches can be configured, they are only collected while every other
+ * worker is busy. A request may carry an `X-Deadline-Ms` header
+ * with the milliseconds it is prepared to wait, work still queued when the deadline passes is
+ * dropped without being run and the request answered with 504.
+ */
+public class RecognitionHttpServer implements Closeable {
+  /**
+   * Header carrying the request deadline in milliseconds from arrival.
+   */
+  public static final String DEADLINE_HEADER = "X-Deadline-Ms";
+
+  /**
+   * Defaults for the batching and the deadline.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 64;
+  public static final int DEFAULT_MAX_BATCH_SIZE = 1;
+  public static final long DEFAULT_MAX_WAIT_MILLIS = 0;
+  public static final long DEFAULT_DEADLINE_MILLIS = 2000;
+
+  /**
+   * Largest deadline a request may ask for, larger values and negative ones are rejected.
+   */
+  public static final long MAX_DEADLINE_MILLIS = 60000;
+
+  /**
+   * Number of connections served concurrently, must exceed the queue capacity plus the
+   * workers so that a full queue is reported as 429 instead of stalling on accept.
+   */
+  private static final int CONNECTION_THREADS = DEFAULT_QUEUE_CAPACITY * 2;
+
+  /**
+   * A queued request.
+   */
+  private static class Job {
+    final byte[] encoded;
+    final long arrivalNanos;
+    final long deadlineNanos;
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile boolean cancelled = false;
+    boolean expired = false;
+    boolean undecodable = false;
+    boolean failed = false;
+    int width;
+    int height;
+    RecognitionResult result;
+
+    Job(byte[] encoded, long arrivalNanos, long deadlineNanos) {
+      this.encoded = encoded;
+      this.arrivalNanos = arrivalNanos;
+      this.deadlineNanos = deadlineNanos;
+    }
+  }
+
+  private final MiniHttpServer server;
+  private final MicroBatcher<Job> batcher;
+  private final List<Thread> workers = new ArrayList<>();
+  private volatile boolean running = true;
+
+  /**
+   * Metrics.
+   */
+  private final Map<Integer, Long> responses = new TreeMap<>();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final Histogram requestSeconds = new Histogram("anprx_request_duration_seconds",
+      "Time from arrival to response of recognition requests.", Histogram.LATENCY_BUCKETS);
+  private final Histogram queueSeconds = new Histogram("anprx_queue_wait_seconds",
+      "Time requests spent queued before a worker picked them up.", Histogram.LATENCY_BUCKETS);
+  private final Histogram processSeconds = new Histogram("anprx_process_duration_seconds",
+      "Time spent decoding and recognising a single image.", Histogram.LATENCY_BUCKETS);
+  private final Histogram batchSizes = new Histogram("anprx_batch_size",
+      "Number of requests handed to a worker at once.", new double[]{1, 2, 4, 8, 16, 32});
+
+  /**
+   * Listen on the loopback interface only.
+   */
+  public RecognitionHttpServer(int port, int workerCount, StreamServer.PipelineFactory factory) throws IOException {
+    this(InetAddress.getLoopbackAddress(), port, workerCount, factory, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_WAIT_MILLIS);
+  }
+
+  /**
+   * @param bindAddress interface to listen on, the wildcard address for all of them.
+   * @param port port to listen on, 0 for any free port.
+   * @param workerCount number of workers, each with its own pipeline.
+   * @param maxBatchSize largest batch handed to a worker.
+   * @param maxWaitMillis longest a batch is held open for more requests.
+   */
+  public RecognitionHttpServer(InetAddress bindAddress, int port, int workerCount, StreamServer.PipelineFactory factory,
+                               int maxBatchSize, long maxWaitMillis) throws IOException {
+    this.batcher = new MicroBatcher<>(DEFAULT_QUEUE_CAPACITY, maxBatchSize, maxWaitMillis, TimeUnit.MILLISECONDS);
+
+    for (int i = 0; i < workerCount; i++) {
+      final RecognitionPipeline pipeline = factory.create();
+      Thread worker = new Thread(() -> work(pipeline), "ANPRX::RecognitionWorker-" + i);
+      workers.add(worker);
+      worker.start();
+    }
+
+    this.server = new MiniHttpServer(bindAddress, port, CONNECTION_THREADS, this::handle);
+  }
+
+  public int getPort() {
+    return server.getPort();
+  }
+
+  @Override
+  public void close() throws IOException {
+    running = false;
+    server.close();
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+  }
+
+  private void handle(MiniHttpServer.Request request, OutputStream out) throws IOException {
+    long arrival = System.nanoTime();
+
+    if (request.path.equals("/metrics")) {
+      MiniHttpServer.respond(out, 200, "text/plain; version=0.0.4", metrics());
+      return;
+    }
+
+    if (!request.path.equals("/recognise")) {
+      respond(out, arrival, 404, "{\"error\":\"not found\"}");
+      return;
+    }
+    if (!request.method.equals("POST")) {
+      respond(out, arrival, 405, "{\"error\":\"POST an image\"}");
+      return;
+    }
+    if (request.body.length == 0) {
+      respond(out, arrival, 400, "{\"error\":\"empty body\"}");
+      return;
+    }
+
+    long deadlineMillis = DEFAULT_DEADLINE_MILLIS;
+    String header = request.header(DEADLINE_HEADER);
+    if (header != null) {
+      try {
+        deadlineMillis = Long.parseLong(header.trim());
+      } catch (NumberFormatException e) {
+        deadlineMillis = -1;
+      }
+      if (deadlineMillis < 0 || deadlineMillis > MAX_DEADLINE_MILLIS) {
+        respond(out, arrival, 400, "{\"error\":\"" + DEADLINE_HEADER + " must be 0 - " + MAX_DEADLINE_MILLIS + "\"}");
+        return;
+      }
+    }
+
+    Job job = new Job(request.body, arrival, arrival + TimeUnit.MILLISECONDS.toNanos(deadlineMillis));
+    if (!batcher.offer(job)) {
+      respond(out, arrival, 429, "{\"error\":\"queue full\"}");
+      return;
+    }
+
+    boolean completed;
+    try {
+      completed = job.done.await(Math.max(0, job.deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      completed = false;
+    }
+
+    if (!completed) {
+      // Still queued or running, a queued job is skipped when a worker reaches it.
+      job.cancelled = true;
+      respond(out, arrival, 504, "{\"error\":\"deadline exceeded\"}");
+      return;
+    }
+    if (job.expired) {
+      respond(out, arrival, 504, "{\"error\":\"deadline exceeded\"}");
+      return;
+    }
+    if (job.undecodable) {
+      respond(out, arrival, 400, "{\"error\":\"could not decode image\"}");
+      return;
+    }
+    if (job.failed) {
+      respond(out, arrival, 500, "{\"error\":\"recognition failed\"}");
+      return;
+    }
+
+    respond(out, arrival, 200, toJson(job));
+  }
+
+  private void respond(OutputStream out, long arrival, int status, String json) throws IOException {
+    MiniHttpServer.respond(out, status, "application/json", json);
+    requestSeconds.observeNanos(System.nanoTime() - arrival);
+    synchronized (responses) {
+      Long count = responses.get(status);
+      responses.put(status, count == null ? 1 : count + 1);
+    }
+  }
+
+  private void work(RecognitionPipeline pipeline) {
+    List<Job> batch = new ArrayList<>();
+    MatOfByte encoded = new MatOfByte();
+
+    while (running) {
+      batch.clear();
+      try {
+        batcher.take(batch);
+      } catch (InterruptedException e) {
+        return;
+      }
+      batches.incrementAndGet();
+      batchSizes.observe(batch.size());
+
+      for (Job job : batch) {
+        long start = System.nanoTime();
+        queueSeconds.observeNanos(start - job.arrivalNanos);
+
+        if (job.cancelled || start >= job.deadlineNanos) {
+          job.expired = true;
+          expired.incrementAndGet();
+          job.done.countDown();
+          continue;
+        }
+
+        // A failing image must neither take the worker down nor leave the rest of the batch
+        // waiting for their deadline.
+        Mat grey = null;
+        try {
+          encoded.fromArray(job.encoded);
+          grey = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_GRAYSCALE);
+          if (grey.empty()) {
+            job.undecodable = true;
+          } else {
+            job.width = grey.cols();
+            job.height = grey.rows();
+            job.result = pipeline.process(grey, job.arrivalNanos);
+          }
+        } catch (RuntimeException e) {
+          job.failed = true;
+          failures.incrementAndGet();
+          System.err.println(Thread.currentThread().getName() + ": recognition failed: " + e);
+        } finally {
+          if (grey != null) {
+            grey.release();
+          }
+          processSeconds.observeNanos(System.nanoTime() - start);
+          job.done.countDown();
+        }
+      }
+    }
+    encoded.release();
+  }
+
+  private String metrics() {
+    StringBuilder out = new StringBuilder();
+
+    out.append("# HELP anprx_responses_total Responses to recognition requests by status.\n");
+    out.append("# TYPE anprx_responses_total counter\n");
+    synchronized (responses) {
+      for (Map.Entry<Integer, Long> entry : responses.entrySet()) {
+        out.append("anprx_responses_total{code=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+      }
+    }
+
+    out.append("# HELP anprx_batches_total Batches handed to workers.\n");
+    out.append("# TYPE anprx_batches_total counter\n");
+    out.append("anprx_batches_total ").append(batches.get()).append('\n');
+
+    out.append("# HELP anprx_deadline_expired_total Requests dropped unprocessed because their deadline passed.\n");
+    out.append("# TYPE anprx_deadline_expired_total counter\n");
+    out.append("anprx_deadline_expired_total ").append(expired.get()).append('\n');
+
+    out.append("# HELP anprx_recognition_failures_total Requests whose decoding or recognition threw, answered with 500.\n");
+    out.append("# TYPE anprx_recognition_failures_total counter\n");
+    out.append("anprx_recognition_failures_total ").append(failures.get()).append('\n');
+
+    out.append("# HELP anprx_queue_depth Requests waiting for a worker.\n");
+    out.append("# TYPE anprx_queue_depth gauge\n");
+    out.append("anprx_queue_depth ").append(batcher.size()).append('\n');
+
+    out.append("# HELP anprx_workers Number of recognition workers.\n");
+    out.append("# TYPE anprx_workers gauge\n");
+    out.append("anprx_workers ").append(workers.size()).append('\n');
+
+    requestSeconds.render(out);
+    queueSeconds.render(out);
+    processSeconds.render(out);
+    batchSizes.render(out);
+    return out.toString();
+  }
+
+  private static String toJson(Job job) {
+    RecognitionResult result = job.result;
+    StringBuilder json = new StringBuilder();
+    json.append(String.format(Locale.ROOT, "{\"width\":%d,\"height\":%d,\"detect_ms\":%.2f,\"ocr_ms\":%.2f,\"plates\":[",
+        job.width, job.height, result.detectNanos / 1e6, result.ocrNanos / 1e6));
+
+    for (int i = 0; i < result.recognitions.size(); i++) {
+      RecognitionResult.Recognition recognition = result.recognitions.get(i);
+      RotatedRect plate = recognition.plate;
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append(String.format(Locale.ROOT, "{\"score\":%.3f,\"box\":{\"cx\":%.1f,\"cy\":%.1f,\"width\":%.1f,\"height\":%.1f,\"angle\":%.1f}",
+          recognition.score, plate.center.x, plate.center.y, plate.size.width, plate.size.height, plate.angle));
+      if (recognition.read != null) {
+        json.append(",\"text\":\"").append(Json.escape(recognition.read.text)).append('"');
+        json.append(",\"confidence\":").append(recognition.read.confidence);
+      }
+      json.append('}');
+    }
+
+    return json.append("]}").toString();
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    int workerCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+    OpenCV.loadLocally();
+
+    // Serving other systems, so listen on every interface.
+    RecognitionHttpServer server = new RecognitionHttpServer(InetAddress.getByName("0.0.0.0"), port, workerCount,
+        () -> new RecognitionPipeline(new PlateDetector(), null), DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_WAIT_MILLIS);
+    System.out.println("Listening on http://0.0.0.0:" + server.getPort() + "/recognise with " + workerCount + " workers");
+  }
+}
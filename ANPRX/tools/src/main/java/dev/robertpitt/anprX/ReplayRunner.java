@@ -0,0 +1,141 @@
+package dev.robertpitt.anprX;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import nu.pattern.OpenCV;
+
+/**
+ * Drives a {@link FrameSource} through a {@link RecognitionPipeline} and reports the
+ * sustained frame rate and per-frame latency, without needing a camera.
+ *
+ * Can be run on a build host against the desktop OpenCV Java bindings:
+ *
+ *   ./gradlew :tools:run -Ptool=ReplayRunner --args="notebooks/frames max"
+ *   ./gradlew :tools:run -Ptool=ReplayRunner --args="traffic.mp4 realtime"
+ *   ./gradlew :tools:run -Ptool=ReplayRunner --args="capture.anprraw"
+ *
+ * On the host the pipeline runs detection only, as the Tesseract bindings are Android only.
+ * Appending `motion` gates detection with a {@link MotionGate}, comparing the busy and CPU
+ * time of a run with and without it gives the processing time saved on that footage.
+ */
+public class ReplayRunner {
+  /**
+   * Summary of a replay run.
+   */
+  public static class Report {
+    public long frames;
+    public long dropped;
+    public long skipped;
+    public long plates;
+    public long wallNanos;
+
+    /**
+     * CPU time of the replaying thread, decoding the source included, -1 when the JVM
+     * cannot measure it.
+     */
+    public long cpuNanos = -1;
+    public final LatencyRecorder latency = new LatencyRecorder();
+    public final LatencyRecorder detect = new LatencyRecorder();
+    public final LatencyRecorder ocr = new LatencyRecorder();
+
+    public double fps() {
+      return wallNanos == 0 ? 0 : frames * 1e9 / wallNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT,
+          "frames=%d dropped=%d skipped=%d plates=%d wall=%.1fms busy=%.1fms cpu=%.1fms fps=%.1f%n  latency %s%n  detect  %s%n  ocr     %s",
+          frames, dropped, skipped, plates, wallNanos / 1e6, latency.total() / 1e6, cpuNanos / 1e6, fps(), latency, detect, ocr);
+    }
+  }
+
+  /**
+   * Replay every frame of the source through the pipeline.
+   */
+  public static Report run(FrameSource source, RecognitionPipeline pipeline) throws IOException {
+    Report report = new Report();
+    Frame frame = new Frame();
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    boolean cpu = threads.isCurrentThreadCpuTimeSupported();
+
+    long start = System.nanoTime();
+    long cpuStart = cpu ? threads.getCurrentThreadCpuTime() : 0;
+    try {
+      while (source.read(frame)) {
+        long frameStart = System.nanoTime();
+        RecognitionResult result = pipeline.process(frame.grey, frame.rotationDegrees, frame.timestampNanos);
+        report.latency.record(System.nanoTime() - frameStart);
+        report.detect.record(result.detectNanos);
+        report.ocr.record(result.ocrNanos);
+        report.plates += result.recognitions.size();
+        report.skipped += result.skipped ? 1 : 0;
+        report.frames++;
+      }
+    } finally {
+      report.wallNanos = System.nanoTime() - start;
+      if (cpu) {
+        report.cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+      }
+      frame.release();
+    }
+
+    if (source instanceof ReplayFrameSource) {
+      report.dropped = ((ReplayFrameSource) source).getDroppedFrames();
+    }
+    return report;
+  }
+
+  /**
+   * Open the source for a path, raw recordings are opened with {@link RecordedFrameSource}
+   * and always replay at maximum speed.
+   */
+  public static FrameSource open(String path, ReplayFrameSource.Pacing pacing, double fps) throws IOException {
+    if (path.endsWith(RawFrameFormat.FILE_EXTENSION)) {
+      return new RecordedFrameSource(new File(path));
+    }
+    return new ReplayFrameSource(path, pacing, fps);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: ReplayRunner <video|directory|pattern|recording> [max|realtime] [fps] [motion] [propose]");
+      System.exit(1);
+    }
+
+    OpenCV.loadLocally();
+
+    ReplayFrameSource.Pacing pacing = args.length > 1 && args[1].equals("realtime")
+        ? ReplayFrameSource.Pacing.REAL_TIME
+        : ReplayFrameSource.Pacing.MAX_SPEED;
+    double fps = args.length > 2 ? Double.parseDouble(args[2]) : ReplayFrameSource.DEFAULT_FPS;
+    boolean motion = false;
+    boolean propose = false;
+    for (int i = 3; i < args.length; i++) {
+      motion |= args[i].equals("motion");
+      propose |= args[i].equals("propose");
+    }
+
+    RecognitionPipeline pipeline = new RecognitionPipeline(new PlateDetector(), null);
+    if (motion) {
+      pipeline.setMotionGate(new MotionGate());
+    }
+    if (propose) {
+      pipeline.setProposer(new EdgeDensityProposer());
+    }
+
+    try (FrameSource source = open(args[0], pacing, fps)) {
+      Report report = run(source, pipeline);
+      System.out.println(report);
+      if (motion) {
+        System.out.println("  motion  " + pipeline.getMotionGate());
+      }
+      if (propose) {
+        System.out.println("  propose " + pipeline.getProposer());
+      }
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package dev.robertpitt.anprX;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import nu.pattern.OpenCV;
+
+/**
+ * Long running replay that fails when native memory grows, for catching per-frame Mat leaks
+ * that a short benchmark never notices.
+ *
+ * The source is replayed in a loop through a detection only pipeline with {@link TrackedMats}
+ * enabled. Every sample the process resident set size is read from /proc/self/status after a
+ * collection, the first sample after the warm-up is the baseline. The run fails if the
+ * tracked Mats or bytes at the end exceed the baseline, or the resident set has grown by more
+ * than the tolerance:
+ *
+ *   ./gradlew :tools:run -Ptool=SoakTest --args="notebooks/frames 2 [5] [32]"
+ *
+ * Arguments are the source, hours to run, minutes between samples and the resident set
+ * tolerance in megabytes.
+ */
+public class SoakTest {
+  /**
+   * Minutes of replay before the baseline is taken, so caches and pools have filled.
+   */
+  private static final double WARM_UP_MINUTES = 2;
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 2) {
+      System.err.println("usage: SoakTest <video|directory|pattern|recording> <hours> [sample-minutes] [rss-tolerance-mb]");
+      System.exit(1);
+    }
+
+    OpenCV.loadLocally();
+
+    String path = args[0];
+    long durationNanos = (long) (Double.parseDouble(args[1]) * 3600e9);
+    long sampleNanos = (long) ((args.length > 2 ? Double.parseDouble(args[2]) : 5) * 60e9);
+    long toleranceKb = (long) ((args.length > 3 ? Double.parseDouble(args[3]) : 32) * 1024);
+    long warmUpNanos = (long) (Math.min(WARM_UP_MINUTES * 60e9, durationNanos / 10.0));
+
+    TrackedMats.setEnabled(true);
+    RecognitionPipeline pipeline = new RecognitionPipeline(new PlateDetector(), null);
+    Frame frame = new Frame();
+
+    long start = System.nanoTime();
+    long nextSample = start + warmUpNanos;
+    long frames = 0;
+    long baselineRss = -1;
+    int baselineMats = 0;
+    long baselineBytes = 0;
+    int lastMats = 0;
+    long lastBytes = 0;
+    long lastRss = 0;
+
+    try {
+      FrameSource source = ReplayRunner.open(path, ReplayFrameSource.Pacing.MAX_SPEED, ReplayFrameSource.DEFAULT_FPS);
+      try {
+        while (System.nanoTime() - start < durationNanos) {
+          if (!source.read(frame)) {
+            // Exhausted, start the footage again.
+            source.close();
+            source = ReplayRunner.open(path, ReplayFrameSource.Pacing.MAX_SPEED, ReplayFrameSource.DEFAULT_FPS);
+            if (!source.read(frame)) {
+              throw new IOException("No frames in " + path);
+            }
+          }
+          pipeline.process(frame.grey, frame.rotationDegrees, frame.timestampNanos);
+          frames++;
+
+          long now = System.nanoTime();
+          if (now < nextSample) {
+            continue;
+          }
+          nextSample = now + sampleNanos;
+
+          List<TrackedMats.Site> snapshot = sample();
+          lastMats = liveMats(snapshot);
+          lastBytes = TrackedMats.totalBytes(snapshot);
+          lastRss = residentKb();
+          if (baselineRss < 0) {
+            baselineRss = lastRss;
+            baselineMats = lastMats;
+            baselineBytes = lastBytes;
+          }
+
+          System.out.println(String.format(Locale.ROOT, "%.1fmin frames=%d rss=%dkB (%+dkB) mats=%d (%+d) bytes=%d (%+d)",
+              (now - start) / 60e9, frames, lastRss, lastRss - baselineRss,
+              lastMats, lastMats - baselineMats, lastBytes, lastBytes - baselineBytes));
+          for (TrackedMats.Site site : snapshot) {
+            System.out.println("  " + site);
+          }
+        }
+      } finally {
+        source.close();
+      }
+    } finally {
+      frame.release();
+    }
+
+    if (baselineRss < 0) {
+      System.err.println("Run too short for a baseline, " + frames + " frames");
+      System.exit(1);
+    }
+
+    boolean failed = false;
+    if (lastMats > baselineMats || lastBytes > baselineBytes) {
+      System.err.println(String.format(Locale.ROOT, "FAIL tracked mats grew %d -> %d, bytes %d -> %d",
+          baselineMats, lastMats, baselineBytes, lastBytes));
+      failed = true;
+    }
+    if (lastRss - baselineRss > toleranceKb) {
+      System.err.println(String.format(Locale.ROOT, "FAIL resident set grew %dkB, tolerance %dkB",
+          lastRss - baselineRss, toleranceKb));
+      failed = true;
+    }
+
+    System.out.println(failed ? "soak failed" : "soak passed, " + frames + " frames");
+    System.exit(failed ? 1 : 0);
+  }
+
+  /**
+   * Collect first so Mats only reachable from finalizers do not count as live.
+   */
+  private static List<TrackedMats.Site> sample() throws InterruptedException {
+    System.gc();
+    System.runFinalization();
+    Thread.sleep(100);
+    return TrackedMats.snapshot();
+  }
+
+  private static int liveMats(List<TrackedMats.Site> snapshot) {
+    int live = 0;
+    for (TrackedMats.Site site : snapshot) {
+      live += site.live;
+    }
+    return live;
+  }
+
+  /**
+   * @return VmRSS of this process in kB, or 0 where /proc is not available.
+   */
+  private static long residentKb() throws IOException {
+    try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+        }
+      }
+    } catch (FileNotFoundException e) {
+      return 0;
+    }
+    return 0;
+  }
+}
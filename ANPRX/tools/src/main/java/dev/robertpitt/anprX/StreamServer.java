@@ -0,0 +1,364 @@
+package dev.robertpitt.anprX;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import nu.pattern.OpenCV;
+
+/**
+ * Serves many frame sources from one box with a shared pool of recognition workers.
+ *
+ * Every stream has a reader thread that fills a small bounded queue, dropping the oldest
+ * queued frame when the workers fall behind, the same keep-latest behaviour as the camera.
+ * Workers pick the next frame with smooth weighted round-robin across the streams that have
+ * frames waiting, so a busy lane gets its share in proportion to its weight and can never
+ * starve the others.
+ *
+ *   ./gradlew :tools:run -Ptool=StreamServer --args="4 lane1.mp4@2 http://127.0.0.1:8081/stream"
+ */
+public class StreamServer {
+  /**
+   * Creates the pipeline owned by each worker, pipelines are not thread safe.
+   */
+  public interface PipelineFactory {
+    RecognitionPipeline create();
+  }
+
+  /**
+   * Receives the results of every processed frame, called on the worker threads.
+   */
+  public interface ResultListener {
+    void onResult(String stream, RecognitionResult result);
+  }
+
+  /**
+   * Per stream state and counters.
+   */
+  public static class Stream {
+    public final String name;
+    public final int weight;
+    private final FrameSource source;
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private final ArrayDeque<Frame> free = new ArrayDeque<>();
+    private int currentWeight = 0;
+    private volatile boolean finished = false;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final LatencyRecorder latency = new LatencyRecorder();
+
+    /**
+     * Source read and frame processing failures and the message of the most recent, null
+     * until one occurs.
+     */
+    private final AtomicLong errors = new AtomicLong();
+    private volatile String lastError;
+
+    Stream(String name, FrameSource source, int weight, int queueSize) {
+      this.name = name;
+      this.source = source;
+      this.weight = weight;
+      for (int i = 0; i < queueSize + 1; i++) {
+        free.add(new Frame());
+      }
+    }
+
+    public long getReceived() {
+      return received.get();
+    }
+
+    public long getProcessed() {
+      return processed.get();
+    }
+
+    public long getDropped() {
+      return dropped.get();
+    }
+
+    public long getErrors() {
+      return errors.get();
+    }
+
+    public String getLastError() {
+      return lastError;
+    }
+  }
+
+  /**
+   * Streams being served, guarded by this.
+   */
+  private final List<Stream> streams = new ArrayList<>();
+
+  private final PipelineFactory pipelineFactory;
+  private final ResultListener listener;
+  private final int workerCount;
+  private final int queueSize;
+  private final List<Thread> threads = new ArrayList<>();
+  private volatile boolean running = false;
+  private long startNanos;
+
+  /**
+   * @param workers number of recognition workers shared by all streams.
+   * @param queueSize frames buffered per stream before the oldest is dropped.
+   */
+  public StreamServer(int workers, int queueSize, PipelineFactory pipelineFactory, ResultListener listener) {
+    this.workerCount = workers;
+    this.queueSize = queueSize;
+    this.pipelineFactory = pipelineFactory;
+    this.listener = listener;
+  }
+
+  /**
+   * Add a stream, must be called before {@link #start()}.
+   */
+  public synchronized Stream addStream(String name, FrameSource source, int weight) {
+    if (running) {
+      throw new IllegalStateException("Streams must be added before the server starts");
+    }
+    Stream stream = new Stream(name, source, Math.max(1, weight), queueSize);
+    streams.add(stream);
+    return stream;
+  }
+
+  public synchronized void start() {
+    running = true;
+    startNanos = System.nanoTime();
+
+    for (final Stream stream : streams) {
+      Thread reader = new Thread(() -> readLoop(stream), "ANPRX::StreamReader-" + stream.name);
+      threads.add(reader);
+      reader.start();
+    }
+
+    for (int i = 0; i < workerCount; i++) {
+      Thread worker = new Thread(this::workLoop, "ANPRX::StreamWorker-" + i);
+      threads.add(worker);
+      worker.start();
+    }
+  }
+
+  /**
+   * Stop all threads and close the sources.
+   *
+   * Network sources are disconnected first, interrupting a reader does not unblock a socket
+   * read. The sources are only closed, releasing their buffers, once the readers have exited.
+   */
+  public void stop() throws InterruptedException {
+    running = false;
+    synchronized (this) {
+      notifyAll();
+    }
+    for (Stream stream : streams) {
+      if (stream.source instanceof MjpegFrameSource) {
+        ((MjpegFrameSource) stream.source).disconnect();
+      }
+    }
+    for (Thread thread : threads) {
+      thread.interrupt();
+      thread.join();
+    }
+    for (Stream stream : streams) {
+      try {
+        stream.source.close();
+      } catch (IOException e) {
+        // Closing anyway.
+      }
+      for (Frame frame : stream.queue) {
+        frame.release();
+      }
+      for (Frame frame : stream.free) {
+        frame.release();
+      }
+    }
+  }
+
+  /**
+   * @return true once every source is exhausted and every queued frame processed.
+   */
+  public synchronized boolean isDrained() {
+    for (Stream stream : streams) {
+      if (!stream.finished || !stream.queue.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return per stream fps, queue depth, drop count, latency and read errors.
+   */
+  public synchronized String report() {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    StringBuilder out = new StringBuilder();
+    for (Stream stream : streams) {
+      synchronized (stream.latency) {
+        out.append(String.format(Locale.ROOT, "%-20s w=%d fps=%6.1f in=%6d done=%6d dropped=%6d depth=%d p50=%.1fms p95=%.1fms errors=%d%n",
+            stream.name, stream.weight, stream.processed.get() / seconds, stream.received.get(),
+            stream.processed.get(), stream.dropped.get(), stream.queue.size(),
+            stream.latency.percentileMillis(50), stream.latency.percentileMillis(95), stream.errors.get()));
+      }
+      String lastError = stream.lastError;
+      if (lastError != null) {
+        out.append("  last error: ").append(lastError).append('\n');
+      }
+    }
+    return out.toString();
+  }
+
+  private void readLoop(Stream stream) {
+    try {
+      while (running) {
+        Frame frame;
+        synchronized (this) {
+          // Reuse a free frame, or drop the oldest queued frame when the workers are behind,
+          // only wait when every frame of the stream is being processed.
+          while (true) {
+            if (!running) {
+              return;
+            }
+            frame = stream.free.poll();
+            if (frame == null) {
+              frame = stream.queue.poll();
+              if (frame != null) {
+                stream.dropped.incrementAndGet();
+              }
+            }
+            if (frame != null) {
+              break;
+            }
+            wait();
+          }
+        }
+
+        boolean read = stream.source.read(frame);
+        synchronized (this) {
+          if (!read) {
+            stream.free.add(frame);
+            return;
+          }
+          stream.received.incrementAndGet();
+          stream.queue.add(frame);
+          notifyAll();
+        }
+      }
+    } catch (IOException e) {
+      // A source disconnected by stop() is not a read error.
+      if (running) {
+        stream.errors.incrementAndGet();
+        stream.lastError = e.toString();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      synchronized (this) {
+        stream.finished = true;
+        notifyAll();
+      }
+    }
+  }
+
+  private void workLoop() {
+    RecognitionPipeline pipeline = pipelineFactory.create();
+    try {
+      while (running) {
+        Stream stream;
+        Frame frame;
+        synchronized (this) {
+          while ((stream = next()) == null) {
+            if (!running) {
+              return;
+            }
+            wait();
+          }
+          frame = stream.queue.poll();
+        }
+
+        // A failing frame is counted against its stream, the worker and the frame carry on.
+        try {
+          long start = System.nanoTime();
+          RecognitionResult result = pipeline.process(frame.grey, frame.rotationDegrees, frame.timestampNanos);
+          long elapsed = System.nanoTime() - start;
+
+          synchronized (stream.latency) {
+            stream.latency.record(elapsed);
+          }
+          stream.processed.incrementAndGet();
+          if (listener != null) {
+            listener.onResult(stream.name, result);
+          }
+        } catch (RuntimeException e) {
+          stream.errors.incrementAndGet();
+          stream.lastError = e.toString();
+        } finally {
+          synchronized (this) {
+            stream.free.add(frame);
+            notifyAll();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Smooth weighted round-robin over the streams with queued frames, must hold the lock.
+   */
+  private Stream next() {
+    Stream best = null;
+    int total = 0;
+    for (Stream stream : streams) {
+      if (stream.queue.isEmpty()) {
+        continue;
+      }
+      stream.currentWeight += stream.weight;
+      total += stream.weight;
+      if (best == null || stream.currentWeight > best.currentWeight) {
+        best = stream;
+      }
+    }
+    if (best != null) {
+      best.currentWeight -= total;
+    }
+    return best;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("usage: StreamServer <workers> <source[@weight]>...");
+      System.err.println("  source is a video, image directory, pattern, recording or http MJPEG url");
+      System.exit(1);
+    }
+
+    OpenCV.loadLocally();
+
+    StreamServer server = new StreamServer(Integer.parseInt(args[0]), 4,
+        () -> new RecognitionPipeline(new PlateDetector(), null), null);
+
+    for (int i = 1; i < args.length; i++) {
+      String spec = args[i];
+      int weight = 1;
+      int at = spec.lastIndexOf('@');
+      if (at > 0) {
+        weight = Integer.parseInt(spec.substring(at + 1));
+        spec = spec.substring(0, at);
+      }
+
+      FrameSource source = spec.startsWith("http://") || spec.startsWith("https://")
+          ? new MjpegFrameSource(spec)
+          : ReplayRunner.open(spec, ReplayFrameSource.Pacing.REAL_TIME, ReplayFrameSource.DEFAULT_FPS);
+      server.addStream("stream-" + i, source, weight);
+    }
+
+    server.start();
+    while (!server.isDrained()) {
+      Thread.sleep(5000);
+      System.out.println(server.report());
+    }
+    server.stop();
+  }
+}
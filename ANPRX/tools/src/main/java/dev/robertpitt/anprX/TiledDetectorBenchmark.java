@@ -0,0 +1,149 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares whole frame detection against {@link TiledPlateDetector} on 4K frames, with
+ * 1, 2, 4 ... threads up to the number of cores.
+ *
+ *   ./gradlew :tools:run -Ptool=TiledDetectorBenchmark --args="notebooks/frames [iterations]"
+ *
+ * The directory needs a labels.tsv, only the labelled images are used. Each 4K frame is a
+ * 2x2 mosaic of consecutive sample frames at 1080p, as the detector finds nothing in a
+ * single sample scaled up 4x, its edges are too soft. The plates are then a few hundred
+ * pixels wide, wider than the default overlap, and many straddle a tile edge. The detector
+ * area range is scaled with the frames.
+ *
+ * Tiled candidates are matched to the whole frame candidates by rotated IoU, recall is the
+ * share of whole frame candidates the tiled detector also found. The whole frame detector
+ * often reports a plate twice, the inner and outer edge of its border, which the tiled
+ * detector merges, so one tiled candidate may match several whole frame ones.
+ */
+public class TiledDetectorBenchmark {
+  /**
+   * Rotated IoU for a tiled candidate to match a whole frame one.
+   */
+  private static final double MATCH_IOU = 0.5;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: TiledDetectorBenchmark <images> [iterations]");
+      System.exit(1);
+    }
+
+    OpenCV.loadLocally();
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    File directory = new File(args[0]);
+    GroundTruth truth = GroundTruth.load(new File(directory, "labels.tsv"));
+    List<Mat> images = Evaluator.loadImages(directory, truth);
+
+    List<Mat> frames = new ArrayList<>();
+    List<DetectorConfig> configs = new ArrayList<>();
+    for (int i = 0; i < images.size(); i++) {
+      Mat mosaic = new Mat(2160, 3840, images.get(i).type());
+      double minScale = Double.MAX_VALUE;
+      double maxScale = 0;
+      for (int cell = 0; cell < 4; cell++) {
+        Mat image = images.get((i + cell) % images.size());
+        Mat target = mosaic.submat(new Rect((cell % 2) * 1920, (cell / 2) * 1080, 1920, 1080));
+        Imgproc.resize(image, target, target.size(), 0, 0, Imgproc.INTER_LINEAR);
+        target.release();
+        double scale = (1920.0 / image.cols()) * (1080.0 / image.rows());
+        minScale = Math.min(minScale, scale);
+        maxScale = Math.max(maxScale, scale);
+      }
+      frames.add(mosaic);
+      configs.add(DetectorConfig.DEFAULT.toBuilder()
+          .setAreaRange(DetectorConfig.DEFAULT.minArea * minScale, DetectorConfig.DEFAULT.maxArea * maxScale)
+          .build());
+    }
+    for (Mat image : images) {
+      image.release();
+    }
+
+    PlateDetector single = new PlateDetector();
+    List<List<RotatedRect>> expected = new ArrayList<>();
+    int plates = 0;
+    for (int i = 0; i < frames.size(); i++) {
+      single.setConfig(configs.get(i));
+      expected.add(single.detect(frames.get(i)));
+      plates += expected.get(i).size();
+    }
+
+    long start = System.nanoTime();
+    for (int n = 0; n < iterations; n++) {
+      for (int i = 0; i < frames.size(); i++) {
+        single.setConfig(configs.get(i));
+        single.detect(frames.get(i));
+      }
+    }
+    double baseline = (System.nanoTime() - start) / 1e6 / (iterations * frames.size());
+    System.out.println(String.format(Locale.ROOT, "whole frame   %7.1fms/frame         candidates %d", baseline, plates));
+
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      TiledPlateDetector tiled = new TiledPlateDetector(pool);
+
+      // Warm up the per thread detectors, and match the candidates against the whole frame.
+      int matched = 0;
+      int tiledOnly = 0;
+      int overlap = 0;
+      for (int i = 0; i < frames.size(); i++) {
+        tiled.setConfig(configs.get(i));
+        List<RotatedRect> actual = tiled.detect(frames.get(i));
+        matched += matches(expected.get(i), actual);
+        tiledOnly += actual.size() - matches(actual, expected.get(i));
+        overlap = Math.max(overlap, tiled.overlapFor(configs.get(i)));
+      }
+
+      start = System.nanoTime();
+      for (int n = 0; n < iterations; n++) {
+        for (int i = 0; i < frames.size(); i++) {
+          tiled.setConfig(configs.get(i));
+          tiled.detect(frames.get(i));
+        }
+      }
+      double millis = (System.nanoTime() - start) / 1e6 / (iterations * frames.size());
+      System.out.println(String.format(Locale.ROOT, "tiled x%-2d     %7.1fms/frame  x%4.2f  recall %d/%d (%.3f) tiled only %d overlap %dpx",
+          threads, millis, baseline / millis, matched, plates, plates == 0 ? 1.0 : matched / (double) plates, tiledOnly, overlap));
+      pool.shutdown();
+
+      if (threads == cores) {
+        break;
+      }
+    }
+
+    for (Mat frame : frames) {
+      frame.release();
+    }
+  }
+
+  /**
+   * @return number of expected candidates matched by any of the actual candidates.
+   */
+  private static int matches(List<RotatedRect> expected, List<RotatedRect> actual) {
+    int matched = 0;
+    for (RotatedRect plate : expected) {
+      for (RotatedRect candidate : actual) {
+        if (Geometry.iou(plate, candidate) >= MATCH_IOU) {
+          matched++;
+          break;
+        }
+      }
+    }
+    return matched;
+  }
+}
@@ -0,0 +1,205 @@
+package dev.robertpitt.anprX;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MicroBatcherTest {
+  @Test
+  public void refusesWorkWhenFull() {
+    MicroBatcher<Integer> batcher = new MicroBatcher<>(2, 4, 1, TimeUnit.MILLISECONDS);
+    assertTrue(batcher.offer(1));
+    assertTrue(batcher.offer(2));
+    assertFalse(batcher.offer(3));
+    assertEquals(2, batcher.size());
+  }
+
+  @Test
+  public void takesQueuedItemsInOrderUpToBatchSize() throws InterruptedException {
+    MicroBatcher<Integer> batcher = new MicroBatcher<>(16, 4, 1, TimeUnit.SECONDS);
+    for (int i = 0; i < 6; i++) {
+      batcher.offer(i);
+    }
+
+    // A full batch is handed out at once, without waiting out the window.
+    List<Integer> batch = new ArrayList<>();
+    long start = System.nanoTime();
+    batcher.take(batch);
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+    assertEquals(Arrays.asList(0, 1, 2, 3), batch);
+    assertEquals(2, batcher.size());
+  }
+
+  @Test
+  public void handsOutPartialBatchWhenWindowCloses() throws InterruptedException {
+    MicroBatcher<Integer> batcher = new MicroBatcher<>(16, 4, 50, TimeUnit.MILLISECONDS);
+    batcher.offer(1);
+    batcher.offer(2);
+
+    List<Integer> batch = new ArrayList<>();
+    long start = System.nanoTime();
+    batcher.take(batch);
+    long waited = System.nanoTime() - start;
+
+    assertEquals(Arrays.asList(1, 2), batch);
+    assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(40));
+    assertEquals(0, batcher.size());
+  }
+
+  @Test
+  public void collectsItemsArrivingWithinWindow() throws InterruptedException {
+    final MicroBatcher<Integer> batcher = new MicroBatcher<>(16, 2, 5, TimeUnit.SECONDS);
+    batcher.offer(1);
+
+    Thread producer = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        return;
+      }
+      batcher.offer(2);
+    });
+    producer.start();
+
+    List<Integer> batch = new ArrayList<>();
+    batcher.take(batch);
+    producer.join();
+    assertEquals(Arrays.asList(1, 2), batch);
+  }
+
+  @Test
+  public void blocksUntilFirstItem() throws InterruptedException {
+    final MicroBatcher<Integer> batcher = new MicroBatcher<>(16, 4, 1, TimeUnit.MILLISECONDS);
+    final AtomicReference<List<Integer>> taken = new AtomicReference<>();
+
+    Thread worker = new Thread(() -> {
+      List<Integer> batch = new ArrayList<>();
+      try {
+        batcher.take(batch);
+      } catch (InterruptedException e) {
+        return;
+      }
+      taken.set(batch);
+    });
+    worker.start();
+
+    Thread.sleep(50);
+    assertEquals(null, taken.get());
+
+    batcher.offer(7);
+    worker.join(5000);
+    assertEquals(Arrays.asList(7), taken.get());
+  }
+
+  @Test
+  public void dispatchesAtOnceWhenAnotherWorkerIsIdle() throws InterruptedException {
+    MicroBatcher<Integer> batcher = new MicroBatcher<>(16, 4, 5, TimeUnit.SECONDS);
+    List<List<Integer>> batches = new ArrayList<>();
+    List<Thread> workers = startWorkers(batcher, 2, batches);
+    awaitIdle(batcher, 2);
+
+    // A lone item is not held for the window while the other worker has nothing to do.
+    long start = System.nanoTime();
+    batcher.offer(1);
+    awaitBatches(batches, 1);
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    synchronized (batches) {
+      assertEquals(Arrays.asList(1), batches.get(0));
+    }
+    stop(workers);
+  }
+
+  @Test
+  public void sharesQueueWithIdleWorkers() throws InterruptedException {
+    MicroBatcher<Integer> batcher = new MicroBatcher<>(16, 8, 5, TimeUnit.SECONDS);
+    List<List<Integer>> batches = new ArrayList<>();
+    List<Thread> workers = startWorkers(batcher, 2, batches);
+    awaitIdle(batcher, 2);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 6; i++) {
+      batcher.offer(i);
+    }
+    int taken = 0;
+    while (taken < 6) {
+      awaitBatches(batches, 1);
+      synchronized (batches) {
+        taken = 0;
+        for (List<Integer> batch : batches) {
+          // Neither worker takes everything while the other is waiting.
+          assertTrue(batch.toString(), batch.size() < 6);
+          taken += batch.size();
+        }
+      }
+      Thread.sleep(5);
+    }
+
+    // Nothing waited out the window.
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    stop(workers);
+  }
+
+  /**
+   * Start workers taking batches until interrupted.
+   */
+  private static List<Thread> startWorkers(final MicroBatcher<Integer> batcher, int count,
+                                           final List<List<Integer>> batches) {
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Thread worker = new Thread(() -> {
+        while (true) {
+          List<Integer> batch = new ArrayList<>();
+          try {
+            batcher.take(batch);
+          } catch (InterruptedException e) {
+            return;
+          }
+          synchronized (batches) {
+            batches.add(batch);
+          }
+        }
+      });
+      workers.add(worker);
+      worker.start();
+    }
+    return workers;
+  }
+
+  private static void stop(List<Thread> workers) throws InterruptedException {
+    for (Thread worker : workers) {
+      worker.interrupt();
+      worker.join(5000);
+    }
+  }
+
+  private static void awaitBatches(List<List<Integer>> batches, int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (true) {
+      synchronized (batches) {
+        if (batches.size() >= count) {
+          return;
+        }
+      }
+      assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private static void awaitIdle(MicroBatcher<?> batcher, int workers) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (batcher.idle() < workers) {
+      assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+      Thread.sleep(5);
+    }
+    // Let the workers reach the blocking take.
+    Thread.sleep(20);
+  }
+}
@@ -0,0 +1,131 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the service in process with a detector that throws on images of a given width.
+ */
+public class RecognitionHttpServerTest {
+  private static final int FAILING_WIDTH = 13;
+
+  private RecognitionHttpServer server;
+
+  @BeforeClass
+  public static void loadOpenCV() {
+    OpenCV.loadLocally();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    server = new RecognitionHttpServer(0, 1, () -> new RecognitionPipeline(new FailingDetector(), null));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Test
+  public void answersFailedRecognitionWith500AndKeepsWorker() throws IOException {
+    assertEquals(500, post(image(FAILING_WIDTH), null));
+    assertEquals(500, post(image(FAILING_WIDTH), null));
+
+    // The only worker is still serving.
+    assertEquals(200, post(image(32), null));
+    assertTrue(get("/metrics").contains("anprx_recognition_failures_total 2\n"));
+    assertTrue(get("/metrics").contains("anprx_workers 1\n"));
+  }
+
+  @Test
+  public void answersUndecodableImageWith400() throws IOException {
+    assertEquals(400, post(new byte[]{1, 2, 3}, null));
+  }
+
+  @Test
+  public void rejectsDeadlineOutOfRange() throws IOException {
+    assertEquals(400, post(image(32), "-1"));
+    assertEquals(400, post(image(32), String.valueOf(RecognitionHttpServer.MAX_DEADLINE_MILLIS + 1)));
+    assertEquals(400, post(image(32), String.valueOf(Long.MAX_VALUE)));
+    assertEquals(400, post(image(32), "soon"));
+    assertEquals(200, post(image(32), String.valueOf(RecognitionHttpServer.MAX_DEADLINE_MILLIS)));
+  }
+
+  @Test
+  public void expiresRequestWithZeroDeadline() throws IOException {
+    assertEquals(504, post(image(32), "0"));
+  }
+
+  private int post(byte[] body, String deadline) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url("/recognise").openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    if (deadline != null) {
+      connection.setRequestProperty(RecognitionHttpServer.DEADLINE_HEADER, deadline);
+    }
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body);
+    }
+    int status = connection.getResponseCode();
+    connection.disconnect();
+    return status;
+  }
+
+  private String get(String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+    try (InputStream in = connection.getInputStream()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = in.read(buffer)) > 0) {
+        out.write(buffer, 0, count);
+      }
+      return out.toString("UTF-8");
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private URL url(String path) throws IOException {
+    return new URL("http://127.0.0.1:" + server.getPort() + path);
+  }
+
+  private static byte[] image(int width) {
+    Mat grey = Mat.zeros(24, width, CvType.CV_8UC1);
+    MatOfByte encoded = new MatOfByte();
+    Imgcodecs.imencode(".png", grey, encoded);
+    byte[] bytes = encoded.toArray();
+    encoded.release();
+    grey.release();
+    return bytes;
+  }
+
+  private static class FailingDetector extends PlateDetector {
+    @Override
+    public List<RotatedRect> detect(Mat grayscale) {
+      if (grayscale.cols() == FAILING_WIDTH) {
+        throw new IllegalStateException("Detector failure");
+      }
+      return super.detect(grayscale);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package dev.robertpitt.anprX;
+
+import nu.pattern.OpenCV;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamServerTest {
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  @BeforeClass
+  public static void loadOpenCV() {
+    OpenCV.loadLocally();
+  }
+
+  @Test
+  public void countsFailingFramesAndKeepsServing() throws Exception {
+    // Every third frame fails. The queue holds every frame so none are dropped, with a single
+    // worker the stream would stall at the first failure if the worker were lost.
+    StreamServer server = new StreamServer(1, 32,
+        () -> new RecognitionPipeline(new FailingDetector(), null), null);
+    StreamServer.Stream stream = server.addStream("test", new CountingSource(30), 1);
+    server.start();
+    try {
+      long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      while (!server.isDrained()) {
+        assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+    } finally {
+      server.stop();
+    }
+
+    assertEquals(0, stream.getDropped());
+    assertEquals(30, stream.getReceived());
+    assertEquals(20, stream.getProcessed());
+    assertEquals(10, stream.getErrors());
+    assertTrue(stream.getLastError().contains("Detector failure"));
+  }
+
+  @Test
+  public void stopsWithoutWaitingForStalledStream() throws Exception {
+    // A camera that sends the stream headers and then nothing at all.
+    final CountDownLatch stalled = new CountDownLatch(1);
+    MiniHttpServer camera = new MiniHttpServer(0, 1, (request, out) -> {
+      out.write(("HTTP/1.1 200 OK\r\n"
+          + "Content-Type: multipart/x-mixed-replace; boundary=frame\r\n\r\n").getBytes("US-ASCII"));
+      out.flush();
+      try {
+        stalled.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    try {
+      StreamServer server = new StreamServer(1, 1, () -> new RecognitionPipeline(new PlateDetector(), null), null);
+      StreamServer.Stream stream = server.addStream("stalled",
+          new MjpegFrameSource("http://127.0.0.1:" + camera.getPort() + "/stream"), 1);
+      server.start();
+      Thread.sleep(200);
+
+      long start = System.nanoTime();
+      server.stop();
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+      assertEquals(0, stream.getErrors());
+    } finally {
+      stalled.countDown();
+      camera.close();
+    }
+  }
+
+  /**
+   * Source of blank frames, the frame index is written into the width.
+   */
+  private static class CountingSource implements FrameSource {
+    private final int count;
+    private int index = 0;
+
+    CountingSource(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public boolean read(Frame frame) {
+      if (index == count) {
+        return false;
+      }
+      frame.grey.create(16, 32 + index, CvType.CV_8UC1);
+      frame.grey.setTo(new org.opencv.core.Scalar(0));
+      frame.index = index++;
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static class FailingDetector extends PlateDetector {
+    @Override
+    public List<RotatedRect> detect(Mat grayscale) {
+      if ((grayscale.cols() - 32) % 3 == 0) {
+        throw new IllegalStateException("Detector failure");
+      }
+      return super.detect(grayscale);
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package dev.robertpitt.anpr;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Local threshold binarisation of plate crops, so a shadow across half the plate or glare
+ * from a headlight does not push the characters to one side of a single global threshold.
+ *
+ * Each pixel is compared against a threshold from the mean m and standard deviation s of the
+ * window around it:
+ *
+ *   Sauvola: T = m * (1 + k * (s / 128 - 1))
+ *   Wolf:    T = m - k * (1 - s / max(s)) * (m - min(grey))
+ *
+ * Wolf normalises the contrast by the crop's own range, which suits low contrast plates
+ * better than Sauvola's fixed 128. The window sums are taken from integral images of the
+ * pixels and their squares, so the cost per pixel is constant whatever the window size.
+ * Windows are clipped at the crop border.
+ *
+ * Working arrays are grown to the largest crop seen and then reused, so binarisation does
+ * not allocate in steady state. Not thread safe, use one instance per thread.
+ */
+public class AdaptiveBinariser {
+  /**
+   * Local threshold formula.
+   */
+  public enum Method {
+    SAUVOLA,
+    WOLF
+  }
+
+  /**
+   * Sensitivity to the local contrast, the values usually quoted for printed text.
+   */
+  public static final double DEFAULT_SAUVOLA_K = 0.34;
+  public static final double DEFAULT_WOLF_K = 0.5;
+
+  /**
+   * Dynamic range of the standard deviation in the Sauvola formula.
+   */
+  private static final double SAUVOLA_RANGE = 128;
+
+  /**
+   * Smallest window used when the window follows the crop height.
+   */
+  private static final int MIN_WINDOW = 9;
+
+  private final Method method;
+  private final double k;
+  private final int windowSize;
+
+  private long[] sums = new long[0];
+  private long[] squares = new long[0];
+  private float[] means = new float[0];
+  private float[] deviations = new float[0];
+  private byte[] pixels = new byte[0];
+
+  public AdaptiveBinariser() {
+    this(Method.SAUVOLA, DEFAULT_SAUVOLA_K, 0);
+  }
+
+  /**
+   * @param method local threshold formula.
+   * @param k sensitivity to the local contrast.
+   * @param windowSize side of the odd square window, 0 to use the crop height so a window
+   *                   always spans a character and the background around it.
+   */
+  public AdaptiveBinariser(Method method, double k, int windowSize) {
+    if (windowSize < 0) {
+      throw new IllegalArgumentException("Invalid window size " + windowSize);
+    }
+    this.method = method;
+    this.k = k;
+    this.windowSize = windowSize;
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  /**
+   * Binarise a single channel 8 bit crop, dark text stays 0 and the background becomes 255.
+   * @param dst receives the result, may be the same as src.
+   */
+  public void binarise(Mat src, Mat dst) {
+    int width = src.cols();
+    int height = src.rows();
+    int size = width * height;
+    if (pixels.length < size) {
+      pixels = new byte[size];
+    }
+
+    Mat continuous = src.isContinuous() ? src : src.clone();
+    continuous.get(0, 0, pixels);
+    if (continuous != src) {
+      continuous.release();
+    }
+
+    binarise(pixels, 0, width, width, height, pixels);
+
+    dst.create(height, width, CvType.CV_8UC1);
+    dst.put(0, 0, pixels);
+  }
+
+  /**
+   * Binarise a window of a greyscale image.
+   *
+   * @param image greyscale pixels.
+   * @param offset index of the top left pixel of the window.
+   * @param rowStride distance between rows of the image.
+   * @param width width of the window.
+   * @param height height of the window.
+   * @param out receives 255 for background and 0 for text, width * height entries, row major,
+   *            may be the image itself when the offset is 0 and the stride is the width.
+   */
+  public void binarise(byte[] image, int offset, int rowStride, int width, int height, byte[] out) {
+    int size = width * height;
+    if (size == 0) {
+      return;
+    }
+    ensureCapacity(width, height);
+    integrate(image, offset, rowStride, width, height);
+
+    int window = windowSize > 0 ? windowSize : Math.max(MIN_WINDOW, height);
+    int half = window / 2;
+    int stride = width + 1;
+    long[] sums = this.sums;
+    long[] squares = this.squares;
+    float[] means = this.means;
+    float[] deviations = this.deviations;
+
+    // Local statistics from the integral images, four reads each whatever the window size.
+    float maxDeviation = 0;
+    for (int row = 0; row < height; row++) {
+      int top = Math.max(0, row - half) * stride;
+      int bottom = Math.min(height, row + half + 1) * stride;
+      int rows = (bottom - top) / stride;
+      int base = row * width;
+      for (int column = 0; column < width; column++) {
+        int left = Math.max(0, column - half);
+        int right = Math.min(width, column + half + 1);
+        double area = rows * (right - left);
+
+        long sum = sums[bottom + right] - sums[bottom + left] - sums[top + right] + sums[top + left];
+        long square = squares[bottom + right] - squares[bottom + left] - squares[top + right] + squares[top + left];
+        double mean = sum / area;
+        double variance = square / area - mean * mean;
+        float deviation = variance > 0 ? (float) Math.sqrt(variance) : 0;
+
+        means[base + column] = (float) mean;
+        deviations[base + column] = deviation;
+        if (deviation > maxDeviation) {
+          maxDeviation = deviation;
+        }
+      }
+    }
+
+    if (method == Method.WOLF) {
+      int minGrey = 255;
+      for (int row = 0; row < height; row++) {
+        int base = offset + row * rowStride;
+        for (int column = 0; column < width; column++) {
+          int value = image[base + column] & 0xff;
+          if (value < minGrey) {
+            minGrey = value;
+          }
+        }
+      }
+
+      float range = maxDeviation > 0 ? maxDeviation : 1;
+      for (int row = 0; row < height; row++) {
+        int source = offset + row * rowStride;
+        int base = row * width;
+        for (int column = 0; column < width; column++) {
+          float mean = means[base + column];
+          float threshold = mean - (float) k * (1 - deviations[base + column] / range) * (mean - minGrey);
+          out[base + column] = (image[source + column] & 0xff) > threshold ? (byte) 255 : 0;
+        }
+      }
+    } else {
+      for (int row = 0; row < height; row++) {
+        int source = offset + row * rowStride;
+        int base = row * width;
+        for (int column = 0; column < width; column++) {
+          float threshold = means[base + column] * (1 + (float) k * (deviations[base + column] / (float) SAUVOLA_RANGE - 1));
+          out[base + column] = (image[source + column] & 0xff) > threshold ? (byte) 255 : 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * Integral images of the pixels and their squares, with a zero first row and column so
+   * window sums need no edge cases.
+   */
+  private void integrate(byte[] image, int offset, int rowStride, int width, int height) {
+    int stride = width + 1;
+    long[] sums = this.sums;
+    long[] squares = this.squares;
+
+    for (int column = 0; column < stride; column++) {
+      sums[column] = 0;
+      squares[column] = 0;
+    }
+
+    for (int row = 0; row < height; row++) {
+      int source = offset + row * rowStride;
+      int index = (row + 1) * stride;
+      sums[index] = 0;
+      squares[index] = 0;
+
+      long rowSum = 0;
+      long rowSquares = 0;
+      for (int column = 0; column < width; column++) {
+        int value = image[source + column] & 0xff;
+        rowSum += value;
+        rowSquares += value * value;
+        index++;
+        sums[index] = sums[index - stride] + rowSum;
+        squares[index] = squares[index - stride] + rowSquares;
+      }
+    }
+  }
+
+  private void ensureCapacity(int width, int height) {
+    int integralSize = (width + 1) * (height + 1);
+    if (sums.length < integralSize) {
+      sums = new long[integralSize];
+      squares = new long[integralSize];
+    }
+    int size = width * height;
+    if (means.length < size) {
+      means = new float[size];
+      deviations = new float[size];
+    }
+  }
+}
@@ -4,6 +4,7 @@ package dev.robertpitt.anpr;
 import android.Manifest;
 import android.app.Activity;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.os.Bundle;
@@ -17,6 +18,7 @@ import android.widget.SeekBar;
 import android.widget.Toast;
 
 import androidx.core.app.ActivityCompat;
+import androidx.preference.PreferenceManager;
 
 import com.googlecode.tesseract.android.TessBaseAPI;
 
@@ -24,23 +26,20 @@ import org.opencv.android.BaseLoaderCallback;
 import org.opencv.android.CameraBridgeViewBase;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener2;
-import org.opencv.android.JavaCamera2View;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
 import org.opencv.core.RotatedRect;
-import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static dev.robertpitt.anpr.Utils.rotateBasedOnRect;
 
@@ -56,34 +55,55 @@ public class MainActivity extends Activity implements CvCameraViewListener2, Vie
     private static final int CAMERA_PERMISSION_REQUEST = 0x00001;
 
     /**
-     * Default Lower threshold for the canny edge detection process.
+     * Base path for tesseract storage
      */
-    private static final int CANNY_LOWER_THRESHOLD = 100;
+    private static final String TESS_BASE_BATH = Environment.getExternalStorageDirectory().getAbsolutePath() + "/tesseract/";
 
     /**
-     * Default Upper threshold for the canny edge detection process.
+     * Base path for tesseract models
      */
-    private static final int CANNY_UPPER_THRESHOLD = 800;
+    private static final String TESS_DATA_PATH = TESS_BASE_BATH + "tessdata/";
 
     /**
-     * Base path for tesseract storage
+     * Tesseract API, null until initialised
      */
-    private static final String TESS_BASE_BATH = Environment.getExternalStorageDirectory().getAbsolutePath() + "/tesseract/";
+    TessBaseAPI tessBaseAPI;
 
     /**
-     * Base path for tesseract models
+     * Engine mode tessBaseAPI was initialised with, -1 before initialisation.
      */
-    private static final String TESS_DATA_PATH = TESS_BASE_BATH + "tessdata/";
+    private int tessEngineMode = -1;
+
+    /**
+     * Engine mode last asked for, so a mode tesseract failed to initialise with is not retried
+     * on every frame.
+     */
+    private int tessRequestedMode = -1;
 
     /**
-     * The color red in scalar format.
+     * Current performance profile, read once per frame by the camera thread and swapped as a
+     * whole when the profile is changed or the thresholds are tuned.
      */
-    private static final Scalar COLOR_RED = new Scalar(255, 0, 0);
+    private final AtomicReference<PerformanceProfile> profile = new AtomicReference<>(PerformanceProfile.BALANCED);
 
     /**
-     * Tesseract API
+     * Number of frames delivered, used by the frame skip policy.
      */
-    TessBaseAPI tessBaseAPI = new TessBaseAPI();
+    private long frameCount = 0;
+
+    /**
+     * Preferences holding the selected profile, the listener is held here as the preferences
+     * only keep a weak reference to it.
+     */
+    private SharedPreferences preferences;
+    private final SharedPreferences.OnSharedPreferenceChangeListener profileListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            if (PerformanceProfile.PREFERENCE_KEY.equals(key)) {
+                applyProfile(PerformanceProfile.forName(sharedPreferences.getString(key, null)));
+            }
+        }
+    };
 
     /**
      * Deter Engine
@@ -134,11 +154,20 @@ public class MainActivity extends Activity implements CvCameraViewListener2, Vie
     private Button mSettinsButton;
 
     /**
-     * Image frame references
+     * Overlay drawn over the preview with the detection results.
+     */
+    private OverlayView mOverlayView;
+
+    /**
+     * Image frame reference, only the grey frame is analysed.
      */
-    private Mat rgba;
     private Mat gray;
 
+    /**
+     * Binarises the plate crop for OCR, only used on the camera thread.
+     */
+    private final AdaptiveBinariser binariser = new AdaptiveBinariser();
+
     /**
      * Executed when the activity is created.
      */
@@ -156,17 +185,45 @@ public class MainActivity extends Activity implements CvCameraViewListener2, Vie
         setContentView(R.layout.activity_main);
 
         // Initialise the preview window
-        mOpenCvCameraView = (JavaCamera2View)findViewById(R.id.main_surface);
+        mOpenCvCameraView = (PortraitCameraView)findViewById(R.id.main_surface);
         mOpenCvCameraView.setVisibility(SurfaceView.VISIBLE);
         mOpenCvCameraView.setCvCameraViewListener(this);
+        mOverlayView = findViewById(R.id.overlay);
 
         // Initialize seek options
         mLowerThreshSeekBar = findViewById(R.id.lowerThreshold);
         mUpperThreshSeekBar = findViewById(R.id.upperThreshold);
 
-        // Set the default canny values
-        mLowerThreshSeekBar.setProgress(CANNY_LOWER_THRESHOLD);
-        mUpperThreshSeekBar.setProgress(CANNY_UPPER_THRESHOLD);
+        // Manual threshold changes are applied to a copy of the current profile
+        SeekBar.OnSeekBarChangeListener thresholdListener = new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (!fromUser) {
+                    return;
+                }
+                PerformanceProfile current;
+                PerformanceProfile tuned;
+                do {
+                    current = profile.get();
+                    tuned = current.withCannyThresholds(mLowerThreshSeekBar.getProgress(), mUpperThreshSeekBar.getProgress());
+                } while (!profile.compareAndSet(current, tuned));
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+            }
+        };
+        mLowerThreshSeekBar.setOnSeekBarChangeListener(thresholdListener);
+        mUpperThreshSeekBar.setOnSeekBarChangeListener(thresholdListener);
+
+        // Load the selected performance profile and follow changes to it
+        preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        preferences.registerOnSharedPreferenceChangeListener(profileListener);
+        applyProfile(PerformanceProfile.forName(preferences.getString(PerformanceProfile.PREFERENCE_KEY, PerformanceProfile.BALANCED.name)));
 
         // Settings Button
         mSettinsButton = findViewById(R.id.settingsButton);
@@ -227,6 +284,18 @@ public class MainActivity extends Activity implements CvCameraViewListener2, Vie
         super.onDestroy();
         if (mOpenCvCameraView != null)
             mOpenCvCameraView.disableView();
+        if (preferences != null)
+            preferences.unregisterOnSharedPreferenceChangeListener(profileListener);
+    }
+
+    /**
+     * Swap in a new profile, the camera thread picks it up on its next frame.
+     */
+    private void applyProfile(PerformanceProfile next) {
+        profile.set(next);
+        mLowerThreshSeekBar.setProgress(next.cannyLower);
+        mUpperThreshSeekBar.setProgress(next.cannyUpper);
+        Log.i(TAG, "Performance profile " + next);
     }
 
     /**
@@ -257,14 +326,44 @@ public class MainActivity extends Activity implements CvCameraViewListener2, Vie
             }
         }
 
-        tessBaseAPI.init(TESS_BASE_BATH, "eng", TessBaseAPI.OEM_LSTM_ONLY);
-        tessBaseAPI.setDebug(false);
-        tessBaseAPI.setVariable("tessedit_char_whitelist", " 0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        configureTesseract(profile.get().ocrEngineMode);
+    }
+
+    /**
+     * (Re)initialise tesseract with the given engine mode, the engine mode can only be chosen
+     * at initialisation so a profile switch replaces the instance. The new instance is only
+     * swapped in once it initialised, otherwise the previous engine is kept.
+     */
+    private void configureTesseract(int engineMode) {
+        tessRequestedMode = engineMode;
+
+        TessBaseAPI next = new TessBaseAPI();
+        boolean initialised;
+        try {
+            initialised = next.init(TESS_BASE_BATH, "eng", engineMode);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid tesseract data path " + TESS_BASE_BATH, e);
+            initialised = false;
+        }
+        if (!initialised) {
+            next.end();
+            Log.e(TAG, "Unable to initialise tesseract with engine mode " + engineMode + ", keeping engine mode " + tessEngineMode);
+            return;
+        }
+
+        next.setDebug(false);
+        next.setVariable("tessedit_char_whitelist", " 0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ");
 
         // Disable dictionary lookups as we are not looking
         // https://tesseract-ocr.github.io/tessdoc/ImproveQuality#dictionaries-word-lists-and-patterns
-        tessBaseAPI.setVariable("load_system_dawg", "false");
-        tessBaseAPI.setVariable("load_freq_dawg", "false");
+        next.setVariable("load_system_dawg", "false");
+        next.setVariable("load_freq_dawg", "false");
+
+        if (tessBaseAPI != null) {
+            tessBaseAPI.end();
+        }
+        tessBaseAPI = next;
+        tessEngineMode = engineMode;
     }
 
     /**
@@ -275,8 +374,6 @@ public class MainActivity extends Activity implements CvCameraViewListener2, Vie
     @Override
     public void onCameraViewStarted(int width, int height) {
         detector.onCameraViewStarted(width, height);
-        rgba = new Mat();
-        gray = new Mat();
     }
 
     /**
@@ -284,6 +381,7 @@ public class MainActivity extends Activity implements CvCameraViewListener2, Vie
      */
     @Override
     public void onCameraViewStopped() {
+        mOverlayView.publish(null);
     }
 
     /**
@@ -293,82 +391,65 @@ public class MainActivity extends Activity implements CvCameraViewListener2, Vie
      */
     @Override
     public Mat onCameraFrame(CvCameraViewFrame frame) {
-        rgba = frame.rgba();
+        // Only the Y plane is analysed.
         gray = frame.gray();
 
-        // This fixes image rotation, shape really that we have to do this computation on every frame.
-        Core.flip(rgba, rgba, 0);
-        Core.flip(gray, gray, 0);
-        Core.transpose(rgba, rgba);
-        Core.transpose(gray, gray);
+        // The profile is read once so the whole frame is processed with the same settings.
+        PerformanceProfile current = profile.get();
+        if (frameCount++ % current.frameSkip != 0) {
+            return frame.rgba();
+        }
+        if (current.ocrEngineMode != tessRequestedMode) {
+            configureTesseract(current.ocrEngineMode);
+        }
 
         // List of detected plates
-        List<RotatedRect> plates = detector.detect(gray, mLowerThreshSeekBar.getProgress(), mUpperThreshSeekBar.getProgress());
+        List<RotatedRect> plates = detector.detect(gray, current);
 
         // Fetch the largest registration
         RotatedRect detection = Utils.getLargestContourFromList(plates);
 
         /**
-         * Extract the
+         * Extract the plate and publish the result to the overlay, which draws it over the
+         * preview at display rate.
          */
+        List<OverlayView.Plate> overlayPlates = new ArrayList<>();
+        Bitmap bitmap = null;
         if(detection != null) {
-            Mat cropped = new Mat(gray, detection.boundingRect());
+            // Crop the sensor frame and turn only the crop upright.
+            Mat region = new Mat(gray, detection.boundingRect());
+            Mat cropped = new Mat();
+            Core.rotate(region, cropped, Core.ROTATE_90_CLOCKWISE);
+            region.release();
 //            Mat cropped = Utils.rotateAndDeskew(gray, detection);
 
-            // Threshold the plate
-            Imgproc.threshold(cropped, cropped, 50, 255, Imgproc.THRESH_BINARY);
+            // Threshold the plate against its local surroundings, shadows and glare defeat a fixed threshold
+            binariser.binarise(cropped, cropped);
 
             // Output bitmap for OCR
-            Bitmap bitmap = Bitmap.createBitmap(cropped.width(), cropped.height(), Bitmap.Config.ARGB_8888);
+            bitmap = Bitmap.createBitmap(cropped.width(), cropped.height(), Bitmap.Config.ARGB_8888);
             org.opencv.android.Utils.matToBitmap(cropped, bitmap);
 
-            // Perform OCR
-            tessBaseAPI.setImage(bitmap);
-            String plate = tessBaseAPI.getUTF8Text();
+            // Perform OCR, nothing to read with until tesseract initialised
+            String plate = "";
+            if (tessBaseAPI != null) {
+                tessBaseAPI.setImage(bitmap);
+                plate = tessBaseAPI.getUTF8Text();
+            }
+            cropped.release();
 
+            RotatedRect upright = Utils.toPortrait(detection, gray.rows());
             Point[] vertices = new Point[4];
-            detection.points(vertices);
-
-            // Draw Bounding Box
-            Imgproc.drawContours(rgba, Arrays.asList(new MatOfPoint(vertices)), -1, COLOR_RED, 3);
-
-            // Write plate and confidence
-            Imgproc.putText(rgba,  detection.angle + " deg - " + plate, detection.boundingRect().tl(), Imgproc.FONT_HERSHEY_PLAIN, 2, COLOR_RED, 2);
+            upright.points(vertices);
+            overlayPlates.add(new OverlayView.Plate(vertices, Math.round(upright.angle) + " deg - " + plate));
         }
+        mOverlayView.publish(new OverlayView.Overlay(gray.rows(), gray.cols(), overlayPlates, bitmap));
 
-//        // If we are debugging then show the plate overlay
-//        if(largestPlate != null) {
-//            Mat cropped = new Mat(gray, largestPlate.boundingRect());
-//
-//            // Fix angle of rotation
-//            double angle = largestPlate.angle < -45. ? largestPlate.angle + 90. : largestPlate.angle;
-//
-//            Point[] vertices = new Point[4];
-//            largestPlate.points(vertices);
-//
-//            // While tesseract version 3.05 (and older) handle inverted image
-//            // (dark background and light text) without problem, for 4.x version use dark
-//            // text on light background.
-//            // THRESH_BINARY == White background + Black Text
-//            Imgproc.threshold(cropped, cropped, 50, 255, Imgproc.THRESH_BINARY);
-//            rotateBasedOnRect(cropped, cropped, largestPlate);
-//
-//            Bitmap bitmap = Bitmap.createBitmap(cropped.width(), cropped.height(), Bitmap.Config.ARGB_8888);
-//            org.opencv.android.Utils.matToBitmap(cropped, bitmap);
-//
-//            // Perform OCR
-//            tessBaseAPI.setImage(bitmap);
-//            String plate = tessBaseAPI.getUTF8Text();
-//
-//            Imgproc.putText(rgba, tessBaseAPI.wordConfidences() + "", largestPlate.boundingRect().tl(), Imgproc.FONT_HERSHEY_PLAIN, 3, COLOR_RED, 3);
-//
-//            MatOfPoint contour = new MatOfPoint();
-//            Imgproc.drawContours(rgba, Arrays.asList(new MatOfPoint(vertices)), -1, COLOR_RED, 3);
-//            cropped.release();
-//        }
-
-        gray.release();
-        return rgba;
+        // The colour frame is shown undrawn, the overlay is drawn on top of it and the preview
+        // turns it to portrait as it draws it. Converting it costs a single YUV to RGBA pass,
+        // showing the grey frame would only save that pass for a grey to RGBA one when the
+        // preview copies it into its bitmap.
+        return frame.rgba();
     }
 
     @Override
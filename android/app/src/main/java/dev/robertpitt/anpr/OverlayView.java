@@ -0,0 +1,142 @@
+package dev.robertpitt.anpr;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.View;
+
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transparent view drawn over the camera preview showing the most recent detection results.
+ *
+ * The analysis thread publishes an immutable {@link Overlay} per frame and never draws on the
+ * camera frame itself. The view keeps only the latest overlay and redraws on the next display
+ * frame, so overlays published faster than the display refreshes are simply replaced.
+ */
+public class OverlayView extends View {
+  /**
+   * Detection results of a single frame, in the coordinates of the frame shown in the preview.
+   */
+  public static class Overlay {
+    public final int frameWidth;
+    public final int frameHeight;
+    public final List<Plate> plates;
+
+    /**
+     * Crop handed to OCR, shown in the corner for debugging, may be null.
+     */
+    public final Bitmap crop;
+
+    public Overlay(int frameWidth, int frameHeight, List<Plate> plates, Bitmap crop) {
+      this.frameWidth = frameWidth;
+      this.frameHeight = frameHeight;
+      this.plates = Collections.unmodifiableList(new ArrayList<>(plates));
+      this.crop = crop;
+    }
+  }
+
+  /**
+   * Outline of a detected plate and the text read from it.
+   */
+  public static class Plate {
+    public final Point[] vertices;
+    public final String text;
+
+    public Plate(Point[] vertices, String text) {
+      this.vertices = vertices.clone();
+      this.text = text;
+    }
+  }
+
+  /**
+   * Most recently published overlay, null when there is nothing to draw.
+   */
+  private final AtomicReference<Overlay> latest = new AtomicReference<>();
+
+  /**
+   * Drawing state, only used on the UI thread.
+   */
+  private final Paint outlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Path path = new Path();
+  private final Rect cropBounds = new Rect();
+
+  public OverlayView(Context context) {
+    this(context, null);
+  }
+
+  public OverlayView(Context context, AttributeSet attrs) {
+    super(context, attrs);
+    float density = getResources().getDisplayMetrics().density;
+
+    outlinePaint.setColor(Color.RED);
+    outlinePaint.setStyle(Paint.Style.STROKE);
+    outlinePaint.setStrokeWidth(2 * density);
+
+    textPaint.setColor(Color.RED);
+    textPaint.setTextSize(16 * density);
+  }
+
+  /**
+   * Replace the overlay, may be called from any thread.
+   * @param overlay overlay to show, or null to clear.
+   */
+  public void publish(Overlay overlay) {
+    latest.set(overlay);
+    postInvalidateOnAnimation();
+  }
+
+  @Override
+  protected void onDraw(Canvas canvas) {
+    Overlay overlay = latest.get();
+    if (overlay == null || overlay.frameWidth == 0 || overlay.frameHeight == 0) {
+      return;
+    }
+
+    // PortraitCameraView fits the portrait frame inside the view and centres it.
+    float scale = Math.min(getWidth() / (float) overlay.frameWidth, getHeight() / (float) overlay.frameHeight);
+    float left = (getWidth() - overlay.frameWidth * scale) / 2;
+    float top = (getHeight() - overlay.frameHeight * scale) / 2;
+
+    for (int i = 0; i < overlay.plates.size(); i++) {
+      Plate plate = overlay.plates.get(i);
+      path.rewind();
+      for (int v = 0; v < plate.vertices.length; v++) {
+        float x = left + (float) plate.vertices[v].x * scale;
+        float y = top + (float) plate.vertices[v].y * scale;
+        if (v == 0) {
+          path.moveTo(x, y);
+        } else {
+          path.lineTo(x, y);
+        }
+      }
+      path.close();
+      canvas.drawPath(path, outlinePaint);
+
+      if (plate.text != null && plate.vertices.length > 0) {
+        canvas.drawText(plate.text,
+            left + (float) plate.vertices[0].x * scale,
+            top + (float) plate.vertices[0].y * scale - outlinePaint.getStrokeWidth(),
+            textPaint);
+      }
+    }
+
+    if (overlay.crop != null && !overlay.crop.isRecycled()) {
+      int width = getWidth() / 3;
+      int height = width * overlay.crop.getHeight() / Math.max(1, overlay.crop.getWidth());
+      cropBounds.set(0, 0, width, height);
+      canvas.drawBitmap(overlay.crop, null, cropBounds, null);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package dev.robertpitt.anpr;
+
+import com.googlecode.tesseract.android.TessBaseAPI;
+
+import java.util.Locale;
+
+/**
+ * Immutable snapshot of every setting that trades processing time for recall.
+ *
+ * The camera thread reads the current profile once per frame, so a profile is switched by
+ * swapping the reference to a new snapshot, the frame in flight finishes with the profile it
+ * started with and the next frame picks up the new one without any locking.
+ */
+public class PerformanceProfile {
+  /**
+   * Preference key holding the selected profile name.
+   */
+  public static final String PREFERENCE_KEY = "performance_profile";
+
+  /**
+   * Downscaled, single scale detection on every third frame.
+   */
+  public static final PerformanceProfile LOW_POWER =
+      new PerformanceProfile("low_power", 640, 100, 800, 400.0, 40000.0, 1, TessBaseAPI.OEM_LSTM_ONLY, 3);
+
+  /**
+   * The values the application has always used.
+   */
+  public static final PerformanceProfile BALANCED =
+      new PerformanceProfile("balanced", 0, 100, 800, 1000.0, 100000.0, 1, TessBaseAPI.OEM_LSTM_ONLY, 1);
+
+  /**
+   * Full resolution plus a half scale pass for plates too close or too coarse for the full
+   * resolution edges, with lower thresholds on every frame.
+   */
+  public static final PerformanceProfile MAX_RECALL =
+      new PerformanceProfile("max_recall", 0, 50, 400, 600.0, 200000.0, 2, TessBaseAPI.OEM_LSTM_ONLY, 1);
+
+  /**
+   * Name stored in the preferences.
+   */
+  public final String name;
+
+  /**
+   * Frames wider than this are downscaled before detection, 0 to use the frame as delivered.
+   */
+  public final int analysisWidth;
+
+  /**
+   * Thresholds for the canny edge detection process.
+   */
+  public final int cannyLower;
+  public final int cannyUpper;
+
+  /**
+   * Accepted range of the candidate area, in pixels of the frame as delivered.
+   */
+  public final double minArea;
+  public final double maxArea;
+
+  /**
+   * Number of scales searched, each level halving the previous one.
+   */
+  public final int pyramidLevels;
+
+  /**
+   * Tesseract engine mode, one of the TessBaseAPI.OEM_* constants. The bundled
+   * eng.traineddata only holds the LSTM model, so the presets all use OEM_LSTM_ONLY, the
+   * legacy engine modes fail to initialise without legacy data.
+   */
+  public final int ocrEngineMode;
+
+  /**
+   * Only every frameSkip-th frame is analysed, 1 to analyse every frame.
+   */
+  public final int frameSkip;
+
+  public PerformanceProfile(String name, int analysisWidth, int cannyLower, int cannyUpper, double minArea,
+                            double maxArea, int pyramidLevels, int ocrEngineMode, int frameSkip) {
+    if (cannyUpper < cannyLower || maxArea < minArea || pyramidLevels < 1 || frameSkip < 1 || analysisWidth < 0) {
+      throw new IllegalArgumentException("Invalid performance profile " + name);
+    }
+    this.name = name;
+    this.analysisWidth = analysisWidth;
+    this.cannyLower = cannyLower;
+    this.cannyUpper = cannyUpper;
+    this.minArea = minArea;
+    this.maxArea = maxArea;
+    this.pyramidLevels = pyramidLevels;
+    this.ocrEngineMode = ocrEngineMode;
+    this.frameSkip = frameSkip;
+  }
+
+  /**
+   * @return a copy of this profile with other canny thresholds, for manual tuning.
+   */
+  public PerformanceProfile withCannyThresholds(int lower, int upper) {
+    return new PerformanceProfile(name, analysisWidth, Math.min(lower, upper), Math.max(lower, upper),
+        minArea, maxArea, pyramidLevels, ocrEngineMode, frameSkip);
+  }
+
+  /**
+   * @return the preset with the given name, the balanced preset when unknown.
+   */
+  public static PerformanceProfile forName(String name) {
+    if (LOW_POWER.name.equals(name)) {
+      return LOW_POWER;
+    }
+    if (MAX_RECALL.name.equals(name)) {
+      return MAX_RECALL;
+    }
+    return BALANCED;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "%s width=%d canny=%d/%d area=%.0f-%.0f levels=%d oem=%d skip=%d",
+        name, analysisWidth, cannyLower, cannyUpper, minArea, maxArea, pyramidLevels, ocrEngineMode, frameSkip);
+  }
+}
@@ -69,6 +69,16 @@ public class PlateDetector {
    */
   private Mat resized;
 
+  /**
+   * Container that will hold the reduced frame of the current pyramid level.
+   */
+  private Mat pyramid;
+
+  /**
+   * Pyramid levels smaller than this in either dimension are not searched.
+   */
+  private static final int MIN_LEVEL_SIZE = 64;
+
   /**
    * mat container to hold the 640x480 edge detection result
    */
@@ -111,6 +121,7 @@ public class PlateDetector {
      */
     contour = new MatOfPoint();
     resized = new Mat();
+    pyramid = new Mat();
     hierarchy = new Mat();
     approxCurve = new MatOfPoint2f();
     edges = new Mat();
@@ -125,17 +136,63 @@ public class PlateDetector {
    * @// TODO: 2020-04-12 assert the structure if the input mat is 16 bit.
    */
   public List<RotatedRect> detect(Mat grayscale, int lowerThreshold, int upperThreshold) {
+    List<RotatedRect> plates = new ArrayList<>();
+    detectAtScale(grayscale, lowerThreshold, upperThreshold, 1.0, minAreaSize, maxAreaSize, plates);
+    return plates;
+  }
+
+  /**
+   * Perform detection with the settings of a performance profile. The frame is reduced to the
+   * analysis width and searched at each pyramid level, the results are in frame coordinates.
+   * @param grayscale
+   * @param profile snapshot of the settings, read once for the whole frame.
+   * @return
+   */
+  public List<RotatedRect> detect(Mat grayscale, PerformanceProfile profile) {
+    List<RotatedRect> plates = new ArrayList<>();
+
     /**
      * 1. Reduce the size of the input frame in order to improve performance.
-     * 2. Convert the input to gray scale and known size.
      */
-//    Imgproc.resize(grayscale, resized, frameDownsizeDimentions, Imgproc.INTER_AREA);
+    Mat level = grayscale;
+    double scale = 1.0;
+    if(profile.analysisWidth > 0 && grayscale.cols() > profile.analysisWidth) {
+      scale = grayscale.cols() / (double) profile.analysisWidth;
+      Imgproc.resize(grayscale, resized, new Size(profile.analysisWidth, Math.round(grayscale.rows() / scale)), 0, 0, Imgproc.INTER_AREA);
+      level = resized;
+    }
 
+    /**
+     * 2. Search each level of the pyramid, halving the frame between levels.
+     */
+    for(int i = 0; i < profile.pyramidLevels; i++) {
+      if(i > 0) {
+        Imgproc.pyrDown(level, pyramid);
+        level = pyramid;
+        scale *= 2;
+      }
+      if(level.cols() < MIN_LEVEL_SIZE || level.rows() < MIN_LEVEL_SIZE) {
+        break;
+      }
+      detectAtScale(level, profile.cannyLower, profile.cannyUpper, scale, profile.minArea, profile.maxArea, plates);
+    }
+
+    resized.release();
+    pyramid.release();
+    return plates;
+  }
+
+  /**
+   * Detect on a single, possibly reduced, image.
+   * @param scale size of an image pixel in frame pixels.
+   * @param plates receives the candidates in frame coordinates.
+   */
+  private void detectAtScale(Mat image, int lowerThreshold, int upperThreshold, double scale,
+                             double minArea, double maxArea, List<RotatedRect> plates) {
     /**
      * 3. Perform edge detections
      */
-    Imgproc.Canny(grayscale, edges, lowerThreshold, upperThreshold);
-//    resized.release();
+    Imgproc.Canny(image, edges, lowerThreshold, upperThreshold);
 
     /**
      * 4. Extract the contours from the view
@@ -148,30 +205,18 @@ public class PlateDetector {
     /**
      * 5. Extract contours
      */
-    List<RotatedRect> plates = scanForLicensePlate(contours);
+    scanForLicensePlate(contours, scale, minArea, maxArea, plates);
+    for(int i = 0; i < contours.size(); i++) {
+      contours.get(i).release();
+    }
     contours.clear();
-
-    return plates;
   }
 
   /**
    * Attempt to locate the license plate within the array of detected contours
    */
-  private List<RotatedRect> scanForLicensePlate(List<MatOfPoint> contours) {
-    /**
-     * Return null immediately if the input size os 0, this saves setting up the
-     * itterator every frame.
-     */
-    if(contours.size() == 0) {
-      return null;
-    }
-
-    /**
-     * Create a new container for the results
-     */
-    List<MatOfPoint> plates = new ArrayList<>();
-    List<RotatedRect> rectangles = new ArrayList<>();
-
+  private void scanForLicensePlate(List<MatOfPoint> contours, double scale, double minArea, double maxArea,
+                                   List<RotatedRect> rectangles) {
     /**
      * Itterate over the contours, skipping contours that we are not interested in.
      */
@@ -200,7 +245,8 @@ public class PlateDetector {
        * the selections that are too small or to0 big.
        */
       double areaSize = Math.abs(Imgproc.contourArea(approxCurve));
-      if(areaSize < minAreaSize || areaSize > maxAreaSize) {
+      areaSize *= scale * scale;
+      if(areaSize < minArea || areaSize > maxArea) {
         approxCurve.release();
         continue;
       }
@@ -225,14 +271,17 @@ public class PlateDetector {
 
 //      RotatedRect rotatedRect = Imgproc.minAreaRect(approxCurve);
 
-      plates.add(new MatOfPoint(approxCurve.toArray()));
-      rectangles.add(Imgproc.minAreaRect(approxCurve));
+      RotatedRect rectangle = Imgproc.minAreaRect(approxCurve);
+      if(scale != 1.0) {
+        rectangle = new RotatedRect(
+            new Point(rectangle.center.x * scale, rectangle.center.y * scale),
+            new Size(rectangle.size.width * scale, rectangle.size.height * scale),
+            rectangle.angle);
+      }
+      rectangles.add(rectangle);
 
       // Release the approxCurve memory allocation
       approxCurve.release();
     }
-
-    return rectangles;
-//    return plates;
   }
 }
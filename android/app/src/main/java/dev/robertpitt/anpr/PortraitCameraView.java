@@ -0,0 +1,103 @@
+package dev.robertpitt.anpr;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.util.AttributeSet;
+import android.util.Log;
+
+import org.opencv.android.JavaCamera2View;
+import org.opencv.core.Mat;
+
+/**
+ * Camera preview shown in portrait while frames are delivered in the sensor's landscape
+ * orientation.
+ *
+ * The frame returned by the listener is drawn turned a quarter clockwise by the canvas
+ * matrix, scaled to fit the view and centred, the same placement {@link OverlayView} assumes
+ * for the portrait frame. The frame itself is never rotated, so the listener can return the
+ * camera frame as delivered.
+ */
+public class PortraitCameraView extends JavaCamera2View {
+  private static final String TAG = "PortraitCameraView";
+
+  /**
+   * Listener, also held by the base class which keeps its reference private.
+   */
+  private CvCameraViewListener2 listener;
+
+  /**
+   * Drawing state, only used on the camera thread.
+   */
+  private Bitmap cache;
+  private final Matrix matrix = new Matrix();
+  private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  public PortraitCameraView(Context context, int cameraId) {
+    super(context, cameraId);
+  }
+
+  public PortraitCameraView(Context context, AttributeSet attrs) {
+    super(context, attrs);
+  }
+
+  @Override
+  public void setCvCameraViewListener(CvCameraViewListener2 listener) {
+    super.setCvCameraViewListener(listener);
+    this.listener = listener;
+  }
+
+  @Override
+  protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
+    Mat modified = listener != null ? listener.onCameraFrame(frame) : frame.rgba();
+    if (modified == null || modified.empty()) {
+      return;
+    }
+
+    if (cache == null || cache.getWidth() != modified.cols() || cache.getHeight() != modified.rows()) {
+      if (cache != null) {
+        cache.recycle();
+      }
+      cache = Bitmap.createBitmap(modified.cols(), modified.rows(), Bitmap.Config.ARGB_8888);
+    }
+    try {
+      org.opencv.android.Utils.matToBitmap(modified, cache);
+    } catch (Exception e) {
+      Log.e(TAG, "Unable to convert frame " + modified, e);
+      return;
+    }
+
+    Canvas canvas = getHolder().lockCanvas();
+    if (canvas == null) {
+      return;
+    }
+    canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+    // Turn about the frame centre, then fit the portrait frame inside the view and centre it.
+    float scale = Math.min(canvas.getWidth() / (float) cache.getHeight(), canvas.getHeight() / (float) cache.getWidth());
+    matrix.setTranslate(-cache.getWidth() / 2f, -cache.getHeight() / 2f);
+    matrix.postRotate(90);
+    matrix.postScale(scale, scale);
+    matrix.postTranslate(canvas.getWidth() / 2f, canvas.getHeight() / 2f);
+    canvas.drawBitmap(cache, matrix, paint);
+
+    if (mFpsMeter != null) {
+      mFpsMeter.measure();
+      mFpsMeter.draw(canvas, 20, 30);
+    }
+    getHolder().unlockCanvasAndPost(canvas);
+  }
+
+  @Override
+  protected void disconnectCamera() {
+    super.disconnectCamera();
+    if (cache != null) {
+      cache.recycle();
+      cache = null;
+    }
+  }
+}
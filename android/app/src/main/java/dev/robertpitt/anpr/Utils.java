@@ -21,9 +21,23 @@ public class Utils {
  public static Mat rotateBasedOnRect(Mat source, Mat dst, RotatedRect rect) {
     Mat rot_mat = Imgproc.getRotationMatrix2D(rect.center, rect.angle, 1.0);
     warpAffine(source, dst, rot_mat, source.size(), Imgproc.INTER_CUBIC);
+    rot_mat.release();
     return dst;
   }
 
+  /**
+   * Map a detection on the landscape sensor frame to the portrait frame shown in the preview,
+   * a quarter turn clockwise. The sizes swap while the angle stays the same.
+   * @param rect detection in sensor coordinates.
+   * @param sensorHeight rows of the sensor frame.
+   */
+  public static RotatedRect toPortrait(RotatedRect rect, int sensorHeight) {
+    return new RotatedRect(
+        new Point(sensorHeight - 1 - rect.center.y, rect.center.x),
+        new Size(rect.size.height, rect.size.width),
+        rect.angle);
+  }
+
   /**
    * Determine the angle
    * @param pt1
@@ -104,9 +118,10 @@ public class Utils {
 
     // Now that we have the rotation matrix, we can apply the geometric transformation using the function warpAffine
     Imgproc.warpAffine(cropped, cropped, rotationMat, rect.size, INTER_CUBIC);
+    rotationMat.release();
 
     Mat out = new Mat();
-    Imgproc.getRectSubPix(cropped, rect.size, rect.center, cropped);
+    Imgproc.getRectSubPix(cropped, rect.size, rect.center, out);
 
     cropped.release();
     return out;